@@ -12,6 +12,100 @@ public class Constants {
     // HTTP Connect Timeout in Retrofit
     public  final static long TCP_CONNECT_TIMEOUT = 4;          // 4 seconds (instead of 10)
 
+    // Deadlines of whole calls (connect, request & response), by request type
+    public final static long QUOTE_CALL_DEADLINE = 3000;            // in milliseconds
+    public final static long WATCHLIST_READ_DEADLINE = 10000;       // in milliseconds
+    public final static long WATCHLIST_WRITE_DEADLINE = 15000;      // in milliseconds
+
+    // Hedged quote requests: a duplicate is sent once a call takes longer than this percentile
+    // of recent ones, provided enough were seen, and within a budget of extra requests
+    public final static double QUOTE_HEDGE_PERCENTILE = 90;
+    public final static int QUOTE_HEDGE_MIN_SAMPLES = 20;
+    public final static long QUOTE_HEDGE_MIN_DELAY = 50;            // in milliseconds
+    public final static double QUOTE_HEDGE_BUDGET_RATIO = 0.1;      // hedges earned per quote request (i.e. 10% extra load)
+    public final static int QUOTE_HEDGE_MAX_BURST = 10;             // hedges that can be saved up, at most
+
+    // Quote requests made within this window are merged into a single batch request
+    public final static long QUOTE_BATCH_WINDOW = 50;           // in milliseconds, 0 to disable batching
+
+    // Maximum number of symbols sent in a single batch quote request
+    public final static int QUOTE_BATCH_MAX_SYMBOLS = 50;
+
+    // How often the quote polling scheduler checks for symbols due for a refresh
+    public final static long QUOTE_SCHEDULER_TICK = 250;        // in milliseconds
+
+    // Delays before reconnecting a dropped quote stream (jittered), doubling after each attempt;
+    // they start over once a connection has stayed up for the stable time
+    public final static long QUOTE_STREAM_MIN_RECONNECT_DELAY = 2000;   // in milliseconds
+    public final static long QUOTE_STREAM_MAX_RECONNECT_DELAY = 60000;  // in milliseconds
+    public final static long QUOTE_STREAM_STABLE_TIME = 30000;          // in milliseconds
+
+    // Quote stream keep-alive pings, so that a dead connection gets detected (and polling resumes)
+    public final static long QUOTE_STREAM_PING_INTERVAL = 15;           // in seconds
+
+    // Maximum number of quote requests in flight per priority tier (see QuotePriority)
+    public final static int QUOTE_MAX_IN_FLIGHT_VISIBLE = 20;
+    public final static int QUOTE_MAX_IN_FLIGHT_PREFETCH = 5;
+
+    // Weighted round-robin of quote fetches when the request budget runs short, by priority tier
+    public final static int QUOTE_WEIGHT_VISIBLE = 4;
+    public final static int QUOTE_WEIGHT_PREFETCH = 1;
+
+    // Number of rows above & below those on screen whose quotes are prefetched
+    public final static int QUOTE_PREFETCH_ROWS = 5;
+
+    // Circuit breaker: consecutive failures before refusing requests, and backoff range (doubling at each failed probe)
+    public final static int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 3;
+    public final static long CIRCUIT_BREAKER_MIN_BACKOFF = 2000;           // in milliseconds
+    public final static long CIRCUIT_BREAKER_MAX_BACKOFF = 120000;         // in milliseconds
+
+    // Endpoint balancer: weight of the latest latency in its moving average (0..1), time for an
+    // average to fade by 63% when not measured again, consecutive failures before ejecting an
+    // endpoint, and ejection backoff range (doubling at each failed probe)
+    public final static double BALANCER_EWMA_WEIGHT = 0.3;
+    public final static long BALANCER_DECAY_TIME = 10000;                  // in milliseconds
+    public final static int BALANCER_EJECT_FAILURES = 3;
+    public final static long BALANCER_EJECT_MIN_BACKOFF = 5000;            // in milliseconds
+    public final static long BALANCER_EJECT_MAX_BACKOFF = 60000;           // in milliseconds
+
+    // Weight of the latest response when averaging how often a symbol's quote changes (0..1)
+    public final static double QUOTE_ADAPTIVE_SMOOTHING = 0.3;
+
+    // Header by which the Quote Service hints at the delay before a symbol's next fetch (along
+    // with Retry-After and Cache-Control max-age), and the longest such delay followed
+    public final static String QUOTE_NEXT_POLL_HEADER = "X-Next-Poll";     // delay in seconds, decimals allowed
+    public final static long QUOTE_HINT_MAX_DELAY = 300000;                 // in milliseconds
+
+    // On-disk HTTP cache size for the Watchlist service (quotes are never cached)
+    public final static long WATCHLIST_HTTP_CACHE_SIZE = 5 * 1024 * 1024;  // 5 MB
+
+    // Delays before replaying queued watchlist changes, doubling while the service stays unreachable
+    public final static long WATCHLIST_OUTBOX_MIN_BACKOFF = 2000;          // in milliseconds
+    public final static long WATCHLIST_OUTBOX_MAX_BACKOFF = 60000;         // in milliseconds
+
+    // Header carrying the key of a watchlist change, the same on every attempt, for the
+    // Watchlist service to apply it only once however many times it is sent. A bulk change
+    // carries the key of each symbol, comma separated, as each is sent again on its own if queued
+    public final static String WATCHLIST_IDEMPOTENCY_HEADER = "Idempotency-Key";
+
+    // Securities of a watchlist are loaded a page at a time as the list is scrolled, keeping
+    // a few pages in memory; the next page is loaded when within a few rows of the last one loaded
+    public final static int WATCHLIST_PAGE_SIZE = 100;
+    public final static int WATCHLIST_MAX_PAGES = 5;
+    public final static int WATCHLIST_PAGE_PREFETCH_ROWS = 20;
+
+    // Maximum number of symbols per bulk add/delete request, larger lists being sent in chunks
+    public final static int WATCHLIST_BULK_MAX_SYMBOLS = 50;
+
+    // Maximum number of symbols taken from an imported file, the rest being rejected
+    public final static int WATCHLIST_IMPORT_MAX_SYMBOLS = 500;
+
+    // Maximum number of watchlist reads in flight at once, when loading several watchlists in parallel
+    public final static int WATCHLIST_MAX_CONCURRENT_READS = 4;
+
+    // Maximum number of decoded Watchlist service responses kept for ETag revalidation
+    public final static int WATCHLIST_ETAG_CACHE_ENTRIES = 20;
+
     // Keys used to communicate from main (watchlist) activity to detail activity
     public final static String WATCHLIST_ID_KEY = "watchlist-ID";
     public final static String WATCHLIST_NAME_KEY = "watchlist-name";
@@ -0,0 +1,26 @@
+package com.rolande.mywatchlists;
+
+import android.app.Application;
+
+import com.rolande.mywatchlists.api.ConnectionWarmer;
+import com.rolande.mywatchlists.api.watchlist.WatchlistOutbox;
+import com.rolande.mywatchlists.model.Settings;
+
+/**
+ * Application class, used to get the services' connections going as soon as the process
+ * starts, in parallel with the main activity's own startup, and to send the watchlist
+ * changes a previous run could not.
+ *
+ * @author Rolande
+ */
+public class MyWatchlistsApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Settings.setContext(getApplicationContext());          // Set context for SharedPreferences...
+
+        ConnectionWarmer.warmUp();
+        WatchlistOutbox.getInstance(this).replayNow();
+    }
+}
@@ -9,6 +9,8 @@ import androidx.annotation.NonNull;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.rolande.mywatchlists.api.gson.ApiTypeAdapters;
+import com.rolande.mywatchlists.api.gson.TimestampFormat;
 
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
@@ -90,7 +92,7 @@ public class APIBuilder {
      *
      * @return a new instance of HttpClient
      */
-    private OkHttpClient getOkHttpClient() {
+    protected OkHttpClient getOkHttpClient() {
 
         if (httpClient == null) {
             // Log HTTP Requests/Responses...
@@ -111,6 +113,7 @@ public class APIBuilder {
                         }
                     })
                     .connectTimeout(TCP_CONNECT_TIMEOUT, TimeUnit.SECONDS)       // 4 seconds, instead of default 10
+                    .eventListenerFactory(NetworkMetrics.getEventListenerFactory())  // per-phase latency histograms
                     .build();
         }
 
@@ -123,12 +126,15 @@ public class APIBuilder {
      *
      *  Note: Pattern provided must abide by the SimpleDateFormat class convention.
      *
+     *  The beans & API responses exchanged with the services have streaming type adapters of
+     *  their own, reading fields by name rather than through reflection (see ApiTypeAdapters).
+     *
      * @return a new instance of Gson.
      */
-    private Gson getMyGson() {
+    protected Gson getMyGson() {
         if (myGson == null) {
-            myGson = new GsonBuilder()
-                    .setDateFormat("yyyy-MM-dd'T'HH:mm:ssZ")
+            myGson = ApiTypeAdapters.register(new GsonBuilder())
+                    .setDateFormat(TimestampFormat.PATTERN)
                     .create();
         }
 
@@ -143,7 +149,7 @@ public class APIBuilder {
      *
      * @return Resulting base URL string
      */
-    private String getBaseUrl() {
+    protected String getBaseUrl() {
         // Server's current IP = 192.168.1.146
         // - quote microservice = port 8500; baseUrl("http://192.168.1.146:8500/")
         // - watchlist service = port 8080, baseUrl("http://192.168.1.146:8080/watchlist-service/")
@@ -166,13 +172,25 @@ public class APIBuilder {
      */
     private Retrofit getRetrofit(OkHttpClient httpClient, Gson myGson, String baseUrlString) {
 
-        Retrofit retrofit = new Retrofit.Builder()
+        Retrofit.Builder builder = new Retrofit.Builder()
                 .baseUrl(baseUrlString)
-                .addConverterFactory(GsonConverterFactory.create(myGson))
-                .client(httpClient)
-                .build();
+                .client(httpClient);
+
+        addConverterFactories(builder, myGson);
+
+        return builder.build();
+    }
 
-        return retrofit;
+    /**
+     * Add the converter factories used to convert request & response bodies. Json, through
+     * Gson, is the default. May be overriden by subclasses to add other formats, which must
+     * then be added before Gson, as Gson accepts any type.
+     *
+     * @param builder Retrofit builder to add the converter factories to
+     * @param myGson Gson instance to use
+     */
+    protected void addConverterFactories(Retrofit.Builder builder, Gson myGson) {
+        builder.addConverterFactory(GsonConverterFactory.create(myGson));
     }
 
 }
\ No newline at end of file
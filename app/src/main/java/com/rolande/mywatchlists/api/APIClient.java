@@ -3,22 +3,144 @@ package com.rolande.mywatchlists.api;
 import android.content.Context;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
 
 public class APIClient {
     private final String loggerTag;
 
     protected Context context;
+    protected Object scope;             // lifecycle scope of the calls made (see CallRegistry)
+
+    // Futures of the calls in flight, by call, so that each gets cancelled along with the other
+    private final Map<Call<?>, CompletableFuture<?>> futuresInFlight = new HashMap<>();
 
     protected APIClient(Context context, String loggerTag) {
+        this(context, context, loggerTag);
+    }
+
+    protected APIClient(Context context, Object scope, String loggerTag) {
         this.context = context;
+        this.scope = scope;
         this.loggerTag = loggerTag;
     }
 
+    /**
+     * Set the deadline of a call, covering it all: connecting, sending the request and reading
+     * the whole response. A call still running past its deadline fails, like any I/O error.
+     *
+     * @param call Call not sent yet
+     * @param millis Deadline, in milliseconds
+     * @param <T> Type of the response's body
+     * @return the call, for chaining
+     */
+    protected static <T> Call<T> withDeadline(Call<T> call, long millis) {
+        call.timeout().timeout(millis, TimeUnit.MILLISECONDS);
+
+        return call;
+    }
+
+    /**
+     * Send a call asynchronously on behalf of the client's scope.
+     *
+     * @param call Call to send
+     * @param callback Callback to call with the outcome, unless the call gets cancelled
+     * @param <T> Type of the response's body
+     */
+    protected <T> void enqueue(Call<T> call, Callback<T> callback) {
+        enqueue(call, Collections.singletonList(scope), callback);
+    }
+
+    /**
+     * Send a call asynchronously, registered on behalf of the given lifecycle scopes so that
+     * it gets cancelled once they all end. The callback is not called for a cancelled call:
+     * whoever asked for it is gone.
+     *
+     * @param call Call to send
+     * @param scopes Scopes the call belongs to
+     * @param callback Callback to call with the outcome, unless the call gets cancelled
+     * @param <T> Type of the response's body
+     */
+    protected <T> void enqueue(Call<T> call, Collection<?> scopes, Callback<T> callback) {
+        CallRegistry.register(call, scopes);
+
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if (!CallRegistry.unregister(call)) {
+                    onCancelled(call);
+                }
+                else {
+                    callback.onResponse(call, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                if (!CallRegistry.unregister(call)) {
+                    onCancelled(call);
+                }
+                else {
+                    callback.onFailure(call, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Create the future of a call's outcome, for the callback to complete. Should the call get
+     * cancelled (i.e. its scope ended), so does the future; should the future be done before
+     * the call (i.e. cancelled or timed out), the call gets cancelled.
+     *
+     * Note: Must be called from the main thread.
+     *
+     * @param call Call whose outcome the future is
+     * @param <T> Type of the result
+     * @return future, not completed yet
+     */
+    protected <T> CompletableFuture<T> newFuture(Call<?> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        futuresInFlight.put(call, future);
+
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable t) {
+                futuresInFlight.remove(call);
+                CallRegistry.cancelCall(call);          // no-op once the call has completed
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Called instead of the callback of a call that was cancelled.
+     *
+     * @param call Call cancelled
+     */
+    protected void onCancelled(Call<?> call) {
+        Log.i(loggerTag, "Call cancelled: " + call.request().url().encodedPath());
+
+        CompletableFuture<?> future = futuresInFlight.remove(call);
+
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
     /**
      * Get an error message suitable for UI display.  Will take server's error message, if one
      * was provided. If not, a default one will be generated.
@@ -51,6 +173,9 @@ public class APIClient {
      *
      * Message format: { "message":"error message"}
      *
+     * The body is read as a stream, stopping as soon as the message is found, rather than
+     * being buffered and parsed as a whole.
+     *
      * @param errorBody See okhttp3.ResponseBody
      * @return error message extracted, if any.
      */
@@ -58,15 +183,19 @@ public class APIClient {
 
         String errorMsg = "";
 
-        try {
-            String jsonString = errorBody.string();
-
-            JsonObject jsonObject = new Gson().fromJson(jsonString, JsonObject.class);
-
-            // 'message' is the key...
-            errorMsg = jsonObject.get("message").toString();
+        try (JsonReader reader = new JsonReader(errorBody.charStream())) {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                // 'message' is the key...
+                if (reader.nextName().equals("message") && reader.peek() != JsonToken.NULL) {
+                    errorMsg = reader.nextString();
+                    break;
+                }
+                reader.skipValue();
+            }
         }
-        catch (JsonSyntaxException | NullPointerException | IOException e) {
+        catch (IOException | IllegalStateException e) {
             e.printStackTrace();
         }
 
@@ -0,0 +1,24 @@
+package com.rolande.mywatchlists.api;
+
+/**
+ * Failure of a request made through the future-based calls of the API clients. Its message
+ * is the one suitable for UI display, i.e. the one listeners get in onFailure.
+ *
+ * @author Rolande
+ */
+public class APIException extends Exception {
+    private final int httpCode;
+
+    /**
+     * @param errorMsg Error message suitable for UI display
+     * @param httpCode HTTP response status code, 0 if no response was received (or unknown)
+     */
+    public APIException(String errorMsg, int httpCode) {
+        super(errorMsg);
+        this.httpCode = httpCode;
+    }
+
+    public int getHttpCode() {
+        return httpCode;
+    }
+}
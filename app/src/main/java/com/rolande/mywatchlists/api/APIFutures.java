@@ -0,0 +1,387 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Helpers to compose the futures returned by the API clients: shared timeouts, waiting for
+ * several calls, and fanning out calls with bounded parallelism (ex: loading the details of
+ * all watchlists, a few at a time).
+ *
+ * Cancelling a future obtained from an API client cancels its call. The futures built here
+ * pass cancellation on the same way, to the futures they were built from, so that cancelling
+ * (or timing out) a fan-out cancels whatever calls are still in flight.
+ *
+ * Note: Meant to be used from the main thread only, which is also where API clients complete
+ *       their futures (Retrofit delivers its callbacks there on Android).
+ *
+ * @author Rolande
+ */
+public class APIFutures {
+    final static String TAG = LOG_TAG_PREFIX + APIFutures.class.getSimpleName();
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private APIFutures() {
+    }
+
+    /**
+     * Get a future already failed, e.g. for a request refused before being sent.
+     *
+     * @param t Cause of the failure
+     * @param <T> Type of the result
+     * @return failed future
+     */
+    public static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+
+        return future;
+    }
+
+    /**
+     * Get the actual cause of a future's failure, as dependent futures get it wrapped.
+     *
+     * @param t Failure, as received by a dependent future
+     * @return cause of the failure, null if none
+     */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+
+        return t;
+    }
+
+    /**
+     * Get the error message of a future's failure, suitable for UI display.
+     *
+     * @param t Failure of the future
+     * @return error message
+     */
+    public static String getErrorMessage(Throwable t) {
+        Throwable cause = unwrap(t);
+
+        if (cause instanceof TimeoutException) {
+            return "** Request timed out";
+        }
+
+        return (cause.getMessage() != null) ? cause.getMessage() : cause.toString();
+    }
+
+    /**
+     * Fail a future with a TimeoutException if not done within the given time. Calls still in
+     * flight then get cancelled (see class description).
+     *
+     * @param future Future to time out
+     * @param millis Timeout, in milliseconds
+     * @param <T> Type of the result
+     * @return the future, for chaining
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long millis) {
+        final Runnable timeoutRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (future.completeExceptionally(new TimeoutException("Timed out after " + millis + " ms"))) {
+                    Log.w(TAG, "Timed out after " + millis + " ms");
+                }
+            }
+        };
+
+        handler.postDelayed(timeoutRunnable, millis);
+
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable t) {
+                handler.removeCallbacks(timeoutRunnable);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Complete a future with the outcome of another, cancelling the latter should the former
+     * be done first (i.e. cancelled or timed out).
+     *
+     * @param source Future whose outcome is passed on
+     * @param target Future to complete
+     * @param <T> Type of the result
+     */
+    public static <T> void forward(CompletableFuture<T> source, CompletableFuture<T> target) {
+        source.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable t) {
+                if (t == null) {
+                    target.complete(result);
+                }
+                else {
+                    target.completeExceptionally(unwrap(t));
+                }
+            }
+        });
+
+        target.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable t) {
+                source.cancel(false);                   // no-op if already done
+            }
+        });
+    }
+
+    /**
+     * Transform the result of a future, like thenApply, but passing cancellation on to it.
+     *
+     * @param source Future whose result is transformed
+     * @param fn Transformation of the result
+     * @param <T> Type of the source's result
+     * @param <R> Type of the transformed result
+     * @return future of the transformed result
+     */
+    public static <T, R> CompletableFuture<R> map(CompletableFuture<T> source, Function<T, R> fn) {
+        CompletableFuture<R> target = new CompletableFuture<>();
+
+        source.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable t) {
+                if (t != null) {
+                    target.completeExceptionally(unwrap(t));
+                    return;
+                }
+
+                try {
+                    target.complete(fn.apply(result));
+                }
+                catch (RuntimeException e) {
+                    target.completeExceptionally(e);
+                }
+            }
+        });
+
+        target.whenComplete(new BiConsumer<R, Throwable>() {
+            @Override
+            public void accept(R result, Throwable t) {
+                source.cancel(false);
+            }
+        });
+
+        return target;
+    }
+
+    /**
+     * Wait for several futures. Should any of them fail, the returned future fails right away
+     * and the others get cancelled.
+     *
+     * @param futures Futures to wait for
+     * @param <T> Type of their results
+     * @return future of their results, in the same order
+     */
+    public static <T> CompletableFuture<List<T>> allAsList(List<CompletableFuture<T>> futures) {
+        return mapBounded(futures, futures.size(), Function.<CompletableFuture<T>>identity());
+    }
+
+    /**
+     * Run a task (ex: a call) for each item, with at most the given number of them in flight
+     * at once: the next one starts as soon as one completes. Should any of them fail, the
+     * returned future fails right away, those in flight get cancelled and no more are started.
+     *
+     * @param items Items to run the task for
+     * @param maxConcurrency Maximum number of tasks in flight at once
+     * @param task Task to run for an item, returning the future of its result
+     * @param <T> Type of the items
+     * @param <R> Type of the results
+     * @return future of the results, in the order of the items
+     */
+    public static <T, R> CompletableFuture<List<R>> mapBounded(List<T> items, int maxConcurrency,
+                                                              Function<T, CompletableFuture<R>> task) {
+        return new BoundedFanOut<>(items, Math.max(maxConcurrency, 1), task).start();
+    }
+
+    /**
+     * Tasks run for a list of items, a bounded number at a time (see mapBounded).
+     *
+     * Tasks may complete on any thread. Tasks are started by a loop, rather than from the
+     * completion of the previous one, so that tasks completing right away do not nest.
+     */
+    private static class BoundedFanOut<T, R> {
+        private final List<T> items;
+        private final int maxConcurrency;
+        private final Function<T, CompletableFuture<R>> task;
+
+        private final List<R> results;
+        private final List<CompletableFuture<R>> running = new ArrayList<>();
+        private final CompletableFuture<List<R>> result = new CompletableFuture<>();
+        private int nextIndex;
+        private int inFlightCount;
+        private int doneCount;
+        private boolean starting;               // a thread is in the loop starting tasks
+        private boolean startAgain;             // a task completed meanwhile, loop once more
+
+        BoundedFanOut(List<T> items, int maxConcurrency, Function<T, CompletableFuture<R>> task) {
+            this.items = items;
+            this.maxConcurrency = maxConcurrency;
+            this.task = task;
+            this.results = new ArrayList<>(Collections.<R>nCopies(items.size(), null));
+        }
+
+        CompletableFuture<List<R>> start() {
+            result.whenComplete(new BiConsumer<List<R>, Throwable>() {
+                @Override
+                public void accept(List<R> list, Throwable t) {
+                    // Failed, cancelled or timed out: no one waits for those in flight anymore
+                    List<CompletableFuture<R>> inFlight;
+
+                    synchronized (BoundedFanOut.this) {
+                        inFlight = new ArrayList<>(running);
+                    }
+                    for (CompletableFuture<R> future : inFlight) {
+                        future.cancel(false);
+                    }
+                }
+            });
+
+            if (items.isEmpty()) {
+                result.complete(results);
+            }
+
+            startTasks();
+            return result;
+        }
+
+        /**
+         * Start tasks until the maximum in flight is reached. Only one thread at a time runs
+         * the loop; one calling while it runs has it loop once more instead.
+         */
+        private void startTasks() {
+            synchronized (this) {
+                if (starting) {
+                    startAgain = true;
+                    return;
+                }
+                starting = true;
+            }
+
+            while (true) {
+                int index;
+
+                synchronized (this) {
+                    if (result.isDone() || nextIndex >= items.size() || inFlightCount >= maxConcurrency) {
+                        if (!startAgain) {
+                            starting = false;
+                            return;
+                        }
+                        startAgain = false;
+                        continue;
+                    }
+
+                    index = nextIndex++;
+                    inFlightCount++;
+                }
+
+                startTask(index);
+            }
+        }
+
+        private void startTask(final int index) {
+            final CompletableFuture<R> future;
+
+            try {
+                future = task.apply(items.get(index));
+            }
+            catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            synchronized (this) {
+                running.add(future);
+            }
+            if (result.isDone()) {
+                future.cancel(false);               // failed meanwhile
+            }
+
+            future.whenComplete(new BiConsumer<R, Throwable>() {
+                @Override
+                public void accept(R value, Throwable t) {
+                    boolean allDone;
+
+                    synchronized (BoundedFanOut.this) {
+                        running.remove(future);
+                        inFlightCount--;
+
+                        if (t == null) {
+                            results.set(index, value);
+                        }
+                        allDone = (t == null && ++doneCount == items.size());
+                    }
+
+                    if (t != null) {
+                        result.completeExceptionally(unwrap(t));
+                    }
+                    else if (allDone) {
+                        result.complete(results);
+                    }
+                    else {
+                        startTasks();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Adapter passing the outcome of a future on to a listener, the way the listener-based
+     * calls of the API clients always did: a cancelled call does not get its listener called,
+     * as whoever asked for it is gone.
+     *
+     * Exceptions thrown by the listener are thrown again on the main thread, rather than
+     * swallowed by the future.
+     *
+     * @param <T> Type of the result
+     */
+    public abstract static class ListenerAdapter<T> implements BiConsumer<T, Throwable> {
+
+        @Override
+        public final void accept(T result, Throwable t) {
+            Throwable cause = unwrap(t);
+
+            try {
+                if (cause == null) {
+                    onResponse(result);
+                }
+                else if (!(cause instanceof CancellationException)) {
+                    onFailure(cause);
+                }
+            }
+            catch (RuntimeException e) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        throw e;
+                    }
+                });
+            }
+        }
+
+        protected abstract void onResponse(T result);
+
+        /**
+         * @param t Cause of the failure, an APIException for a request that failed as such
+         */
+        protected abstract void onFailure(Throwable t);
+    }
+}
@@ -0,0 +1,89 @@
+package com.rolande.mywatchlists.api;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry keeping a single Retrofit API proxy instance for a given service location, i.e.
+ * for a given (host, port, path) combination. Building a Retrofit instance and its dynamic
+ * proxy is costly, so it is only done again when the service location changes in settings,
+ * in which case the new instance replaces the previous one. Getting the current instance
+ * takes no lock; building a new one does, so that it is only built once for a location even
+ * if several threads need it at the same time.
+ *
+ * @param <T> The Retrofit API interface type (ex: WatchlistAPI)
+ *
+ * @author Rolande
+ */
+public class APIRegistry<T> {
+    private final Class<T> apiClass;
+    private volatile Entry<T> current;
+    private final AtomicInteger retrofitCount = new AtomicInteger();
+
+    /**
+     * An API proxy instance along with the base URL it was built for.
+     */
+    private static class Entry<T> {
+        final String baseUrl;
+        final T api;
+
+        Entry(String baseUrl, T api) {
+            this.baseUrl = baseUrl;
+            this.api = api;
+        }
+    }
+
+    /**
+     * Create a registry for the given API interface.
+     *
+     * @param apiClass Retrofit API interface class to create proxies for
+     */
+    public APIRegistry(Class<T> apiClass) {
+        this.apiClass = apiClass;
+    }
+
+    /**
+     * Get the API proxy instance matching the builder's service location. A new Retrofit
+     * instance is only created if the location differs from the one currently registered.
+     *
+     * @param builder API builder holding the service location currently in settings
+     * @return API proxy instance to use for the builder's service location
+     */
+    public T get(APIBuilder builder) {
+        String baseUrl = builder.getBaseUrl();
+
+        Entry<T> entry = current;
+
+        if (entry != null && entry.baseUrl.equals(baseUrl)) {
+            return entry.api;                       // most common case, nothing to build
+        }
+
+        synchronized (this) {
+            entry = current;
+
+            // Unless another thread just built one for this same location
+            if (entry == null || !entry.baseUrl.equals(baseUrl)) {
+                entry = new Entry<>(baseUrl, builder.getRetrofit().create(apiClass));
+                retrofitCount.incrementAndGet();
+                current = entry;
+            }
+
+            return entry.api;
+        }
+    }
+
+    /**
+     * Get the number of Retrofit instances created by this registry so far.
+     *
+     * @return number of Retrofit instances created
+     */
+    public int getRetrofitCount() {
+        return retrofitCount.get();
+    }
+
+    /**
+     * Drop the currently registered instance, forcing a new one to be built on next use.
+     */
+    public void clear() {
+        current = null;
+    }
+}
@@ -0,0 +1,173 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import retrofit2.Call;
+
+/**
+ * Registry of the calls in flight, by lifecycle scope (ex: a screen, or the quote of a symbol
+ * shown in a row). When a scope ends, its calls are cancelled, so their responses are neither
+ * downloaded nor decoded, and their callbacks do not run against views that are gone.
+ *
+ * A call may belong to several scopes (ex: a batch quote request serving many rows); it is
+ * only cancelled once all of them have ended.
+ *
+ * @author Rolande
+ */
+public class CallRegistry {
+    final static String TAG = LOG_TAG_PREFIX + CallRegistry.class.getSimpleName();
+
+    private static final Map<Object, Set<Call<?>>> callsByScope = new HashMap<>();
+    private static final Map<Call<?>, Set<Object>> scopesByCall = new HashMap<>();
+
+    private static long avoidedDecodeCount;
+
+    private CallRegistry() {
+    }
+
+    /**
+     * Register a call about to be sent, on behalf of the given scopes.
+     *
+     * @param call Call to register
+     * @param scopes Scopes the call belongs to
+     */
+    public static synchronized void register(Call<?> call, Collection<?> scopes) {
+        Set<Object> callScopes = scopesByCall.get(call);
+
+        if (callScopes == null) {
+            callScopes = new HashSet<>();
+            scopesByCall.put(call, callScopes);
+        }
+
+        for (Object scope : scopes) {
+            Set<Call<?>> calls = callsByScope.get(scope);
+
+            if (calls == null) {
+                calls = new HashSet<>();
+                callsByScope.put(scope, calls);
+            }
+            calls.add(call);
+            callScopes.add(scope);
+        }
+    }
+
+    /**
+     * Unregister a call that completed, one way or the other.
+     *
+     * @param call Call to unregister
+     * @return false if the call was not registered anymore, i.e. it was cancelled by the
+     *         registry (as opposed to timed out, for instance)
+     */
+    public static synchronized boolean unregister(Call<?> call) {
+        Set<Object> callScopes = scopesByCall.remove(call);
+
+        if (callScopes == null) {
+            return false;
+        }
+
+        for (Object scope : callScopes) {
+            Set<Call<?>> calls = callsByScope.get(scope);
+
+            if (calls != null) {
+                calls.remove(call);
+                if (calls.isEmpty()) {
+                    callsByScope.remove(scope);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * End a scope: its calls not needed by any other scope anymore are cancelled.
+     *
+     * @param scope Scope that ended
+     * @return number of calls cancelled
+     */
+    public static int cancel(Object scope) {
+        List<Call<?>> toCancel = new ArrayList<>();
+
+        synchronized (CallRegistry.class) {
+            Set<Call<?>> calls = callsByScope.remove(scope);
+
+            if (calls == null) {
+                return 0;
+            }
+
+            for (Call<?> call : calls) {
+                Set<Object> callScopes = scopesByCall.get(call);
+
+                if (callScopes != null) {
+                    callScopes.remove(scope);
+
+                    if (callScopes.isEmpty()) {
+                        scopesByCall.remove(call);
+                        toCancel.add(call);
+                    }
+                }
+            }
+
+            avoidedDecodeCount += toCancel.size();
+        }
+
+        for (Call<?> call : toCancel) {
+            call.cancel();
+        }
+
+        if (!toCancel.isEmpty()) {
+            Log.i(TAG, "Cancelled " + toCancel.size() + " call(s) of " + scope + ", " + avoidedDecodeCount + " decodes avoided so far");
+        }
+
+        return toCancel.size();
+    }
+
+    /**
+     * Cancel a single call, whatever the scopes it belongs to (ex: no one waits for its outcome
+     * anymore). As for calls cancelled along with their scopes, its callback is not called.
+     *
+     * @param call Call to cancel
+     * @return true if cancelled, false if it had completed already (or was not registered)
+     */
+    public static boolean cancelCall(Call<?> call) {
+        if (!unregister(call)) {
+            return false;
+        }
+
+        synchronized (CallRegistry.class) {
+            avoidedDecodeCount++;
+        }
+
+        call.cancel();
+        return true;
+    }
+
+    /**
+     * Get the number of calls cancelled while in flight so far, i.e. responses that did not
+     * need to be downloaded and decoded.
+     *
+     * @return number of decodes avoided
+     */
+    public static synchronized long getAvoidedDecodeCount() {
+        return avoidedDecodeCount;
+    }
+
+    /**
+     * Get the number of calls currently registered.
+     *
+     * @return number of calls in flight
+     */
+    public static synchronized int getCallCount() {
+        return scopesByCall.size();
+    }
+}
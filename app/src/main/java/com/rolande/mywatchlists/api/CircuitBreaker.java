@@ -0,0 +1,218 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+import static com.rolande.mywatchlists.Constants.CIRCUIT_BREAKER_MAX_BACKOFF;
+import static com.rolande.mywatchlists.Constants.CIRCUIT_BREAKER_MIN_BACKOFF;
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Circuit breaker guarding the requests made to a service endpoint. After a few consecutive
+ * failures, the circuit opens and requests are refused locally, without touching the network,
+ * for a backoff delay. Once the delay expires, a single probe request is let through
+ * (half-open): if it succeeds the circuit closes again, otherwise it reopens for twice as long,
+ * up to a maximum. Delays are jittered so that clients do not all retry at the same time.
+ *
+ * Listeners are told whenever the endpoint becomes unavailable or available again, so that
+ * a single error can be shown for all the requests involved.
+ *
+ * @author Rolande
+ */
+public class CircuitBreaker {
+    final static String TAG = LOG_TAG_PREFIX + CircuitBreaker.class.getSimpleName();
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Callback interface to pass on changes of the endpoint's availability
+     */
+    public interface Listener {
+        void onAvailabilityChanged(boolean available, String errorMsg);
+    }
+
+    private static final Map<String, CircuitBreaker> breakers = new HashMap<>();
+    private static final Random sharedRandom = new Random();
+
+    private final String endpoint;
+    private final Random random;
+    private final Clock clock;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.CLOSED;
+    private int failureCount;               // consecutive failures
+    private long backoff;                   // current backoff delay, before jitter, in milliseconds
+    private long retryAt;                   // uptime at which a probe is allowed, when open
+    private boolean probeInFlight;
+    private String lastErrorMsg;
+
+    /**
+     * Create a closed circuit breaker.
+     *
+     * @param endpoint Endpoint identification (ex: "192.168.1.146:8500")
+     * @param random Source of the backoff delays' jitter
+     * @param clock Clock to go by
+     */
+    CircuitBreaker(String endpoint, Random random, Clock clock) {
+        this.endpoint = endpoint;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the circuit breaker of an endpoint, creating it on first use.
+     *
+     * @param endpoint Endpoint identification (ex: "192.168.1.146:8500")
+     * @return the endpoint's circuit breaker
+     */
+    public static synchronized CircuitBreaker forEndpoint(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+
+        if (breaker == null) {
+            breaker = new CircuitBreaker(endpoint, sharedRandom, Clock.SYSTEM);
+            breakers.put(endpoint, breaker);
+        }
+
+        return breaker;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized String getLastErrorMsg() {
+        return lastErrorMsg;
+    }
+
+    /**
+     * Tell whether a request would currently be let through, without reserving anything.
+     *
+     * @return true if a request is allowed now
+     */
+    public synchronized boolean isRequestAllowed() {
+        switch (state) {
+            case OPEN:
+                return clock.uptimeMillis() >= retryAt;
+            case HALF_OPEN:
+                return !probeInFlight;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Ask to send a request. When the circuit is not closed, only one probe request is let
+     * through once the backoff delay has expired; its outcome must then be reported.
+     *
+     * @return true if the request may be sent, false if it must be refused locally
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        if (!isRequestAllowed()) {
+            return false;
+        }
+
+        state = State.HALF_OPEN;
+        probeInFlight = true;
+        Log.i(TAG, endpoint + ": half-open, probing");
+
+        return true;
+    }
+
+    /**
+     * Report a request that got a valid answer from the endpoint.
+     */
+    public void onSuccess() {
+        boolean recovered;
+
+        synchronized (this) {
+            recovered = (state != State.CLOSED);
+
+            state = State.CLOSED;
+            failureCount = 0;
+            backoff = 0;
+            probeInFlight = false;
+            lastErrorMsg = null;
+        }
+
+        if (recovered) {
+            Log.i(TAG, endpoint + ": closed, endpoint is back");
+            notifyListeners(true, null);
+        }
+    }
+
+    /**
+     * Report a request that failed because of the endpoint (i.e. unreachable, or server error).
+     *
+     * @param errorMsg Error message suitable for UI display
+     */
+    public void onFailure(String errorMsg) {
+        boolean opened = false;
+
+        synchronized (this) {
+            failureCount++;
+            lastErrorMsg = errorMsg;
+
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+                backoff = Math.min(backoff * 2, CIRCUIT_BREAKER_MAX_BACKOFF);     // probe failed, wait longer
+                open();
+            }
+            else if (state == State.CLOSED && failureCount >= CIRCUIT_BREAKER_FAILURE_THRESHOLD) {
+                backoff = CIRCUIT_BREAKER_MIN_BACKOFF;
+                open();
+                opened = true;
+            }
+        }
+
+        if (opened) {
+            notifyListeners(false, errorMsg);
+        }
+    }
+
+    /**
+     * Report a request that got cancelled before its outcome was known. If it was the probe,
+     * another one is let through.
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Open the circuit for the current backoff delay, with "equal jitter": half of the delay
+     * is fixed, the other half random.
+     */
+    private void open() {
+        long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+
+        state = State.OPEN;
+        retryAt = clock.uptimeMillis() + delay;
+
+        Log.w(TAG, endpoint + ": open for " + delay + " ms, after " + failureCount + " failures");
+    }
+
+    private void notifyListeners(boolean available, String errorMsg) {
+        for (Listener listener : listeners) {
+            listener.onAvailabilityChanged(available, errorMsg);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.rolande.mywatchlists.api;
+
+import android.os.SystemClock;
+
+/**
+ * Source of the uptime the request budget, circuit breakers, endpoint balancers and quote
+ * refreshes go by. The system's uptime by default, while tests pass clocks of their own to
+ * control time.
+ *
+ * @author Rolande
+ */
+public class Clock {
+    public static final Clock SYSTEM = new Clock();
+
+    /**
+     * Get the current uptime.
+     *
+     * @return uptime, in milliseconds
+     */
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+}
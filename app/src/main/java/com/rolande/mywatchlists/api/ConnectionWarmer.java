@@ -0,0 +1,73 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.rolande.mywatchlists.api.quote.QuoteAPIBuilder;
+import com.rolande.mywatchlists.api.watchlist.WatchlistAPIBuilder;
+
+import java.io.IOException;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens connections to the Watchlist and Quote services ahead of their first real request,
+ * so that neither the first watchlists nor the first quotes pay for the TCP connect. A cheap
+ * 'HEAD' request is sent to each service's base URL, both in parallel, through the very
+ * Http Client the service's API uses: whatever the answer, its connection is left idle in the
+ * shared connection pool, ready for reuse.
+ *
+ * @author Rolande
+ */
+public class ConnectionWarmer {
+    final static String TAG = LOG_TAG_PREFIX + ConnectionWarmer.class.getSimpleName();
+
+    /**
+     * Warm up connections to both services, as currently located in settings. Returns right
+     * away, as connections are opened in the background.
+     */
+    public static void warmUp() {
+        warmUp(new WatchlistAPIBuilder());
+        warmUp(new QuoteAPIBuilder());
+    }
+
+    /**
+     * Warm up a connection to a single service.
+     *
+     * @param builder API builder of the service, holding its location
+     */
+    static void warmUp(APIBuilder builder) {
+        final String baseUrl = builder.getBaseUrl();
+        final long start = SystemClock.uptimeMillis();
+
+        Request request;
+
+        try {
+            request = new Request.Builder().url(baseUrl).head().build();
+        }
+        catch (IllegalArgumentException e) {
+            Log.w(TAG, "Cannot warm up invalid URL: " + baseUrl);
+            return;
+        }
+
+        builder.getOkHttpClient().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();           // frees the connection for the pool
+                Log.i(TAG, "Connection to " + baseUrl + " warmed up in " + (SystemClock.uptimeMillis() - start) + " ms");
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Could not warm up connection to " + baseUrl + ": " + e.getMessage());
+            }
+        });
+    }
+}
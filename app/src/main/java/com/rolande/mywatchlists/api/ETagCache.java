@@ -0,0 +1,174 @@
+package com.rolande.mywatchlists.api;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * In-memory cache of decoded response bodies, keyed by URL and validated with ETags. Its
+ * interceptor adds an 'If-None-Match' header to GET requests for which a body is cached,
+ * so that an unchanged resource costs a '304 Not Modified' response and the body decoded
+ * last time is reused as is, without being downloaded nor decoded again.
+ *
+ * The body revalidated is pinned to the request (as a tag), so that it is still there when
+ * the 304 comes back, even if dropped from the cache in the meantime to make room.
+ *
+ * Keeps hit (304), miss (full body) & revalidation (conditional request) counters.
+ *
+ * @author Rolande
+ */
+public class ETagCache {
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidateCount = new AtomicLong();
+
+    /**
+     * A decoded body along with its ETag.
+     */
+    private static class Entry {
+        final String eTag;
+        final Object body;
+
+        Entry(String eTag, Object body) {
+            this.eTag = eTag;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Create a cache keeping at most the given number of bodies, least recently used ones
+     * being dropped first.
+     *
+     * @param maxEntries Maximum number of bodies kept
+     */
+    public ETagCache(int maxEntries) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the interceptor adding 'If-None-Match' headers to requests for cached bodies.
+     *
+     * @return the cache's interceptor
+     */
+    public Interceptor getInterceptor() {
+        return new Interceptor() {
+            @NonNull
+            @Override
+            public Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+
+                if (request.method().equals("GET") && request.header("If-None-Match") == null) {
+                    Entry entry = getEntry(request.url().toString());
+
+                    if (entry != null) {
+                        revalidateCount.incrementAndGet();
+                        request = request.newBuilder()
+                                .header("If-None-Match", entry.eTag)
+                                .tag(Entry.class, entry)
+                                .build();
+                    }
+                }
+
+                return chain.proceed(request);
+            }
+        };
+    }
+
+    private synchronized Entry getEntry(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Get the body to use for a response. If the server answered '304 Not Modified', the body
+     * revalidated by the request is returned (and cached again, if dropped meanwhile);
+     * otherwise, the body just decoded is cached along with its ETag (if any) and returned.
+     *
+     * @param url URL of the request
+     * @param response Retrofit response received
+     * @param <T> Type of the response's body
+     * @return body to use, null if none available
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getBody(String url, retrofit2.Response<T> response) {
+
+        if (response.code() == 304) {
+            Entry pinned = response.raw().request().tag(Entry.class);
+
+            if (pinned == null) {
+                return null;                    // not revalidated by the cache
+            }
+
+            synchronized (this) {
+                Entry entry = entries.get(url);
+
+                if (entry == null || entry.eTag.equals(pinned.eTag)) {
+                    entries.put(url, pinned);
+                }
+            }
+
+            hitCount.incrementAndGet();
+            return (T) pinned.body;
+        }
+
+        T body = response.body();
+
+        if (body != null) {
+            missCount.incrementAndGet();
+
+            String eTag = response.headers().get("ETag");
+
+            synchronized (this) {
+                if (eTag != null) {
+                    entries.put(url, new Entry(eTag, body));
+                }
+                else {
+                    entries.remove(url);
+                }
+            }
+        }
+
+        return body;
+    }
+
+    /**
+     * Drop all cached bodies.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getRevalidateCount() {
+        return revalidateCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ETagCache{" +
+                "hits=" + hitCount +
+                ", misses=" + missCount +
+                ", revalidations=" + revalidateCount +
+                '}';
+    }
+}
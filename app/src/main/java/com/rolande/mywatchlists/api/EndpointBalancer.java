@@ -0,0 +1,323 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.BALANCER_DECAY_TIME;
+import static com.rolande.mywatchlists.Constants.BALANCER_EJECT_FAILURES;
+import static com.rolande.mywatchlists.Constants.BALANCER_EJECT_MAX_BACKOFF;
+import static com.rolande.mywatchlists.Constants.BALANCER_EJECT_MIN_BACKOFF;
+import static com.rolande.mywatchlists.Constants.BALANCER_EWMA_WEIGHT;
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Client-side load balancer spreading the requests to a service over its endpoints (i.e. the
+ * servers running it, as "host:port"), through an OkHttp interceptor rewriting each request's
+ * host & port.
+ *
+ * Endpoints are picked by "power of two choices": of two endpoints taken at random, the one
+ * with the lowest latency (an exponentially weighted moving average, weighted by its requests
+ * in flight) gets the request. The average fades with time, so that an endpoint found slow
+ * gets tried again once in a while rather than never.
+ *
+ * An endpoint failing several requests in a row is ejected, for a backoff delay doubling
+ * every time it fails again. Once the delay expires, a single request probes it: it is back
+ * in if that succeeds. Requests that fail to reach an endpoint are retried once on another,
+ * if safe to (i.e. GET requests).
+ *
+ * @author Rolande
+ */
+public class EndpointBalancer {
+    final static String TAG = LOG_TAG_PREFIX + EndpointBalancer.class.getSimpleName();
+
+    /**
+     * An endpoint, along with its latency & health.
+     */
+    private static class Endpoint {
+        final String address;
+        final String host;
+        final int port;
+
+        double latency;                 // moving average, in milliseconds, 0 until measured
+        long measuredAt;                // uptime of the last measure
+        int inFlight;
+        int failures;                   // consecutive ones
+        long ejectedUntil;              // uptime, 0 if not ejected
+        long backoff;                   // current ejection delay, in milliseconds
+        boolean probing;                // probe in flight, after ejection
+        long requestCount;
+
+        Endpoint(String address, String host, int port) {
+            this.address = address;
+            this.host = host;
+            this.port = port;
+        }
+    }
+
+    private final String serviceName;
+    private final Random random;
+    private final Clock clock;
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    public EndpointBalancer(String serviceName) {
+        this(serviceName, new Random(), Clock.SYSTEM);
+    }
+
+    /**
+     * @param serviceName Name of the service, for logging
+     * @param random Source of the endpoints picked at random, seeded by tests
+     * @param clock Clock to go by
+     */
+    EndpointBalancer(String serviceName, Random random, Clock clock) {
+        this.serviceName = serviceName;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    /**
+     * Set the service's endpoints. Those already known keep their latency & health.
+     *
+     * @param addresses Endpoints, as "host:port"
+     */
+    public synchronized void setEndpoints(List<String> addresses) {
+        if (addresses.size() == endpoints.size()) {
+            boolean same = true;
+
+            for (int i = 0; i < addresses.size() && same; i++) {
+                same = addresses.get(i).equals(endpoints.get(i).address);
+            }
+
+            if (same) {
+                return;                         // most common case, nothing changed
+            }
+        }
+
+        List<Endpoint> newEndpoints = new ArrayList<>();
+
+        for (String address : addresses) {
+            Endpoint endpoint = find(address);
+
+            if (endpoint == null) {
+                int colon = address.lastIndexOf(':');
+
+                try {
+                    endpoint = new Endpoint(address, address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+                }
+                catch (RuntimeException e) {
+                    Log.w(TAG, serviceName + ": ignoring endpoint '" + address + "'");
+                    continue;
+                }
+            }
+
+            newEndpoints.add(endpoint);
+        }
+
+        endpoints = newEndpoints;
+        Log.i(TAG, serviceName + ": " + endpoints.size() + " endpoint(s)");
+    }
+
+    private Endpoint find(String address) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.address.equals(address)) {
+                return endpoint;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Pick the endpoint to send a request to: one due for a probe, if any, else the best of
+     * two healthy ones. If all are ejected, the one whose ejection ends first is used anyway.
+     *
+     * @param excluded Endpoint not to pick (ex: the one that just failed), null if none
+     * @return endpoint picked, its request counted in flight; null if none
+     */
+    private synchronized Endpoint choose(Endpoint excluded) {
+        long now = clock.uptimeMillis();
+        List<Endpoint> healthy = new ArrayList<>();
+        Endpoint chosen = null;
+
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint == excluded) {
+                continue;
+            }
+
+            if (endpoint.ejectedUntil == 0) {
+                healthy.add(endpoint);
+            }
+            else if (endpoint.ejectedUntil <= now && !endpoint.probing) {
+                endpoint.probing = true;
+                chosen = endpoint;
+                break;
+            }
+        }
+
+        if (chosen == null && healthy.size() == 1) {
+            chosen = healthy.get(0);
+        }
+        else if (chosen == null && healthy.size() > 1) {
+            int i = random.nextInt(healthy.size());
+            int j = random.nextInt(healthy.size() - 1);
+
+            Endpoint first = healthy.get(i);
+            Endpoint second = healthy.get((j >= i) ? j + 1 : j);
+
+            chosen = (getScore(first, now) <= getScore(second, now)) ? first : second;
+        }
+        else if (chosen == null) {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint != excluded && (chosen == null || endpoint.ejectedUntil < chosen.ejectedUntil)) {
+                    chosen = endpoint;
+                }
+            }
+        }
+
+        if (chosen != null) {
+            chosen.inFlight++;
+            chosen.requestCount++;
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Get an endpoint's score, the lower the better: its latency, faded with time since last
+     * measured, and weighted by its requests in flight.
+     */
+    private static double getScore(Endpoint endpoint, long now) {
+        return getLatency(endpoint, now) * (endpoint.inFlight + 1);
+    }
+
+    private static double getLatency(Endpoint endpoint, long now) {
+        return endpoint.latency * Math.exp(-(double) (now - endpoint.measuredAt) / BALANCER_DECAY_TIME);
+    }
+
+    /**
+     * Report the outcome of a request sent to an endpoint.
+     *
+     * @param endpoint Endpoint involved
+     * @param latency Time taken to get the response, in milliseconds
+     * @param success true if the endpoint answered properly, false if unreachable or in error
+     */
+    private synchronized void onResponse(Endpoint endpoint, long latency, boolean success) {
+        long now = clock.uptimeMillis();
+
+        endpoint.inFlight--;
+        endpoint.probing = false;
+
+        if (success) {
+            endpoint.latency = (endpoint.measuredAt == 0) ? latency :
+                    BALANCER_EWMA_WEIGHT * latency + (1 - BALANCER_EWMA_WEIGHT) * getLatency(endpoint, now);
+            endpoint.measuredAt = now;
+            endpoint.failures = 0;
+
+            if (endpoint.ejectedUntil != 0) {
+                Log.i(TAG, serviceName + ": " + endpoint.address + " is back");
+                endpoint.ejectedUntil = 0;
+                endpoint.backoff = 0;
+            }
+            return;
+        }
+
+        endpoint.failures++;
+
+        if (endpoint.ejectedUntil != 0 || endpoint.failures >= BALANCER_EJECT_FAILURES) {
+            endpoint.backoff = (endpoint.backoff == 0) ? BALANCER_EJECT_MIN_BACKOFF : Math.min(endpoint.backoff * 2, BALANCER_EJECT_MAX_BACKOFF);
+            endpoint.ejectedUntil = now + endpoint.backoff;
+
+            Log.w(TAG, serviceName + ": " + endpoint.address + " ejected for " + endpoint.backoff + " ms");
+        }
+    }
+
+    /**
+     * Report a request that got cancelled before its outcome was known.
+     */
+    private synchronized void onCancelled(Endpoint endpoint) {
+        endpoint.inFlight--;
+        endpoint.probing = false;
+    }
+
+    /**
+     * Get an interceptor sending each request to the endpoint picked for it, and failing over
+     * to another one if it cannot be reached (GET requests only).
+     *
+     * @return the balancer's interceptor
+     */
+    public Interceptor getInterceptor() {
+        return new Interceptor() {
+            @NonNull
+            @Override
+            public Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                Endpoint endpoint = choose(null);
+
+                if (endpoint == null) {
+                    return chain.proceed(request);
+                }
+
+                try {
+                    return proceed(chain, request, endpoint);
+                }
+                catch (IOException e) {
+                    Endpoint other = (request.method().equals("GET") && !chain.call().isCanceled()) ? choose(endpoint) : null;
+
+                    if (other == null) {
+                        throw e;
+                    }
+
+                    Log.w(TAG, serviceName + ": " + endpoint.address + " failed (" + e.getMessage() + "), trying " + other.address);
+                    return proceed(chain, request, other);
+                }
+            }
+        };
+    }
+
+    private Response proceed(Interceptor.Chain chain, Request request, Endpoint endpoint) throws IOException {
+        HttpUrl url = request.url().newBuilder().host(endpoint.host).port(endpoint.port).build();
+        long start = clock.uptimeMillis();
+
+        try {
+            Response response = chain.proceed(request.newBuilder().url(url).build());
+
+            onResponse(endpoint, clock.uptimeMillis() - start, response.code() < 500);
+            return response;
+        }
+        catch (IOException e) {
+            if (chain.call().isCanceled()) {
+                onCancelled(endpoint);
+            }
+            else {
+                onResponse(endpoint, clock.uptimeMillis() - start, false);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        long now = clock.uptimeMillis();
+        StringBuilder sb = new StringBuilder("EndpointBalancer{" + serviceName);
+
+        for (Endpoint endpoint : endpoints) {
+            sb.append(", ").append(endpoint.address)
+              .append("=[latency=").append(Math.round(getLatency(endpoint, now)))
+              .append(", requests=").append(endpoint.requestCount)
+              .append(endpoint.ejectedUntil > now ? ", ejected" : "")
+              .append(']');
+        }
+
+        return sb.append('}').toString();
+    }
+}
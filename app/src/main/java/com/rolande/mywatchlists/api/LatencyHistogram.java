@@ -0,0 +1,117 @@
+package com.rolande.mywatchlists.api;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram. Recording a value only increments a few counters, without
+ * allocating anything, so it can be done on every network call. Bucket upper bounds go from
+ * 1 ms to 10 s, roughly doubling at each step, plus an overflow bucket; percentiles are
+ * estimated by linear interpolation within the bucket they fall in, as its upper bound alone
+ * could overstate them by up to 2.5 times.
+ *
+ * @author Rolande
+ */
+public class LatencyHistogram {
+
+    // Upper bounds of the buckets, in milliseconds (inclusive), the last bucket catching anything above
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos Duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        long millis = nanos / 1_000_000;
+        int bucket = 0;
+
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        counts.incrementAndGet(bucket);
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Get the mean of the durations recorded.
+     *
+     * @return mean duration, in milliseconds, 0 if none recorded
+     */
+    public double getMean() {
+        long count = totalCount.get();
+
+        return (count == 0) ? 0 : totalNanos.get() / 1_000_000.0 / count;
+    }
+
+    /**
+     * Estimate a percentile of the durations recorded.
+     *
+     * @param percentile Percentile wanted, from 0 to 100 (ex: 95)
+     * @return percentile, in milliseconds, assuming durations spread evenly within their
+     *         bucket, 0 if none recorded, Long.MAX_VALUE if in the overflow bucket
+     */
+    public long getPercentile(double percentile) {
+        long count = totalCount.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max((long) Math.ceil(count * percentile / 100.0), 1);
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+            long bucketCount = counts.get(bucket);
+
+            if (seen + bucketCount >= rank) {
+                long lower = (bucket == 0) ? 0 : BOUNDS[bucket - 1];
+
+                return lower + Math.round((BOUNDS[bucket] - lower) * (double) (rank - seen) / bucketCount);
+            }
+
+            seen += bucketCount;
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Write the histogram as a json object:
+     *
+     *   { "count":12, "mean_ms":35.2, "p50_ms":20, "p95_ms":100, "buckets":{ "1":0, ..., "10000":0, "inf":0 } }
+     *
+     * @param out Writer to write to
+     * @throws IOException if writing fails
+     */
+    public void writeJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("count").value(getCount());
+        out.name("mean_ms").value(getMean());
+        out.name("p50_ms").value(getPercentile(50));
+        out.name("p95_ms").value(getPercentile(95));
+        out.name("p99_ms").value(getPercentile(99));
+
+        out.name("buckets").beginObject();
+        for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+            out.name(String.valueOf(BOUNDS[bucket])).value(counts.get(bucket));
+        }
+        out.name("inf").value(counts.get(BOUNDS.length));
+        out.endObject();
+
+        out.endObject();
+    }
+}
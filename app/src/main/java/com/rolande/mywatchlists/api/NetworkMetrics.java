@@ -0,0 +1,255 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import retrofit2.Invocation;
+
+/**
+ * Collects per-endpoint latency histograms of every phase of the network calls made by the
+ * app, through an OkHttp EventListener. Endpoints are named after the API method called
+ * (ex: "getQuote", "addWatchlist"), as tagged by Retrofit; calls made outside of Retrofit
+ * are grouped under "other".
+ *
+ * The histograms can be queried in code, or dumped as json (see toJson).
+ *
+ * @author Rolande
+ */
+public class NetworkMetrics {
+    final static String TAG = LOG_TAG_PREFIX + NetworkMetrics.class.getSimpleName();
+
+    /**
+     * Phases of a call, each with a histogram of its own.
+     */
+    public enum Phase {
+        DNS,                // host name lookup
+        CONNECT,            // TCP connect, TLS included
+        TLS,                // TLS handshake only
+        REQUEST,            // sending request headers & body
+        SERVER,             // waiting for the response, i.e. from request sent to first byte
+        BODY,               // reading the response body, decoding included as it is streamed
+        CALL                // whole call, from start to end
+    }
+
+    private static final Map<String, Map<Phase, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+    private static final EventListener.Factory factory = new EventListener.Factory() {
+        @NonNull
+        @Override
+        public EventListener create(@NonNull Call call) {
+            return new CallListener(getEndpoint(call));
+        }
+    };
+
+    private NetworkMetrics() {}
+
+    /**
+     * Get the event listener factory to set on Http Clients.
+     *
+     * @return event listener factory recording call phases
+     */
+    public static EventListener.Factory getEventListenerFactory() {
+        return factory;
+    }
+
+    /**
+     * Get the histogram of a phase of an endpoint's calls.
+     *
+     * @param endpoint Name of the endpoint (API method name)
+     * @param phase Phase of the calls
+     * @return histogram, null if no call made to that endpoint yet
+     */
+    public static LatencyHistogram getHistogram(String endpoint, Phase phase) {
+        Map<Phase, LatencyHistogram> phases = histograms.get(endpoint);
+
+        return (phases != null) ? phases.get(phase) : null;
+    }
+
+    /**
+     * Drop all histograms, e.g. between two load runs.
+     */
+    public static void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * Dump all histograms as json, by endpoint then phase:
+     *
+     *   { "getQuote":{ "dns":{...}, "connect":{...}, ... }, "getWatchlists":{...} }
+     *
+     * @return json string
+     */
+    public static String toJson() {
+        StringWriter stringWriter = new StringWriter();
+
+        try (JsonWriter out = new JsonWriter(stringWriter)) {
+            out.beginObject();
+
+            for (Map.Entry<String, Map<Phase, LatencyHistogram>> endpoint : new TreeMap<>(histograms).entrySet()) {
+                out.name(endpoint.getKey()).beginObject();
+
+                for (Map.Entry<Phase, LatencyHistogram> phase : endpoint.getValue().entrySet()) {
+                    out.name(phase.getKey().name().toLowerCase());
+                    phase.getValue().writeJson(out);
+                }
+
+                out.endObject();
+            }
+
+            out.endObject();
+        }
+        catch (IOException e) {
+            Log.e(TAG, "Cannot dump network metrics: " + e.getMessage());
+        }
+
+        return stringWriter.toString();
+    }
+
+    private static String getEndpoint(Call call) {
+        Invocation invocation = call.request().tag(Invocation.class);
+
+        return (invocation != null) ? invocation.method().getName() : "other";
+    }
+
+    /**
+     * Get an endpoint's histograms, creating them on its first call. All phases are created at
+     * once, so that recording never allocates afterwards.
+     */
+    private static Map<Phase, LatencyHistogram> getPhases(String endpoint) {
+        Map<Phase, LatencyHistogram> phases = histograms.get(endpoint);
+
+        if (phases == null) {
+            Map<Phase, LatencyHistogram> newPhases = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) {
+                newPhases.put(phase, new LatencyHistogram());
+            }
+
+            phases = histograms.putIfAbsent(endpoint, newPhases);
+            if (phases == null) {
+                phases = newPhases;
+            }
+        }
+
+        return phases;
+    }
+
+    /**
+     * Listener of a single call, timing its phases.
+     */
+    private static class CallListener extends EventListener {
+        private final Map<Phase, LatencyHistogram> phases;
+
+        private long callStart, dnsStart, connectStart, tlsStart, requestStart, requestEnd, responseHeadersEnd;
+
+        CallListener(String endpoint) {
+            this.phases = getPhases(endpoint);
+        }
+
+        private void record(Phase phase, long start) {
+            if (start != 0) {
+                phases.get(phase).record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+            record(Phase.DNS, dnsStart);
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            tlsStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+            record(Phase.TLS, tlsStart);
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy, Protocol protocol) {
+            record(Phase.CONNECT, connectStart);
+        }
+
+        @Override
+        public void requestHeadersStart(@NonNull Call call) {
+            requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(@NonNull Call call, long byteCount) {
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(@NonNull Call call) {
+            if (requestStart != 0) {
+                phases.get(Phase.REQUEST).record(requestEnd - requestStart);
+            }
+            record(Phase.SERVER, requestEnd);
+        }
+
+        @Override
+        public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+            responseHeadersEnd = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(@NonNull Call call, long byteCount) {
+            record(Phase.BODY, responseHeadersEnd);
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            record(Phase.CALL, callStart);
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            record(Phase.CALL, callStart);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.rolande.mywatchlists.api;
+
+
+/**
+ * Token bucket rate limiter. Tokens are added at a steady rate, up to the bucket's capacity,
+ * and each request takes one: the average rate never exceeds the bucket's rate, while short
+ * bursts of up to its capacity are allowed.
+ *
+ * Keeps counters of the tokens granted, and of the requests denied for lack of tokens.
+ *
+ * @author Rolande
+ */
+public class TokenBucket {
+    private double rate;                // tokens added per second
+    private double capacity;            // maximum number of tokens saved up
+    private double tokens;
+    private long refilledAt;            // uptime of the last refill, in milliseconds
+    private final Clock clock;
+
+    private long grantedCount;
+    private long deniedCount;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param rate Tokens added per second
+     * @param capacity Maximum number of tokens saved up (i.e. largest burst allowed)
+     */
+    public TokenBucket(double rate, double capacity) {
+        this(rate, capacity, Clock.SYSTEM);
+    }
+
+    /**
+     * Create a full bucket, refilled as time goes by on a given clock.
+     *
+     * @param rate Tokens added per second
+     * @param capacity Maximum number of tokens saved up (i.e. largest burst allowed)
+     * @param clock Clock to go by
+     */
+    public TokenBucket(double rate, double capacity, Clock clock) {
+        this.clock = clock;
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = clock.uptimeMillis();
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Change the bucket's rate & capacity. Tokens already saved up are kept, up to the new capacity.
+     *
+     * @param rate Tokens added per second
+     * @param capacity Maximum number of tokens saved up
+     */
+    public synchronized void setRate(double rate, double capacity) {
+        refill();
+
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Take a token, if one is available.
+     *
+     * @return true if a token was taken, false if the request must wait
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+
+        if (tokens < 1) {
+            deniedCount++;
+            return false;
+        }
+
+        tokens--;
+        grantedCount++;
+        return true;
+    }
+
+    /**
+     * Get the number of tokens currently available.
+     *
+     * @return tokens available, possibly a fraction
+     */
+    public synchronized double getAvailable() {
+        refill();
+
+        return tokens;
+    }
+
+    /**
+     * Get how long until a token is available.
+     *
+     * @return wait, in milliseconds, 0 if a token is available now
+     */
+    public synchronized long getWaitMillis() {
+        refill();
+
+        return (tokens >= 1) ? 0 : (long) Math.ceil((1 - tokens) * 1000 / rate);
+    }
+
+    private void refill() {
+        long now = clock.uptimeMillis();
+
+        tokens = Math.min(tokens + (now - refilledAt) * rate / 1000.0, capacity);
+        refilledAt = now;
+    }
+
+    public synchronized long getGrantedCount() {
+        return grantedCount;
+    }
+
+    public synchronized long getDeniedCount() {
+        return deniedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TokenBucket{" +
+                "rate=" + rate +
+                ", granted=" + grantedCount +
+                ", denied=" + deniedCount +
+                '}';
+    }
+}
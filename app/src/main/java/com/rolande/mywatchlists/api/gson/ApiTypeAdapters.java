@@ -0,0 +1,99 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.api.quote.QuoteDelta;
+import com.rolande.mywatchlists.api.quote.QuoteDeltasAPIResponse;
+import com.rolande.mywatchlists.api.quote.QuotesAPIResponse;
+import com.rolande.mywatchlists.api.watchlist.WatchlistDetailAPIResponse;
+import com.rolande.mywatchlists.api.watchlist.WatchlistsAPIResponse;
+import com.rolande.mywatchlists.model.beans.Quote;
+import com.rolande.mywatchlists.model.beans.Security;
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Registers the streaming type adapters of the beans and API responses exchanged with the
+ * services, so that Gson reads each field by name straight from the JSON stream instead of
+ * going through reflection. Also holds the small reading/writing helpers they share.
+ *
+ * @author Rolande
+ */
+public class ApiTypeAdapters {
+
+    private ApiTypeAdapters() {}
+
+    /**
+     * Register all adapters on a Gson builder.
+     *
+     * @param builder Gson builder to register the adapters on
+     * @return the same builder, for chaining
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        QuoteTypeAdapter quoteAdapter = new QuoteTypeAdapter();
+        QuoteDeltaTypeAdapter deltaAdapter = new QuoteDeltaTypeAdapter();
+        SecurityTypeAdapter securityAdapter = new SecurityTypeAdapter(quoteAdapter);
+        WatchlistTypeAdapter watchlistAdapter = new WatchlistTypeAdapter();
+
+        return builder
+                .registerTypeAdapter(Quote.class, quoteAdapter.nullSafe())
+                .registerTypeAdapter(Security.class, securityAdapter.nullSafe())
+                .registerTypeAdapter(Watchlist.class, watchlistAdapter.nullSafe())
+                .registerTypeAdapter(QuoteDelta.class, deltaAdapter.nullSafe())
+                .registerTypeAdapter(QuotesAPIResponse.class, new QuotesAPIResponseTypeAdapter(quoteAdapter).nullSafe())
+                .registerTypeAdapter(QuoteDeltasAPIResponse.class, new QuoteDeltasAPIResponseTypeAdapter(deltaAdapter).nullSafe())
+                .registerTypeAdapter(WatchlistsAPIResponse.class, new WatchlistsAPIResponseTypeAdapter(watchlistAdapter).nullSafe())
+                .registerTypeAdapter(WatchlistDetailAPIResponse.class, new WatchlistDetailAPIResponseTypeAdapter(securityAdapter).nullSafe());
+    }
+
+    /**
+     * Tell whether the next value is a JSON null, consuming it if so.
+     */
+    static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+
+        return false;
+    }
+
+    static String nextString(JsonReader in) throws IOException {
+        return skipNull(in) ? null : in.nextString();
+    }
+
+    /**
+     * Read a date in the services' format.
+     *
+     * @return milliseconds since the epoch, null if the value is a JSON null
+     */
+    static Long nextDate(JsonReader in) throws IOException {
+        if (skipNull(in)) {
+            return null;
+        }
+
+        String s = in.nextString();
+
+        try {
+            return TimestampFormat.parse(s);
+        }
+        catch (ParseException e) {
+            throw new JsonSyntaxException("Invalid date: " + s + " at " + in.getPath(), e);
+        }
+    }
+
+    static void writeDate(JsonWriter out, Date date) throws IOException {
+        if (date == null) {
+            out.nullValue();
+        }
+        else {
+            out.value(TimestampFormat.format(date));
+        }
+    }
+}
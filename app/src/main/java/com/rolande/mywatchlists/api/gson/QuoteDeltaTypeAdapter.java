@@ -0,0 +1,74 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.api.quote.QuoteDelta;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+
+/**
+ * Streaming type adapter of a QuoteDelta. Fields absent (or null) are left null, telling
+ * they did not change.
+ *
+ * @author Rolande
+ */
+public class QuoteDeltaTypeAdapter extends TypeAdapter<QuoteDelta> {
+
+    @Override
+    public QuoteDelta read(JsonReader in) throws IOException {
+        QuoteDelta delta = new QuoteDelta();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            switch (name) {
+                case "symbol":               delta.symbol = in.nextString(); break;
+                case "seq":                  delta.seq = in.nextLong(); break;
+                case "base_seq":             delta.baseSeq = in.nextLong(); break;
+                case "previous_close_price": delta.previousClosePrice = in.nextDouble(); break;
+                case "open_price":           delta.openPrice = in.nextDouble(); break;
+                case "last_trade_timestamp": delta.lastTradeTimestamp = new Timestamp(ApiTypeAdapters.nextDate(in)); break;
+                case "last_trade_price":     delta.lastTradePrice = in.nextDouble(); break;
+                case "last_trade_volume":    delta.lastTradeVolume = in.nextInt(); break;
+                case "bid_price":            delta.bidPrice = in.nextDouble(); break;
+                case "bid_volume":           delta.bidVolume = in.nextInt(); break;
+                case "ask_price":            delta.askPrice = in.nextDouble(); break;
+                case "ask_volume":           delta.askVolume = in.nextInt(); break;
+                case "environment":          delta.environment = in.nextString(); break;
+                default:                     in.skipValue(); break;
+            }
+        }
+
+        in.endObject();
+
+        return delta;
+    }
+
+    @Override
+    public void write(JsonWriter out, QuoteDelta delta) throws IOException {
+        out.beginObject();
+        out.name("symbol").value(delta.symbol);
+        out.name("seq").value(delta.seq);
+        out.name("base_seq").value(delta.baseSeq);
+        out.name("previous_close_price").value(delta.previousClosePrice);
+        out.name("open_price").value(delta.openPrice);
+        out.name("last_trade_timestamp");
+        ApiTypeAdapters.writeDate(out, delta.lastTradeTimestamp);
+        out.name("last_trade_price").value(delta.lastTradePrice);
+        out.name("last_trade_volume").value(delta.lastTradeVolume);
+        out.name("bid_price").value(delta.bidPrice);
+        out.name("bid_volume").value(delta.bidVolume);
+        out.name("ask_price").value(delta.askPrice);
+        out.name("ask_volume").value(delta.askVolume);
+        out.name("environment").value(delta.environment);
+        out.endObject();
+    }
+}
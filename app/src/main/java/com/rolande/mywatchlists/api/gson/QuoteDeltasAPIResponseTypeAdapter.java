@@ -0,0 +1,73 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.api.quote.QuoteDelta;
+import com.rolande.mywatchlists.api.quote.QuoteDeltasAPIResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Streaming type adapter of the batch quotes API response, when asked for with sequence numbers.
+ *
+ * @author Rolande
+ */
+public class QuoteDeltasAPIResponseTypeAdapter extends TypeAdapter<QuoteDeltasAPIResponse> {
+    private final QuoteDeltaTypeAdapter deltaAdapter;
+
+    public QuoteDeltasAPIResponseTypeAdapter(QuoteDeltaTypeAdapter deltaAdapter) {
+        this.deltaAdapter = deltaAdapter;
+    }
+
+    @Override
+    public QuoteDeltasAPIResponse read(JsonReader in) throws IOException {
+        QuoteDeltasAPIResponse response = new QuoteDeltasAPIResponse();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            if (name.equals("quotes")) {
+                response.list = new ArrayList<>();
+
+                in.beginArray();
+                while (in.hasNext()) {
+                    QuoteDelta delta = ApiTypeAdapters.skipNull(in) ? null : deltaAdapter.read(in);
+                    response.list.add(delta);
+                }
+                in.endArray();
+            }
+            else {
+                in.skipValue();
+            }
+        }
+
+        in.endObject();
+
+        return response;
+    }
+
+    @Override
+    public void write(JsonWriter out, QuoteDeltasAPIResponse response) throws IOException {
+        out.beginObject();
+        out.name("quotes");
+        if (response.list != null) {
+            out.beginArray();
+            for (QuoteDelta delta : response.list) {
+                deltaAdapter.nullSafe().write(out, delta);
+            }
+            out.endArray();
+        }
+        else {
+            out.nullValue();
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,69 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+
+/**
+ * Streaming type adapter of a Quote, the most often decoded object of the app.
+ *
+ * @author Rolande
+ */
+public class QuoteTypeAdapter extends TypeAdapter<Quote> {
+
+    @Override
+    public Quote read(JsonReader in) throws IOException {
+        Quote quote = new Quote();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;                               // leave field to its default value
+            }
+
+            switch (name) {
+                case "symbol":               quote.setSymbol(in.nextString()); break;
+                case "previous_close_price": quote.setPreviousClosePrice(in.nextDouble()); break;
+                case "open_price":           quote.setOpenPrice(in.nextDouble()); break;
+                case "last_trade_timestamp": quote.setLastTradeTimestamp(new Timestamp(ApiTypeAdapters.nextDate(in))); break;
+                case "last_trade_price":     quote.setLastTradePrice(in.nextDouble()); break;
+                case "last_trade_volume":    quote.setLastTradeVolume(in.nextInt()); break;
+                case "bid_price":            quote.setBidPrice(in.nextDouble()); break;
+                case "bid_volume":           quote.setBidVolume(in.nextInt()); break;
+                case "ask_price":            quote.setAskPrice(in.nextDouble()); break;
+                case "ask_volume":           quote.setAskVolume(in.nextInt()); break;
+                case "environment":          quote.setEnvironment(in.nextString()); break;
+                default:                     in.skipValue(); break;
+            }
+        }
+
+        in.endObject();
+
+        return quote;
+    }
+
+    @Override
+    public void write(JsonWriter out, Quote quote) throws IOException {
+        out.beginObject();
+        out.name("symbol").value(quote.getSymbol());
+        out.name("previous_close_price").value(quote.getPreviousClosePrice());
+        out.name("open_price").value(quote.getOpenPrice());
+        out.name("last_trade_timestamp");
+        ApiTypeAdapters.writeDate(out, quote.getLastTradeTimestamp());
+        out.name("last_trade_price").value(quote.getLastTradePrice());
+        out.name("last_trade_volume").value(quote.getLastTradeVolume());
+        out.name("bid_price").value(quote.getBidPrice());
+        out.name("bid_volume").value(quote.getBidVolume());
+        out.name("ask_price").value(quote.getAskPrice());
+        out.name("ask_volume").value(quote.getAskVolume());
+        out.name("environment").value(quote.getEnvironment());
+        out.endObject();
+    }
+}
@@ -0,0 +1,73 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.api.quote.QuotesAPIResponse;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Streaming type adapter of the batch quotes API response.
+ *
+ * @author Rolande
+ */
+public class QuotesAPIResponseTypeAdapter extends TypeAdapter<QuotesAPIResponse> {
+    private final QuoteTypeAdapter quoteAdapter;
+
+    public QuotesAPIResponseTypeAdapter(QuoteTypeAdapter quoteAdapter) {
+        this.quoteAdapter = quoteAdapter;
+    }
+
+    @Override
+    public QuotesAPIResponse read(JsonReader in) throws IOException {
+        QuotesAPIResponse response = new QuotesAPIResponse();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            if (name.equals("quotes")) {
+                response.list = new ArrayList<>();
+
+                in.beginArray();
+                while (in.hasNext()) {
+                    Quote quote = ApiTypeAdapters.skipNull(in) ? null : quoteAdapter.read(in);
+                    response.list.add(quote);
+                }
+                in.endArray();
+            }
+            else {
+                in.skipValue();
+            }
+        }
+
+        in.endObject();
+
+        return response;
+    }
+
+    @Override
+    public void write(JsonWriter out, QuotesAPIResponse response) throws IOException {
+        out.beginObject();
+        out.name("quotes");
+        if (response.list != null) {
+            out.beginArray();
+            for (Quote quote : response.list) {
+                quoteAdapter.nullSafe().write(out, quote);
+            }
+            out.endArray();
+        }
+        else {
+            out.nullValue();
+        }
+        out.endObject();
+    }
+}
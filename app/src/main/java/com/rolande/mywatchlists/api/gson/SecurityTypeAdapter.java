@@ -0,0 +1,66 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.io.IOException;
+
+/**
+ * Streaming type adapter of a Security, along with its quote.
+ *
+ * @author Rolande
+ */
+public class SecurityTypeAdapter extends TypeAdapter<Security> {
+    private final QuoteTypeAdapter quoteAdapter;
+
+    public SecurityTypeAdapter(QuoteTypeAdapter quoteAdapter) {
+        this.quoteAdapter = quoteAdapter;
+    }
+
+    @Override
+    public Security read(JsonReader in) throws IOException {
+        Security security = new Security();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            switch (name) {
+                case "_id":      security.setId(in.nextLong()); break;
+                case "symbol":   security.setSymbol(in.nextString()); break;
+                case "name":     security.setName(in.nextString()); break;
+                case "exchange": security.setExchange(in.nextString()); break;
+                case "quote":    security.setQuote(quoteAdapter.read(in)); break;
+                default:         in.skipValue(); break;
+            }
+        }
+
+        in.endObject();
+
+        return security;
+    }
+
+    @Override
+    public void write(JsonWriter out, Security security) throws IOException {
+        out.beginObject();
+        out.name("_id").value(security.getId());
+        out.name("symbol").value(security.getSymbol());
+        out.name("name").value(security.getName());
+        out.name("exchange").value(security.getExchange());
+        out.name("quote");
+        if (security.getQuote() != null) {
+            quoteAdapter.write(out, security.getQuote());
+        }
+        else {
+            out.nullValue();
+        }
+        out.endObject();
+    }
+}
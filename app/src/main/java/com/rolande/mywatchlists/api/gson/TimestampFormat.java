@@ -0,0 +1,141 @@
+package com.rolande.mywatchlists.api.gson;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Converts dates to/from the "yyyy-MM-dd'T'HH:mm:ssZ" format used by the services (ex:
+ * "2023-05-12T14:30:05-0400"). Parsing reads the digits in place, without the Calendar and
+ * SimpleDateFormat machinery, as quote timestamps are parsed continuously. Anything not
+ * strictly following the format falls back to SimpleDateFormat, which is also used for
+ * formatting, a rare operation.
+ *
+ * @author Rolande
+ */
+public class TimestampFormat {
+    public final static String PATTERN = "yyyy-MM-dd'T'HH:mm:ssZ";
+
+    // SimpleDateFormat is not thread-safe, so one per thread
+    private static final ThreadLocal<SimpleDateFormat> fallbackFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(PATTERN, Locale.US);
+        }
+    };
+
+    private TimestampFormat() {}
+
+    /**
+     * Parse a date string into milliseconds since the epoch.
+     *
+     * @param s Date string, ex: "2023-05-12T14:30:05-0400"
+     * @return milliseconds since the epoch
+     * @throws ParseException if the string is not a valid date
+     */
+    public static long parse(String s) throws ParseException {
+        // Fast path: "yyyy-MM-ddTHH:mm:ss" followed by "Z", "+hhmm" or "+hh:mm"
+        if (s.length() >= 20 && s.charAt(4) == '-' && s.charAt(7) == '-' && s.charAt(10) == 'T' &&
+                s.charAt(13) == ':' && s.charAt(16) == ':') {
+
+            int year   = digits(s, 0, 4);
+            int month  = digits(s, 5, 2);
+            int day    = digits(s, 8, 2);
+            int hour   = digits(s, 11, 2);
+            int minute = digits(s, 14, 2);
+            int second = digits(s, 17, 2);
+            int offset = offsetMinutes(s, 19);
+
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31 &&
+                    hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59 &&
+                    offset != Integer.MIN_VALUE) {
+
+                long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+
+                return (seconds - offset * 60L) * 1000L;
+            }
+        }
+
+        Date date = fallbackFormat.get().parse(s);
+        return date.getTime();
+    }
+
+    /**
+     * Format a date, using the device's time zone.
+     *
+     * @param date Date to format
+     * @return formatted date string
+     */
+    public static String format(Date date) {
+        return fallbackFormat.get().format(date);
+    }
+
+    /**
+     * Read a fixed number of decimal digits.
+     *
+     * @return value read, -1 if not all digits
+     */
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Read a time zone offset: "Z", "+hhmm" or "+hh:mm" (or with a '-' sign), ending the string.
+     *
+     * @return offset, in minutes, Integer.MIN_VALUE if not a valid offset
+     */
+    private static int offsetMinutes(String s, int start) {
+        int length = s.length() - start;
+        char sign = s.charAt(start);
+
+        if (sign == 'Z' && length == 1) {
+            return 0;
+        }
+
+        if ((sign != '+' && sign != '-') || (length != 5 && length != 6)) {
+            return Integer.MIN_VALUE;
+        }
+
+        int hours = digits(s, start + 1, 2);
+        int minutes;
+
+        if (length == 5) {
+            minutes = digits(s, start + 3, 2);
+        }
+        else {
+            minutes = (s.charAt(start + 3) == ':') ? digits(s, start + 4, 2) : -1;
+        }
+
+        if (hours < 0 || minutes < 0) {
+            return Integer.MIN_VALUE;
+        }
+
+        int offset = hours * 60 + minutes;
+        return (sign == '-') ? -offset : offset;
+    }
+
+    /**
+     * Get the number of days between the epoch and a date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = (month <= 2) ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,122 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.api.watchlist.WatchlistDetailAPIResponse;
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Streaming type adapter of the API response detailing a single watchlist, along with its
+ * securities (or changes to them).
+ *
+ * @author Rolande
+ */
+public class WatchlistDetailAPIResponseTypeAdapter extends TypeAdapter<WatchlistDetailAPIResponse> {
+    private final SecurityTypeAdapter securityAdapter;
+
+    public WatchlistDetailAPIResponseTypeAdapter(SecurityTypeAdapter securityAdapter) {
+        this.securityAdapter = securityAdapter;
+    }
+
+    @Override
+    public WatchlistDetailAPIResponse read(JsonReader in) throws IOException {
+        WatchlistDetailAPIResponse response = new WatchlistDetailAPIResponse();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            switch (name) {
+                case "_id":
+                    response.id = in.nextLong();
+                    break;
+                case "name":
+                    response.name = in.nextString();
+                    break;
+                case "date_created":
+                    response.dateCreated = new Date(ApiTypeAdapters.nextDate(in));
+                    break;
+                case "securities":
+                    response.securities = new ArrayList<>();
+
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Security security = ApiTypeAdapters.skipNull(in) ? null : securityAdapter.read(in);
+                        response.securities.add(security);
+                    }
+                    in.endArray();
+                    break;
+                case "total":
+                    response.total = in.nextInt();
+                    break;
+                case "revision":
+                    response.revision = in.nextLong();
+                    break;
+                case "delta":
+                    response.delta = in.nextBoolean();
+                    break;
+                case "removed_symbols":
+                    response.removedSymbols = new ArrayList<>();
+
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        response.removedSymbols.add(ApiTypeAdapters.nextString(in));
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();                     // including 'environment', unused
+                    break;
+            }
+        }
+
+        in.endObject();
+
+        return response;
+    }
+
+    @Override
+    public void write(JsonWriter out, WatchlistDetailAPIResponse response) throws IOException {
+        out.beginObject();
+        out.name("_id").value(response.id);
+        out.name("name").value(response.name);
+        out.name("date_created");
+        ApiTypeAdapters.writeDate(out, response.dateCreated);
+        out.name("securities");
+        if (response.securities != null) {
+            out.beginArray();
+            for (Security security : response.securities) {
+                securityAdapter.nullSafe().write(out, security);
+            }
+            out.endArray();
+        }
+        else {
+            out.nullValue();
+        }
+        out.name("total").value(response.total);
+        out.name("revision").value(response.revision);
+        out.name("delta").value(response.delta);
+        out.name("removed_symbols");
+        if (response.removedSymbols != null) {
+            out.beginArray();
+            for (String symbol : response.removedSymbols) {
+                out.value(symbol);
+            }
+            out.endArray();
+        }
+        else {
+            out.nullValue();
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,56 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Streaming type adapter of a Watchlist (summary, without its securities). Also used to send
+ * watchlists to the Watchlist Service when adding or updating one.
+ *
+ * @author Rolande
+ */
+public class WatchlistTypeAdapter extends TypeAdapter<Watchlist> {
+
+    @Override
+    public Watchlist read(JsonReader in) throws IOException {
+        Watchlist watchlist = new Watchlist();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            switch (name) {
+                case "_id":                  watchlist.setId(in.nextLong()); break;
+                case "name":                 watchlist.setName(in.nextString()); break;
+                case "date_created":         watchlist.setDateCreated(new Date(ApiTypeAdapters.nextDate(in))); break;
+                case "number_of_securities": watchlist.setNumberOfSecurities(in.nextInt()); break;
+                default:                     in.skipValue(); break;
+            }
+        }
+
+        in.endObject();
+
+        return watchlist;
+    }
+
+    @Override
+    public void write(JsonWriter out, Watchlist watchlist) throws IOException {
+        out.beginObject();
+        out.name("_id").value(watchlist.getId());
+        out.name("name").value(watchlist.getName());
+        out.name("date_created");
+        ApiTypeAdapters.writeDate(out, watchlist.getDateCreated());
+        out.name("number_of_securities").value(watchlist.getNumberOfSecurities());
+        out.endObject();
+    }
+}
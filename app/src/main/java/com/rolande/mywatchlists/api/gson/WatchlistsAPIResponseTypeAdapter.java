@@ -0,0 +1,73 @@
+package com.rolande.mywatchlists.api.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.rolande.mywatchlists.api.watchlist.WatchlistsAPIResponse;
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Streaming type adapter of the API response listing all watchlists.
+ *
+ * @author Rolande
+ */
+public class WatchlistsAPIResponseTypeAdapter extends TypeAdapter<WatchlistsAPIResponse> {
+    private final WatchlistTypeAdapter watchlistAdapter;
+
+    public WatchlistsAPIResponseTypeAdapter(WatchlistTypeAdapter watchlistAdapter) {
+        this.watchlistAdapter = watchlistAdapter;
+    }
+
+    @Override
+    public WatchlistsAPIResponse read(JsonReader in) throws IOException {
+        WatchlistsAPIResponse response = new WatchlistsAPIResponse();
+
+        in.beginObject();
+
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (ApiTypeAdapters.skipNull(in)) {
+                continue;
+            }
+
+            if (name.equals("watchlists")) {
+                response.list = new ArrayList<>();
+
+                in.beginArray();
+                while (in.hasNext()) {
+                    Watchlist watchlist = ApiTypeAdapters.skipNull(in) ? null : watchlistAdapter.read(in);
+                    response.list.add(watchlist);
+                }
+                in.endArray();
+            }
+            else {
+                in.skipValue();
+            }
+        }
+
+        in.endObject();
+
+        return response;
+    }
+
+    @Override
+    public void write(JsonWriter out, WatchlistsAPIResponse response) throws IOException {
+        out.beginObject();
+        out.name("watchlists");
+        if (response.list != null) {
+            out.beginArray();
+            for (Watchlist watchlist : response.list) {
+                watchlistAdapter.nullSafe().write(out, watchlist);
+            }
+            out.endArray();
+        }
+        else {
+            out.nullValue();
+        }
+        out.endObject();
+    }
+}
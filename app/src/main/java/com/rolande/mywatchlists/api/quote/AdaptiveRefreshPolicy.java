@@ -0,0 +1,112 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_ADAPTIVE_SMOOTHING;
+
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Refresh policy adapting each symbol's polling interval to how often its quote actually
+ * changes. The last trade, bid & ask prices of each response are compared to the previous
+ * ones, and the rate at which they change is tracked as a moving average: a symbol changing
+ * on every response gets refreshed at the floor interval, one never changing at the ceiling
+ * interval, and anything in between proportionally. That way, the request budget is spent
+ * on the symbols that move.
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+public class AdaptiveRefreshPolicy {
+
+    /**
+     * What is known of a symbol's recent quotes.
+     */
+    private static class SymbolState {
+        double changeRate;          // moving average of changes per response, from 0 (never) to 1 (always)
+        boolean hasQuote;
+        double lastTradePrice;
+        double bidPrice;
+        double askPrice;
+    }
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final double initialChangeRate;
+    private final Map<String, SymbolState> states = new HashMap<>();
+
+    /**
+     * Create a policy starting each symbol at the given interval, until its quotes tell otherwise.
+     *
+     * @param initialInterval Interval used for a symbol not seen yet, in milliseconds
+     * @param minInterval Floor interval, used for symbols changing on every response, in milliseconds
+     * @param maxInterval Ceiling interval, used for symbols never changing, in milliseconds
+     */
+    public AdaptiveRefreshPolicy(long initialInterval, long minInterval, long maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(maxInterval, minInterval);
+
+        long interval = Math.min(Math.max(initialInterval, this.minInterval), this.maxInterval);
+
+        this.initialChangeRate = (this.maxInterval == this.minInterval) ? 0 :
+                (double) (this.maxInterval - interval) / (this.maxInterval - this.minInterval);
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * Get the interval at which a symbol should currently be refreshed.
+     *
+     * @param symbol Symbol of the security
+     * @return refresh interval, in milliseconds
+     */
+    public long getInterval(String symbol) {
+        SymbolState state = states.get(symbol);
+
+        return toInterval((state != null) ? state.changeRate : initialChangeRate);
+    }
+
+    /**
+     * Account for a quote just received for a symbol.
+     *
+     * @param symbol Symbol of the security
+     * @param quote Quote received
+     * @return new refresh interval of the symbol, in milliseconds
+     */
+    public long onQuote(String symbol, Quote quote) {
+        SymbolState state = states.get(symbol);
+
+        if (state == null) {
+            state = new SymbolState();
+            state.changeRate = initialChangeRate;
+            states.put(symbol, state);
+        }
+
+        if (state.hasQuote) {
+            boolean changed = quote.getLastTradePrice() != state.lastTradePrice ||
+                              quote.getBidPrice() != state.bidPrice ||
+                              quote.getAskPrice() != state.askPrice;
+
+            state.changeRate += QUOTE_ADAPTIVE_SMOOTHING * ((changed ? 1 : 0) - state.changeRate);
+        }
+
+        state.hasQuote = true;
+        state.lastTradePrice = quote.getLastTradePrice();
+        state.bidPrice = quote.getBidPrice();
+        state.askPrice = quote.getAskPrice();
+
+        return toInterval(state.changeRate);
+    }
+
+    private long toInterval(double changeRate) {
+        return maxInterval - Math.round((maxInterval - minInterval) * changeRate);
+    }
+}
@@ -2,9 +2,12 @@ package com.rolande.mywatchlists.api.quote;
 
 import com.rolande.mywatchlists.model.beans.Quote;
 
+import java.util.List;
+
 import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 
 /**
  * Defines the Quote Service API Interface.
@@ -17,4 +20,16 @@ public interface QuoteAPI {
     @GET("quote/{symbol}")
     Call<Quote> getQuote(@Path("symbol") String symbol);
 
+    // Get quotes for multiple symbols in a single request (i.e. quotes?symbols=AAPL&symbols=MSFT)
+    @GET("quotes")
+    Call<QuotesAPIResponse> getQuotes(@Query("symbols") List<String> symbols);
+
+    // Get quote for symbol, as changes since the quote numbered 'since' when possible (null for a full quote)
+    @GET("quote/{symbol}")
+    Call<QuoteDelta> getQuoteSince(@Path("symbol") String symbol, @Query("since") Long since);
+
+    // Same, for multiple symbols (i.e. quotes?symbols=AAPL&symbols=MSFT&since=41&since=0, 0 for a full quote)
+    @GET("quotes")
+    Call<QuoteDeltasAPIResponse> getQuotesSince(@Query("symbols") List<String> symbols, @Query("since") List<Long> since);
+
 }
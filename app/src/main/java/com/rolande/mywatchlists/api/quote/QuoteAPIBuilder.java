@@ -1,33 +1,164 @@
 package com.rolande.mywatchlists.api.quote;
 
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_PING_INTERVAL;
 
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
 import com.rolande.mywatchlists.api.APIBuilder;
+import com.rolande.mywatchlists.api.APIRegistry;
+import com.rolande.mywatchlists.api.EndpointBalancer;
 import com.rolande.mywatchlists.model.Settings;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+import retrofit2.Retrofit;
+
 /**
- * Builder class for the Quote API (using Okhttp & Retrofit helper libraries).
+ * Builder class for the Quote API (using Okhttp & Retrofit helper libraries). When enabled in
+ * settings, quotes are asked for in the compact binary format, json being accepted as well
+ * for servers not supporting it.
  *
  * @author Rolande
  */
 public class QuoteAPIBuilder extends APIBuilder {
     final static String TAG = LOG_TAG_PREFIX + QuoteAPIBuilder.class.getSimpleName();
 
+    private static final APIRegistry<QuoteAPI> registry = new APIRegistry<>(QuoteAPI.class);
+    private static final EndpointBalancer balancer = new EndpointBalancer("quote");
+    private static OkHttpClient quoteHttpClient;       // Singleton, sharing the connection pool of the default one
+    private static OkHttpClient streamHttpClient;      // Same, for the quote stream's WebSocket
+
+    private static final String BINARY_ACCEPT = QuoteBinaryFormat.MEDIA_TYPE + ", application/json;q=0.5";
+
     /**
      * Initialize the builder with IP Address & Port specified in settings and set the service's path.
+     * Requests are spread over all the service's servers in settings, if more than one.
      */
     public QuoteAPIBuilder() {
-        super(Settings.read().getQuoteIpAddress(), Settings.read().getQuotePort(), "", TAG);
+        super(Settings.current().getQuoteIpAddress(), Settings.current().getQuotePort(), "", TAG);
+
+        balancer.setEndpoints(Settings.current().getQuoteEndpoints());
+    }
+
+    /**
+     * Get the Retrofit QuoteAPI Proxy instance for the service location currently in settings.
+     * The same instance is reused for as long as that location does not change.
+     *
+     * @return a proxy instance for the Quote API
+     */
+    public QuoteAPI build() {
+
+        return registry.get(this);
     }
 
     /**
-     * Build a new Retrofit QuoteAPI Proxy instance.
+     * Get a singleton Http Client negotiating the quotes' format, derived from the default one.
      *
-     * @return a new proxy instance for the Quote API
+     * @return the Quote service's Http Client
      */
-    public QuoteAPI build(){
+    @Override
+    protected OkHttpClient getOkHttpClient() {
+
+        if (quoteHttpClient == null) {
+            OkHttpClient.Builder builder = super.getOkHttpClient().newBuilder();
+
+            builder.interceptors().add(0, new Interceptor() {
+                @NonNull
+                @Override
+                public Response intercept(@NonNull Chain chain) throws IOException {
+                    Request request = chain.request();
+
+                    if (Settings.current().isQuoteBinary() && request.header("Accept") == null) {
+                        request = request.newBuilder().header("Accept", BINARY_ACCEPT).build();
+                    }
+
+                    return chain.proceed(request);
+                }
+            });
+
+            builder.interceptors().add(1, balancer.getInterceptor());     // before logger, to log the server used
+
+            quoteHttpClient = builder.build();
+        }
+
+        return quoteHttpClient;
+    }
+
+    /**
+     * Add the binary quote converter ahead of Gson, so that it gets to decode quotes sent in
+     * binary, leaving json ones to Gson.
+     */
+    @Override
+    protected void addConverterFactories(Retrofit.Builder builder, Gson myGson) {
+        builder.addConverterFactory(QuoteBinaryConverterFactory.create());
+        super.addConverterFactories(builder, myGson);
+    }
 
-        return getRetrofit().create(QuoteAPI.class);
+    /**
+     * Open a new WebSocket to the Quote service's streaming endpoint (on its main server).
+     *
+     * @param listener Listener of the WebSocket events
+     * @return the WebSocket being opened
+     */
+    public WebSocket openStream(WebSocketListener listener) {
+        Request request = new Request.Builder()
+                .url(getBaseUrl().replaceFirst("^http", "ws") + "quotes/stream")
+                .build();
+
+        return getStreamHttpClient().newWebSocket(request, listener);
+    }
+
+    /**
+     * Get a singleton Http Client for the quote stream, derived from the default one so as to
+     * share its connection pool and settings. Keep-alive pings are added so that a dead
+     * connection does not go unnoticed.
+     *
+     * None of the interceptors of the Quote API's requests apply to the stream, which is not
+     * balanced over servers, nor sent in binary: they are left out, along with the logger,
+     * which would otherwise log every quote pushed.
+     *
+     * @return the quote stream's Http Client
+     */
+    private OkHttpClient getStreamHttpClient() {
+
+        if (streamHttpClient == null) {
+            OkHttpClient.Builder builder = super.getOkHttpClient().newBuilder()
+                    .pingInterval(QUOTE_STREAM_PING_INTERVAL, TimeUnit.SECONDS);
+
+            builder.interceptors().clear();
+
+            streamHttpClient = builder.build();
+        }
+
+        return streamHttpClient;
+    }
+
+    /**
+     * Get the load balancer of the Quote service's servers.
+     *
+     * @return the balancer, along with its per-server latency & request counts
+     */
+    public static EndpointBalancer getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * Get the Gson instance used to decode quotes, for those not going through Retrofit.
+     *
+     * @return the shared Gson instance
+     */
+    public Gson getGson() {
+        return getMyGson();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_BATCH_MAX_SYMBOLS;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces single-symbol quote requests made within a short window into batch requests,
+ * so that refreshing N securities costs a single HTTP round trip instead of N. Each original
+ * listener still gets called back with the quote of its own symbol. Batch requests are sent
+ * within the client-wide request budget, symbols waiting in queue while it runs short.
+ *
+ * Note: Meant to be used from the main thread only, which is also where Retrofit
+ *       delivers its callbacks on Android.
+ *
+ * @author Rolande
+ */
+class QuoteBatcher {
+    final static String TAG = LOG_TAG_PREFIX + QuoteBatcher.class.getSimpleName();
+
+    private final QuoteClient client;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Symbols waiting for the current window to close, along with who asked for them
+    private final Map<String, List<QuoteClient.GetQuoteResponseListener>> pending = new LinkedHashMap<>();
+
+    private boolean flushScheduled;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    QuoteBatcher(QuoteClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Queue a quote request for a symbol. The request is sent along with all others
+     * received before the current window closes.
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    void add(String symbol, QuoteClient.GetQuoteResponseListener listener) {
+        List<QuoteClient.GetQuoteResponseListener> listeners = pending.get(symbol);
+
+        if (listeners == null) {
+            listeners = new ArrayList<>(1);
+            pending.put(symbol, listeners);
+        }
+        listeners.add(listener);
+
+        if (pending.size() >= QUOTE_BATCH_MAX_SYMBOLS) {
+            flush();                                      // batch is full, no need to wait
+        }
+        else if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, QuoteClient.getBatchWindow());
+        }
+    }
+
+    /**
+     * Drop a symbol's queued request, if not sent yet.
+     *
+     * @param symbol Symbol of the security
+     */
+    void remove(String symbol) {
+        pending.remove(symbol);
+    }
+
+    /**
+     * Send batch requests for the symbols queued so far, up to QUOTE_BATCH_MAX_SYMBOLS each,
+     * and dispatch the results to their respective listeners. Called once the window closes,
+     * or once a batch is full. Each batch request takes a token from the quote rate limiter:
+     * symbols left without one stay queued until the next token is due.
+     */
+    void flush() {
+        flushScheduled = false;
+        handler.removeCallbacks(flushRunnable);
+
+        while (!pending.isEmpty()) {
+            TokenBucket rateLimiter = QuoteClient.getRateLimiter();
+
+            if (rateLimiter.getAvailable() < 1) {
+                flushScheduled = true;
+                handler.postDelayed(flushRunnable, rateLimiter.getWaitMillis());
+                return;                                   // over budget, rest waits for the next token
+            }
+
+            final Map<String, List<QuoteClient.GetQuoteResponseListener>> batch = new HashMap<>();
+            List<String> symbols = new ArrayList<>();
+
+            Iterator<Map.Entry<String, List<QuoteClient.GetQuoteResponseListener>>> it = pending.entrySet().iterator();
+            while (it.hasNext() && symbols.size() < QUOTE_BATCH_MAX_SYMBOLS) {
+                Map.Entry<String, List<QuoteClient.GetQuoteResponseListener>> entry = it.next();
+                batch.put(entry.getKey(), entry.getValue());
+                symbols.add(entry.getKey());
+                it.remove();
+            }
+
+            // The breaker's permit is taken now rather than when queued, as queued requests may be dropped
+            if (!QuoteClient.getCircuitBreaker().tryAcquire()) {
+                fail(batch, client.getServiceErrorMessage());
+                continue;
+            }
+
+            rateLimiter.tryAcquire();
+            send(symbols, batch);
+        }
+    }
+
+    private void send(List<String> symbols, Map<String, List<QuoteClient.GetQuoteResponseListener>> batch) {
+        client.getQuotes(symbols, new QuoteClient.GetQuotesResponseListener() {
+            @Override
+            public void onResponse(List<Quote> quotes) {
+                for (Quote quote : quotes) {
+                    List<QuoteClient.GetQuoteResponseListener> listeners = batch.remove(quote.getSymbol());
+
+                    if (listeners != null) {
+                        for (QuoteClient.GetQuoteResponseListener listener : listeners) {
+                            listener.onResponse(quote);
+                        }
+                    }
+                }
+
+                // Whatever is left did not get a quote back from the server...
+                for (Map.Entry<String, List<QuoteClient.GetQuoteResponseListener>> entry : batch.entrySet()) {
+                    Log.w(TAG, "No quote returned for (" + entry.getKey() + ")");
+
+                    String errorMsg = "** No quote available for " + entry.getKey();
+                    for (QuoteClient.GetQuoteResponseListener listener : entry.getValue()) {
+                        listener.onFailure(errorMsg);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                fail(batch, errorMsg);
+            }
+        });
+    }
+
+    private static void fail(Map<String, List<QuoteClient.GetQuoteResponseListener>> batch, String errorMsg) {
+        for (List<QuoteClient.GetQuoteResponseListener> listeners : batch.values()) {
+            for (QuoteClient.GetQuoteResponseListener listener : listeners) {
+                listener.onFailure(errorMsg);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.rolande.mywatchlists.api.quote;
+
+import androidx.annotation.NonNull;
+
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Retrofit converter factory decoding quote responses sent in the compact binary format (see
+ * QuoteBinaryFormat). The format actually used is told by the response's content type: json
+ * responses, including those of servers not supporting the binary format, are passed on to
+ * the next converter (i.e. Gson).
+ *
+ * @author Rolande
+ */
+public class QuoteBinaryConverterFactory extends Converter.Factory {
+
+    public static QuoteBinaryConverterFactory create() {
+        return new QuoteBinaryConverterFactory();
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(@NonNull Type type, @NonNull Annotation[] annotations, @NonNull Retrofit retrofit) {
+
+        if (type != Quote.class && type != QuotesAPIResponse.class) {
+            return null;                                // not a quote, let the next converter deal with it
+        }
+
+        final Converter<ResponseBody, ?> nextConverter = retrofit.nextResponseBodyConverter(this, type, annotations);
+        final boolean batch = (type == QuotesAPIResponse.class);
+
+        return new Converter<ResponseBody, Object>() {
+            @Override
+            public Object convert(@NonNull ResponseBody body) throws IOException {
+
+                if (!isBinary(body.contentType())) {
+                    return nextConverter.convert(body);
+                }
+
+                try (DataInputStream in = new DataInputStream(body.byteStream())) {
+                    if (batch) {
+                        QuotesAPIResponse response = new QuotesAPIResponse();
+                        response.list = new ArrayList<>(QuoteBinaryFormat.readQuotes(in));
+                        return response;
+                    }
+
+                    return QuoteBinaryFormat.readQuote(in);
+                }
+            }
+        };
+    }
+
+    private static boolean isBinary(MediaType contentType) {
+        return contentType != null &&
+               QuoteBinaryFormat.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype());
+    }
+}
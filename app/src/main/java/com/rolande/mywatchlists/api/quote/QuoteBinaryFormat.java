@@ -0,0 +1,151 @@
+package com.rolande.mywatchlists.api.quote;
+
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of quotes, offered by the Quote Service as an alternative to json
+ * (media type "application/x-quote-binary"). Field names are implied by their position, and
+ * numbers are sent as is rather than as text:
+ *
+ *   message   = magic ('Q') + version (1) + kind (1 = single quote, 2 = batch) + body
+ *   batch     = count (int) + count * quote
+ *   quote     = symbol (string) + previous close, open (doubles) + last trade timestamp (long,
+ *               epoch millis, Long.MIN_VALUE if none) + last trade price (double) + last trade
+ *               volume (int) + bid price (double) + bid volume (int) + ask price (double) +
+ *               ask volume (int) + environment (string)
+ *   string    = present (boolean) + modified UTF-8 (see DataOutput.writeUTF), if present
+ *
+ * All values are big-endian, as written by DataOutput. The encoder is what the service
+ * implements; it is kept here as a reference, and to stand in for the service when testing.
+ *
+ * @author Rolande
+ */
+public class QuoteBinaryFormat {
+    public final static String MEDIA_TYPE = "application/x-quote-binary";
+
+    private final static int MAGIC = 'Q';
+    private final static int VERSION = 1;
+    private final static int KIND_SINGLE = 1;
+    private final static int KIND_BATCH = 2;
+
+    private QuoteBinaryFormat() {}
+
+    /**
+     * Read a message holding a single quote.
+     *
+     * @param in Input to read from
+     * @return quote read
+     * @throws IOException if the message is not a valid single-quote message
+     */
+    public static Quote readQuote(DataInput in) throws IOException {
+        readHeader(in, KIND_SINGLE);
+
+        return read(in);
+    }
+
+    /**
+     * Read a message holding a batch of quotes.
+     *
+     * @param in Input to read from
+     * @return quotes read
+     * @throws IOException if the message is not a valid batch message
+     */
+    public static List<Quote> readQuotes(DataInput in) throws IOException {
+        readHeader(in, KIND_BATCH);
+
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid quote count: " + count);
+        }
+
+        List<Quote> quotes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            quotes.add(read(in));
+        }
+
+        return quotes;
+    }
+
+    public static void writeQuote(DataOutput out, Quote quote) throws IOException {
+        writeHeader(out, KIND_SINGLE);
+        write(out, quote);
+    }
+
+    public static void writeQuotes(DataOutput out, List<Quote> quotes) throws IOException {
+        writeHeader(out, KIND_BATCH);
+
+        out.writeInt(quotes.size());
+        for (Quote quote : quotes) {
+            write(out, quote);
+        }
+    }
+
+    private static void readHeader(DataInput in, int expectedKind) throws IOException {
+        int magic = in.readUnsignedByte();
+        int version = in.readUnsignedByte();
+        int kind = in.readUnsignedByte();
+
+        if (magic != MAGIC || version != VERSION || kind != expectedKind) {
+            throw new IOException("Unexpected quote message header: " + magic + "/" + version + "/" + kind);
+        }
+    }
+
+    private static void writeHeader(DataOutput out, int kind) throws IOException {
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+    }
+
+    private static Quote read(DataInput in) throws IOException {
+        Quote quote = new Quote();
+
+        quote.setSymbol(readString(in));
+        quote.setPreviousClosePrice(in.readDouble());
+        quote.setOpenPrice(in.readDouble());
+
+        long timestamp = in.readLong();
+        quote.setLastTradeTimestamp(timestamp != Long.MIN_VALUE ? new Timestamp(timestamp) : null);
+
+        quote.setLastTradePrice(in.readDouble());
+        quote.setLastTradeVolume(in.readInt());
+        quote.setBidPrice(in.readDouble());
+        quote.setBidVolume(in.readInt());
+        quote.setAskPrice(in.readDouble());
+        quote.setAskVolume(in.readInt());
+        quote.setEnvironment(readString(in));
+
+        return quote;
+    }
+
+    private static void write(DataOutput out, Quote quote) throws IOException {
+        writeString(out, quote.getSymbol());
+        out.writeDouble(quote.getPreviousClosePrice());
+        out.writeDouble(quote.getOpenPrice());
+        out.writeLong(quote.getLastTradeTimestamp() != null ? quote.getLastTradeTimestamp().getTime() : Long.MIN_VALUE);
+        out.writeDouble(quote.getLastTradePrice());
+        out.writeInt(quote.getLastTradeVolume());
+        out.writeDouble(quote.getBidPrice());
+        out.writeInt(quote.getBidVolume());
+        out.writeDouble(quote.getAskPrice());
+        out.writeInt(quote.getAskVolume());
+        writeString(out, quote.getEnvironment());
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+}
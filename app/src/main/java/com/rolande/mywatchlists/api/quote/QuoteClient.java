@@ -1,29 +1,398 @@
 package com.rolande.mywatchlists.api.quote;
 
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_BATCH_WINDOW;
+import static com.rolande.mywatchlists.Constants.QUOTE_CALL_DEADLINE;
 
 import com.rolande.mywatchlists.R;
 import com.rolande.mywatchlists.api.APIClient;
+import com.rolande.mywatchlists.api.APIException;
+import com.rolande.mywatchlists.api.CallRegistry;
+import com.rolande.mywatchlists.api.CircuitBreaker;
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.Settings;
 import com.rolande.mywatchlists.model.beans.Quote;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import okhttp3.HttpUrl;
 import retrofit2.Call;
 import retrofit2.Callback;
+import retrofit2.Invocation;
 import retrofit2.Response;
 
 /**
  * Client class responsible for all network interactions with the Quote Service.
+ * Calls are registered under the scope of each symbol they fetch, so that a quote request
+ * can be cancelled once no one is waiting for it anymore (see cancelQuote).
+ *
+ * Every quote call has a deadline. When hedging is enabled in settings, a call slower than
+ * most gets a duplicate sent, and whichever answers first with a quote is used (see
+ * QuoteHedgePolicy).
+ *
+ * Quotes can also be obtained as a CompletableFuture, for requests to be chained or waited
+ * for together (see APIFutures). Those are built on top of the listener-based requests, as
+ * requests for the same symbol are shared by listener.
  *
  * @author Rolande
  */
 public class QuoteClient extends APIClient {
     final static String TAG = LOG_TAG_PREFIX + QuoteClient.class.getSimpleName();
 
+    private static long batchWindow = QUOTE_BATCH_WINDOW;
+    private static QuoteBatcher batcher;       // Shared by all clients, so requests from all rows get merged
+
+    // Last quote of each symbol, so that responses only need to carry what changed since
+    private static final QuoteSnapshotStore snapshots = new QuoteSnapshotStore();
+
+    // Refresh hints given by the service along with its responses, by symbol
+    private static QuoteRefreshHints refreshHints = new QuoteRefreshHints();
+
+    // Quote requests currently in flight, by symbol, along with everyone waiting for their result
+    private static final Map<String, List<GetQuoteResponseListener>> inFlight = new HashMap<>();
+    private static long savedRequestCount;
+
+    private static final QuoteHedgePolicy hedgePolicy = new QuoteHedgePolicy();
+    private static TokenBucket rateLimiter;     // client-wide budget of quote requests, all screens included
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
     public QuoteClient(Context context) {
         super(context, TAG);
     }
 
+    /**
+     * Get the window during which single-symbol quote requests are merged into one batch request.
+     *
+     * @return batching window, in milliseconds
+     */
+    public static long getBatchWindow() {
+        return batchWindow;
+    }
+
+    /**
+     * Set the window during which single-symbol quote requests are merged into one batch request.
+     *
+     * @param millis batching window, in milliseconds. A value of 0 disables batching.
+     */
+    public static void setBatchWindow(long millis) {
+        batchWindow = millis;
+    }
+
+    /**
+     * Get the client-wide limiter of quote requests, its rate following the request budget set
+     * in settings. Each HTTP request sent takes a token, a batch request taking a single one
+     * whatever its number of symbols. Up to one second's worth of requests can be saved up.
+     *
+     * @return the quote requests' rate limiter
+     */
+    public static synchronized TokenBucket getRateLimiter() {
+        int budget = Math.max(Settings.current().getQuoteRequestBudget(), 1);
+
+        if (rateLimiter == null) {
+            rateLimiter = new TokenBucket(budget, budget);
+        }
+        else if (rateLimiter.getRate() != budget) {
+            rateLimiter.setRate(budget, budget);
+        }
+
+        return rateLimiter;
+    }
+
+    /**
+     * Replace the client-wide rate limiter, e.g. by one whose time is set by tests. Its rate
+     * still follows the request budget set in settings.
+     *
+     * @param limiter Rate limiter to use from now on
+     */
+    static synchronized void setRateLimiter(TokenBucket limiter) {
+        rateLimiter = limiter;
+    }
+
+    /**
+     * Get the circuit breaker of the Quote Service endpoint currently set in settings.
+     *
+     * @return the Quote Service's circuit breaker
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        Settings settings = Settings.current();
+
+        return CircuitBreaker.forEndpoint(settings.getQuoteIpAddress() + ":" + settings.getQuotePort());
+    }
+
+    /**
+     * Report the outcome of a request to the circuit breaker. Only failures of the service itself
+     * count, i.e. an unreachable service or server errors, not requests it rightfully refused.
+     *
+     * @param breaker Circuit breaker of the endpoint called
+     * @param httpCode HTTP response status code, 0 if no response was received
+     * @param errorMsg Error message suitable for UI display, if the request failed
+     */
+    private static void reportOutcome(CircuitBreaker breaker, int httpCode, String errorMsg) {
+        if (httpCode == 0 || httpCode >= 500 || httpCode == 429) {
+            breaker.onFailure(errorMsg);
+        }
+        else {
+            breaker.onSuccess();
+        }
+    }
+
+    /**
+     * Get the lifecycle scope of the calls fetching a symbol's quote (see CallRegistry).
+     *
+     * @param symbol Symbol of the security
+     * @return scope of the symbol's calls
+     */
+    private static String getCallScope(String symbol) {
+        return "quote:" + symbol;
+    }
+
+    private static List<String> getCallScopes(List<String> symbols) {
+        List<String> scopes = new ArrayList<>(symbols.size());
+
+        for (String symbol : symbols) {
+            scopes.add(getCallScope(symbol));
+        }
+
+        return scopes;
+    }
+
+    /**
+     * Forget the quote snapshot of a symbol no longer refreshed (see QuoteSnapshotStore), so
+     * that snapshots do not pile up for symbols scrolled past long ago.
+     *
+     * Note: Must be called from the main thread.
+     *
+     * @param symbol Symbol of the security
+     */
+    static void dropSnapshot(String symbol) {
+        snapshots.remove(symbol);
+    }
+
+    /**
+     * Get the refresh hints given by the Quote Service, for the polling scheduler.
+     *
+     * @return the quote refresh hints
+     */
+    static QuoteRefreshHints getRefreshHints() {
+        return refreshHints;
+    }
+
+    /**
+     * Replace the refresh hints, e.g. by ones whose time is set by tests.
+     *
+     * @param hints Refresh hints to keep from now on
+     */
+    static void setRefreshHints(QuoteRefreshHints hints) {
+        refreshHints = hints;
+    }
+
+    /**
+     * Get the number of hedge requests sent so far, i.e. the extra load due to hedging.
+     *
+     * @return number of hedge requests sent
+     */
+    public static long getHedgeCount() {
+        return hedgePolicy.getHedgeCount();
+    }
+
+    /**
+     * Get the number of hedge requests that answered (successfully) before the original request.
+     *
+     * @return number of hedge requests that won
+     */
+    public static long getHedgeWinCount() {
+        return hedgePolicy.getHedgeWinCount();
+    }
+
+    /**
+     * Send a quote call with its deadline, hedged if enabled in settings (and the service
+     * is healthy, so that a struggling one does not get twice the load).
+     *
+     * @param call Call to send
+     * @param scopes Scopes the call belongs to (see getCallScope)
+     * @param callback Callback to call with the first outcome
+     * @param <T> Type of the response's body
+     */
+    private <T> void enqueueQuoteCall(Call<T> call, Collection<?> scopes, Callback<T> callback) {
+        withDeadline(call, QUOTE_CALL_DEADLINE);
+
+        String endpoint = null;
+        long hedgeDelay = -1;
+
+        if (Settings.current().isQuoteHedging() && getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED) {
+            Invocation invocation = call.request().tag(Invocation.class);
+
+            hedgePolicy.onRequest();
+            if (invocation != null) {
+                endpoint = invocation.method().getName();
+                hedgeDelay = hedgePolicy.getHedgeDelay(endpoint);
+            }
+        }
+
+        if (endpoint == null) {
+            enqueue(call, scopes, callback);
+            return;
+        }
+
+        // Timed even when not hedged, for the hedge delay to be learnt
+        HedgedCallback<T> hedgedCallback = new HedgedCallback<>(call, scopes, endpoint, hedgeDelay, callback);
+        enqueue(call, scopes, hedgedCallback);
+
+        if (hedgeDelay >= 0) {
+            postHedge(hedgedCallback, hedgeDelay);
+        }
+    }
+
+    /**
+     * Schedule the hedge of a call on the main thread, once its delay expires. Overridden by
+     * tests, which have no main looper.
+     *
+     * @param hedge Task sending the hedge request
+     * @param delay Hedge delay, in milliseconds
+     */
+    void postHedge(Runnable hedge, long delay) {
+        handler.postDelayed(hedge, delay);
+    }
+
+    /**
+     * Callback of a call that gets hedged once its delay expires. The first successful
+     * response is passed on and the other call cancelled; an error (HTTP error response or
+     * failure) is only passed on once both calls have failed, the HTTP error first if any.
+     *
+     * The time the original call takes to answer is given to the hedge policy, to learn when
+     * to hedge. Should the hedge win, the time the original call had taken by then is given
+     * instead, as it would have taken at least that long.
+     */
+    private class HedgedCallback<T> implements Callback<T>, Runnable {
+        private final Call<T> call;
+        private final Collection<?> scopes;
+        private final String endpoint;
+        private final long hedgeDelay;
+        private final Callback<T> callback;
+        private final long startNanos = System.nanoTime();
+        private Call<T> hedge;
+        private Call<T> errorCall;
+        private Response<T> errorResponse;          // first HTTP error response, if any
+        private int pendingCount = 1;
+        private boolean done;
+        private boolean timed;
+
+        HedgedCallback(Call<T> call, Collection<?> scopes, String endpoint, long hedgeDelay, Callback<T> callback) {
+            this.call = call;
+            this.scopes = scopes;
+            this.endpoint = endpoint;
+            this.hedgeDelay = hedgeDelay;
+            this.callback = callback;
+        }
+
+        /**
+         * Hedge delay expired: send a duplicate of the call, budget permitting. Being a request
+         * of its own, it takes a token from the rate limiter as well as from the hedge budget.
+         */
+        @Override
+        public void run() {
+            TokenBucket rateLimiter = getRateLimiter();
+
+            if (done || call.isCanceled() || rateLimiter.getAvailable() < 1 || !hedgePolicy.tryAcquire()) {
+                return;
+            }
+            rateLimiter.tryAcquire();
+
+            Log.i(TAG, "Hedging " + call.request().url().encodedPath() + " after " + hedgeDelay + " ms");
+
+            hedge = withDeadline(call.clone(), Math.max(QUOTE_CALL_DEADLINE - hedgeDelay, 1));
+            pendingCount++;
+            enqueue(hedge, scopes, this);
+        }
+
+        @Override
+        public void onResponse(Call<T> answered, Response<T> response) {
+            if (done) {
+                return;
+            }
+
+            if (!response.isSuccessful()) {
+                if (errorResponse == null) {
+                    errorCall = answered;
+                    errorResponse = response;
+                }
+                onError(answered, null);
+                return;
+            }
+
+            finish();
+            recordCallTime();               // original's own time, or a lower bound if the hedge won
+
+            if (answered == hedge) {
+                hedgePolicy.onHedgeWon();
+                call.cancel();
+            }
+            else if (hedge != null) {
+                hedge.cancel();
+            }
+
+            callback.onResponse(answered, response);
+        }
+
+        @Override
+        public void onFailure(Call<T> failed, Throwable t) {
+            if (!done) {
+                onError(failed, t);
+            }
+        }
+
+        private void onError(Call<T> failed, Throwable t) {
+            if (--pendingCount > 0) {
+                return;                                 // the other call may still answer
+            }
+            finish();
+
+            if (errorResponse != null) {
+                callback.onResponse(errorCall, errorResponse);
+            }
+            else {
+                callback.onFailure(failed, t);
+            }
+        }
+
+        private void recordCallTime() {
+            if (!timed) {
+                timed = true;
+                hedgePolicy.onCallTime(endpoint, System.nanoTime() - startNanos);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            handler.removeCallbacks(this);
+        }
+    }
+
+    /**
+     * A cancelled call may have been the circuit breaker's probe, so let another one through.
+     *
+     * @param call Call cancelled
+     */
+    @Override
+    protected void onCancelled(Call<?> call) {
+        super.onCancelled(call);
+
+        HttpUrl url = call.request().url();
+        CircuitBreaker.forEndpoint(url.host() + ":" + url.port()).onCancelled();
+    }
+
     /**
      * Callback interface to pass on results of the getQuote request
      */
@@ -33,27 +402,263 @@ public class QuoteClient extends APIClient {
     }
 
     /**
-     * Obtains the latest quote for a given symbol from the Quote server.
+     * Get the number of quote requests saved so far by joining a request already in flight
+     * for the same symbol.
+     *
+     * @return number of quote requests saved
+     */
+    public static long getSavedRequestCount() {
+        return savedRequestCount;
+    }
+
+    /**
+     * Obtains the latest quote for a given symbol from the Quote server. If a request is already
+     * in flight for that symbol, no new one is sent: the listener gets the result of the pending
+     * one instead. Requests made for different symbols within the batching window are sent
+     * together as a single batch request. Requests are sent within the request budget (see
+     * getRateLimiter), waiting for a token when it runs short. While the Quote Service's
+     * circuit breaker is open, requests fail right away, without reaching the network.
+     *
+     * Note: Must be called from the main thread.
      *
      * @param symbol Symbol of the security for which a quote is wanted
      * @param listener Object implementing the response's callback interface
      */
     public void getQuote(String symbol, GetQuoteResponseListener listener) {
+        List<GetQuoteResponseListener> waiting = inFlight.get(symbol);
+
+        if (waiting != null) {
+            waiting.add(listener);                      // join the request already in flight
+            savedRequestCount++;
+            return;
+        }
+
+        // Fail fast while the service is down; the breaker's permit (i.e. probe) is only taken
+        // once the request is actually sent, so that a request dropped before then holds none
+        if (!getCircuitBreaker().isRequestAllowed()) {
+            listener.onFailure(getServiceErrorMessage());
+            return;
+        }
+
+        final List<GetQuoteResponseListener> listeners = new ArrayList<>(1);
+        listeners.add(listener);
+        inFlight.put(symbol, listeners);
+
+        // Results of a request cancelled meanwhile (but still sent, as part of a batch) are ignored
+        GetQuoteResponseListener dispatcher = new GetQuoteResponseListener() {
+            @Override
+            public void onResponse(Quote latestQuote) {
+                if (inFlight.get(symbol) == listeners) {
+                    inFlight.remove(symbol);
+
+                    for (GetQuoteResponseListener waitingListener : listeners) {
+                        waitingListener.onResponse(latestQuote);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                if (inFlight.get(symbol) == listeners) {
+                    inFlight.remove(symbol);
+
+                    for (GetQuoteResponseListener waitingListener : listeners) {
+                        waitingListener.onFailure(errorMsg);
+                    }
+                }
+            }
+        };
+
+        if (batchWindow > 0) {
+            getBatcher().add(symbol, dispatcher);
+        }
+        else {
+            sendSingleQuote(symbol, listeners, dispatcher);
+        }
+    }
+
+    /**
+     * Send a request of its own for a symbol, once the rate limiter has a token for it: until
+     * then, the request waits (unless dropped meanwhile, i.e. cancelled).
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @param listeners Listeners waiting for the request, as kept in flight
+     * @param dispatcher Listener passing the outcome on to them
+     */
+    private void sendSingleQuote(String symbol, List<GetQuoteResponseListener> listeners, GetQuoteResponseListener dispatcher) {
+        if (inFlight.get(symbol) != listeners) {
+            return;                                     // cancelled while waiting for a token
+        }
+
+        TokenBucket rateLimiter = getRateLimiter();
+
+        if (rateLimiter.getAvailable() < 1) {
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    sendSingleQuote(symbol, listeners, dispatcher);
+                }
+            }, rateLimiter.getWaitMillis());
+            return;
+        }
+
+        if (getCircuitBreaker().tryAcquire()) {
+            rateLimiter.tryAcquire();
+            getSingleQuote(symbol, dispatcher);
+        }
+        else {
+            dispatcher.onFailure(getServiceErrorMessage());
+        }
+    }
 
+    /**
+     * Take a token and a circuit breaker permit for a request sent on behalf of one just
+     * answered (e.g. to get full quotes again once changes were missed), as for any request
+     * going out. Unlike a first request, it does not wait for a token: the symbols get fetched
+     * again on their next refresh.
+     *
+     * @return true if the request may be sent
+     */
+    private boolean tryAcquireFollowUp() {
+        TokenBucket rateLimiter = getRateLimiter();
+
+        if (rateLimiter.getAvailable() < 1 || !getCircuitBreaker().tryAcquire()) {
+            Log.w(TAG, "No budget left to get full quotes again");
+            return false;
+        }
+
+        return rateLimiter.tryAcquire();
+    }
+
+    /**
+     * Cancel a quote request made with getQuote: the listener will not be called. Once no one
+     * is waiting for the symbol's quote anymore, the request is dropped if not sent yet, and
+     * its call cancelled otherwise (unless part of a batch still needed for other symbols).
+     *
+     * Note: Must be called from the main thread.
+     *
+     * @param symbol Symbol of the security for which a quote was requested
+     * @param listener Listener given to getQuote
+     */
+    public void cancelQuote(String symbol, GetQuoteResponseListener listener) {
+        List<GetQuoteResponseListener> waiting = inFlight.get(symbol);
+
+        if (waiting == null || !waiting.remove(listener) || !waiting.isEmpty()) {
+            return;
+        }
+
+        inFlight.remove(symbol);
+
+        if (batcher != null) {
+            batcher.remove(symbol);
+        }
+        CallRegistry.cancel(getCallScope(symbol));
+    }
+
+    /**
+     * Obtains the latest quote for a given symbol (see getQuote above). Cancelling the future
+     * cancels the request, as cancelQuote does.
+     *
+     * Note: Must be called from the main thread.
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @return future of the quote, failing with an APIException if it cannot be obtained
+     */
+    public CompletableFuture<Quote> getQuote(String symbol) {
+        CompletableFuture<Quote> future = new CompletableFuture<>();
+
+        // Requests for a symbol are shared by listener (see cancelQuote), so the future stands on one
+        GetQuoteResponseListener listener = new GetQuoteResponseListener() {
+            @Override
+            public void onResponse(Quote latestQuote) {
+                future.complete(latestQuote);
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                future.completeExceptionally(new APIException(errorMsg, 0));
+            }
+        };
+
+        getQuote(symbol, listener);
+
+        future.whenComplete(new BiConsumer<Quote, Throwable>() {
+            @Override
+            public void accept(Quote quote, Throwable t) {
+                cancelQuote(symbol, listener);          // no-op once the listener was called
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Get the error message shown when the Quote Service cannot be reached (or is refused
+     * locally, by its circuit breaker).
+     *
+     * @return error message suitable for UI display
+     */
+    String getServiceErrorMessage() {
+        return context.getResources().getString(R.string.error_msg_quote_api);
+    }
+
+    /**
+     * Get the batcher shared by all quote clients, creating it on first use. It holds on to
+     * the application context only, so as not to leak any activity.
+     *
+     * @return the shared quote batcher
+     */
+    private QuoteBatcher getBatcher() {
+        if (batcher == null) {
+            batcher = new QuoteBatcher(new QuoteClient(context.getApplicationContext()));
+        }
+
+        return batcher;
+    }
+
+    /**
+     * Obtains the latest quote for a given symbol using a request of its own.
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    private void getSingleQuote(String symbol, GetQuoteResponseListener listener) {
+
+        if (Settings.current().isQuoteBinary()) {
+            getFullQuote(symbol, listener);             // already compact, no deltas needed
+        }
+        else {
+            getQuoteSince(symbol, listener);
+        }
+    }
+
+    /**
+     * Obtains the latest full quote for a given symbol.
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    private void getFullQuote(String symbol, GetQuoteResponseListener listener) {
+
+        CircuitBreaker breaker = getCircuitBreaker();
         Call<Quote> call = new QuoteAPIBuilder().build().getQuote(symbol);
 
-        call.enqueue(new Callback<Quote>() {
+        enqueueQuoteCall(call, Collections.singletonList(getCallScope(symbol)), new Callback<Quote>() {
 
             @Override
             public void onResponse(Call<Quote> call, Response<Quote> response) {
+                refreshHints.onResponse(Collections.singletonList(symbol), response.headers());
 
                 // if body is valid, get new quote from response body
                 if (response.body() != null) {
+                    breaker.onSuccess();
+
                     Quote latestQuote = response.body();
                     listener.onResponse(latestQuote);
                 }
                 else {
                     String errorMsg = getUIErrorMessage("Get Quote", response.code(), response.errorBody());
+                    reportOutcome(breaker, response.code(), errorMsg);
                     listener.onFailure(errorMsg);
                 }
             }
@@ -63,6 +668,265 @@ public class QuoteClient extends APIClient {
                 logOnFailureMessage("getQuote", symbol, t);
 
                 String errorMsg = context.getResources().getString(R.string.error_msg_quote_api);
+                reportOutcome(breaker, 0, errorMsg);
+                listener.onFailure(errorMsg);
+            }
+        });
+
+    }
+
+    /**
+     * Callback interface to pass on results of the getQuotes request
+     */
+    public interface GetQuotesResponseListener {
+        void onResponse(List<Quote> latestQuotes);
+        void onFailure(String errorMsg);
+    }
+
+    /**
+     * Obtains the latest quotes for multiple symbols from the Quote server, in a single request.
+     * Symbols unknown to the server are left out of the resulting list.
+     *
+     * @param symbols Symbols of the securities for which a quote is wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    public void getQuotes(List<String> symbols, GetQuotesResponseListener listener) {
+
+        if (Settings.current().isQuoteBinary()) {
+            getFullQuotes(symbols, listener);           // already compact, no deltas needed
+        }
+        else {
+            getQuotesSince(symbols, symbols, listener);
+        }
+    }
+
+    /**
+     * Obtains the latest quotes for multiple symbols from the Quote server, in a single request
+     * (see getQuotes above). As the request is shared by the symbols' scopes, cancelling the
+     * future leaves it running, its result being ignored.
+     *
+     * @param symbols Symbols of the securities for which a quote is wanted
+     * @return future of the quotes, failing with an APIException if they cannot be obtained
+     */
+    public CompletableFuture<List<Quote>> getQuotes(List<String> symbols) {
+        CompletableFuture<List<Quote>> future = new CompletableFuture<>();
+
+        getQuotes(symbols, new GetQuotesResponseListener() {
+            @Override
+            public void onResponse(List<Quote> latestQuotes) {
+                future.complete(latestQuotes);
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                future.completeExceptionally(new APIException(errorMsg, 0));
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Obtains the latest full quotes for multiple symbols, in a single request.
+     *
+     * @param symbols Symbols of the securities for which a quote is wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    private void getFullQuotes(List<String> symbols, GetQuotesResponseListener listener) {
+
+        CircuitBreaker breaker = getCircuitBreaker();
+        Call<QuotesAPIResponse> call = new QuoteAPIBuilder().build().getQuotes(symbols);
+
+        enqueueQuoteCall(call, getCallScopes(symbols), new Callback<QuotesAPIResponse>() {
+
+            @Override
+            public void onResponse(Call<QuotesAPIResponse> call, Response<QuotesAPIResponse> response) {
+                refreshHints.onResponse(symbols, response.headers());
+
+                if (response.body() != null) {
+                    breaker.onSuccess();
+
+                    List<Quote> latestQuotes = new ArrayList<>();     // set a non-null empty list to start with
+
+                    if (response.body().list != null) {
+                        latestQuotes.addAll(response.body().list);
+                    }
+
+                    listener.onResponse(latestQuotes);
+                }
+                else {
+                    String errorMsg = getUIErrorMessage("Get Quotes", response.code(), response.errorBody());
+                    reportOutcome(breaker, response.code(), errorMsg);
+                    listener.onFailure(errorMsg);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<QuotesAPIResponse> call, Throwable t) {
+                logOnFailureMessage("getQuotes", String.join(",", symbols), t);
+
+                String errorMsg = context.getResources().getString(R.string.error_msg_quote_api);
+                reportOutcome(breaker, 0, errorMsg);
+                listener.onFailure(errorMsg);
+            }
+        });
+
+    }
+
+    /**
+     * Obtains the latest quote for a given symbol, as changes since the last quote obtained when
+     * possible. Changes are merged into the symbol's snapshot; should any change have been
+     * missed, the full quote is fetched again, budget permitting (see tryAcquireFollowUp).
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    private void getQuoteSince(String symbol, GetQuoteResponseListener listener) {
+
+        Long seq = snapshots.getSeq(symbol);
+
+        CircuitBreaker breaker = getCircuitBreaker();
+        Call<QuoteDelta> call = new QuoteAPIBuilder().build().getQuoteSince(symbol, seq);
+
+        enqueueQuoteCall(call, Collections.singletonList(getCallScope(symbol)), new Callback<QuoteDelta>() {
+
+            @Override
+            public void onResponse(Call<QuoteDelta> call, Response<QuoteDelta> response) {
+                refreshHints.onResponse(Collections.singletonList(symbol), response.headers());
+
+                if (response.body() != null) {
+                    breaker.onSuccess();
+
+                    QuoteDelta delta = response.body();
+                    if (delta.symbol == null) {
+                        delta.symbol = symbol;
+                    }
+
+                    Quote latestQuote = snapshots.merge(delta);
+
+                    if (latestQuote != null) {
+                        listener.onResponse(latestQuote);
+                    }
+                    else if (seq == null) {
+                        listener.onFailure("** Invalid quote changes received for " + symbol);   // full quote was asked for
+                    }
+                    else if (tryAcquireFollowUp()) {
+                        Log.w(TAG, "Quote changes missed for " + symbol + ", getting full quote");
+                        getQuoteSince(symbol, listener);        // snapshot dropped, so full quote this time
+                    }
+                    else {
+                        listener.onFailure(getServiceErrorMessage());      // full quote on next refresh
+                    }
+                }
+                else {
+                    String errorMsg = getUIErrorMessage("Get Quote", response.code(), response.errorBody());
+                    reportOutcome(breaker, response.code(), errorMsg);
+                    listener.onFailure(errorMsg);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<QuoteDelta> call, Throwable t) {
+                logOnFailureMessage("getQuoteSince", symbol, t);
+
+                String errorMsg = context.getResources().getString(R.string.error_msg_quote_api);
+                reportOutcome(breaker, 0, errorMsg);
+                listener.onFailure(errorMsg);
+            }
+        });
+
+    }
+
+    /**
+     * Obtains the latest quotes for multiple symbols in a single request, as changes since the
+     * last quotes obtained when possible. Symbols for which changes were missed get their full
+     * quote fetched again, in a second request, budget permitting (see tryAcquireFollowUp).
+     *
+     * @param symbols Symbols of the securities for which a quote is wanted
+     * @param scopeSymbols Symbols on whose behalf the call is made (see getCallScope), which
+     *                     include those of the first request when fetching missed symbols again
+     * @param listener Object implementing the response's callback interface
+     */
+    private void getQuotesSince(List<String> symbols, List<String> scopeSymbols, GetQuotesResponseListener listener) {
+
+        List<Long> since = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            Long seq = snapshots.getSeq(symbol);
+            since.add((seq != null) ? seq : 0L);           // 0 for a full quote
+        }
+
+        // Whether a full quote was asked for, by symbol, so that a bogus delta is not asked for again
+        Map<String, Boolean> fullQuoteAsked = new HashMap<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            fullQuoteAsked.put(symbols.get(i), since.get(i) == 0L);
+        }
+
+        CircuitBreaker breaker = getCircuitBreaker();
+        Call<QuoteDeltasAPIResponse> call = new QuoteAPIBuilder().build().getQuotesSince(symbols, since);
+
+        enqueueQuoteCall(call, getCallScopes(scopeSymbols), new Callback<QuoteDeltasAPIResponse>() {
+
+            @Override
+            public void onResponse(Call<QuoteDeltasAPIResponse> call, Response<QuoteDeltasAPIResponse> response) {
+                refreshHints.onResponse(symbols, response.headers());
+
+                if (response.body() != null) {
+                    breaker.onSuccess();
+
+                    List<Quote> latestQuotes = new ArrayList<>();     // set a non-null empty list to start with
+                    List<String> missedSymbols = new ArrayList<>();
+
+                    if (response.body().list != null) {
+                        for (QuoteDelta delta : response.body().list) {
+                            if (delta == null || delta.symbol == null) {
+                                continue;
+                            }
+
+                            Quote latestQuote = snapshots.merge(delta);
+
+                            if (latestQuote != null) {
+                                latestQuotes.add(latestQuote);
+                            }
+                            else if (!Boolean.TRUE.equals(fullQuoteAsked.get(delta.symbol))) {
+                                missedSymbols.add(delta.symbol);
+                            }
+                        }
+                    }
+
+                    if (missedSymbols.isEmpty() || !tryAcquireFollowUp()) {
+                        listener.onResponse(latestQuotes);      // missed symbols, if any, are left out
+                        return;
+                    }
+
+                    Log.w(TAG, "Quote changes missed for " + missedSymbols + ", getting full quotes");
+
+                    // Snapshots dropped, so full quotes this time
+                    getQuotesSince(missedSymbols, scopeSymbols, new GetQuotesResponseListener() {
+                        @Override
+                        public void onResponse(List<Quote> fullQuotes) {
+                            latestQuotes.addAll(fullQuotes);
+                            listener.onResponse(latestQuotes);
+                        }
+
+                        @Override
+                        public void onFailure(String errorMsg) {
+                            listener.onResponse(latestQuotes);      // missed symbols are left out
+                        }
+                    });
+                }
+                else {
+                    String errorMsg = getUIErrorMessage("Get Quotes", response.code(), response.errorBody());
+                    reportOutcome(breaker, response.code(), errorMsg);
+                    listener.onFailure(errorMsg);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<QuoteDeltasAPIResponse> call, Throwable t) {
+                logOnFailureMessage("getQuotesSince", String.join(",", symbols), t);
+
+                String errorMsg = context.getResources().getString(R.string.error_msg_quote_api);
+                reportOutcome(breaker, 0, errorMsg);
                 listener.onFailure(errorMsg);
             }
         });
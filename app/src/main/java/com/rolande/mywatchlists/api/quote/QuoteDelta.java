@@ -0,0 +1,35 @@
+package com.rolande.mywatchlists.api.quote;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * Mapping of a quote response asked for with a sequence number (see QuoteAPI.getQuoteSince).
+ * If 'baseSeq' is set, the response is a delta: it only carries the fields that changed since
+ * the quote numbered 'baseSeq', all others being null. Otherwise, it is a full quote. Servers
+ * not numbering their quotes send full quotes without any 'seq'.
+ *
+ * Json format of a delta: { "symbol":"AAPL", "seq":42, "base_seq":41, "last_trade_price":171.5 }
+ *
+ * @author Rolande
+ */
+public class QuoteDelta implements Serializable {
+    public String symbol;
+    public Long seq;                        // sequence number of the resulting quote
+    public Long baseSeq;                    // sequence number the delta applies to, null if a full quote
+
+    public Double previousClosePrice;
+    public Double openPrice;
+    public Timestamp lastTradeTimestamp;
+    public Double lastTradePrice;
+    public Integer lastTradeVolume;
+    public Double bidPrice;
+    public Integer bidVolume;
+    public Double askPrice;
+    public Integer askVolume;
+    public String environment;
+
+    public boolean isDelta() {
+        return baseSeq != null;
+    }
+}
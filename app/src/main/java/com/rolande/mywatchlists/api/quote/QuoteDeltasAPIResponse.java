@@ -0,0 +1,17 @@
+package com.rolande.mywatchlists.api.quote;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Format of API Response when getting quotes for multiple symbols at once, with sequence
+ * numbers (see QuoteAPI.getQuotesSince). Each quote may be full or a delta.
+ *
+ * @author Rolande
+ */
+public class QuoteDeltasAPIResponse implements Serializable {
+    @SerializedName("quotes")
+    public ArrayList<QuoteDelta> list;
+}
@@ -0,0 +1,112 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_CALL_DEADLINE;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_BUDGET_RATIO;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MAX_BURST;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MIN_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MIN_SAMPLES;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_PERCENTILE;
+
+import com.rolande.mywatchlists.api.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides when a quote request deserves a duplicate (hedge) request. A hedge is sent once a
+ * call takes longer than most calls to the same endpoint so far, so that an unlucky request
+ * does not hold a row back: whichever successful response comes first is used.
+ *
+ * Call times are those of the original requests only, as given by onCallTime: hedges, and
+ * calls cut short by them, would make calls look faster than they are (NetworkMetrics times
+ * them all, so it is not used here).
+ *
+ * Extra load is capped by a budget: each request sent earns a fraction of a hedge, and each
+ * hedge sent spends a whole one, so hedges never exceed that fraction of all requests (plus
+ * a small burst saved up while things are going well).
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+class QuoteHedgePolicy {
+
+    private final Map<String, LatencyHistogram> histograms = new HashMap<>();
+    private double budget = QUOTE_HEDGE_MAX_BURST;
+    private long hedgeCount;
+    private long hedgeWinCount;
+
+    /**
+     * Get the delay after which a request to an endpoint gets hedged.
+     *
+     * @param endpoint Name of the endpoint (API method name)
+     * @return delay, in milliseconds, -1 if requests to that endpoint should not be hedged
+     *         (not enough calls seen yet, or too slow already to hedge before the deadline)
+     */
+    long getHedgeDelay(String endpoint) {
+        LatencyHistogram histogram = histograms.get(endpoint);
+
+        if (histogram == null || histogram.getCount() < QUOTE_HEDGE_MIN_SAMPLES) {
+            return -1;
+        }
+
+        long delay = Math.max(histogram.getPercentile(QUOTE_HEDGE_PERCENTILE), QUOTE_HEDGE_MIN_DELAY);
+
+        return (delay < QUOTE_CALL_DEADLINE) ? delay : -1;
+    }
+
+    /**
+     * Record the time an original request took to get a successful response. Should its
+     * hedge have answered first, the time it had taken by then.
+     *
+     * @param endpoint Name of the endpoint (API method name)
+     * @param nanos Call time, in nanoseconds
+     */
+    void onCallTime(String endpoint, long nanos) {
+        LatencyHistogram histogram = histograms.get(endpoint);
+
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(endpoint, histogram);
+        }
+
+        histogram.record(nanos);
+    }
+
+    /**
+     * Account for a request sent, earning part of a hedge.
+     */
+    void onRequest() {
+        budget = Math.min(budget + QUOTE_HEDGE_BUDGET_RATIO, QUOTE_HEDGE_MAX_BURST);
+    }
+
+    /**
+     * Ask to send a hedge request.
+     *
+     * @return true if the budget allows it
+     */
+    boolean tryAcquire() {
+        if (budget < 1) {
+            return false;
+        }
+
+        budget--;
+        hedgeCount++;
+        return true;
+    }
+
+    /**
+     * Account for a hedge request that answered successfully before the original one.
+     */
+    void onHedgeWon() {
+        hedgeWinCount++;
+    }
+
+    long getHedgeCount() {
+        return hedgeCount;
+    }
+
+    long getHedgeWinCount() {
+        return hedgeWinCount;
+    }
+}
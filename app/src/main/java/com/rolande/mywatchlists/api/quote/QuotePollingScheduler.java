@@ -0,0 +1,553 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_BATCH_MAX_SYMBOLS;
+import static com.rolande.mywatchlists.Constants.QUOTE_HINT_MAX_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_SCHEDULER_TICK;
+import static com.rolande.mywatchlists.Constants.QUOTE_WEIGHT_PREFETCH;
+import static com.rolande.mywatchlists.Constants.QUOTE_WEIGHT_VISIBLE;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.rolande.mywatchlists.api.CircuitBreaker;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.api.LatencyHistogram;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Central scheduler refreshing the quotes of all subscribed symbols of a screen, replacing
+ * one timer per row. Each symbol is refreshed at its own interval, as set by an adaptive
+ * refresh policy, starting at a phase derived from its symbol's hash, so that fetches are
+ * spread evenly over time instead of bursting.
+ * Fetches are sent within the quote client's request budget, a token bucket shared by all
+ * screens, from which each HTTP request takes a token (a batch request taking one for all its
+ * symbols). Each tick, as many symbols are fetched as the tokens left can carry; when they run
+ * short, symbols due are served in weighted round-robin, those on screen weighing more than
+ * those prefetched, so that no symbol starves. How late each symbol's refresh gets served is
+ * tracked.
+ *
+ * Symbols shown on screen are served before those prefetched (just off screen), both through
+ * a dispatcher bounding the number of requests in flight per priority tier. The request
+ * pending for a symbol leaving the screen (and not prefetched) is cancelled, as are all
+ * pending requests when the scheduler stops, so that no response gets decoded for nothing.
+ *
+ * While the Quote Service's circuit breaker is open, polling pauses, then resumes with a
+ * single probe fetch once the breaker allows it. Quote failures due to the service being down
+ * are reported once, as a change of availability, rather than once per symbol.
+ *
+ * The Quote Service may hint at when to fetch a symbol next (see QuoteRefreshHints), e.g. to
+ * shed load during spikes: its hint then sets the symbol's next fetch instead of the refresh
+ * policy, bounded by the policy's floor interval and QUOTE_HINT_MAX_DELAY.
+ *
+ * When streaming is enabled, subscribed symbols get their quotes pushed over the Quote
+ * Service's WebSocket instead, and polling only takes over while the stream is down.
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+public class QuotePollingScheduler {
+    final static String TAG = LOG_TAG_PREFIX + QuotePollingScheduler.class.getSimpleName();
+
+    /**
+     * Callback interface to pass on quotes fetched for subscribed symbols
+     */
+    public interface Listener {
+        void onQuote(String symbol, Quote latestQuote);
+        void onFailure(String symbol, String errorMsg);
+        void onServiceAvailabilityChanged(boolean available, String errorMsg);
+    }
+
+    /**
+     * Polling state of a subscribed symbol.
+     */
+    private static class Subscription {
+        final String symbol;
+        int refCount;               // number of views currently showing this symbol
+        boolean prefetch;           // true if symbol is just off screen, and its quote prefetched
+        long interval;              // current refresh interval, in milliseconds
+        long nextDue;               // uptime at which next fetch is due, in milliseconds
+        long fetchedAt;             // uptime at which last fetch was sent, in milliseconds
+        long lag;                   // how late last fetch was sent, in milliseconds
+        int currentWeight;          // weighted round-robin state, grows while waiting for a token
+        boolean inFlight;           // true while a fetch is pending, so fetches never stack up
+
+        Subscription(String symbol) {
+            this.symbol = symbol;
+        }
+
+        QuotePriority getPriority() {
+            return (refCount > 0) ? QuotePriority.VISIBLE : QuotePriority.PREFETCH;
+        }
+
+        int getWeight() {
+            return (refCount > 0) ? QUOTE_WEIGHT_VISIBLE : QUOTE_WEIGHT_PREFETCH;
+        }
+    }
+
+    private final QuoteRequestDispatcher dispatcher;
+    private final Clock clock;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+    private Listener listener;
+
+    private final AdaptiveRefreshPolicy refreshPolicy;
+    private final LatencyHistogram lagHistogram = new LatencyHistogram();     // how late fetches were sent
+    private boolean started;
+    private boolean ticking;
+
+    private QuoteStreamClient streamClient;     // null unless streaming is enabled
+    private CircuitBreaker breaker;             // of the Quote Service endpoint, while started
+
+    private final CircuitBreaker.Listener breakerListener = new CircuitBreaker.Listener() {
+        @Override
+        public void onAvailabilityChanged(boolean available, String errorMsg) {
+            if (listener != null) {
+                listener.onServiceAvailabilityChanged(available, errorMsg);
+            }
+        }
+    };
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    /**
+     * Create a scheduler refreshing all symbols at the same fixed interval.
+     *
+     * @param context Context used by the quote client (application context is kept)
+     * @param refreshInterval Interval between two fetches of the same symbol, in milliseconds
+     */
+    public QuotePollingScheduler(Context context, long refreshInterval) {
+        this(context, refreshInterval, refreshInterval, refreshInterval);
+    }
+
+    /**
+     * Create a scheduler adapting each symbol's refresh interval, between the given floor
+     * and ceiling, to how often its quote changes.
+     *
+     * @param context Context used by the quote client (application context is kept)
+     * @param refreshInterval Initial interval between two fetches of the same symbol, in milliseconds
+     * @param minInterval Floor interval, for symbols changing all the time, in milliseconds
+     * @param maxInterval Ceiling interval, for symbols never changing, in milliseconds
+     */
+    public QuotePollingScheduler(Context context, long refreshInterval, long minInterval, long maxInterval) {
+        this(new QuoteClient(context.getApplicationContext()), refreshInterval, minInterval, maxInterval,
+                Clock.SYSTEM);
+    }
+
+    /**
+     * Create a scheduler fetching quotes through the given client, going by the given clock
+     * (e.g. fake ones, in tests).
+     */
+    QuotePollingScheduler(QuoteClient client, long refreshInterval, long minInterval, long maxInterval,
+                          Clock clock) {
+        this.dispatcher = new QuoteRequestDispatcher(client);
+        this.clock = clock;
+        this.refreshPolicy = new AdaptiveRefreshPolicy(refreshInterval,
+                Math.max(minInterval, QUOTE_SCHEDULER_TICK), Math.max(maxInterval, QUOTE_SCHEDULER_TICK));
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Get the interval at which a symbol is currently refreshed.
+     *
+     * @param symbol Symbol of the security
+     * @return refresh interval, in milliseconds
+     */
+    public long getRefreshInterval(String symbol) {
+        return refreshPolicy.getInterval(symbol);
+    }
+
+    /**
+     * Get how late a symbol's refresh currently is: if due and waiting for a token, how long
+     * it has been waiting so far, otherwise how late its last fetch was sent.
+     *
+     * @param symbol Symbol of the security
+     * @return refresh lag, in milliseconds, 0 if the symbol is not subscribed
+     */
+    public long getRefreshLag(String symbol) {
+        Subscription subscription = subscriptions.get(symbol);
+
+        if (subscription == null) {
+            return 0;
+        }
+
+        long now = clock.uptimeMillis();
+
+        return (!subscription.inFlight && subscription.nextDue <= now) ? now - subscription.nextDue : subscription.lag;
+    }
+
+    /**
+     * Get the histogram of how late fetches were sent, all symbols included.
+     *
+     * @return refresh lag histogram
+     */
+    public LatencyHistogram getRefreshLagHistogram() {
+        return lagHistogram;
+    }
+
+    /**
+     * Have quotes pushed over the Quote Service's WebSocket rather than polled. Polling is
+     * used as a fallback whenever the stream is not open. Must be called before start().
+     */
+    public void enableStreaming() {
+        if (streamClient != null) {
+            return;
+        }
+
+        streamClient = new QuoteStreamClient(new QuoteStreamClient.Listener() {
+            @Override
+            public void onOpen() {
+                // Stream takes over, so polling goes idle (see tick)...
+            }
+
+            @Override
+            public void onQuote(Quote latestQuote) {
+                String symbol = latestQuote.getSymbol();
+
+                if (listener != null && subscriptions.containsKey(symbol)) {
+                    listener.onQuote(symbol, latestQuote);
+                }
+            }
+
+            @Override
+            public void onClosed() {
+                scheduleTick();                     // fall back to polling until stream is back
+            }
+        });
+
+        for (String symbol : subscriptions.keySet()) {
+            streamClient.subscribe(symbol);
+        }
+    }
+
+    /**
+     * Tell whether quotes are currently pushed by the stream, rather than polled.
+     *
+     * @return true if the quote stream is open
+     */
+    public boolean isStreaming() {
+        return streamClient != null && streamClient.isOpen();
+    }
+
+    /**
+     * Start fetching quotes for subscribed symbols.
+     */
+    public void start() {
+        started = true;
+
+        breaker = QuoteClient.getCircuitBreaker();
+        breaker.addListener(breakerListener);
+
+        if (streamClient != null) {
+            streamClient.connect();
+        }
+        scheduleTick();
+    }
+
+    /**
+     * Stop fetching quotes, cancelling pending fetches. Subscriptions are kept, so polling
+     * resumes where it left off on start.
+     */
+    public void stop() {
+        started = false;
+        ticking = false;
+        handler.removeCallbacks(tickRunnable);
+
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.inFlight) {
+                subscription.inFlight = false;
+                dispatcher.cancel(subscription.symbol);
+            }
+        }
+
+        if (breaker != null) {
+            breaker.removeListener(breakerListener);
+            breaker = null;
+        }
+
+        if (streamClient != null) {
+            streamClient.close();
+        }
+    }
+
+    /**
+     * Subscribe a symbol shown on screen to quote refreshes. A symbol may be subscribed more
+     * than once (i.e. shown in more than one view); it stays subscribed until unsubscribed as
+     * many times.
+     *
+     * @param symbol Symbol of the security to refresh
+     */
+    public void subscribe(String symbol) {
+        Subscription subscription = getOrAddSubscription(symbol);
+        subscription.refCount++;
+
+        dispatcher.setPriority(symbol, QuotePriority.VISIBLE);       // pending request, if any, now matters most
+
+        scheduleTick();
+    }
+
+    /**
+     * Unsubscribe a symbol no longer shown on screen from quote refreshes.
+     *
+     * @param symbol Symbol of the security not to refresh anymore
+     */
+    public void unsubscribe(String symbol) {
+        Subscription subscription = subscriptions.get(symbol);
+
+        if (subscription != null && --subscription.refCount <= 0) {
+            if (subscription.prefetch) {
+                dispatcher.setPriority(symbol, QuotePriority.PREFETCH);
+            }
+            else {
+                removeSubscription(subscription);
+            }
+        }
+    }
+
+    /**
+     * Set the symbols just off screen, whose quotes get prefetched at a lower priority than
+     * those on screen. Replaces the symbols previously set.
+     *
+     * @param symbols Symbols of the securities to prefetch
+     */
+    public void setPrefetchSymbols(Collection<String> symbols) {
+        Set<String> newSymbols = new HashSet<>(symbols);
+
+        for (Subscription subscription : new ArrayList<>(subscriptions.values())) {
+            if (subscription.prefetch && !newSymbols.contains(subscription.symbol)) {
+                subscription.prefetch = false;
+
+                if (subscription.refCount <= 0) {
+                    removeSubscription(subscription);
+                }
+            }
+        }
+
+        for (String symbol : newSymbols) {
+            getOrAddSubscription(symbol).prefetch = true;
+        }
+
+        scheduleTick();
+    }
+
+    private Subscription getOrAddSubscription(String symbol) {
+        Subscription subscription = subscriptions.get(symbol);
+
+        if (subscription == null) {
+            subscription = new Subscription(symbol);
+            subscription.interval = refreshPolicy.getInterval(symbol);
+            subscription.nextDue = clock.uptimeMillis() + getPhase(symbol, subscription.interval);
+            subscriptions.put(symbol, subscription);
+
+            if (streamClient != null) {
+                streamClient.subscribe(symbol);
+            }
+        }
+
+        return subscription;
+    }
+
+    private void removeSubscription(Subscription subscription) {
+        subscriptions.remove(subscription.symbol);
+
+        if (subscription.inFlight) {
+            dispatcher.cancel(subscription.symbol);
+        }
+
+        if (streamClient != null) {
+            streamClient.unsubscribe(subscription.symbol);
+        }
+
+        QuoteClient.dropSnapshot(subscription.symbol);
+    }
+
+    /**
+     * Get a deterministic phase for a symbol, within one refresh interval. Phases derived from
+     * the symbols' hash spread fetches evenly without relying on random delays.
+     *
+     * @param symbol Symbol of the security
+     * @param interval Refresh interval of the symbol, in milliseconds
+     * @return phase, in milliseconds
+     */
+    long getPhase(String symbol, long interval) {
+        int hash = symbol.hashCode() * 0x9E3779B1;             // scramble similar symbols apart
+
+        return (hash & 0x7FFFFFFF) % interval;
+    }
+
+    private void scheduleTick() {
+        if (started && !ticking && !subscriptions.isEmpty() && !isStreaming()) {
+            ticking = true;
+            postDelayed(tickRunnable, QUOTE_SCHEDULER_TICK);
+        }
+    }
+
+    /**
+     * Schedule a task on the main thread. Overridden by tests, which have no main looper.
+     *
+     * @param task Task to run
+     * @param delay Delay before running it, in milliseconds
+     */
+    void postDelayed(Runnable task, long delay) {
+        handler.postDelayed(task, delay);
+    }
+
+    /**
+     * Fetch quotes for all symbols due, as long as the rate limiter has tokens left for the
+     * requests they take, choosing among them in weighted round-robin. Tokens are taken by
+     * the quote client as it sends the requests, once the batching window closes.
+     */
+    private void tick() {
+        ticking = false;
+
+        if (subscriptions.isEmpty() || isStreaming()) {
+            return;                                             // will restart upon next subscription, or stream drop
+        }
+
+        if (!breaker.isRequestAllowed()) {
+            scheduleTick();
+            return;                                             // service down, wait for the breaker to let a probe through
+        }
+        boolean probing = breaker.getState() != CircuitBreaker.State.CLOSED;
+
+        long now = clock.uptimeMillis();
+        int symbolsPerRequest = (QuoteClient.getBatchWindow() > 0) ? QUOTE_BATCH_MAX_SYMBOLS : 1;
+        long budget = (long) QuoteClient.getRateLimiter().getAvailable() * symbolsPerRequest;      // symbols fetchable this tick
+
+        List<Subscription> due = new ArrayList<>();
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.nextDue <= now && !subscription.inFlight) {
+                due.add(subscription);
+            }
+        }
+
+        while (!due.isEmpty()) {
+            if (budget-- <= 0) {
+                break;                                          // budget exhausted, rest waits for next tick
+            }
+
+            Subscription subscription = nextInRoundRobin(due);
+            due.remove(subscription);
+
+            subscription.lag = now - subscription.nextDue;
+            lagHistogram.record(subscription.lag * 1_000_000);
+
+            // Keep the symbol's phase, skipping any interval missed along the way
+            while (subscription.nextDue <= now) {
+                subscription.nextDue += subscription.interval;
+            }
+            subscription.fetchedAt = now;
+
+            fetchQuote(subscription);
+
+            if (probing) {
+                break;                                          // a single fetch, until the service is back
+            }
+        }
+
+        scheduleTick();
+    }
+
+    /**
+     * Pick the next symbol to serve, in smooth weighted round-robin: every symbol waiting
+     * earns its weight, the one with the most earned is served and pays back the total. Over
+     * time, each symbol gets served in proportion to its weight, and one kept waiting keeps
+     * earning until its turn comes.
+     *
+     * @param due Subscriptions due, not empty
+     * @return subscription to serve next
+     */
+    private Subscription nextInRoundRobin(List<Subscription> due) {
+        Subscription next = null;
+        int totalWeight = 0;
+
+        for (Subscription subscription : due) {
+            subscription.currentWeight += subscription.getWeight();
+            totalWeight += subscription.getWeight();
+
+            if (next == null || subscription.currentWeight > next.currentWeight ||
+                    (subscription.currentWeight == next.currentWeight && subscription.nextDue < next.nextDue)) {
+                next = subscription;
+            }
+        }
+
+        next.currentWeight -= totalWeight;
+        return next;
+    }
+
+    /**
+     * Fetch the latest quote of a subscribed symbol and pass it on to the listener.
+     *
+     * @param subscription Subscription of the symbol to fetch
+     */
+    private void fetchQuote(Subscription subscription) {
+        String symbol = subscription.symbol;
+        subscription.inFlight = true;
+
+        dispatcher.enqueue(symbol, subscription.getPriority(), new QuoteClient.GetQuoteResponseListener() {
+            @Override
+            public void onResponse(Quote latestQuote) {
+                subscription.inFlight = false;
+
+                // Adapt the symbol's interval, bringing its next fetch forward if it got shorter
+                subscription.interval = refreshPolicy.onQuote(symbol, latestQuote);
+                subscription.nextDue = Math.min(subscription.nextDue, subscription.fetchedAt + subscription.interval);
+                applyRefreshHint(subscription);
+
+                if (listener != null && subscriptions.containsKey(symbol)) {
+                    listener.onQuote(symbol, latestQuote);
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                subscription.inFlight = false;
+                applyRefreshHint(subscription);
+
+                // Service-wide failures are reported once, through the circuit breaker
+                if (listener != null && subscriptions.containsKey(symbol) &&
+                        breaker != null && breaker.getState() == CircuitBreaker.State.CLOSED) {
+                    listener.onFailure(symbol, errorMsg);
+                }
+            }
+        });
+    }
+
+    /**
+     * Time a symbol's next fetch as hinted by the service along with the response just
+     * received, if it gave a hint, within client-side bounds: never sooner than the floor
+     * interval, nor later than QUOTE_HINT_MAX_DELAY (or the ceiling interval, if longer).
+     *
+     * @param subscription Subscription of the symbol just fetched
+     */
+    private void applyRefreshHint(Subscription subscription) {
+        QuoteRefreshHints.Hint hint = QuoteClient.getRefreshHints().take(subscription.symbol);
+
+        if (hint == null || hint.receivedAt < subscription.fetchedAt) {
+            return;                                             // none given, or given to an earlier request
+        }
+
+        long delay = Math.min(Math.max(hint.delay, refreshPolicy.getMinInterval()),
+                Math.max(QUOTE_HINT_MAX_DELAY, refreshPolicy.getMaxInterval()));
+
+        subscription.nextDue = hint.receivedAt + delay;
+    }
+}
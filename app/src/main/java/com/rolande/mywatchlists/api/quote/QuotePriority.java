@@ -0,0 +1,11 @@
+package com.rolande.mywatchlists.api.quote;
+
+/**
+ * Priority tiers of quote requests, from highest to lowest.
+ *
+ * @author Rolande
+ */
+public enum QuotePriority {
+    VISIBLE,            // security shown on screen
+    PREFETCH            // security just outside the screen, likely to be shown soon
+}
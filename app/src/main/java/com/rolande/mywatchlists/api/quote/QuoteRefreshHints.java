@@ -0,0 +1,161 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_NEXT_POLL_HEADER;
+
+import android.util.Log;
+
+import com.rolande.mywatchlists.api.Clock;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+
+/**
+ * Keeps the refresh hints the Quote Service gives along with its responses, by symbol, for
+ * the polling scheduler to time each symbol's next fetch (see QuotePollingScheduler). That
+ * way, the service can have clients slow down while under load, or speed up for a symbol
+ * actively trading, without a new client being shipped.
+ *
+ * Hints are read from the following headers, the delays being in seconds:
+ *   - the next-poll header (QUOTE_NEXT_POLL_HEADER): delay before the next fetch, decimals allowed;
+ *   - Cache-Control max-age: how long the quote stays fresh, used if no next-poll header;
+ *   - Retry-After (a delay or an HTTP date): no fetch before then, whatever the above says.
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+class QuoteRefreshHints {
+    final static String TAG = LOG_TAG_PREFIX + QuoteRefreshHints.class.getSimpleName();
+
+    /**
+     * Delay before a symbol's next fetch, as hinted by the service.
+     */
+    static class Hint {
+        final long delay;                   // in milliseconds
+        final long receivedAt;              // uptime of the response, in milliseconds
+
+        Hint(long delay, long receivedAt) {
+            this.delay = delay;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    private final Map<String, Hint> hints = new HashMap<>();
+    private final Clock clock;
+
+    QuoteRefreshHints() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock Clock the responses are timed by
+     */
+    QuoteRefreshHints(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Read the hints of a quote response, if any, and keep them for the symbols it was about.
+     * A response without hints drops those kept for its symbols.
+     *
+     * @param symbols Symbols of the request
+     * @param headers Headers of the response, successful or not
+     */
+    void onResponse(Collection<String> symbols, Headers headers) {
+        long delay = getDelay(headers);
+
+        for (String symbol : symbols) {
+            if (delay >= 0) {
+                hints.put(symbol, new Hint(delay, clock.uptimeMillis()));
+            }
+            else {
+                hints.remove(symbol);
+            }
+        }
+    }
+
+    /**
+     * Take the hint given for a symbol, if any: it is only used once.
+     *
+     * @param symbol Symbol of the security
+     * @return hint, null if none
+     */
+    Hint take(String symbol) {
+        return hints.remove(symbol);
+    }
+
+    /**
+     * Get the delay before the next fetch hinted by a response's headers.
+     *
+     * @param headers Headers of the response
+     * @return delay, in milliseconds, -1 if no hint given
+     */
+    private static long getDelay(Headers headers) {
+        long delay = parseSeconds(headers.get(QUOTE_NEXT_POLL_HEADER));
+
+        if (delay < 0) {
+            int maxAge = CacheControl.parse(headers).maxAgeSeconds();
+            delay = (maxAge > 0) ? maxAge * 1000L : -1;     // max-age=0 only means "do not cache"
+        }
+
+        long retryAfter = getRetryAfter(headers);
+
+        if (retryAfter > delay) {
+            Log.i(TAG, "Service asks to retry after " + retryAfter + " ms");
+            delay = retryAfter;
+        }
+
+        return delay;
+    }
+
+    /**
+     * Get the delay of a Retry-After header, either in seconds or as an HTTP date.
+     *
+     * @return delay, in milliseconds, -1 if none
+     */
+    private static long getRetryAfter(Headers headers) {
+        String value = headers.get("Retry-After");
+
+        if (value == null) {
+            return -1;
+        }
+
+        long delay = parseSeconds(value);
+
+        if (delay < 0) {
+            Date date = headers.getDate("Retry-After");
+
+            if (date != null) {
+                delay = Math.max(date.getTime() - System.currentTimeMillis(), 0);
+            }
+        }
+
+        return delay;
+    }
+
+    /**
+     * Parse a delay in seconds, decimals allowed.
+     *
+     * @return delay, in milliseconds, -1 if missing or invalid
+     */
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            double seconds = Double.parseDouble(value.trim());
+
+            return (seconds >= 0 && !Double.isInfinite(seconds)) ? Math.round(seconds * 1000) : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
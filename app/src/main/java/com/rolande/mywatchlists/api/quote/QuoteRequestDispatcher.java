@@ -0,0 +1,236 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_MAX_IN_FLIGHT_PREFETCH;
+import static com.rolande.mywatchlists.Constants.QUOTE_MAX_IN_FLIGHT_VISIBLE;
+
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dispatches quote requests to the quote client by priority tier (see QuotePriority), rather
+ * than in the order they were made. Each tier has a bounded number of requests in flight; a
+ * request waits in its tier's queue until a slot frees up, higher tiers being served first.
+ * A queued request can move to another tier, e.g. when its security scrolls back on screen,
+ * and a request no longer wanted can be cancelled, whether still queued or already sent.
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+public class QuoteRequestDispatcher {
+
+    /**
+     * A queued request for a symbol, along with everyone waiting for its result.
+     */
+    private static class Request {
+        final String symbol;
+        QuotePriority priority;
+        final List<QuoteClient.GetQuoteResponseListener> listeners = new ArrayList<>(1);
+        QuoteClient.GetQuoteResponseListener clientListener;      // given to the client, once sent
+
+        Request(String symbol, QuotePriority priority) {
+            this.symbol = symbol;
+            this.priority = priority;
+        }
+    }
+
+    private final QuoteClient client;
+    private final Map<QuotePriority, Deque<Request>> queues = new EnumMap<>(QuotePriority.class);
+    private final Map<QuotePriority, Integer> inFlight = new EnumMap<>(QuotePriority.class);
+    private final Map<QuotePriority, Integer> maxInFlight = new EnumMap<>(QuotePriority.class);
+    private final Map<String, Request> queued = new HashMap<>();
+    private final Map<String, Request> sent = new HashMap<>();
+    private boolean dispatching;                // true while dispatch() is sending requests
+
+    public QuoteRequestDispatcher(QuoteClient client) {
+        this.client = client;
+
+        for (QuotePriority priority : QuotePriority.values()) {
+            queues.put(priority, new ArrayDeque<Request>());
+            inFlight.put(priority, 0);
+        }
+
+        maxInFlight.put(QuotePriority.VISIBLE, QUOTE_MAX_IN_FLIGHT_VISIBLE);
+        maxInFlight.put(QuotePriority.PREFETCH, QUOTE_MAX_IN_FLIGHT_PREFETCH);
+    }
+
+    /**
+     * Queue a quote request. If a request is already sent or queued for the symbol, the listener
+     * joins it, and a queued one moves up to the given tier if higher.
+     *
+     * @param symbol Symbol of the security for which a quote is wanted
+     * @param priority Priority tier of the request
+     * @param listener Object implementing the response's callback interface
+     */
+    public void enqueue(String symbol, QuotePriority priority, QuoteClient.GetQuoteResponseListener listener) {
+        Request request = sent.get(symbol);
+
+        if (request != null) {
+            request.listeners.add(listener);
+            return;
+        }
+
+        request = queued.get(symbol);
+
+        if (request == null) {
+            request = new Request(symbol, priority);
+            queued.put(symbol, request);
+            queues.get(priority).add(request);
+        }
+        else if (priority.compareTo(request.priority) < 0) {
+            move(request, priority);
+        }
+
+        request.listeners.add(listener);
+
+        dispatch();
+    }
+
+    /**
+     * Move a symbol's queued request, if any, to another tier.
+     *
+     * @param symbol Symbol of the security
+     * @param priority New priority tier
+     */
+    public void setPriority(String symbol, QuotePriority priority) {
+        Request request = queued.get(symbol);
+
+        if (request != null && request.priority != priority) {
+            move(request, priority);
+            dispatch();
+        }
+    }
+
+    /**
+     * Cancel a symbol's request, whether still queued or already sent. Its listeners will not
+     * be called.
+     *
+     * @param symbol Symbol of the security
+     */
+    public void cancel(String symbol) {
+        Request request = queued.remove(symbol);
+
+        if (request != null) {
+            queues.get(request.priority).remove(request);
+        }
+
+        request = sent.remove(symbol);
+
+        if (request != null) {
+            client.cancelQuote(symbol, request.clientListener);
+            inFlight.put(request.priority, inFlight.get(request.priority) - 1);
+            dispatch();
+        }
+    }
+
+    /**
+     * Get the number of requests waiting in a tier.
+     *
+     * @param priority Priority tier
+     * @return number of requests queued
+     */
+    public int getQueuedCount(QuotePriority priority) {
+        return queues.get(priority).size();
+    }
+
+    private void move(Request request, QuotePriority priority) {
+        queues.get(request.priority).remove(request);
+        request.priority = priority;
+        queues.get(priority).add(request);
+    }
+
+    /**
+     * Send as many queued requests as the tiers' limits allow, highest tiers first. A request
+     * may complete while being sent (e.g. failing fast while the service is down), freeing its
+     * slot, and its listeners may queue more requests: rather than dispatching again from
+     * within, which would recurse once per request queued, the ongoing dispatch loops on.
+     */
+    private void dispatch() {
+        if (dispatching) {
+            return;                             // ongoing dispatch will pick up any change
+        }
+        dispatching = true;
+
+        try {
+            Request request;
+
+            while ((request = pollNext()) != null) {
+                send(request);
+            }
+        }
+        finally {
+            dispatching = false;
+        }
+    }
+
+    /**
+     * Take the next request to send, from the highest tier having one queued and a free slot.
+     *
+     * @return request to send, null if none can be sent for now
+     */
+    private Request pollNext() {
+        for (QuotePriority priority : QuotePriority.values()) {
+            Deque<Request> queue = queues.get(priority);
+
+            if (!queue.isEmpty() && inFlight.get(priority) < maxInFlight.get(priority)) {
+                Request request = queue.poll();
+                queued.remove(request.symbol);
+
+                return request;
+            }
+        }
+
+        return null;
+    }
+
+    private void send(Request request) {
+        inFlight.put(request.priority, inFlight.get(request.priority) + 1);
+        sent.put(request.symbol, request);
+
+        request.clientListener = new QuoteClient.GetQuoteResponseListener() {
+            @Override
+            public void onResponse(Quote latestQuote) {
+                if (complete(request)) {
+                    for (QuoteClient.GetQuoteResponseListener listener : request.listeners) {
+                        listener.onResponse(latestQuote);
+                    }
+                    dispatch();
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                if (complete(request)) {
+                    for (QuoteClient.GetQuoteResponseListener listener : request.listeners) {
+                        listener.onFailure(errorMsg);
+                    }
+                    dispatch();
+                }
+            }
+        };
+
+        client.getQuote(request.symbol, request.clientListener);
+    }
+
+    /**
+     * Release the slot of a sent request that completed.
+     *
+     * @param request Request that completed
+     * @return false if the request was cancelled meanwhile, so its outcome must be ignored
+     */
+    private boolean complete(Request request) {
+        if (!sent.remove(request.symbol, request)) {
+            return false;
+        }
+
+        inFlight.put(request.priority, inFlight.get(request.priority) - 1);
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+package com.rolande.mywatchlists.api.quote;
+
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the last full quote of each symbol, along with its sequence number, so that quote
+ * responses only need to carry the fields that changed since (see QuoteDelta). Deltas are
+ * merged into a new snapshot; a delta not based on the snapshot held means some change was
+ * missed, in which case the symbol's full quote must be fetched again. Snapshots of symbols
+ * no longer refreshed are removed, so that the store only grows with the symbols in use.
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+class QuoteSnapshotStore {
+
+    /**
+     * A symbol's current quote, along with its sequence number, if any.
+     */
+    private static class Snapshot {
+        final Quote quote;
+        final Long seq;
+
+        Snapshot(Quote quote, Long seq) {
+            this.quote = quote;
+            this.seq = seq;
+        }
+    }
+
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+
+    /**
+     * Get the sequence number of a symbol's snapshot, to ask for changes since then.
+     *
+     * @param symbol Symbol of the security
+     * @return sequence number, null if a full quote is needed
+     */
+    Long getSeq(String symbol) {
+        Snapshot snapshot = snapshots.get(symbol);
+
+        return (snapshot != null) ? snapshot.seq : null;
+    }
+
+    /**
+     * Merge a quote response into the symbol's snapshot.
+     *
+     * @param delta Quote response, either full or delta
+     * @return resulting quote (a new instance), null if the delta does not apply to the
+     *         snapshot held, i.e. a gap was detected and the snapshot dropped
+     */
+    Quote merge(QuoteDelta delta) {
+        Snapshot snapshot = snapshots.get(delta.symbol);
+
+        if (delta.isDelta() && (snapshot == null || !delta.baseSeq.equals(snapshot.seq))) {
+            snapshots.remove(delta.symbol);
+            return null;
+        }
+
+        Quote base = delta.isDelta() ? snapshot.quote : new Quote();
+
+        Quote quote = new Quote(null, delta.symbol,
+                (delta.previousClosePrice != null) ? delta.previousClosePrice : base.getPreviousClosePrice(),
+                (delta.openPrice != null) ? delta.openPrice : base.getOpenPrice(),
+                (delta.lastTradeTimestamp != null) ? delta.lastTradeTimestamp : base.getLastTradeTimestamp(),
+                (delta.lastTradePrice != null) ? delta.lastTradePrice : base.getLastTradePrice(),
+                (delta.lastTradeVolume != null) ? delta.lastTradeVolume : base.getLastTradeVolume(),
+                (delta.bidPrice != null) ? delta.bidPrice : base.getBidPrice(),
+                (delta.bidVolume != null) ? delta.bidVolume : base.getBidVolume(),
+                (delta.askPrice != null) ? delta.askPrice : base.getAskPrice(),
+                (delta.askVolume != null) ? delta.askVolume : base.getAskVolume(),
+                (delta.environment != null) ? delta.environment : base.getEnvironment());
+
+        snapshots.put(delta.symbol, new Snapshot(quote, delta.seq));
+
+        return quote;
+    }
+
+    /**
+     * Remove a symbol's snapshot, once its quote is no longer refreshed. Its next quote will
+     * be asked for in full.
+     *
+     * @param symbol Symbol of the security
+     */
+    void remove(String symbol) {
+        snapshots.remove(symbol);
+    }
+
+    /**
+     * Get the number of snapshots held.
+     *
+     * @return number of symbols with a snapshot
+     */
+    int size() {
+        return snapshots.size();
+    }
+}
@@ -0,0 +1,282 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_MAX_RECONNECT_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_MIN_RECONNECT_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_STABLE_TIME;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Client streaming quotes from the Quote Service over a single WebSocket, instead of polling.
+ * Symbols are subscribed/unsubscribed with small json messages:
+ *
+ *   { "action":"subscribe", "symbols":["AAPL","MSFT"] }
+ *   { "action":"unsubscribe", "symbols":["AAPL"] }
+ *
+ * and the service pushes each new quote as the same json object returned by 'quote/{symbol}'.
+ * If the socket drops, the listener is told so (only if it was open) and a new connection is
+ * attempted after a growing, jittered delay, until the client is closed. The delay only starts
+ * over once a connection has stayed up for a while, so that a service dropping connections
+ * right after accepting them does not get reconnections at the minimum delay, from all
+ * clients at once. All listener callbacks occur on the main thread.
+ *
+ * @author Rolande
+ */
+public class QuoteStreamClient {
+    final static String TAG = LOG_TAG_PREFIX + QuoteStreamClient.class.getSimpleName();
+
+    /**
+     * Callback interface to pass on the stream's events
+     */
+    public interface Listener {
+        void onOpen();
+        void onQuote(Quote latestQuote);
+        void onClosed();
+    }
+
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Set<String> symbols = new LinkedHashSet<>();
+    private final Random random;
+    private final Clock clock;
+
+    private WebSocket webSocket;
+    private boolean open;
+    private boolean closing;
+    private long openedAt;                      // uptime when the socket opened, in milliseconds
+    private long reconnectDelay = QUOTE_STREAM_MIN_RECONNECT_DELAY;     // before jitter
+
+    private final Runnable reconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            connect();
+        }
+    };
+
+    public QuoteStreamClient(Listener listener) {
+        this(listener, new Random(), Clock.SYSTEM);
+    }
+
+    /**
+     * @param listener Object implementing the callback interface
+     * @param random Source of the reconnection delays' jitter, seeded by tests
+     * @param clock Clock to go by
+     */
+    QuoteStreamClient(Listener listener, Random random, Clock clock) {
+        this.listener = listener;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Open the WebSocket to the Quote Service, as currently located in settings.
+     */
+    public void connect() {
+        closing = false;
+
+        if (webSocket != null) {
+            return;                             // already connected, or connecting
+        }
+
+        QuoteAPIBuilder builder = new QuoteAPIBuilder();
+        Gson gson = builder.getGson();
+
+        webSocket = builder.openStream(new WebSocketListener() {
+            @Override
+            public void onOpen(@NonNull WebSocket ws, @NonNull Response response) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (ws != webSocket) return;
+
+                        Log.i(TAG, "Quote stream opened");
+                        open = true;
+                        openedAt = clock.uptimeMillis();
+
+                        send("subscribe", symbols);
+                        listener.onOpen();
+                    }
+                });
+            }
+
+            @Override
+            public void onMessage(@NonNull WebSocket ws, @NonNull String text) {
+                final Quote quote;
+
+                try {
+                    quote = gson.fromJson(text, Quote.class);        // decode off the main thread
+                }
+                catch (JsonParseException e) {
+                    Log.w(TAG, "Unexpected quote stream message: " + text);
+                    return;
+                }
+
+                if (quote == null || quote.getSymbol() == null) {
+                    return;
+                }
+
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (ws == webSocket && symbols.contains(quote.getSymbol())) {
+                            listener.onQuote(quote);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onClosing(@NonNull WebSocket ws, int code, @NonNull String reason) {
+                ws.close(1000, null);
+            }
+
+            @Override
+            public void onClosed(@NonNull WebSocket ws, int code, @NonNull String reason) {
+                postDisconnected(ws, "closed (" + code + ")");
+            }
+
+            @Override
+            public void onFailure(@NonNull WebSocket ws, @NonNull Throwable t, Response response) {
+                postDisconnected(ws, t.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Close the WebSocket for good, i.e. no reconnection is attempted afterwards.
+     */
+    public void close() {
+        closing = true;
+        handler.removeCallbacks(reconnectRunnable);
+
+        if (webSocket != null) {
+            webSocket.close(1000, null);
+            webSocket = null;
+        }
+        open = false;
+    }
+
+    /**
+     * Subscribe a symbol to the quote stream.
+     *
+     * @param symbol Symbol of the security for which quotes are wanted
+     */
+    public void subscribe(String symbol) {
+        if (symbols.add(symbol) && open) {
+            send("subscribe", Collections.singletonList(symbol));
+        }
+    }
+
+    /**
+     * Unsubscribe a symbol from the quote stream.
+     *
+     * @param symbol Symbol of the security for which quotes are not wanted anymore
+     */
+    public void unsubscribe(String symbol) {
+        if (symbols.remove(symbol) && open) {
+            send("unsubscribe", Collections.singletonList(symbol));
+        }
+    }
+
+    /**
+     * Send a subscription message for the given symbols, if any.
+     *
+     * @param action Either "subscribe" or "unsubscribe"
+     * @param symbolList Symbols involved
+     */
+    private void send(String action, Collection<String> symbolList) {
+        if (symbolList.isEmpty()) {
+            return;
+        }
+
+        JsonArray array = new JsonArray();
+        for (String symbol : symbolList) {
+            array.add(symbol);
+        }
+
+        JsonObject message = new JsonObject();
+        message.addProperty("action", action);
+        message.add("symbols", array);
+
+        webSocket.send(message.toString());
+    }
+
+    /**
+     * Handle a dropped (or closed) WebSocket on the main thread: tell the listener if it was
+     * open, then schedule a new connection with an exponential backoff and "equal jitter"
+     * (half of the delay fixed, the other half random), unless we are closing.
+     *
+     * @param ws WebSocket involved
+     * @param reason Reason for the disconnection, for logs
+     */
+    private void postDisconnected(WebSocket ws, String reason) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (ws != webSocket) return;            // an older socket, already dealt with
+
+                Log.w(TAG, "Quote stream disconnected: " + reason);
+
+                boolean wasOpen = open;
+                webSocket = null;
+                open = false;
+
+                if (closing) return;
+
+                if (wasOpen) {
+                    listener.onClosed();
+
+                    if (clock.uptimeMillis() - openedAt >= QUOTE_STREAM_STABLE_TIME) {
+                        reconnectDelay = QUOTE_STREAM_MIN_RECONNECT_DELAY;     // was up long enough, start over
+                    }
+                }
+
+                long delay = reconnectDelay / 2 + (long) (random.nextDouble() * (reconnectDelay / 2));
+                reconnectDelay = Math.min(reconnectDelay * 2, QUOTE_STREAM_MAX_RECONNECT_DELAY);
+
+                Log.i(TAG, "Reconnecting quote stream in " + delay + " ms");
+                postDelayed(reconnectRunnable, delay);
+            }
+        });
+    }
+
+    /**
+     * Run a task on the main thread. Overridden by tests, which have no main looper.
+     */
+    void post(Runnable task) {
+        handler.post(task);
+    }
+
+    /**
+     * Run a task on the main thread after a delay, in milliseconds (see post).
+     */
+    void postDelayed(Runnable task, long delay) {
+        handler.postDelayed(task, delay);
+    }
+}
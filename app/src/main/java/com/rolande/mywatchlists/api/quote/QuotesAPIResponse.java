@@ -0,0 +1,18 @@
+package com.rolande.mywatchlists.api.quote;
+
+import com.google.gson.annotations.SerializedName;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Format of API Response when getting quotes for multiple symbols at once. Symbols
+ * unknown to the Quote service are simply left out of the list.
+ *
+ * @author Rolande
+ */
+public class QuotesAPIResponse implements Serializable {
+    @SerializedName("quotes")
+    public ArrayList<Quote> list;
+}
@@ -0,0 +1,20 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import com.rolande.mywatchlists.api.APIException;
+
+/**
+ * Outcome of a change that could not reach the Watchlist Service (or had to wait behind
+ * others), and was queued in the outbox instead (see WatchlistOutbox). Not a failure as such,
+ * as the change will be sent later on, but what it leads to is not known yet.
+ *
+ * @author Rolande
+ */
+public class ChangeQueuedException extends APIException {
+
+    /**
+     * @param msg Message suitable for UI display, telling the change was queued
+     */
+    public ChangeQueuedException(String msg) {
+        super(msg, 0);
+    }
+}
@@ -0,0 +1,138 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_IMPORT_MAX_SYMBOLS;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.rolande.mywatchlists.R;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Imports a list of symbols into a watchlist, from plain text (symbols separated by spaces,
+ * commas or new lines) or CSV (with a header line, symbols taken from the first column, whose
+ * heading must be 'Symbol' or 'Ticker').
+ *
+ * The input is read a line at a time, so a file of any size can be imported; symbols that
+ * are not valid, or beyond the maximum taken, are rejected as they are read. The others are
+ * then added in bulk (see WatchlistClient.addSymbols), giving a result per symbol.
+ *
+ * @author Rolande
+ */
+public class SymbolImporter {
+    final static String TAG = LOG_TAG_PREFIX + SymbolImporter.class.getSimpleName();
+
+    private static final Pattern SYMBOL = Pattern.compile("[A-Z0-9][A-Z0-9.\\-]{0,9}");
+    private static final Pattern CSV_SEPARATOR = Pattern.compile("[,;\\t]");
+    private static final Pattern TEXT_SEPARATOR = Pattern.compile("[,;\\s]+");
+
+    private final Context context;
+    private final WatchlistClient client;
+
+    /**
+     * Symbols read from an input: those to add, in the order read (without duplicates), and
+     * those rejected.
+     */
+    public static class Parsed {
+        public final List<String> symbols = new ArrayList<>();
+        public final List<SymbolResult> rejected = new ArrayList<>();
+    }
+
+    /**
+     * @param context Context of the importer
+     * @param scope Lifecycle scope of the requests made (ex: a fragment), see CallRegistry
+     */
+    public SymbolImporter(Context context, Object scope) {
+        this.context = context;
+        this.client = new WatchlistClient(context, scope);
+    }
+
+    /**
+     * Read the symbols of an input. As it reads from a file (or any stream), it should not be
+     * called from the main thread.
+     *
+     * @param reader Input to read, as plain text or CSV
+     * @return symbols read
+     * @throws IOException if the input cannot be read
+     */
+    public Parsed parse(Reader reader) throws IOException {
+        Parsed parsed = new Parsed();
+        Set<String> seen = new HashSet<>();
+
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        boolean firstLine = true;
+        boolean csv = false;
+
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (firstLine) {
+                String heading = CSV_SEPARATOR.split(line, 2)[0].replace("\"", "").trim();
+                firstLine = false;
+
+                if (heading.equalsIgnoreCase("symbol") || heading.equalsIgnoreCase("ticker")) {
+                    csv = true;
+                    continue;
+                }
+            }
+
+            String[] tokens = csv ? new String[] { CSV_SEPARATOR.split(line, 2)[0] } : TEXT_SEPARATOR.split(line);
+
+            for (String token : tokens) {
+                String symbol = token.trim().replace("\"", "").toUpperCase(Locale.ROOT);
+
+                if (symbol.isEmpty() || !seen.add(symbol)) {
+                    continue;
+                }
+
+                if (!SYMBOL.matcher(symbol).matches()) {
+                    parsed.rejected.add(new SymbolResult(token.trim(), null, context.getString(R.string.msg_import_invalid_symbol)));
+                }
+                else if (parsed.symbols.size() >= WATCHLIST_IMPORT_MAX_SYMBOLS) {
+                    parsed.rejected.add(new SymbolResult(symbol, null, context.getString(R.string.msg_import_too_many_symbols)));
+                }
+                else {
+                    parsed.symbols.add(symbol);
+                }
+            }
+        }
+
+        Log.i(TAG, "Read " + parsed.symbols.size() + " symbol(s), " + parsed.rejected.size() + " rejected");
+        return parsed;
+    }
+
+    /**
+     * Add the symbols read to a watchlist. To be called from the main thread.
+     *
+     * @param watchlistId ID of the watchlist to add to
+     * @param parsed Symbols read
+     * @param listener Object implementing the response's callback interface, given the results
+     *                 of the symbols added followed by those of the symbols rejected when read
+     */
+    public void importSymbols(Long watchlistId, Parsed parsed, WatchlistClient.SymbolsResponseListener listener) {
+        client.addSymbols(watchlistId, parsed.symbols, new WatchlistClient.SymbolsResponseListener() {
+            @Override
+            public void onResponse(List<SymbolResult> results) {
+                List<SymbolResult> all = new ArrayList<>(results);
+                all.addAll(parsed.rejected);
+
+                listener.onResponse(all);
+            }
+        });
+    }
+}
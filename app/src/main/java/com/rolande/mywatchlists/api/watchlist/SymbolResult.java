@@ -0,0 +1,73 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import com.google.gson.annotations.SerializedName;
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of adding or deleting a symbol, as part of a bulk request (or import).
+ *
+ * @author Rolande
+ */
+public class SymbolResult implements Serializable {
+
+    @SerializedName("symbol")
+    private String symbol;
+
+    @SerializedName("security")
+    private Security security;          // security added, when adding
+
+    @SerializedName("error")
+    private String errorMsg;            // why it was not added/deleted, null if it was
+
+    private transient boolean queued;   // could not reach the service, queued in the outbox
+
+    public SymbolResult() {
+    }
+
+    public SymbolResult(String symbol, Security security, String errorMsg) {
+        this.symbol = symbol;
+        this.security = security;
+        this.errorMsg = errorMsg;
+    }
+
+    public static SymbolResult queued(String symbol) {
+        SymbolResult result = new SymbolResult(symbol, null, null);
+        result.queued = true;
+
+        return result;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public Security getSecurity() {
+        return security;
+    }
+
+    public String getErrorMsg() {
+        return errorMsg;
+    }
+
+    public boolean isQueued() {
+        return queued;
+    }
+
+    /**
+     * @return true if the symbol was added (or deleted) by the service
+     */
+    public boolean isSuccess() {
+        return errorMsg == null && !queued;
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolResult{" +
+                "symbol='" + symbol + '\'' +
+                ", errorMsg='" + errorMsg + '\'' +
+                ", queued=" + queued +
+                '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Format of API Response when adding or deleting several symbols at once: one result per
+ * symbol sent, telling whether it was added/deleted or why not.
+ *
+ * @author Rolande
+ */
+public class SymbolsAPIResponse implements Serializable {
+    @SerializedName("results")
+    public ArrayList<SymbolResult> list;
+}
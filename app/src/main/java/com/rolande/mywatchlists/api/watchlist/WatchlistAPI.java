@@ -1,20 +1,30 @@
 package com.rolande.mywatchlists.api.watchlist;
 
+import static com.rolande.mywatchlists.Constants.WATCHLIST_IDEMPOTENCY_HEADER;
+
 import com.rolande.mywatchlists.model.beans.Security;
 import com.rolande.mywatchlists.model.beans.Watchlist;
 
+import java.util.List;
+
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.HTTP;
+import retrofit2.http.Header;
 import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 
 /**
  * Defines the Watchlist Service API Interface.
  *
+ * Changes made one at a time carry an idempotency key (see WatchlistMutation), so that one
+ * sent again after an attempt that may have reached the service is only applied once.
+ *
  * @author Rolande
  */
 public interface WatchlistAPI {
@@ -27,25 +37,43 @@ public interface WatchlistAPI {
     @GET("watchlists/{id}")
     Call<WatchlistDetailAPIResponse> getWatchlist(@Path("id") long id);
 
+    // Get a page of the securities of a specific watchlist, along with their total count
+    @GET("watchlists/{id}")
+    Call<WatchlistDetailAPIResponse> getWatchlistPage(@Path("id") long id, @Query("offset") int offset, @Query("limit") int limit);
+
+    // Get the changes made to a specific watchlist since a given revision
+    @GET("watchlists/{id}")
+    Call<WatchlistDetailAPIResponse> getWatchlistChanges(@Path("id") long id, @Query("since") long revision);
+
     // Add a watchlist
     @POST("watchlists")
     @Headers("Content-Type: application/json")
-    Call<Watchlist> addWatchlist(@Body Watchlist watchlist);
+    Call<Watchlist> addWatchlist(@Body Watchlist watchlist, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKey);
 
     // Update a watchlist's name
     @PUT("watchlists")
     @Headers("Content-Type: application/json")
-    Call<Void> updateWatchlist(@Body Watchlist watchlist);
+    Call<Void> updateWatchlist(@Body Watchlist watchlist, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKey);
 
     // Delete a watchlist
     @DELETE("watchlists/{id}")
-    Call<Void> deleteWatchlist(@Path("id") long id);
+    Call<Void> deleteWatchlist(@Path("id") long id, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKey);
 
     // Add a symbol/security to a watchlist
     @POST("watchlists/{id}/symbol/{symbol}")
-    Call<Security> addSecurity(@Path("id") long id, @Path("symbol") String symbol);
+    Call<Security> addSecurity(@Path("id") long id, @Path("symbol") String symbol, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKey);
 
     // Delete a symbol/security from a watchlist
     @DELETE("watchlists/{id}/symbol/{symbol}")
-    Call<Void> deleteSecurity(@Path("id") long id, @Path("symbol") String symbol);
+    Call<Void> deleteSecurity(@Path("id") long id, @Path("symbol") String symbol, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKey);
+
+    // Add several symbols/securities to a watchlist at once (one idempotency key per symbol, comma separated)
+    @POST("watchlists/{id}/symbols")
+    @Headers("Content-Type: application/json")
+    Call<SymbolsAPIResponse> addSecurities(@Path("id") long id, @Body List<String> symbols, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKeys);
+
+    // Delete several symbols/securities from a watchlist at once (one idempotency key per symbol, comma separated)
+    @HTTP(method = "DELETE", path = "watchlists/{id}/symbols", hasBody = true)
+    @Headers("Content-Type: application/json")
+    Call<SymbolsAPIResponse> deleteSecurities(@Path("id") long id, @Body List<String> symbols, @Header(WATCHLIST_IDEMPOTENCY_HEADER) String idempotencyKeys);
 }
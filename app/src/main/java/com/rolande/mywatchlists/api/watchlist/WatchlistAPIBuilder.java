@@ -1,33 +1,97 @@
 package com.rolande.mywatchlists.api.watchlist;
 
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_ETAG_CACHE_ENTRIES;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_HTTP_CACHE_SIZE;
 
 import com.rolande.mywatchlists.api.APIBuilder;
+import com.rolande.mywatchlists.api.APIRegistry;
+import com.rolande.mywatchlists.api.EndpointBalancer;
+import com.rolande.mywatchlists.api.ETagCache;
 import com.rolande.mywatchlists.model.Settings;
 
+import java.io.File;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
 /**
- * Builder class for the Watchlist API.
+ * Builder class for the Watchlist API. Unlike quotes, watchlists responses are cached: on
+ * disk by OkHttp, and in memory (already decoded) by an ETag cache, both revalidated with
+ * the server using ETags.
  *
  * @author Rolande
  */
 public class WatchlistAPIBuilder extends APIBuilder {
     final static String TAG = LOG_TAG_PREFIX + WatchlistAPIBuilder.class.getSimpleName();
 
+    private static final APIRegistry<WatchlistAPI> registry = new APIRegistry<>(WatchlistAPI.class);
+    private static final EndpointBalancer balancer = new EndpointBalancer("watchlist");
+
+    static final ETagCache eTagCache = new ETagCache(WATCHLIST_ETAG_CACHE_ENTRIES);
+    private static OkHttpClient cachingHttpClient;     // Singleton, sharing the connection pool of the default one
+
     /**
      * Initialize the builder with IP Address & port specified in settings, along with its service path.
+     * Requests are spread over all the service's servers in settings, if more than one.
      */
     public WatchlistAPIBuilder() {
-        super(Settings.read().getWatchlistIpAddress(), Settings.read().getWatchlistPort(), "/watchlist-service", TAG);
+        super(Settings.current().getWatchlistIpAddress(), Settings.current().getWatchlistPort(), "/watchlist-service", TAG);
+
+        balancer.setEndpoints(Settings.current().getWatchlistEndpoints());
     }
 
     /**
-     * Build a new Retrofit WatchlistAPI Proxy instance.
+     * Get the Retrofit WatchlistAPI Proxy instance for the service location currently in settings.
+     * The same instance is reused for as long as that location does not change.
      *
-     * @return a new proxy instance for the Watchlist API
+     * @return a proxy instance for the Watchlist API
      */
     public WatchlistAPI build() {
 
-        return getRetrofit().create(WatchlistAPI.class);
+        return registry.get(this);
+    }
+
+    /**
+     * Get a singleton Http Client with a bounded on-disk cache and ETag revalidation, derived
+     * from the default one.
+     *
+     * @return the Watchlist service's Http Client
+     */
+    @Override
+    protected OkHttpClient getOkHttpClient() {
+
+        if (cachingHttpClient == null) {
+            File cacheDir = new File(Settings.getContext().getCacheDir(), "watchlist-http-cache");
+
+            OkHttpClient.Builder builder = super.getOkHttpClient().newBuilder()
+                    .cache(new Cache(cacheDir, WATCHLIST_HTTP_CACHE_SIZE));
+
+            builder.interceptors().add(0, eTagCache.getInterceptor());      // before logger, to log its header
+            builder.interceptors().add(1, balancer.getInterceptor());       // after ETag cache, which goes by the main server's url
+
+            cachingHttpClient = builder.build();
+        }
+
+        return cachingHttpClient;
+    }
+
+    /**
+     * Get the load balancer of the Watchlist service's servers.
+     *
+     * @return the balancer, along with its per-server latency & request counts
+     */
+    public static EndpointBalancer getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * Get the in-memory ETag cache of the Watchlist service's decoded responses.
+     *
+     * @return the ETag cache, along with its hit/miss/revalidate counters
+     */
+    public static ETagCache getETagCache() {
+        return eTagCache;
     }
 
 }
@@ -0,0 +1,49 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.util.List;
+
+/**
+ * Changes made to the securities of a watchlist since they were last obtained, as obtained
+ * by getWatchlistSecurityChanges.
+ *
+ * @author Rolande
+ */
+public class WatchlistChanges {
+    private final List<Security> changed;
+    private final List<String> removedSymbols;
+    private final boolean fullList;
+
+    /**
+     * @param changed Securities added or changed (or all securities, if fullList is true)
+     * @param removedSymbols Symbols of the securities removed (empty if fullList is true)
+     * @param fullList true if the whole list was obtained, rather than changes only
+     */
+    public WatchlistChanges(List<Security> changed, List<String> removedSymbols, boolean fullList) {
+        this.changed = changed;
+        this.removedSymbols = removedSymbols;
+        this.fullList = fullList;
+    }
+
+    public List<Security> getChanged() {
+        return changed;
+    }
+
+    public List<String> getRemovedSymbols() {
+        return removedSymbols;
+    }
+
+    public boolean isFullList() {
+        return fullList;
+    }
+
+    @Override
+    public String toString() {
+        return "WatchlistChanges{" +
+                "changed=" + changed.size() +
+                ", removed=" + removedSymbols.size() +
+                ", fullList=" + fullList +
+                '}';
+    }
+}
@@ -1,16 +1,35 @@
 package com.rolande.mywatchlists.api.watchlist;
 
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_BULK_MAX_SYMBOLS;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_MAX_CONCURRENT_READS;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_READ_DEADLINE;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_WRITE_DEADLINE;
 
+import com.rolande.mywatchlists.R;
 import com.rolande.mywatchlists.api.APIClient;
+import com.rolande.mywatchlists.api.APIException;
+import com.rolande.mywatchlists.api.APIFutures;
+import com.rolande.mywatchlists.model.Settings;
 import com.rolande.mywatchlists.model.beans.Security;
 import com.rolande.mywatchlists.model.beans.Watchlist;
 
 import android.content.Context;
+import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -18,6 +37,19 @@ import retrofit2.Response;
 
 /**
  * Client class responsible for all network interactions with the Watchlist Service.
+ * Calls are registered under the client's lifecycle scope (its context, by default), so that
+ * they can be cancelled once it ends. Reads and writes each have their own deadline.
+ *
+ * Changes (create, update & delete requests) that cannot reach the service are queued in the
+ * outbox and sent once it is back (see WatchlistOutbox). So are changes made while others are
+ * still queued, so that they all reach the service in order. Changes are not cancelled when
+ * the screen that made them goes away: once made, they are meant to reach the service.
+ *
+ * Symbols can also be added or deleted in bulk, a chunk of symbols per request.
+ *
+ * Every request is available as a CompletableFuture, for calls to be chained or run in
+ * parallel (see APIFutures); the listener-based ones only pass the future's outcome on.
+ * Cancelling a future cancels its call.
  *
  * @author Rolande
  */
@@ -25,10 +57,30 @@ import retrofit2.Response;
 public class WatchlistClient extends APIClient {
     final static String TAG = LOG_TAG_PREFIX + WatchlistClient.class.getSimpleName();
 
+    // Revision of the securities last obtained for each watchlist, by watchlist ID
+    private static final Map<Long, Long> revisions = new HashMap<>();
+
+    // Locations of the Watchlist service found not to take bulk requests (see sendSymbolChunk)
+    private static final Set<String> noBulkLocations = new HashSet<>();
+
+    // Lifecycle scope of the changes sent, which never ends (see CallRegistry)
+    private static final List<String> MUTATION_SCOPE = Collections.singletonList("watchlist changes");
+
     public WatchlistClient(Context context) {
         super(context, TAG);
     }
 
+    /**
+     * Create a client whose calls get cancelled when the given scope ends (see CallRegistry),
+     * rather than when the context's does.
+     *
+     * @param context Context of the client
+     * @param scope Lifecycle scope of the calls made (ex: a fragment)
+     */
+    public WatchlistClient(Context context, Object scope) {
+        super(context, scope, TAG);
+    }
+
     /**
      * Callback interface to pass on results of the getWatchlists request
      */
@@ -44,24 +96,48 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void getWatchlists(GetWatchlistsResponseListener listener) {
+        getWatchlists().whenComplete(new APIFutures.ListenerAdapter<List<Watchlist>>() {
+            @Override
+            protected void onResponse(List<Watchlist> watchlists) {
+                listener.onResponse(watchlists);
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                listener.onFailure(APIFutures.getErrorMessage(t));
+            }
+        });
+    }
+
+    /**
+     * Get the list of existing watchlists from the Watchlist server.
+     *
+     * @return future of the watchlists, failing with an APIException if they cannot be obtained
+     */
+    public CompletableFuture<List<Watchlist>> getWatchlists() {
         Call<WatchlistsAPIResponse> call = new WatchlistAPIBuilder().build().getWatchlists();
+        CompletableFuture<List<Watchlist>> future = newFuture(call);
 
-        call.enqueue(new Callback<WatchlistsAPIResponse>() {
+        enqueue(withDeadline(call, WATCHLIST_READ_DEADLINE), new Callback<WatchlistsAPIResponse>() {
 
             @Override
             public void onResponse(Call<WatchlistsAPIResponse> call, Response<WatchlistsAPIResponse> response) {
-                if (response.body() != null) {
+                // A '304 Not Modified' response reuses the list decoded last time
+                WatchlistsAPIResponse body = WatchlistAPIBuilder.eTagCache.getBody(call.request().url().toString(), response);
+
+                if (body != null) {
+                    getOutbox().replayNow();
+
                     List<Watchlist> watchlists = new ArrayList<>();     // set a non-null empty list to start with
 
-                    if (response.body().list != null) {
-                        watchlists.addAll(response.body().list);
+                    if (body.list != null) {
+                        watchlists.addAll(body.list);
                     }
 
-                    listener.onResponse(watchlists);
+                    future.complete(watchlists);
                 }
                 else {
-                    String errorMsg = getUIErrorMessage("Get Watchlists", response.code(), response.errorBody());
-                    listener.onFailure(errorMsg);
+                    future.completeExceptionally(getAPIException("Get Watchlists", response));
                 }
             }
 
@@ -70,10 +146,11 @@ public class WatchlistClient extends APIClient {
                 logOnFailureMessage("getWatchlists", null, t);
 
                 String errorMsg = "** Error connecting to Watchlist API -- Verify Settings";
-                listener.onFailure(errorMsg);
+                future.completeExceptionally(new APIException(errorMsg, 0));
             }
         });
 
+        return future;
     }
 
     /**
@@ -82,6 +159,7 @@ public class WatchlistClient extends APIClient {
     public interface AddWatchlistResponseListener {
         void onResponse(Watchlist watchlistAdded);
         void onFailure(String errorMsg);
+        void onQueued(String msg);
     }
 
     /**
@@ -93,23 +171,55 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void addWatchlist(String name, AddWatchlistResponseListener listener) {
+        addWatchlist(name).whenComplete(new APIFutures.ListenerAdapter<Watchlist>() {
+            @Override
+            protected void onResponse(Watchlist watchlistAdded) {
+                listener.onResponse(watchlistAdded);
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                if (t instanceof ChangeQueuedException) {
+                    listener.onQueued(t.getMessage());
+                }
+                else {
+                    listener.onFailure(APIFutures.getErrorMessage(t));
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends a request to add a new watchlist with given name to the watchlist server.
+     *
+     * @param name Name of the watchlist to add.
+     * @return future of the watchlist added, failing with a ChangeQueuedException if queued
+     *         in the outbox, or with an APIException if refused
+     */
+    public CompletableFuture<Watchlist> addWatchlist(String name) {
+        WatchlistMutation mutation = WatchlistMutation.addWatchlist(name);
+
+        if (queueBehindPending(mutation)) {
+            return APIFutures.failed(new ChangeQueuedException(getQueuedMessage()));
+        }
+
         Watchlist watchlist = new Watchlist(0L, name, new Date(), 0);
 
-        Call<Watchlist> call = new WatchlistAPIBuilder().build().addWatchlist(watchlist);
+        Call<Watchlist> call = new WatchlistAPIBuilder().build().addWatchlist(watchlist, mutation.getKey());
+        CompletableFuture<Watchlist> future = newFuture(call);
 
-        call.enqueue(new Callback<Watchlist>() {
+        enqueueMutation(mutation, call, new Callback<Watchlist>() {
             @Override
             public void onResponse(Call<Watchlist> call, Response<Watchlist> response) {
 
                 // if body is valid, get the new Watchlist object
                 if (response.body() != null) {
                     Watchlist watchlistAdded = response.body();
-                    listener.onResponse(watchlistAdded);
+                    future.complete(watchlistAdded);
                 }
                 else {
                     // A null body means failure, as newly added watchlist would be there if success
-                    String errorMsg = getUIErrorMessage("Add", response.code(), response.errorBody());
-                    listener.onFailure(errorMsg);
+                    future.completeExceptionally(getAPIException("Add", response));
                 }
             }
 
@@ -117,19 +227,44 @@ public class WatchlistClient extends APIClient {
             public void onFailure(Call<Watchlist> call, Throwable t) {
                 logOnFailureMessage("addWatchlist", name, t);
 
-                String errorMsg = "** Error adding list to API";
-                listener.onFailure(errorMsg);
+                future.completeExceptionally(new ChangeQueuedException(getQueuedMessage()));
             }
         });
+
+        return future;
     }
 
     /**
      * Callback interface to pass on results of requests that only return an HTTP status code
      * that indicates success or failure. Such is the case for updateWatchlist, deleteWatchlist and
-     * deleteSymbol requests.
+     * deleteSymbol requests. A change that could not reach the service is queued in the outbox
+     * (see WatchlistOutbox), which onQueued() tells.
      */
     public interface BooleanResponseListener {
         void onResponse(boolean success, String errorMsg);
+        void onQueued(String msg);
+    }
+
+    /**
+     * Get an adapter passing the outcome of a change's future on to a BooleanResponseListener.
+     */
+    private static APIFutures.ListenerAdapter<Void> adapt(BooleanResponseListener listener) {
+        return new APIFutures.ListenerAdapter<Void>() {
+            @Override
+            protected void onResponse(Void result) {
+                listener.onResponse(true, null);
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                if (t instanceof ChangeQueuedException) {
+                    listener.onQueued(t.getMessage());
+                }
+                else {
+                    listener.onResponse(false, APIFutures.getErrorMessage(t));
+                }
+            }
+        };
     }
 
     /**
@@ -139,18 +274,34 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void updateWatchlist(Watchlist newWatchlist, BooleanResponseListener listener) {
+        updateWatchlist(newWatchlist).whenComplete(adapt(listener));
+    }
+
+    /**
+     * Sends a request to update a given watchlist to the server.
+     *
+     * @param newWatchlist Watchlist object to update
+     * @return future completed once updated, failing with a ChangeQueuedException if queued
+     *         in the outbox, or with an APIException if refused
+     */
+    public CompletableFuture<Void> updateWatchlist(Watchlist newWatchlist) {
+        WatchlistMutation mutation = WatchlistMutation.updateWatchlist(newWatchlist);
+
+        if (queueBehindPending(mutation)) {
+            return APIFutures.failed(new ChangeQueuedException(getQueuedMessage()));
+        }
 
-        Call<Void> call = new WatchlistAPIBuilder().build().updateWatchlist(newWatchlist);
+        Call<Void> call = new WatchlistAPIBuilder().build().updateWatchlist(newWatchlist, mutation.getKey());
+        CompletableFuture<Void> future = newFuture(call);
 
-        call.enqueue(new Callback<Void>() {
+        enqueueMutation(mutation, call, new Callback<Void>() {
             @Override
             public void onResponse(Call<Void> call, Response<Void> response) {
                 if (response.isSuccessful()) {
-                    listener.onResponse(true, null);
+                    future.complete(null);
                 }
                 else {
-                    String errorMsg = getUIErrorMessage("Update", response.code(), response.errorBody());
-                    listener.onResponse(false, errorMsg);
+                    future.completeExceptionally(getAPIException("Update", response));
                 }
             }
 
@@ -159,11 +310,11 @@ public class WatchlistClient extends APIClient {
                 String args = newWatchlist.getId() + "," + newWatchlist.getName();
                 logOnFailureMessage("updateWatchlist", args, t);
 
-                String errorMsg = "** Error updating List from API";
-                listener.onResponse(false, errorMsg);
+                future.completeExceptionally(new ChangeQueuedException(getQueuedMessage()));
             }
         });
 
+        return future;
     }
 
     /**
@@ -173,18 +324,34 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void deleteWatchlist(long watchlistId, BooleanResponseListener listener) {
+        deleteWatchlist(watchlistId).whenComplete(adapt(listener));
+    }
+
+    /**
+     * Sends a request to delete the specified watchlist to the server.
+     *
+     * @param watchlistId ID of the watchlist to delete
+     * @return future completed once deleted, failing with a ChangeQueuedException if queued
+     *         in the outbox, or with an APIException if refused
+     */
+    public CompletableFuture<Void> deleteWatchlist(long watchlistId) {
+        WatchlistMutation mutation = WatchlistMutation.deleteWatchlist(watchlistId);
 
-        Call<Void> call = new WatchlistAPIBuilder().build().deleteWatchlist(watchlistId);
+        if (queueBehindPending(mutation)) {
+            return APIFutures.failed(new ChangeQueuedException(getQueuedMessage()));
+        }
 
-        call.enqueue(new Callback<Void>() {
+        Call<Void> call = new WatchlistAPIBuilder().build().deleteWatchlist(watchlistId, mutation.getKey());
+        CompletableFuture<Void> future = newFuture(call);
+
+        enqueueMutation(mutation, call, new Callback<Void>() {
             @Override
             public void onResponse(Call<Void> call, Response<Void> response) {
                 if (response.isSuccessful()) {
-                    listener.onResponse(true, null);
+                    future.complete(null);
                 }
                 else {
-                    String errorMsg = getUIErrorMessage("Delete", response.code(), response.errorBody());
-                    listener.onResponse(false, errorMsg);
+                    future.completeExceptionally(getAPIException("Delete", response));
                 }
             }
 
@@ -192,11 +359,11 @@ public class WatchlistClient extends APIClient {
             public void onFailure(Call<Void> call, Throwable t) {
                 logOnFailureMessage("deleteWatchlist", String.valueOf(watchlistId), t);
 
-                String errorMsg = "** Error deleting list from API";
-                listener.onResponse(false, errorMsg);
+                future.completeExceptionally(new ChangeQueuedException(getQueuedMessage()));
             }
         });
 
+        return future;
     }
 
     /**
@@ -214,24 +381,49 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void getWatchlistSecurities(Long watchlistId, GetWatchlistSecuritiesResponseListener listener) {
+        getWatchlistSecurities(watchlistId).whenComplete(new APIFutures.ListenerAdapter<List<Security>>() {
+            @Override
+            protected void onResponse(List<Security> securityList) {
+                listener.onResponse(securityList);
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                listener.onFailure(APIFutures.getErrorMessage(t));
+            }
+        });
+    }
+
+    /**
+     * Sends a request to obtain the list of securities of a given watchlist.
+     *
+     * @param watchlistId ID of the watchlist for which list of securities is wanted
+     * @return future of the securities, failing with an APIException if they cannot be obtained
+     */
+    public CompletableFuture<List<Security>> getWatchlistSecurities(Long watchlistId) {
         Call<WatchlistDetailAPIResponse> call = new WatchlistAPIBuilder().build().getWatchlist(watchlistId);
+        CompletableFuture<List<Security>> future = newFuture(call);
 
-        call.enqueue(new Callback<WatchlistDetailAPIResponse>() {
+        enqueue(withDeadline(call, WATCHLIST_READ_DEADLINE), new Callback<WatchlistDetailAPIResponse>() {
             @Override
             public void onResponse(Call<WatchlistDetailAPIResponse> call, Response<WatchlistDetailAPIResponse> response) {
+                // A '304 Not Modified' response reuses the securities decoded last time
+                WatchlistDetailAPIResponse body = WatchlistAPIBuilder.eTagCache.getBody(call.request().url().toString(), response);
+
+                if (body != null) {
+                    getOutbox().replayNow();
 
-                if (response.body() != null) {
                     List<Security> securityList = new ArrayList<>();  // provide empty security list if watchlist has none
 
-                    if (response.body().securities != null) {
-                        securityList.addAll(response.body().securities);
+                    if (body.securities != null) {
+                        securityList.addAll(body.securities);
                     }
 
-                    listener.onResponse(securityList);
+                    setRevision(watchlistId, body.revision);
+                    future.complete(securityList);
                 }
                 else {
-                    String errorMsg = getUIErrorMessage("Get Watchlist", response.code(), response.errorBody());
-                    listener.onFailure(errorMsg);
+                    future.completeExceptionally(getAPIException("Get Watchlist", response));
                 }
             }
 
@@ -240,10 +432,275 @@ public class WatchlistClient extends APIClient {
                 logOnFailureMessage("getWatchlistSecurities", watchlistId.toString(), t);
 
                 String errorMsg = "** Error getting watchlist from API";
-                listener.onFailure(errorMsg);
+                future.completeExceptionally(new APIException(errorMsg, 0));
             }
         });
 
+        return future;
+    }
+
+    /**
+     * Obtains the securities of several watchlists, with at most WATCHLIST_MAX_CONCURRENT_READS
+     * requests in flight at once.
+     *
+     * @param watchlistIds IDs of the watchlists for which securities are wanted
+     * @return future of the securities, by watchlist ID (in the order given)
+     */
+    public CompletableFuture<Map<Long, List<Security>>> getWatchlistSecurities(List<Long> watchlistIds) {
+        return getWatchlistSecurities(watchlistIds, WATCHLIST_MAX_CONCURRENT_READS);
+    }
+
+    /**
+     * Obtains the securities of several watchlists, with at most the given number of requests
+     * in flight at once. Should any of them fail, the others get cancelled and the returned
+     * future fails with the same error.
+     *
+     * @param watchlistIds IDs of the watchlists for which securities are wanted
+     * @param maxConcurrency Maximum number of requests in flight at once
+     * @return future of the securities, by watchlist ID (in the order given)
+     */
+    public CompletableFuture<Map<Long, List<Security>>> getWatchlistSecurities(List<Long> watchlistIds, int maxConcurrency) {
+        CompletableFuture<List<List<Security>>> all = APIFutures.mapBounded(watchlistIds, maxConcurrency,
+                new Function<Long, CompletableFuture<List<Security>>>() {
+                    @Override
+                    public CompletableFuture<List<Security>> apply(Long watchlistId) {
+                        return getWatchlistSecurities(watchlistId);
+                    }
+                });
+
+        return APIFutures.map(all, new Function<List<List<Security>>, Map<Long, List<Security>>>() {
+            @Override
+            public Map<Long, List<Security>> apply(List<List<Security>> securityLists) {
+                Map<Long, List<Security>> securitiesById = new LinkedHashMap<>();
+
+                for (int i = 0; i < watchlistIds.size(); i++) {
+                    securitiesById.put(watchlistIds.get(i), securityLists.get(i));
+                }
+
+                return securitiesById;
+            }
+        });
+    }
+
+    /**
+     * Callback interface to pass on results of the getWatchlistSecuritiesPage request
+     */
+    public interface GetWatchlistSecuritiesPageResponseListener {
+        /**
+         * @param page Securities of the page, in the watchlist's order
+         * @param offset Position of the page's first security in the watchlist
+         * @param total Number of securities in the watchlist, -1 if the server does not page
+         *              (i.e. the page holds them all)
+         */
+        void onResponse(List<Security> page, int offset, int total);
+        void onFailure(String errorMsg);
+    }
+
+    /**
+     * Sends a request to obtain a page of the securities of a given watchlist. The revision of
+     * the securities is kept along with the first page, for getWatchlistSecurityChanges.
+     *
+     * @param watchlistId ID of the watchlist for which securities are wanted
+     * @param offset Position of the first security wanted
+     * @param limit Maximum number of securities wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    public void getWatchlistSecuritiesPage(Long watchlistId, int offset, int limit, GetWatchlistSecuritiesPageResponseListener listener) {
+        getWatchlistSecuritiesPage(watchlistId, offset, limit).whenComplete(new APIFutures.ListenerAdapter<WatchlistPage>() {
+            @Override
+            protected void onResponse(WatchlistPage page) {
+                listener.onResponse(page.getSecurities(), page.getOffset(), page.getTotal());
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                listener.onFailure(APIFutures.getErrorMessage(t));
+            }
+        });
+    }
+
+    /**
+     * Sends a request to obtain a page of the securities of a given watchlist. The revision of
+     * the securities is kept along with the first page, for getWatchlistSecurityChanges.
+     *
+     * @param watchlistId ID of the watchlist for which securities are wanted
+     * @param offset Position of the first security wanted
+     * @param limit Maximum number of securities wanted
+     * @return future of the page, failing with an APIException if it cannot be obtained
+     */
+    public CompletableFuture<WatchlistPage> getWatchlistSecuritiesPage(Long watchlistId, int offset, int limit) {
+        Call<WatchlistDetailAPIResponse> call = new WatchlistAPIBuilder().build().getWatchlistPage(watchlistId, offset, limit);
+        CompletableFuture<WatchlistPage> future = newFuture(call);
+
+        enqueue(withDeadline(call, WATCHLIST_READ_DEADLINE), new Callback<WatchlistDetailAPIResponse>() {
+            @Override
+            public void onResponse(Call<WatchlistDetailAPIResponse> call, Response<WatchlistDetailAPIResponse> response) {
+                WatchlistDetailAPIResponse body = WatchlistAPIBuilder.eTagCache.getBody(call.request().url().toString(), response);
+
+                if (body != null) {
+                    getOutbox().replayNow();
+
+                    List<Security> page = new ArrayList<>();
+
+                    if (body.securities != null) {
+                        page.addAll(body.securities);
+                    }
+
+                    if (offset == 0) {
+                        setRevision(watchlistId, body.revision);
+                    }
+                    future.complete(new WatchlistPage(page, offset, (body.total != null) ? body.total : -1));
+                }
+                else {
+                    future.completeExceptionally(getAPIException("Get Watchlist", response));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<WatchlistDetailAPIResponse> call, Throwable t) {
+                logOnFailureMessage("getWatchlistSecuritiesPage", watchlistId + "," + offset, t);
+
+                String errorMsg = "** Error getting watchlist from API";
+                future.completeExceptionally(new APIException(errorMsg, 0));
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Callback interface to pass on results of the getWatchlistSecurityChanges request
+     */
+    public interface GetWatchlistSecurityChangesResponseListener {
+        /**
+         * @param changed Securities added or changed (or all securities, if fullList is true)
+         * @param removedSymbols Symbols of the securities removed (empty if fullList is true)
+         * @param fullList true if the whole list was obtained, rather than changes only
+         */
+        void onResponse(List<Security> changed, List<String> removedSymbols, boolean fullList);
+        void onFailure(String errorMsg);
+    }
+
+    /**
+     * Sends a request to obtain the changes made to the securities of a given watchlist since
+     * they were last obtained, so they can be applied to the list already loaded instead of
+     * reloading it all. If no revision is known for the watchlist yet, or if the server does
+     * not provide changes only, the whole list is obtained instead.
+     *
+     * @param watchlistId ID of the watchlist for which changes are wanted
+     * @param listener Object implementing the response's callback interface
+     */
+    public void getWatchlistSecurityChanges(Long watchlistId, GetWatchlistSecurityChangesResponseListener listener) {
+        getWatchlistSecurityChanges(watchlistId).whenComplete(new APIFutures.ListenerAdapter<WatchlistChanges>() {
+            @Override
+            protected void onResponse(WatchlistChanges changes) {
+                listener.onResponse(changes.getChanged(), changes.getRemovedSymbols(), changes.isFullList());
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                listener.onFailure(APIFutures.getErrorMessage(t));
+            }
+        });
+    }
+
+    /**
+     * Sends a request to obtain the changes made to the securities of a given watchlist since
+     * they were last obtained (see above).
+     *
+     * @param watchlistId ID of the watchlist for which changes are wanted
+     * @return future of the changes, failing with an APIException if they cannot be obtained
+     */
+    public CompletableFuture<WatchlistChanges> getWatchlistSecurityChanges(Long watchlistId) {
+        Long revision = revisions.get(watchlistId);
+
+        Call<WatchlistDetailAPIResponse> call = (revision != null)
+                ? new WatchlistAPIBuilder().build().getWatchlistChanges(watchlistId, revision)
+                : new WatchlistAPIBuilder().build().getWatchlist(watchlistId);
+        CompletableFuture<WatchlistChanges> future = newFuture(call);
+
+        enqueue(withDeadline(call, WATCHLIST_READ_DEADLINE), new Callback<WatchlistDetailAPIResponse>() {
+            @Override
+            public void onResponse(Call<WatchlistDetailAPIResponse> call, Response<WatchlistDetailAPIResponse> response) {
+                WatchlistChanges changes = getChanges(watchlistId, call.request().url().toString(), response);
+
+                if (changes != null) {
+                    getOutbox().replayNow();
+                    future.complete(changes);
+                }
+                else {
+                    future.completeExceptionally(getAPIException("Get Watchlist", response));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<WatchlistDetailAPIResponse> call, Throwable t) {
+                logOnFailureMessage("getWatchlistSecurityChanges", watchlistId.toString(), t);
+
+                String errorMsg = "** Error getting watchlist from API";
+                future.completeExceptionally(new APIException(errorMsg, 0));
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Get the changes given by a getWatchlistSecurityChanges response, keeping their revision.
+     * Without a revision, the request is the very one getWatchlistSecurities makes: its ETag
+     * is then sent along, and a '304 Not Modified' response reuses the list decoded last time.
+     *
+     * @param watchlistId ID of the watchlist involved
+     * @param url URL of the request
+     * @param response Response obtained
+     * @return changes, null if the response has none (i.e. the request failed)
+     */
+    static WatchlistChanges getChanges(Long watchlistId, String url, Response<WatchlistDetailAPIResponse> response) {
+        WatchlistDetailAPIResponse body = WatchlistAPIBuilder.eTagCache.getBody(url, response);
+
+        if (body == null) {
+            return null;
+        }
+
+        List<Security> changed = new ArrayList<>();
+        List<String> removedSymbols = new ArrayList<>();
+
+        if (body.securities != null) {
+            changed.addAll(body.securities);
+        }
+
+        if (body.delta && body.removedSymbols != null) {
+            removedSymbols.addAll(body.removedSymbols);
+        }
+
+        setRevision(watchlistId, body.revision);
+        return new WatchlistChanges(changed, removedSymbols, !body.delta);
+    }
+
+    /**
+     * Tell whether the revision of the securities last obtained for a watchlist is known, i.e.
+     * whether getWatchlistSecurityChanges would only get the changes made since.
+     *
+     * @param watchlistId ID of the watchlist involved
+     * @return true if known
+     */
+    public static boolean hasRevision(Long watchlistId) {
+        return revisions.containsKey(watchlistId);
+    }
+
+    /**
+     * Keep the revision of the securities just obtained for a watchlist, if the server provided one.
+     *
+     * @param watchlistId ID of the watchlist involved
+     * @param revision Revision of the securities obtained, null if none provided
+     */
+    private static void setRevision(Long watchlistId, Long revision) {
+        if (revision != null) {
+            revisions.put(watchlistId, revision);
+        }
+        else {
+            revisions.remove(watchlistId);
+        }
     }
 
     /**
@@ -252,6 +709,7 @@ public class WatchlistClient extends APIClient {
     public interface AddSymbolResponseListener {
         void onResponse(Security securityAdded);
         void onFailure(String errorMsg);
+        void onQueued(String msg);
     }
 
     /**
@@ -262,18 +720,51 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void addSymbol(Long watchlistId, String symbol, AddSymbolResponseListener listener) {
-        Call<Security> call = new WatchlistAPIBuilder().build().addSecurity(watchlistId, symbol);
+        addSymbol(watchlistId, symbol).whenComplete(new APIFutures.ListenerAdapter<Security>() {
+            @Override
+            protected void onResponse(Security securityAdded) {
+                listener.onResponse(securityAdded);
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                if (t instanceof ChangeQueuedException) {
+                    listener.onQueued(t.getMessage());
+                }
+                else {
+                    listener.onFailure(APIFutures.getErrorMessage(t));
+                }
+            }
+        });
+    }
 
-        call.enqueue(new Callback<Security>() {
+    /**
+     * Sends a request to add a symbol to a given watchlist to the watchlist server.
+     *
+     * @param watchlistId ID of the watchlist to add to.
+     * @param symbol The symbol of the security to add.
+     * @return future of the security added, failing with a ChangeQueuedException if queued
+     *         in the outbox, or with an APIException if refused
+     */
+    public CompletableFuture<Security> addSymbol(Long watchlistId, String symbol) {
+        WatchlistMutation mutation = WatchlistMutation.addSymbol(watchlistId, symbol);
+
+        if (queueBehindPending(mutation)) {
+            return APIFutures.failed(new ChangeQueuedException(getQueuedMessage()));
+        }
+
+        Call<Security> call = new WatchlistAPIBuilder().build().addSecurity(watchlistId, symbol, mutation.getKey());
+        CompletableFuture<Security> future = newFuture(call);
+
+        enqueueMutation(mutation, call, new Callback<Security>() {
             @Override
             public void onResponse(Call<Security> call, Response<Security> response) {
                 if (response.body() != null) {
                     Security securityAdded = response.body();
-                    listener.onResponse(securityAdded);
+                    future.complete(securityAdded);
                 }
                 else {
-                    String errorMsg = getUIErrorMessage("Add", response.code(), response.errorBody());
-                    listener.onFailure(errorMsg);
+                    future.completeExceptionally(getAPIException("Add", response));
                 }
             }
 
@@ -282,10 +773,11 @@ public class WatchlistClient extends APIClient {
                 String args = watchlistId.toString() + "," + symbol;
                 logOnFailureMessage("addSymbol", args,  t);
 
-                String errorMsg = "** Error adding symbol to list (API)";
-                listener.onFailure(errorMsg);
+                future.completeExceptionally(new ChangeQueuedException(getQueuedMessage()));
             }
         });
+
+        return future;
     }
 
     /**
@@ -296,18 +788,35 @@ public class WatchlistClient extends APIClient {
      * @param listener Object implementing the response's callback interface
      */
     public void deleteSymbol(Long watchlistId, String symbol, BooleanResponseListener listener) {
+        deleteSymbol(watchlistId, symbol).whenComplete(adapt(listener));
+    }
 
-        Call<Void> call = new WatchlistAPIBuilder().build().deleteSecurity(watchlistId, symbol);
+    /**
+     * Sends a request to delete a symbol from a given watchlist to the watchlist server.
+     *
+     * @param watchlistId ID of the watchlist involved
+     * @param symbol Symbol of the security to delete from the watchlist
+     * @return future completed once deleted, failing with a ChangeQueuedException if queued
+     *         in the outbox, or with an APIException if refused
+     */
+    public CompletableFuture<Void> deleteSymbol(Long watchlistId, String symbol) {
+        WatchlistMutation mutation = WatchlistMutation.deleteSymbol(watchlistId, symbol);
 
-        call.enqueue(new Callback<Void>() {
+        if (queueBehindPending(mutation)) {
+            return APIFutures.failed(new ChangeQueuedException(getQueuedMessage()));
+        }
+
+        Call<Void> call = new WatchlistAPIBuilder().build().deleteSecurity(watchlistId, symbol, mutation.getKey());
+        CompletableFuture<Void> future = newFuture(call);
+
+        enqueueMutation(mutation, call, new Callback<Void>() {
             @Override
             public void onResponse(Call<Void> call, Response<Void> response) {
                 if (response.isSuccessful()) {
-                    listener.onResponse(true, null);
+                    future.complete(null);
                 }
                 else {
-                    String errorMsg = getUIErrorMessage("Delete", response.code(), response.errorBody());
-                    listener.onResponse(false, errorMsg);
+                    future.completeExceptionally(getAPIException("Delete", response));
                 }
             }
 
@@ -316,8 +825,394 @@ public class WatchlistClient extends APIClient {
                 String args = watchlistId.toString() + "," + symbol;
                 logOnFailureMessage("deleteSymbol", args,  t);
 
-                String errorMsg = "** Error deleting symbol from list (API)";
-                listener.onResponse(false, errorMsg);
+                future.completeExceptionally(new ChangeQueuedException(getQueuedMessage()));
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Callback interface to pass on results of the addSymbols and removeSymbols requests
+     */
+    public interface SymbolsResponseListener {
+        /**
+         * @param results One result per symbol, in the order sent
+         */
+        void onResponse(List<SymbolResult> results);
+    }
+
+    /**
+     * Get an adapter passing the outcome of a bulk change's future on to a SymbolsResponseListener.
+     * Such a future only fails when cancelled, as each symbol has its own result.
+     */
+    private static APIFutures.ListenerAdapter<List<SymbolResult>> adapt(SymbolsResponseListener listener) {
+        return new APIFutures.ListenerAdapter<List<SymbolResult>>() {
+            @Override
+            protected void onResponse(List<SymbolResult> results) {
+                listener.onResponse(results);
+            }
+
+            @Override
+            protected void onFailure(Throwable t) {
+                Log.e(TAG, "Unexpected bulk change failure: " + t);
+            }
+        };
+    }
+
+    /**
+     * Sends requests to add several symbols to a given watchlist to the watchlist server, a
+     * chunk of symbols per request, one chunk after the other.
+     *
+     * @param watchlistId ID of the watchlist to add to.
+     * @param symbols Symbols of the securities to add
+     * @param listener Object implementing the response's callback interface, called once all chunks are done
+     */
+    public void addSymbols(Long watchlistId, List<String> symbols, SymbolsResponseListener listener) {
+        addSymbols(watchlistId, symbols).whenComplete(adapt(listener));
+    }
+
+    /**
+     * Sends requests to add several symbols to a given watchlist (see above).
+     *
+     * @param watchlistId ID of the watchlist to add to.
+     * @param symbols Symbols of the securities to add
+     * @return future of the results, one per symbol in the order sent, once all chunks are done
+     */
+    public CompletableFuture<List<SymbolResult>> addSymbols(Long watchlistId, List<String> symbols) {
+        CompletableFuture<List<SymbolResult>> future = new CompletableFuture<>();
+        sendSymbolChunks(true, watchlistId, symbols, 0, new ArrayList<>(), future);
+
+        return future;
+    }
+
+    /**
+     * Sends requests to delete several symbols from a given watchlist to the watchlist server,
+     * a chunk of symbols per request, one chunk after the other.
+     *
+     * @param watchlistId ID of the watchlist involved
+     * @param symbols Symbols of the securities to delete
+     * @param listener Object implementing the response's callback interface, called once all chunks are done
+     */
+    public void removeSymbols(Long watchlistId, List<String> symbols, SymbolsResponseListener listener) {
+        removeSymbols(watchlistId, symbols).whenComplete(adapt(listener));
+    }
+
+    /**
+     * Sends requests to delete several symbols from a given watchlist (see above).
+     *
+     * @param watchlistId ID of the watchlist involved
+     * @param symbols Symbols of the securities to delete
+     * @return future of the results, one per symbol in the order sent, once all chunks are done
+     */
+    public CompletableFuture<List<SymbolResult>> removeSymbols(Long watchlistId, List<String> symbols) {
+        CompletableFuture<List<SymbolResult>> future = new CompletableFuture<>();
+        sendSymbolChunks(false, watchlistId, symbols, 0, new ArrayList<>(), future);
+
+        return future;
+    }
+
+    private void sendSymbolChunks(boolean add, Long watchlistId, List<String> symbols, int from,
+                                  List<SymbolResult> results, CompletableFuture<List<SymbolResult>> future) {
+        if (future.isDone()) {
+            return;                                     // cancelled (or timed out) meanwhile
+        }
+
+        if (from >= symbols.size()) {
+            future.complete(results);
+            return;
+        }
+
+        List<String> chunk = new ArrayList<>(symbols.subList(from, Math.min(from + WATCHLIST_BULK_MAX_SYMBOLS, symbols.size())));
+        CompletableFuture<List<SymbolResult>> chunkFuture = sendSymbolChunk(add, watchlistId, chunk);
+
+        chunkFuture.whenComplete(new BiConsumer<List<SymbolResult>, Throwable>() {
+            @Override
+            public void accept(List<SymbolResult> chunkResults, Throwable t) {
+                if (t != null) {
+                    future.completeExceptionally(APIFutures.unwrap(t));
+                    return;
+                }
+
+                results.addAll(chunkResults);
+                sendSymbolChunks(add, watchlistId, symbols, from + chunk.size(), results, future);
+            }
+        });
+
+        future.whenComplete(new BiConsumer<List<SymbolResult>, Throwable>() {
+            @Override
+            public void accept(List<SymbolResult> list, Throwable t) {
+                chunkFuture.cancel(false);              // no-op once the chunk is done
+            }
+        });
+    }
+
+    /**
+     * Sends a chunk of symbols to add (or delete) in a single request, falling back to a
+     * request per symbol if the service does not take bulk requests (which is remembered for
+     * the service's location). Symbols that cannot reach the service are queued in the outbox,
+     * each with the idempotency key it was sent with in the chunk.
+     *
+     * @return future of the chunk's results, one per symbol, only failing if cancelled
+     */
+    private CompletableFuture<List<SymbolResult>> sendSymbolChunk(boolean add, Long watchlistId, List<String> chunk) {
+        List<WatchlistMutation> mutations = new ArrayList<>();
+        StringBuilder keys = new StringBuilder();
+
+        for (String symbol : chunk) {
+            WatchlistMutation mutation = add ? WatchlistMutation.addSymbol(watchlistId, symbol) : WatchlistMutation.deleteSymbol(watchlistId, symbol);
+
+            mutations.add(mutation);
+            keys.append((keys.length() > 0) ? ", " : "").append(mutation.getKey());
+        }
+
+        if (!getOutbox().isEmpty()) {
+            return CompletableFuture.completedFuture(queueAll(mutations));
+        }
+
+        String location = getServiceLocation();
+
+        if (!isBulkSupported(location)) {
+            return sendSymbolsOneByOne(add, watchlistId, chunk);
+        }
+
+        WatchlistAPI api = new WatchlistAPIBuilder().build();
+        Call<SymbolsAPIResponse> call = add ? api.addSecurities(watchlistId, chunk, keys.toString())
+                                            : api.deleteSecurities(watchlistId, chunk, keys.toString());
+        CompletableFuture<List<SymbolResult>> future = newFuture(call);
+
+        enqueueMutation(mutations, call, new Callback<SymbolsAPIResponse>() {
+            @Override
+            public void onResponse(Call<SymbolsAPIResponse> call, Response<SymbolsAPIResponse> response) {
+                if (response.code() == 405 || response.code() == 501) {
+                    // Service without bulk requests, fall back to a request per symbol from now on
+                    setBulkUnsupported(location);
+                    APIFutures.forward(sendSymbolsOneByOne(add, watchlistId, chunk), future);
+                }
+                else if (response.body() != null && response.body().list != null) {
+                    future.complete(response.body().list);
+                }
+                else {
+                    String errorMsg = getUIErrorMessage(add ? "Add" : "Delete", response.code(), response.errorBody());
+                    List<SymbolResult> failed = new ArrayList<>();
+
+                    for (String symbol : chunk) {
+                        failed.add(new SymbolResult(symbol, null, errorMsg));
+                    }
+                    future.complete(failed);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<SymbolsAPIResponse> call, Throwable t) {
+                logOnFailureMessage(add ? "addSymbols" : "removeSymbols", watchlistId + "," + chunk, t);
+
+                List<SymbolResult> queued = new ArrayList<>();
+
+                for (String symbol : chunk) {
+                    queued.add(SymbolResult.queued(symbol));
+                }
+                future.complete(queued);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * @return location of the Watchlist service currently in settings
+     */
+    private static String getServiceLocation() {
+        return Settings.current().getWatchlistIpAddress() + ":" + Settings.current().getWatchlistPort();
+    }
+
+    private static boolean isBulkSupported(String location) {
+        synchronized (noBulkLocations) {
+            return !noBulkLocations.contains(location);
+        }
+    }
+
+    private static void setBulkUnsupported(String location) {
+        synchronized (noBulkLocations) {
+            if (noBulkLocations.add(location)) {
+                Log.i(TAG, "No bulk requests at " + location + ", sending a request per symbol");
+            }
+        }
+    }
+
+    /**
+     * Sends a request per symbol, all at once, for a service that does not take bulk requests.
+     */
+    private CompletableFuture<List<SymbolResult>> sendSymbolsOneByOne(boolean add, Long watchlistId, List<String> symbols) {
+        List<CompletableFuture<SymbolResult>> futures = new ArrayList<>();
+
+        for (String symbol : symbols) {
+            CompletableFuture<SymbolResult> symbolFuture = new CompletableFuture<>();
+            CompletableFuture<?> sent = add ? addSymbol(watchlistId, symbol) : deleteSymbol(watchlistId, symbol);
+
+            sent.whenComplete(new BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object result, Throwable t) {
+                    Throwable cause = APIFutures.unwrap(t);
+
+                    if (cause == null) {
+                        symbolFuture.complete(new SymbolResult(symbol, (Security) result, null));
+                    }
+                    else if (cause instanceof ChangeQueuedException) {
+                        symbolFuture.complete(SymbolResult.queued(symbol));
+                    }
+                    else if (cause instanceof CancellationException) {
+                        symbolFuture.cancel(false);
+                    }
+                    else {
+                        symbolFuture.complete(new SymbolResult(symbol, null, APIFutures.getErrorMessage(cause)));
+                    }
+                }
+            });
+
+            symbolFuture.whenComplete(new BiConsumer<SymbolResult, Throwable>() {
+                @Override
+                public void accept(SymbolResult result, Throwable t) {
+                    sent.cancel(false);
+                }
+            });
+
+            futures.add(symbolFuture);
+        }
+
+        return APIFutures.allAsList(futures);
+    }
+
+    /**
+     * Queue changes in the outbox, to be sent once the service is back.
+     *
+     * @param mutations Changes to queue, about a symbol each
+     * @return one result per symbol, telling it was queued
+     */
+    private List<SymbolResult> queueAll(List<WatchlistMutation> mutations) {
+        List<SymbolResult> results = new ArrayList<>();
+
+        for (WatchlistMutation mutation : mutations) {
+            getOutbox().add(mutation);
+            results.add(SymbolResult.queued(mutation.getSymbol()));
+        }
+
+        return results;
+    }
+
+    private WatchlistOutbox getOutbox() {
+        return WatchlistOutbox.getInstance(context);
+    }
+
+    private String getQueuedMessage() {
+        return context.getResources().getString(R.string.msg_watchlist_change_queued);
+    }
+
+    /**
+     * Get the failure of a request the service refused, with an error message suitable for UI
+     * display (see getUIErrorMessage).
+     */
+    private APIException getAPIException(String serviceCalled, Response<?> response) {
+        return new APIException(getUIErrorMessage(serviceCalled, response.code(), response.errorBody()), response.code());
+    }
+
+    /**
+     * Queue a change in the outbox rather than sending it now, if others are already queued,
+     * so that it does not overtake them.
+     *
+     * @param mutation Change about to be sent
+     * @return true if queued, false if it can be sent now
+     */
+    private boolean queueBehindPending(WatchlistMutation mutation) {
+        WatchlistOutbox outbox = getOutbox();
+
+        if (outbox.isEmpty()) {
+            return false;
+        }
+
+        outbox.add(mutation);
+        return true;
+    }
+
+    /**
+     * Send a change. Should it fail to reach the service (including timing out), it is queued
+     * in the outbox before the callback gets the failure, and sent again with the same
+     * idempotency key.
+     *
+     * The call belongs to no screen, so that leaving the screen does not cancel it halfway:
+     * it may have reached the service already, and queuing it again would send it twice. A
+     * call cancelled on purpose (i.e. its future cancelled or timed out) is not queued either.
+     *
+     * @param mutation Change sent
+     * @param call Call sending the change
+     * @param callback Callback to call with the outcome, unless the call gets cancelled
+     * @param <T> Type of the response's body
+     */
+    private <T> void enqueueMutation(WatchlistMutation mutation, Call<T> call, Callback<T> callback) {
+        enqueueMutation(Collections.singletonList(mutation), call, callback);
+    }
+
+    /**
+     * Send several changes in a single call (see enqueueMutation above).
+     */
+    private <T> void enqueueMutation(List<WatchlistMutation> mutations, Call<T> call, Callback<T> callback) {
+        enqueue(withDeadline(call, WATCHLIST_WRITE_DEADLINE), MUTATION_SCOPE, new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                for (WatchlistMutation mutation : mutations) {
+                    mutation.setMaybeDelivered();
+                    getOutbox().add(mutation);
+                }
+                callback.onFailure(call, t);
+            }
+        });
+    }
+
+    /**
+     * Callback interface to pass on results of the sendMutation request
+     */
+    interface MutationResponseListener {
+        /**
+         * @param httpCode HTTP response status code, 0 if no response was received
+         * @param errorMsg Error message suitable for UI display, null if successful
+         */
+        void onResponse(int httpCode, String errorMsg);
+    }
+
+    /**
+     * Sends a change queued in the outbox to the watchlist server.
+     *
+     * @param mutation Change to send
+     * @param listener Object implementing the response's callback interface
+     */
+    void sendMutation(WatchlistMutation mutation, MutationResponseListener listener) {
+        sendMutation(mutation, mutation.newCall(new WatchlistAPIBuilder().build()), listener);
+    }
+
+    private <T> void sendMutation(WatchlistMutation mutation, Call<T> call, MutationResponseListener listener) {
+
+        enqueue(withDeadline(call, WATCHLIST_WRITE_DEADLINE), MUTATION_SCOPE, new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if (response.isSuccessful()) {
+                    listener.onResponse(response.code(), null);
+                }
+                else {
+                    String errorMsg = getUIErrorMessage(mutation.toString(), response.code(), response.errorBody());
+                    listener.onResponse(response.code(), errorMsg);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                logOnFailureMessage("sendMutation", mutation.toString(), t);
+
+                listener.onResponse(0, null);
             }
         });
     }
@@ -9,7 +9,11 @@ import java.util.Date;
 
 /**
  * Mapping of a single Watchlist API Response from JSON to Java.
- * Format of the Response includes all securities associated with a watchlist.
+ * Format of the Response includes all securities associated with a watchlist, unless
+ * changes since a given revision were asked for. In that case, 'delta' is true and the
+ * response only includes securities added or changed since then, along with the symbols
+ * of those removed. When a page of securities was asked for, 'total' gives their total count
+ * (it is left out by servers that do not page, and then includes them all).
  *
  * @author Rolande
  */
@@ -29,4 +33,16 @@ public class WatchlistDetailAPIResponse implements Serializable {
 
     @SerializedName("environment")
     private String environment;
+
+    @SerializedName("total")
+    public Integer total;
+
+    @SerializedName("revision")
+    public Long revision;
+
+    @SerializedName("delta")
+    public boolean delta;
+
+    @SerializedName("removed_symbols")
+    public ArrayList<String> removedSymbols;
 }
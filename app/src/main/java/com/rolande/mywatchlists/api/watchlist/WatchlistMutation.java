@@ -0,0 +1,168 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import java.util.Date;
+import java.util.UUID;
+
+import retrofit2.Call;
+
+/**
+ * A change made to the watchlists (i.e. a create, update or delete request), as kept in the
+ * outbox until the Watchlist Service gets it (see WatchlistOutbox).
+ *
+ * Each change has a key of its own, sent along with it on every attempt, for the service to
+ * apply it only once should an attempt that timed out have reached it after all. For a
+ * service not honouring the key, a change that may have been delivered already also takes
+ * "already done" errors (see isAlreadyApplied) as success when sent again.
+ *
+ * @author Rolande
+ */
+public class WatchlistMutation {
+
+    public enum Type { ADD_WATCHLIST, UPDATE_WATCHLIST, DELETE_WATCHLIST, ADD_SYMBOL, DELETE_SYMBOL }
+
+    private Type type;
+    private long watchlistId;           // watchlist involved, 0 for ADD_WATCHLIST
+    private String name;                // name of the watchlist to add, for ADD_WATCHLIST
+    private Watchlist watchlist;        // updated watchlist, for UPDATE_WATCHLIST
+    private String symbol;              // symbol involved, for ADD_SYMBOL & DELETE_SYMBOL
+    private String key = UUID.randomUUID().toString();     // idempotency key, kept when saved
+    private boolean maybeDelivered;     // true once an attempt may have reached the service
+
+    private WatchlistMutation() {
+    }
+
+    private WatchlistMutation(Type type, long watchlistId) {
+        this.type = type;
+        this.watchlistId = watchlistId;
+    }
+
+    public static WatchlistMutation addWatchlist(String name) {
+        WatchlistMutation mutation = new WatchlistMutation(Type.ADD_WATCHLIST, 0);
+        mutation.name = name;
+
+        return mutation;
+    }
+
+    public static WatchlistMutation updateWatchlist(Watchlist watchlist) {
+        WatchlistMutation mutation = new WatchlistMutation(Type.UPDATE_WATCHLIST, watchlist.getId());
+        mutation.watchlist = watchlist;
+
+        return mutation;
+    }
+
+    public static WatchlistMutation deleteWatchlist(long watchlistId) {
+        return new WatchlistMutation(Type.DELETE_WATCHLIST, watchlistId);
+    }
+
+    public static WatchlistMutation addSymbol(long watchlistId, String symbol) {
+        WatchlistMutation mutation = new WatchlistMutation(Type.ADD_SYMBOL, watchlistId);
+        mutation.symbol = symbol;
+
+        return mutation;
+    }
+
+    public static WatchlistMutation deleteSymbol(long watchlistId, String symbol) {
+        WatchlistMutation mutation = new WatchlistMutation(Type.DELETE_SYMBOL, watchlistId);
+        mutation.symbol = symbol;
+
+        return mutation;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getWatchlistId() {
+        return watchlistId;
+    }
+
+    public String getName() {
+        return (type == Type.UPDATE_WATCHLIST) ? watchlist.getName() : name;
+    }
+
+    public Watchlist getWatchlist() {
+        return watchlist;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    boolean isMaybeDelivered() {
+        return maybeDelivered;
+    }
+
+    /**
+     * Note that an attempt to send this mutation may have reached the service (i.e. it was
+     * sent but no response came back).
+     */
+    void setMaybeDelivered() {
+        maybeDelivered = true;
+    }
+
+    /**
+     * Tell whether an error response only means an earlier attempt of this mutation went
+     * through, e.g. a symbol added twice, or a watchlist deleted twice.
+     *
+     * @param httpCode HTTP response status code
+     * @return true if the mutation may be taken as sent
+     */
+    boolean isAlreadyApplied(int httpCode) {
+        if (!maybeDelivered) {
+            return false;
+        }
+
+        switch (type) {
+            case ADD_SYMBOL:
+                return httpCode == 409;
+            case DELETE_WATCHLIST:
+            case DELETE_SYMBOL:
+                return httpCode == 404;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Tell whether this mutation is about the same symbol of the same watchlist as another.
+     *
+     * @param other Other mutation
+     * @return true if both involve the same symbol
+     */
+    boolean isSameSymbol(WatchlistMutation other) {
+        return symbol != null && watchlistId == other.watchlistId && symbol.equalsIgnoreCase(other.symbol);
+    }
+
+    /**
+     * Create the request sending this mutation to the Watchlist Service.
+     *
+     * @param api Watchlist API to use
+     * @return call not sent yet
+     */
+    Call<?> newCall(WatchlistAPI api) {
+        switch (type) {
+            case ADD_WATCHLIST:
+                return api.addWatchlist(new Watchlist(0L, name, new Date(), 0), key);
+            case UPDATE_WATCHLIST:
+                return api.updateWatchlist(watchlist, key);
+            case DELETE_WATCHLIST:
+                return api.deleteWatchlist(watchlistId, key);
+            case ADD_SYMBOL:
+                return api.addSecurity(watchlistId, symbol, key);
+            default:
+                return api.deleteSecurity(watchlistId, symbol, key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + ((type == Type.ADD_WATCHLIST) ? name : String.valueOf(watchlistId)) +
+                ((symbol != null) ? "," + symbol : "") + ")";
+    }
+}
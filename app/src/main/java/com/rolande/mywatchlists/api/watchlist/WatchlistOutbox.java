@@ -0,0 +1,357 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_OUTBOX_MAX_BACKOFF;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_OUTBOX_MIN_BACKOFF;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.rolande.mywatchlists.api.gson.ApiTypeAdapters;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Persistent, ordered queue of the watchlist changes that could not reach the Watchlist
+ * Service (i.e. it was unreachable), replayed in order once it is back. Changes made while
+ * others are still queued are queued behind them, so that the service always gets them in
+ * the order they were made.
+ *
+ * The queue is saved to a file on every change (atomically: written to a new file first, then
+ * renamed over the previous one, so that a crash never leaves it half written) and reloaded
+ * when the app starts. Redundant changes are merged as they are queued: adding then deleting
+ * the same symbol cancels out (unless the add may have reached the service already, in which
+ * case the delete is queued behind it), and repeated updates of the same watchlist collapse
+ * into the last one.
+ *
+ * Replay is retried with a jittered, doubling backoff while the service stays unreachable,
+ * and right away whenever another request gets through. Changes the service refuses
+ * (ex: symbol unknown) are dropped, and listeners told. A change sent again keeps its
+ * idempotency key, and one refused only because an earlier attempt got through after all
+ * (see WatchlistMutation.isAlreadyApplied) counts as sent.
+ *
+ * Note: Meant to be used from the main thread only.
+ *
+ * @author Rolande
+ */
+public class WatchlistOutbox {
+    final static String TAG = LOG_TAG_PREFIX + WatchlistOutbox.class.getSimpleName();
+
+    private static final String FILE_NAME = "watchlist-outbox.json";
+
+    /**
+     * Sends the changes replayed (see WatchlistClient.sendMutation)
+     */
+    interface Sender {
+        void send(WatchlistMutation mutation, WatchlistClient.MutationResponseListener listener);
+    }
+
+    /**
+     * Callback interface to pass on the outcome of replayed changes
+     */
+    public interface Listener {
+        void onMutationSent(WatchlistMutation mutation);
+        void onMutationRejected(WatchlistMutation mutation, String errorMsg);
+    }
+
+    private static WatchlistOutbox instance;
+
+    private final Sender sender;
+    private final File file;
+    private final File newFile;                 // file being written, until renamed over the other
+    private final Gson gson = ApiTypeAdapters.register(new GsonBuilder()).create();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<WatchlistMutation> queue = new ArrayList<>();
+    private WatchlistMutation sending;          // head of the queue, while being sent
+    private long backoff;                       // current backoff delay, before jitter, in milliseconds
+
+    private final Runnable replayRunnable = new Runnable() {
+        @Override
+        public void run() {
+            replay();
+        }
+    };
+
+    private WatchlistOutbox(Context context) {
+        this(new Sender() {
+            private final WatchlistClient client = new WatchlistClient(context, WatchlistOutbox.class);
+
+            @Override
+            public void send(WatchlistMutation mutation, WatchlistClient.MutationResponseListener listener) {
+                client.sendMutation(mutation, listener);
+            }
+        }, new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Create an outbox saved to the given file, loading what it holds.
+     *
+     * @param sender Sender of the changes replayed
+     * @param file File to save the queue to
+     */
+    WatchlistOutbox(Sender sender, File file) {
+        this.sender = sender;
+        this.file = file;
+        this.newFile = new File(file.getPath() + ".new");
+
+        load();
+    }
+
+    /**
+     * Get the outbox, loading what was left queued by a previous run on first use.
+     *
+     * @param context Any context (application context is kept)
+     * @return the outbox
+     */
+    public static synchronized WatchlistOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new WatchlistOutbox(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Queue a change, merging it with those already queued when redundant, and save the queue.
+     * Replay starts right away if not already under way.
+     *
+     * @param mutation Change to queue
+     */
+    public void add(WatchlistMutation mutation) {
+        if (merge(mutation)) {
+            Log.i(TAG, "Merged " + mutation + ", " + queue.size() + " change(s) queued");
+        }
+        else {
+            queue.add(mutation);
+            Log.i(TAG, "Queued " + mutation + ", " + queue.size() + " change(s) queued");
+        }
+
+        save();
+        scheduleReplay(0);
+    }
+
+    /**
+     * Merge a change with those queued (but not being sent), when redundant.
+     *
+     * @param mutation Change to queue
+     * @return true if fully merged, false if it must still be queued
+     */
+    private boolean merge(WatchlistMutation mutation) {
+        switch (mutation.getType()) {
+            case ADD_SYMBOL:
+            case DELETE_SYMBOL:
+                // Only the symbol's last change queued matters, the new one coming right after it
+                for (int i = queue.size() - 1; i >= 0; i--) {
+                    WatchlistMutation queued = queue.get(i);
+
+                    if (!queued.isSameSymbol(mutation)) {
+                        continue;
+                    }
+
+                    if (queued == sending) {
+                        return false;
+                    }
+                    if (queued.getType() == mutation.getType()) {
+                        return true;                        // same change already queued
+                    }
+                    if (queued.isMaybeDelivered()) {
+                        return false;                       // may have been applied, so it must be undone
+                    }
+
+                    queue.remove(i);                        // add then delete (or the reverse) cancels out
+                    return true;
+                }
+                return false;
+
+            case UPDATE_WATCHLIST:
+                for (int i = 0; i < queue.size(); i++) {
+                    WatchlistMutation queued = queue.get(i);
+
+                    if (queued != sending && queued.getType() == WatchlistMutation.Type.UPDATE_WATCHLIST &&
+                            queued.getWatchlistId() == mutation.getWatchlistId()) {
+                        queue.set(i, mutation);             // last update wins
+                        return true;
+                    }
+                }
+                return false;
+
+            case DELETE_WATCHLIST:
+                // Nothing else queued for that watchlist matters anymore
+                for (Iterator<WatchlistMutation> it = queue.iterator(); it.hasNext(); ) {
+                    WatchlistMutation queued = it.next();
+
+                    if (queued != sending && queued.getWatchlistId() == mutation.getWatchlistId()) {
+                        it.remove();
+                    }
+                }
+                return false;
+
+            default:
+                for (WatchlistMutation queued : queue) {
+                    if (queued != sending && queued.getType() == WatchlistMutation.Type.ADD_WATCHLIST &&
+                            queued.getName().equalsIgnoreCase(mutation.getName())) {
+                        return true;                        // same watchlist already queued
+                    }
+                }
+                return false;
+        }
+    }
+
+    /**
+     * Replay queued changes right away rather than after their backoff delay, e.g. when the
+     * Watchlist Service just answered another request, or upon startup.
+     */
+    public void replayNow() {
+        if (!queue.isEmpty() && sending == null) {
+            scheduleReplay(0);
+        }
+    }
+
+    private void scheduleReplay(long delay) {
+        handler.removeCallbacks(replayRunnable);
+        handler.postDelayed(replayRunnable, delay);
+    }
+
+    /**
+     * Send the change at the head of the queue, then the next one once it went through.
+     */
+    void replay() {
+        if (queue.isEmpty() || sending != null) {
+            return;
+        }
+
+        sending = queue.get(0);
+        final WatchlistMutation mutation = sending;
+
+        sender.send(mutation, new WatchlistClient.MutationResponseListener() {
+            @Override
+            public void onResponse(int httpCode, String errorMsg) {
+                sending = null;
+
+                if (httpCode == 0 && !mutation.isMaybeDelivered()) {
+                    mutation.setMaybeDelivered();           // no response, it may have got through
+                    save();
+                }
+
+                if (httpCode == 0 || httpCode >= 500 || httpCode == 408 || httpCode == 429) {
+                    retryLater();                           // service unreachable or struggling
+                    return;
+                }
+
+                queue.remove(mutation);
+                save();
+                backoff = 0;
+
+                if (errorMsg == null || mutation.isAlreadyApplied(httpCode)) {
+                    Log.i(TAG, "Sent " + mutation + ", " + queue.size() + " change(s) left");
+
+                    for (Listener listener : listeners) {
+                        listener.onMutationSent(mutation);
+                    }
+                }
+                else {
+                    Log.w(TAG, "Rejected " + mutation + ": " + errorMsg);
+
+                    for (Listener listener : listeners) {
+                        listener.onMutationRejected(mutation, errorMsg);
+                    }
+                }
+
+                replay();
+            }
+        });
+    }
+
+    /**
+     * Retry after the current backoff delay, doubled each time, with "equal jitter": half of
+     * the delay is fixed, the other half random.
+     */
+    private void retryLater() {
+        backoff = (backoff == 0) ? WATCHLIST_OUTBOX_MIN_BACKOFF : Math.min(backoff * 2, WATCHLIST_OUTBOX_MAX_BACKOFF);
+
+        long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+        Log.i(TAG, "Service unreachable, retrying in " + delay + " ms");
+
+        scheduleReplay(delay);
+    }
+
+    /**
+     * Load the changes left queued by a previous run, if any. A save interrupted by a crash
+     * leaves the previous file untouched, and is ignored.
+     */
+    private void load() {
+        newFile.delete();
+
+        if (!file.exists()) {
+            return;                                 // nothing queued...
+        }
+
+        try {
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            List<WatchlistMutation> saved = gson.fromJson(json, new TypeToken<List<WatchlistMutation>>() {}.getType());
+
+            if (saved != null) {
+                queue.addAll(saved);
+                Log.i(TAG, queue.size() + " change(s) left queued by previous run");
+            }
+        }
+        catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Cannot load outbox, dropping it: " + e.getMessage());
+            file.delete();
+        }
+    }
+
+    /**
+     * Save the queue, replacing the previous file only once fully written.
+     */
+    private void save() {
+        try {
+            try (FileOutputStream out = new FileOutputStream(newFile)) {
+                out.write(gson.toJson(queue).getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();                 // on disk before it replaces the previous file
+            }
+
+            if (!newFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + newFile.getName());
+            }
+        }
+        catch (IOException e) {
+            Log.e(TAG, "Cannot save outbox: " + e.getMessage());
+            newFile.delete();
+        }
+    }
+}
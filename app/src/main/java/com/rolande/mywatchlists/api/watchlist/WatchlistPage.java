@@ -0,0 +1,49 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.util.List;
+
+/**
+ * A page of the securities of a watchlist, as obtained by getWatchlistSecuritiesPage.
+ *
+ * @author Rolande
+ */
+public class WatchlistPage {
+    private final List<Security> securities;
+    private final int offset;
+    private final int total;
+
+    /**
+     * @param securities Securities of the page, in the watchlist's order
+     * @param offset Position of the page's first security in the watchlist
+     * @param total Number of securities in the watchlist, -1 if the server does not page
+     *              (i.e. the page holds them all)
+     */
+    public WatchlistPage(List<Security> securities, int offset, int total) {
+        this.securities = securities;
+        this.offset = offset;
+        this.total = total;
+    }
+
+    public List<Security> getSecurities() {
+        return securities;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "WatchlistPage{" +
+                "offset=" + offset +
+                ", size=" + securities.size() +
+                ", total=" + total +
+                '}';
+    }
+}
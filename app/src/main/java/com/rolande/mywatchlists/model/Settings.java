@@ -4,15 +4,20 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.PreferenceManager;
 
 import com.rolande.mywatchlists.R;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Defines the settings properties (or preferences) a user can set in this app,
- * namely the IP address and port of the services used. The settings keys and default
- * values are defined in strings.xml, in order to share them with the preferences.xml
- * file definition.
+ * Defines the settings properties (or preferences) a user can set in this app, namely
+ * the IP address and port of the services used (and of their other servers, if any),
+ * along with how often quotes get refreshed. The settings keys and default values are
+ * defined in strings.xml, in order to share them with the preferences.xml file definition.
  *
  * @author Rolande
  */
@@ -22,14 +27,54 @@ public class Settings {
     private int watchlistPort;
     private String quoteIpAddress;
     private int quotePort;
+    private String watchlistMoreEndpoints;  // other Watchlist Service servers, as comma separated "ip:port"
+    private String quoteMoreEndpoints;      // other Quote Service servers, as comma separated "ip:port"
+    private int quoteRefreshInterval;       // in seconds, for each symbol, until its quote changes tell otherwise
+    private int quoteRefreshMinInterval;    // in seconds, for symbols changing all the time
+    private int quoteRefreshMaxInterval;    // in seconds, for symbols never changing
+    private int quoteRequestBudget;         // maximum number of quote requests per second, a batch counting as one
+    private boolean quoteStreaming;         // true to have quotes pushed over a WebSocket instead of polled
+    private boolean quoteBinary;            // true to ask for quotes in compact binary format rather than json
+    private boolean quoteHedging;           // true to send a duplicate of slow quote requests, using the first response
     private static Context context;
 
+    // Last settings read from the shared preferences, along with the version they were read at
+    private static volatile Snapshot current;
+
+    // Bumped whenever a preference changes, making older snapshots stale
+    private static final AtomicInteger version = new AtomicInteger();
+
+    // Kept as a static field, as SharedPreferences only holds a weak reference to its listeners
+    private static final SharedPreferences.OnSharedPreferenceChangeListener changeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                    version.incrementAndGet();
+                }
+            };
+
+    /**
+     * Settings read from the shared preferences, and the version they are up to date with.
+     */
+    private static class Snapshot {
+        final int version;
+        final Settings settings;
+
+        Snapshot(int version, Settings settings) {
+            this.version = version;
+            this.settings = settings;
+        }
+    }
+
     public static Context getContext() {
         return context;
     }
 
     public static void setContext(Context context) {
         Settings.context = context;
+
+        // Registering the same listener more than once has no effect...
+        PreferenceManager.getDefaultSharedPreferences(context).registerOnSharedPreferenceChangeListener(changeListener);
     }
 
     public Settings() {}
@@ -73,15 +118,163 @@ public class Settings {
         this.quotePort = quotePort;
     }
 
+    public String getWatchlistMoreEndpoints() {
+        return watchlistMoreEndpoints;
+    }
+
+    public void setWatchlistMoreEndpoints(String watchlistMoreEndpoints) {
+        this.watchlistMoreEndpoints = watchlistMoreEndpoints;
+    }
+
+    public String getQuoteMoreEndpoints() {
+        return quoteMoreEndpoints;
+    }
+
+    public void setQuoteMoreEndpoints(String quoteMoreEndpoints) {
+        this.quoteMoreEndpoints = quoteMoreEndpoints;
+    }
+
+    /**
+     * Get all the servers of the Watchlist Service: the main one, followed by the others.
+     *
+     * @return endpoints, as "ip:port"
+     */
+    public List<String> getWatchlistEndpoints() {
+        return getEndpoints(watchlistIpAddress, watchlistPort, watchlistMoreEndpoints);
+    }
+
+    /**
+     * Get all the servers of the Quote Service: the main one, followed by the others.
+     *
+     * @return endpoints, as "ip:port"
+     */
+    public List<String> getQuoteEndpoints() {
+        return getEndpoints(quoteIpAddress, quotePort, quoteMoreEndpoints);
+    }
+
+    private static List<String> getEndpoints(String ipAddress, int port, String moreEndpoints) {
+        List<String> endpoints = new ArrayList<>();
+        endpoints.add(ipAddress + ":" + port);
+
+        if (moreEndpoints != null) {
+            for (String endpoint : moreEndpoints.split(",")) {
+                endpoint = endpoint.trim();
+
+                if (!endpoint.isEmpty() && !endpoints.contains(endpoint)) {
+                    endpoints.add(endpoint);
+                }
+            }
+        }
+
+        return endpoints;
+    }
+
+    public int getQuoteRefreshInterval() {
+        return quoteRefreshInterval;
+    }
+
+    public void setQuoteRefreshInterval(int quoteRefreshInterval) {
+        this.quoteRefreshInterval = quoteRefreshInterval;
+    }
+
+    public int getQuoteRefreshMinInterval() {
+        return quoteRefreshMinInterval;
+    }
+
+    public void setQuoteRefreshMinInterval(int quoteRefreshMinInterval) {
+        this.quoteRefreshMinInterval = quoteRefreshMinInterval;
+    }
+
+    public int getQuoteRefreshMaxInterval() {
+        return quoteRefreshMaxInterval;
+    }
+
+    public void setQuoteRefreshMaxInterval(int quoteRefreshMaxInterval) {
+        this.quoteRefreshMaxInterval = quoteRefreshMaxInterval;
+    }
+
+    public int getQuoteRequestBudget() {
+        return quoteRequestBudget;
+    }
+
+    public void setQuoteRequestBudget(int quoteRequestBudget) {
+        this.quoteRequestBudget = quoteRequestBudget;
+    }
+
+    public boolean isQuoteStreaming() {
+        return quoteStreaming;
+    }
+
+    public void setQuoteStreaming(boolean quoteStreaming) {
+        this.quoteStreaming = quoteStreaming;
+    }
+
+    public boolean isQuoteBinary() {
+        return quoteBinary;
+    }
+
+    public void setQuoteBinary(boolean quoteBinary) {
+        this.quoteBinary = quoteBinary;
+    }
+
+    public boolean isQuoteHedging() {
+        return quoteHedging;
+    }
+
+    public void setQuoteHedging(boolean quoteHedging) {
+        this.quoteHedging = quoteHedging;
+    }
+
     @Override
     public String toString() {
         return "w-IP='" + watchlistIpAddress + '\'' +
                 ", w-Port=" + watchlistPort +
                 ", q-IP='" + quoteIpAddress + '\'' +
                 ", q-Port=" + quotePort +
+                ", w-More='" + watchlistMoreEndpoints + '\'' +
+                ", q-More='" + quoteMoreEndpoints + '\'' +
+                ", q-Refresh=" + quoteRefreshInterval +
+                ", q-RefreshMin=" + quoteRefreshMinInterval +
+                ", q-RefreshMax=" + quoteRefreshMaxInterval +
+                ", q-Budget=" + quoteRequestBudget +
+                ", q-Streaming=" + quoteStreaming +
+                ", q-Binary=" + quoteBinary +
+                ", q-Hedging=" + quoteHedging +
                 '}';
     }
 
+    /**
+     * Get the app' current settings without going through the shared preferences every time.
+     * The cached instance is re-read as soon as any preference changes.
+     *
+     * The version is taken before reading, so that a snapshot read while a preference changed
+     * is stale as soon as cached (and read again next time), even if it overwrites a newer one.
+     *
+     * @return Settings object instance currently in effect.
+     */
+    public static Settings current() {
+        Snapshot snapshot = current;
+        int currentVersion = version.get();
+
+        if (snapshot == null || snapshot.version != currentVersion) {
+            snapshot = new Snapshot(currentVersion, read());
+            current = snapshot;
+        }
+
+        return snapshot.settings;
+    }
+
+    /**
+     * Set the settings in effect, in place of those of the shared preferences, until a
+     * preference changes. Meant for tests, which run without any shared preferences.
+     *
+     * @param settings Settings to put in effect
+     */
+    @VisibleForTesting
+    public static void setCurrent(Settings settings) {
+        current = new Snapshot(version.get(), settings);
+    }
+
     /**
      * Utility static method to get all the app' settings at once.
      *
@@ -108,6 +301,34 @@ public class Settings {
         settings.quotePort          = Integer.parseInt(sp.getString(resources.getString(R.string.quote_api_port_key),
                                                                     resources.getString(R.string.quote_api_port_default)));
 
+        settings.watchlistMoreEndpoints = sp.getString(resources.getString(R.string.watchlist_api_more_key),
+                                                       resources.getString(R.string.watchlist_api_more_default));
+
+        settings.quoteMoreEndpoints   = sp.getString(resources.getString(R.string.quote_api_more_key),
+                                                     resources.getString(R.string.quote_api_more_default));
+
+        settings.quoteRefreshInterval = Integer.parseInt(sp.getString(resources.getString(R.string.quote_refresh_interval_key),
+                                                                      resources.getString(R.string.quote_refresh_interval_default)));
+
+        settings.quoteRefreshMinInterval = Integer.parseInt(sp.getString(resources.getString(R.string.quote_refresh_min_interval_key),
+                                                                         resources.getString(R.string.quote_refresh_min_interval_default)));
+
+        settings.quoteRefreshMaxInterval = Integer.parseInt(sp.getString(resources.getString(R.string.quote_refresh_max_interval_key),
+                                                                         resources.getString(R.string.quote_refresh_max_interval_default)));
+
+        settings.quoteRequestBudget   = Integer.parseInt(sp.getString(resources.getString(R.string.quote_request_budget_key),
+                                                                      resources.getString(R.string.quote_request_budget_default)));
+
+        // Switch preferences are stored as 'boolean'
+        settings.quoteStreaming       = sp.getBoolean(resources.getString(R.string.quote_streaming_key),
+                                                      resources.getBoolean(R.bool.quote_streaming_default));
+
+        settings.quoteBinary          = sp.getBoolean(resources.getString(R.string.quote_binary_key),
+                                                      resources.getBoolean(R.bool.quote_binary_default));
+
+        settings.quoteHedging         = sp.getBoolean(resources.getString(R.string.quote_hedging_key),
+                                                      resources.getBoolean(R.bool.quote_hedging_default));
+
         return settings;
     }
 
@@ -126,6 +347,15 @@ public class Settings {
         editor.putString(resources.getString(R.string.watchlist_api_port_key), String.valueOf(settings.watchlistPort));
         editor.putString(resources.getString(R.string.quote_api_ip_key), settings.quoteIpAddress);
         editor.putString(resources.getString(R.string.quote_api_port_key), String.valueOf(settings.quotePort));
+        editor.putString(resources.getString(R.string.watchlist_api_more_key), settings.watchlistMoreEndpoints);
+        editor.putString(resources.getString(R.string.quote_api_more_key), settings.quoteMoreEndpoints);
+        editor.putString(resources.getString(R.string.quote_refresh_interval_key), String.valueOf(settings.quoteRefreshInterval));
+        editor.putString(resources.getString(R.string.quote_refresh_min_interval_key), String.valueOf(settings.quoteRefreshMinInterval));
+        editor.putString(resources.getString(R.string.quote_refresh_max_interval_key), String.valueOf(settings.quoteRefreshMaxInterval));
+        editor.putString(resources.getString(R.string.quote_request_budget_key), String.valueOf(settings.quoteRequestBudget));
+        editor.putBoolean(resources.getString(R.string.quote_streaming_key), settings.quoteStreaming);
+        editor.putBoolean(resources.getString(R.string.quote_binary_key), settings.quoteBinary);
+        editor.putBoolean(resources.getString(R.string.quote_hedging_key), settings.quoteHedging);
 
         editor.apply();
     }
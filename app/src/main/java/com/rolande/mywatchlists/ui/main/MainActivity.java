@@ -28,13 +28,17 @@ import android.widget.ImageButton;
 import android.widget.Toast;
 
 import com.rolande.mywatchlists.R;
+import com.rolande.mywatchlists.api.CallRegistry;
 import com.rolande.mywatchlists.api.watchlist.WatchlistClient;
+import com.rolande.mywatchlists.api.watchlist.WatchlistMutation;
+import com.rolande.mywatchlists.api.watchlist.WatchlistOutbox;
 import com.rolande.mywatchlists.ui.settings.SettingsActivity;
 import com.rolande.mywatchlists.ui.watchlist_detail.WatchlistDetailActivity;
 import com.rolande.mywatchlists.model.Settings;
 import com.rolande.mywatchlists.model.beans.Watchlist;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -51,6 +55,23 @@ public class MainActivity extends AppCompatActivity {
     RecyclerView rv_watchlists, rv_headings;
     ImageButton imgBtn_add;
 
+    // Ids given to watchlists shown before the server created them, negative so never a real one
+    private static long nextPendingId = -1;
+
+    // Reloads the watchlists whenever a change that was queued offline reaches the server
+    private final WatchlistOutbox.Listener outboxListener = new WatchlistOutbox.Listener() {
+        @Override
+        public void onMutationSent(WatchlistMutation mutation) {
+            getWatchlists();
+        }
+
+        @Override
+        public void onMutationRejected(WatchlistMutation mutation, String errorMsg) {
+            Toast.makeText(MainActivity.this, errorMsg, Toast.LENGTH_SHORT).show();
+            getWatchlists();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -206,9 +227,22 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         Settings.setContext(getApplicationContext());          // Set context for SharedPreferences...
 
+        WatchlistOutbox.getInstance(this).addListener(outboxListener);
         getWatchlists();
     }
 
+    /**
+     * Cancel the requests still pending when activity loses foreground focus, as the list
+     * of watchlists is obtained again upon resuming.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        WatchlistOutbox.getInstance(this).removeListener(outboxListener);
+        CallRegistry.cancel(this);
+    }
+
     /**
      * Get the list of existing watchlists from the Watchlist Server.
      */
@@ -252,6 +286,10 @@ public class MainActivity extends AppCompatActivity {
         watchlistAdapter.setListener(new WatchlistAdapter.Listener() {
             @Override
             public void onClick(int position) {
+                if (isPending(watchlistAdapter.getItem(position))) {
+                    return;
+                }
+
                 Intent intent = new Intent(MainActivity.this, WatchlistDetailActivity.class);
                 intent.putExtra(WATCHLIST_ID_KEY, watchlistAdapter.getItemId(position));
                 intent.putExtra(WATCHLIST_NAME_KEY, watchlistAdapter.getItemName(position));
@@ -261,39 +299,82 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public void onUpdate(int position, String newName) {
-                updateWatchlist(position, newName);
+                if (!isPending(watchlistAdapter.getItem(position))) {
+                    updateWatchlist(position, newName);
+                }
             }
 
             @Override
             public void onDelete(int position) {
-                deleteWatchlist(watchlistAdapter.getItemId(position), position);
+                if (!isPending(watchlistAdapter.getItem(position))) {
+                    deleteWatchlist(watchlistAdapter.getItemId(position), position);
+                }
             }
         });
 
         rv_watchlists.setAdapter(watchlistAdapter);
     }
 
+    /**
+     * Tell whether a watchlist is still waiting to be created by the server (i.e. shown ahead
+     * of it), in which case it cannot be opened nor changed yet.
+     *
+     * @param watchlist Watchlist to check
+     * @return true if pending, after telling the user
+     */
+    private boolean isPending(Watchlist watchlist) {
+        if (watchlist.getId() >= 0) {
+            return false;
+        }
+
+        Toast.makeText(MainActivity.this, R.string.msg_watchlist_pending, Toast.LENGTH_SHORT).show();
+        return true;
+    }
+
     /**
      * Sends an add-watchlist request to the watchlist server. Add request will be denied if a watchlist
      * by the same name already exists. Watchlist names are case insensitive.
      *
+     * The watchlist is shown right away, then replaced by the one the server created, or
+     * removed if the server refused it.
+     *
      * @param name Name of the watchlist to add.
      */
     private void addWatchlist(String name) {
 
+        WatchlistAdapter adapter = (WatchlistAdapter) rv_watchlists.getAdapter();
+        Watchlist pending = new Watchlist(nextPendingId--, name, new Date(), 0);
+
+        if (adapter != null) {
+            adapter.addItem(pending);
+        }
+
         WatchlistClient client = new WatchlistClient(MainActivity.this);
 
         client.addWatchlist(name, new WatchlistClient.AddWatchlistResponseListener() {
             @Override
             public void onResponse(Watchlist watchlistAdded) {
-                WatchlistAdapter adapter = (WatchlistAdapter) rv_watchlists.getAdapter();
-                adapter.addItem(watchlistAdded);
+                if (adapter != null) {
+                    adapter.replaceItem(pending, watchlistAdded);
+                }
             }
 
             @Override
             public void onFailure(String errorMsg) {
+                rollback();
                 Toast.makeText(MainActivity.this, errorMsg, Toast.LENGTH_SHORT).show();
             }
+
+            @Override
+            public void onQueued(String msg) {
+                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
+            }
+
+            private void rollback() {
+                if (adapter != null) {
+                    adapter.undoAdd(pending);
+                }
+            }
         });
     }
 
@@ -302,6 +383,8 @@ public class MainActivity extends AppCompatActivity {
      * renaming a watchlist, nothing else. If the new name is already used by another list,
      * update request will be denied.
      *
+     * The new name is shown right away, and the previous one put back if the server refused it.
+     *
      * @param position Position of the watchlist in the adapter's list
      * @param newName New name to give to watchlist
      */
@@ -309,24 +392,29 @@ public class MainActivity extends AppCompatActivity {
 
         WatchlistAdapter adapter = (WatchlistAdapter) rv_watchlists.getAdapter();
         Watchlist watchlist = adapter.getItem(position);
+        String oldName = watchlist.getName();
 
         // Only the name can be changed...
         Watchlist newWatchlist = new Watchlist(watchlist.getId(), newName, watchlist.getDateCreated(),
                 watchlist.getNumberOfSecurities());
 
+        adapter.updateItem(position, newName);
+
         WatchlistClient client = new WatchlistClient(MainActivity.this);
 
         client.updateWatchlist(newWatchlist, new WatchlistClient.BooleanResponseListener() {
             @Override
             public void onResponse(boolean success, String errorMsg) {
-                if (success) {
-                    adapter.updateItem(position, newName);
-                }
-                else {
+                if (!success) {
+                    adapter.undoUpdate(watchlist, newName, oldName);
                     Toast.makeText(MainActivity.this, errorMsg, Toast.LENGTH_SHORT).show();
                 }
             }
 
+            @Override
+            public void onQueued(String msg) {
+                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
+            }
         });
 
     }
@@ -334,28 +422,35 @@ public class MainActivity extends AppCompatActivity {
     /**
      *  Sends a delete-watchlist request to the watchlist server.
      *
+     *  The watchlist is removed right away, and put back if the server refused to delete it.
+     *
      * @param id Id of the watchlist to delete
      * @param position Position of the watchlist in the adapter
      */
     private void deleteWatchlist(long id, int position) {
 
+        WatchlistAdapter adapter = (WatchlistAdapter) rv_watchlists.getAdapter();
+        Watchlist watchlist = adapter.getItem(position);
+
+        adapter.removeItem(position);
+
         WatchlistClient client = new WatchlistClient(MainActivity.this);
 
         client.deleteWatchlist(id, new WatchlistClient.BooleanResponseListener() {
             @Override
             public void onResponse(boolean success, String errorMsg) {
-                if (success) {
-                    WatchlistAdapter adapter = (WatchlistAdapter) rv_watchlists.getAdapter();
-                    adapter.removeItem(position);
-                }
-                else {
+                if (!success) {
+                    adapter.undoRemove(position, watchlist);
                     Toast.makeText(MainActivity.this, errorMsg, Toast.LENGTH_SHORT).show();
                 }
             }
 
+            @Override
+            public void onQueued(String msg) {
+                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
+            }
         });
 
     }
 
 }
-
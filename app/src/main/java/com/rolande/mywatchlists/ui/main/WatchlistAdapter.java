@@ -33,7 +33,7 @@ import java.util.List;
 public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.ViewHolder> {
     final static String TAG = LOG_TAG_PREFIX + WatchlistAdapter.class.getSimpleName();
     private Context context;
-    private List<Watchlist> data;
+    private final WatchlistRows rows;
     private Listener listener;
 
     /**
@@ -53,7 +53,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      */
     public WatchlistAdapter(Context context, List<Watchlist> data) {
         this.context = context;
-        this.data = data;
+        this.rows = new WatchlistRows(data);
 
         this.setHasStableIds(true);   // i.e. watchlist-id are provided by server
     }
@@ -102,7 +102,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
 
-        Watchlist watchlist = data.get(position);
+        Watchlist watchlist = rows.get(position);
 
         holder.tv_list_name.setText(watchlist.getName());
         holder.tv_count.setText("(" + String.valueOf(watchlist.getNumberOfSecurities()) + ")");
@@ -196,7 +196,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      */
     @Override
     public int getItemCount() {
-        return data.size();
+        return rows.size();
     }
 
     /**
@@ -206,7 +206,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      * @return Watchlist instance at the given position
      */
     public Watchlist getItem(int position) {
-         return data.get(position);
+         return rows.get(position);
     }
 
     /**
@@ -217,7 +217,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      */
     @Override
     public long getItemId(int position) {
-        Watchlist watchlist = data.get(position);
+        Watchlist watchlist = rows.get(position);
 
         return watchlist.getId();
     }
@@ -229,7 +229,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      * @return name of the watchlist
      */
     public String getItemName(int position) {
-        Watchlist watchlist = data.get(position);
+        Watchlist watchlist = rows.get(position);
 
         return watchlist.getName();
     }
@@ -240,8 +240,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      * @param w Watchlist instance to add.
      */
     public void addItem(Watchlist w) {
-        data.add(w);
-        this.notifyItemInserted(data.size()-1);
+        this.notifyItemInserted(rows.add(w));
     }
 
     /**
@@ -251,7 +250,7 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      * @param newName The new name to assign to this watchlist.
      */
     public void updateItem(int position, String newName) {
-        data.get(position).setName(newName);
+        rows.rename(position, newName);
         this.notifyItemChanged(position);
     }
 
@@ -260,8 +259,83 @@ public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.View
      * @param position Position of the instance to remove
      */
     public void removeItem(int position) {
-        data.remove(position);
+        rows.remove(position);
         this.notifyItemRemoved(position);
     }
 
+    /**
+     * Get the position of a watchlist instance in the data set.
+     *
+     * @param w Watchlist instance to look for
+     * @return position of the instance, -1 if not in the data set (anymore)
+     */
+    public int indexOf(Watchlist w) {
+        return rows.indexOf(w);
+    }
+
+    /**
+     * Replace a watchlist instance by another (ex: the one returned by the server for a
+     * watchlist shown before being created). If the instance is gone, the new one is added
+     * at the end, unless already there.
+     *
+     * @param oldWatchlist Watchlist instance to replace
+     * @param newWatchlist Watchlist instance to put in its place
+     */
+    public void replaceItem(Watchlist oldWatchlist, Watchlist newWatchlist) {
+        boolean added = rows.indexOf(oldWatchlist) < 0;
+        int position = rows.replace(oldWatchlist, newWatchlist);
+
+        if (position >= 0) {
+            if (added) {
+                this.notifyItemInserted(position);
+            }
+            else {
+                this.notifyItemChanged(position);
+            }
+        }
+    }
+
+    /**
+     * Remove a watchlist shown before the server created it, as the server refused it.
+     *
+     * @param pending Watchlist instance shown
+     */
+    public void undoAdd(Watchlist pending) {
+        int position = rows.undoAdd(pending);
+
+        if (position >= 0) {
+            this.notifyItemRemoved(position);
+        }
+    }
+
+    /**
+     * Put back the previous name of a watchlist, as the server refused the new one (unless
+     * renamed again since).
+     *
+     * @param w Watchlist instance renamed
+     * @param newName Name it was given
+     * @param oldName Name to put back
+     */
+    public void undoUpdate(Watchlist w, String newName, String oldName) {
+        int position = rows.undoRename(w, newName, oldName);
+
+        if (position >= 0) {
+            this.notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Put back a watchlist where it was, as the server refused to delete it.
+     *
+     * @param position Position it was removed from
+     * @param w Watchlist instance removed
+     */
+    public void undoRemove(int position, Watchlist w) {
+        position = rows.undoRemove(position, w);
+
+        if (position >= 0) {
+            this.notifyItemInserted(position);
+        }
+    }
+
 }
@@ -0,0 +1,140 @@
+package com.rolande.mywatchlists.ui.main;
+
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import java.util.List;
+
+/**
+ * Data set of the WatchlistAdapter, kept apart from the adapter (and its views) so that the
+ * changes shown ahead of the server, and their rollback, can be checked on their own.
+ *
+ * Each change returns the position it affected (-1 if none), for the adapter to notify.
+ *
+ * @author Rolande
+ */
+class WatchlistRows {
+    private final List<Watchlist> data;
+
+    /**
+     * @param data List of watchlist objects, changed in place
+     */
+    WatchlistRows(List<Watchlist> data) {
+        this.data = data;
+    }
+
+    int size() {
+        return data.size();
+    }
+
+    Watchlist get(int position) {
+        return data.get(position);
+    }
+
+    /**
+     * @return position of the instance, -1 if not in the data set (anymore)
+     */
+    int indexOf(Watchlist w) {
+        return data.indexOf(w);
+    }
+
+    /**
+     * Add a watchlist at the end.
+     *
+     * @return position of the watchlist added
+     */
+    int add(Watchlist w) {
+        data.add(w);
+        return data.size() - 1;
+    }
+
+    /**
+     * Insert a watchlist at position specified, clamped to the data set's size.
+     *
+     * @return position at which it was inserted
+     */
+    int insert(int position, Watchlist w) {
+        position = Math.max(0, Math.min(position, data.size()));
+
+        data.add(position, w);
+        return position;
+    }
+
+    void rename(int position, String newName) {
+        data.get(position).setName(newName);
+    }
+
+    Watchlist remove(int position) {
+        return data.remove(position);
+    }
+
+    /**
+     * Replace a watchlist instance by another. If the instance is gone, the new one is added
+     * at the end, unless already there (by id).
+     *
+     * @return position of the new instance, -1 if already there
+     */
+    int replace(Watchlist oldWatchlist, Watchlist newWatchlist) {
+        int position = data.indexOf(oldWatchlist);
+
+        if (position >= 0) {
+            data.set(position, newWatchlist);
+            return position;
+        }
+
+        for (Watchlist w : data) {
+            if (w.getId().equals(newWatchlist.getId())) {
+                return -1;
+            }
+        }
+        return add(newWatchlist);
+    }
+
+    /**
+     * Undo the add of a watchlist shown before the server created it: remove it, if still there.
+     *
+     * @param pending Watchlist shown ahead of the server
+     * @return position it was removed from, -1 if already gone
+     */
+    int undoAdd(Watchlist pending) {
+        int position = data.indexOf(pending);
+
+        if (position >= 0) {
+            data.remove(position);
+        }
+        return position;
+    }
+
+    /**
+     * Undo the rename of a watchlist: put its previous name back, unless it was removed or
+     * renamed again since.
+     *
+     * @param w Watchlist renamed
+     * @param newName Name it was given
+     * @param oldName Name to put back
+     * @return position of the watchlist renamed back, -1 if left as is
+     */
+    int undoRename(Watchlist w, String newName, String oldName) {
+        int position = data.indexOf(w);              // may have moved meanwhile
+
+        if (position < 0 || !newName.equals(w.getName())) {
+            return -1;
+        }
+
+        w.setName(oldName);
+        return position;
+    }
+
+    /**
+     * Undo the removal of a watchlist: put it back where it was, unless already back.
+     *
+     * @param position Position it was removed from
+     * @param w Watchlist removed
+     * @return position at which it was put back, -1 if already there
+     */
+    int undoRemove(int position, Watchlist w) {
+        if (data.indexOf(w) >= 0) {
+            return -1;
+        }
+        return insert(position, w);
+    }
+}
@@ -2,7 +2,10 @@ package com.rolande.mywatchlists.ui.settings;
 
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
 
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.InputFilter;
 import android.text.InputType;
 import android.text.Spanned;
@@ -16,11 +19,13 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
 import com.rolande.mywatchlists.R;
+import com.rolande.mywatchlists.api.ConnectionWarmer;
 
 /**
- * Fragment to manage the Settings (or Preferences) of this app, the Android way.
- * The settings properties involved are the IP address and port number of
- * the 2 services used by the app, i.e. Watchlist and Quote services.
+ * Fragment to manage the Settings (or Preferences) of this app, the Android way. The settings
+ * properties involved are the IP address and port number of the 2 services used by the app,
+ * i.e. Watchlist and Quote services (along with their other servers, if any), as well as the
+ * quote refresh intervals and request budget.
  *
  * @author Rolande
  */
@@ -28,6 +33,25 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 
     final static String TAG = LOG_TAG_PREFIX + SettingsFragment.class.getSimpleName();
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Warm up connections to a service as soon as its new location is saved
+    private final SharedPreferences.OnSharedPreferenceChangeListener locationListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                    if (isServiceLocationKey(key)) {
+                        // Posted, so that settings see the new value first (listeners are called in no particular order)
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                ConnectionWarmer.warmUp();
+                            }
+                        });
+                    }
+                }
+            };
+
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
 
@@ -37,6 +61,12 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         EditTextPreference watchlistPortPref = findPreference(getResources().getString(R.string.watchlist_api_port_key));
         EditTextPreference quoteIpPref       = findPreference(getResources().getString(R.string.quote_api_ip_key));
         EditTextPreference quotePortPref     = findPreference(getResources().getString(R.string.quote_api_port_key));
+        EditTextPreference watchlistMorePref = findPreference(getResources().getString(R.string.watchlist_api_more_key));
+        EditTextPreference quoteMorePref     = findPreference(getResources().getString(R.string.quote_api_more_key));
+        EditTextPreference refreshPref       = findPreference(getResources().getString(R.string.quote_refresh_interval_key));
+        EditTextPreference refreshMinPref    = findPreference(getResources().getString(R.string.quote_refresh_min_interval_key));
+        EditTextPreference refreshMaxPref    = findPreference(getResources().getString(R.string.quote_refresh_max_interval_key));
+        EditTextPreference budgetPref        = findPreference(getResources().getString(R.string.quote_request_budget_key));
 
         // Set an Ip input validator for watchlist & quote's IP address field
 
@@ -73,6 +103,47 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 
         watchlistPortPref.setOnPreferenceChangeListener(portPcl);
         quotePortPref.setOnPreferenceChangeListener(portPcl);
+
+        // Other servers are optional, but each one must be a valid IP address & port...
+
+        EditTextPreference.OnBindEditTextListener endpointsListener = new EditTextPreference.OnBindEditTextListener() {
+            @Override
+            public void onBindEditText(@NonNull EditText editText) {
+                editText.setInputType(InputType.TYPE_TEXT_VARIATION_URI);
+                editText.setSelection(editText.getText().length());
+            }
+        };
+
+        Preference.OnPreferenceChangeListener endpointsPcl = new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(@NonNull Preference preference, Object newValue) {
+                return (isEndpointListValid((String) newValue));
+            }
+        };
+
+        watchlistMorePref.setOnBindEditTextListener(endpointsListener);
+        quoteMorePref.setOnBindEditTextListener(endpointsListener);
+        watchlistMorePref.setOnPreferenceChangeListener(endpointsPcl);
+        quoteMorePref.setOnPreferenceChangeListener(endpointsPcl);
+
+        // Quote refresh intervals (1 hour max) & request budget (1000 per second max) must be positive numbers
+
+        refreshPref.setOnBindEditTextListener(getPositiveNumberOnBindEditTextListener(3600));
+        refreshMinPref.setOnBindEditTextListener(getPositiveNumberOnBindEditTextListener(3600));
+        refreshMaxPref.setOnBindEditTextListener(getPositiveNumberOnBindEditTextListener(3600));
+        budgetPref.setOnBindEditTextListener(getPositiveNumberOnBindEditTextListener(1000));
+
+        Preference.OnPreferenceChangeListener numberPcl = new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(@NonNull Preference preference, Object newValue) {
+                return (isPositiveNumberValid((String) newValue));
+            }
+        };
+
+        refreshPref.setOnPreferenceChangeListener(numberPcl);
+        refreshMinPref.setOnPreferenceChangeListener(numberPcl);
+        refreshMaxPref.setOnPreferenceChangeListener(numberPcl);
+        budgetPref.setOnPreferenceChangeListener(numberPcl);
     }
 
     /**
@@ -184,6 +255,43 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 
     }
 
+    /**
+     * Define a number EditTextListener to restrict the value entered to a positive integer
+     * not exceeding the maximum specified.
+     *
+     * @param maxValue Maximum value accepted
+     * @return callback created
+     */
+    private EditTextPreference.OnBindEditTextListener getPositiveNumberOnBindEditTextListener(int maxValue) {
+        return new EditTextPreference.OnBindEditTextListener() {
+            @Override
+            public void onBindEditText(@NonNull EditText editText) {
+                editText.setInputType(InputType.TYPE_CLASS_NUMBER);
+                editText.setSelection(editText.getText().length());
+
+                InputFilter[] filters = new InputFilter[1];
+                filters[0] = new InputFilter() {
+                    @Override
+                    public CharSequence filter(CharSequence source, int start, int end, Spanned dest, int dstart, int dend) {
+
+                        try {
+                            int value = Integer.parseInt(dest.subSequence(0, dstart).toString() + source + dest.subSequence(dend, dest.length()));
+
+                            if (value > 0 && value <= maxValue)
+                                return null;
+                        }
+                        catch (NumberFormatException e) {}
+
+                        return "";
+                    }
+                };
+
+                editText.setFilters(filters);
+            }
+        };
+
+    }
+
     /**
      * Validates that an IP address is properly formed, after end-user finished editing the field.
      * What remains to be checked, after having applied the in-edit Input filtering, is:
@@ -227,6 +335,67 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         return true;   // Port range already checked by edit filters
     }
 
+    /**
+     * Validates a list of servers, as comma separated 'IP:Port' entries. An empty list is valid.
+     *
+     * @param endpoints The list to validate
+     * @return true if each entry is a valid IP address & port; false otherwise
+     */
+    private boolean isEndpointListValid(String endpoints) {
+
+        if (endpoints == null || endpoints.trim().isEmpty()) {
+            return true;
+        }
+
+        for (String endpoint : endpoints.split(",")) {
+            String[] parts = endpoint.trim().split(":");
+
+            boolean valid = parts.length == 2 &&
+                            parts[0].matches("^\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}$") &&
+                            parts[1].matches("^\\d{1,5}$") &&
+                            Integer.parseInt(parts[1]) > 0 && Integer.parseInt(parts[1]) <= 0xFFFF;
+
+            if (!valid) {
+                Toast.makeText(requireContext(), R.string.improper_endpoints_format, Toast.LENGTH_SHORT).show();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Ensures a positive number is a valid integer value (i.e. not empty)
+     *
+     * @param strNumber Number as a string
+     * @return true if number is not empty/null; false otherwise
+     */
+    private boolean isPositiveNumberValid(String strNumber) {
+
+        if (strNumber == null || strNumber.trim().isEmpty()) {
+            Toast.makeText(requireContext(), R.string.field_cannot_be_blank, Toast.LENGTH_SHORT).show();
+            return false;
+        }
+
+        return true;   // Range already checked by edit filters
+    }
+
+    /**
+     * Tell whether a preference key is one locating a service, i.e. an IP address or port (or
+     * the service's other servers).
+     *
+     * @param key Preference key
+     * @return true if key is an IP address, port or other servers key
+     */
+    private boolean isServiceLocationKey(String key) {
+        return getResources().getString(R.string.watchlist_api_ip_key).equals(key) ||
+               getResources().getString(R.string.watchlist_api_port_key).equals(key) ||
+               getResources().getString(R.string.quote_api_ip_key).equals(key) ||
+               getResources().getString(R.string.quote_api_port_key).equals(key) ||
+               getResources().getString(R.string.watchlist_api_more_key).equals(key) ||
+               getResources().getString(R.string.quote_api_more_key).equals(key);
+    }
+
     /**
      * Normalize an IP address by removing redundant leading zeros, if any...
      * For instance, if ipAddress provided is "192.013.099.008", normalized IP returned
@@ -259,4 +428,16 @@ public class SettingsFragment extends PreferenceFragmentCompat {
        // addPreferencesFromResource(R.xml.preferences);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        getPreferenceManager().getSharedPreferences().registerOnSharedPreferenceChangeListener(locationListener);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        getPreferenceManager().getSharedPreferences().unregisterOnSharedPreferenceChangeListener(locationListener);
+    }
+
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.rolande.mywatchlists.ui.watchlist_detail;
 
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.QUOTE_PREFETCH_ROWS;
 
 import android.content.Context;
 import android.graphics.Color;
@@ -14,30 +15,84 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.rolande.mywatchlists.R;
-import com.rolande.mywatchlists.api.quote.QuoteClient;
+import com.rolande.mywatchlists.api.quote.QuotePollingScheduler;
 import com.rolande.mywatchlists.model.beans.Quote;
 import com.rolande.mywatchlists.model.beans.Security;
 
-import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Adapter class for Securities handled by a RecyclerView.
+ * Adapter class for Securities handled by a RecyclerView. Quotes of the securities
+ * visible on screen are kept up to date through the screen's quote polling scheduler,
+ * as are those of the few securities just off screen (at a lower priority), so they are
+ * fresh if scrolled to.
+ *
+ * Large watchlists can be loaded a page at a time as they are scrolled (see SecurityPager).
+ * Rows of the pages dropped from memory show only their number, until loaded again.
+ *
+ * Securities not added by the server yet (ID 0) are shown dimmed, without a quote, until
+ * replaced by the security the server returned.
  *
  * @author Rolande
  */
 public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHolder> {
     final static String TAG = LOG_TAG_PREFIX + SecurityAdapter.class.getSimpleName();
     private Context context;
-    private List<Security> data;
+    private final SecurityRows rows;
+    private final QuotePollingScheduler quoteScheduler;
+    private List<String> prefetchSymbols = Collections.emptyList();
+    private SecurityPager pager;                // null if all securities are loaded
+
+    private static final float PENDING_ROW_ALPHA = 0.5f;
+
+    // Keeps track of the securities just off screen as the list scrolls (or its layout changes)
+    private final RecyclerView.OnScrollListener prefetchListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            if (recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+                LinearLayoutManager manager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                updatePrefetchSymbols(manager.findFirstVisibleItemPosition(), manager.findLastVisibleItemPosition());
+            }
+        }
+    };
 
-    public SecurityAdapter(Context context, List<Security> data)  {
+    public SecurityAdapter(Context context, List<Security> data, QuotePollingScheduler quoteScheduler)  {
         this.context = context;
-        this.data = data;
+        this.rows = new SecurityRows(data);
+        this.quoteScheduler = quoteScheduler;
+
+        this.quoteScheduler.setListener(new QuotePollingScheduler.Listener() {
+            @Override
+            public void onQuote(String symbol, Quote latestQuote) {
+                //Log.i(TAG, "New quote = " + latestQuote);
+                updateSecurityQuote(symbol, latestQuote);
+            }
+
+            @Override
+            public void onFailure(String symbol, String errorMsg) {
+                // Keep showing the last good quote, a new one will be fetched on next refresh
+                Log.w(TAG, "No new quote for " + symbol + ": " + errorMsg);
+            }
+
+            @Override
+            public void onServiceAvailabilityChanged(boolean available, String errorMsg) {
+                // A single message for all securities, rather than one per security
+                if (available) {
+                    Toast.makeText(context, R.string.msg_quote_api_back, Toast.LENGTH_SHORT).show();
+                }
+                else {
+                    Toast.makeText(context, errorMsg, Toast.LENGTH_LONG).show();
+                }
+            }
+        });
     }
 
     public Context getContext() {
@@ -48,12 +103,35 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
         this.context = context;
     }
 
-    public List<Security> getData() {
-        return data;
+    /**
+     * Load the rest of the watchlist's securities a page at a time as the list is scrolled,
+     * the securities given at creation being its first page.
+     *
+     * @param scope Lifecycle scope of the requests made (ex: a fragment), see CallRegistry
+     * @param watchlistId ID of the watchlist involved
+     * @param total Number of securities in the watchlist
+     */
+    public void setPaging(Object scope, Long watchlistId, int total) {
+        pager = new SecurityPager(context, scope, watchlistId, total, rows.size(), new SecurityPager.Listener() {
+            @Override
+            public void onPageLoaded(List<Security> page, int offset, boolean append) {
+                if (append) {
+                    appendPage(page);
+                }
+                else {
+                    reloadPage(offset, page);
+                }
+            }
+
+            @Override
+            public void onPageDropped(int start, int end) {
+                dropPage(start, end);
+            }
+        });
     }
 
-    public void setData(List<Security> data) {
-        this.data = data;
+    public boolean isPaged() {
+        return pager != null;
     }
 
     /**
@@ -64,7 +142,8 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
         TextView tv_company_name, tv_last_trade_timestamp, tv_bid_price, tv_bid_volume;
         TextView tv_ask_price, tv_ask_volume;
         CardView card_view;
-        Runnable fetchQuoteRunnable;
+        String subscribedSymbol;                 // symbol subscribed to quote refreshes while attached, "" if none
+        String quoteSymbol;                      // symbol to subscribe once attached, "" if none (or not added yet)
 
         public ViewHolder(@NonNull View itemLayout) {
             super(itemLayout);
@@ -83,7 +162,8 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
             tv_ask_price = itemLayout.findViewById(R.id.tv_ask_price);
             tv_ask_volume = itemLayout.findViewById(R.id.tv_ask_volume);
 
-            fetchQuoteRunnable = null;
+            subscribedSymbol = null;
+            quoteSymbol = "";
         }
     }
 
@@ -115,11 +195,13 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
         }
 
         // Else, we got a payload, do partial update only
-        Security security = data.get(position);
-        Quote oldQuote = security.getQuote();
-
+        Security security = rows.get(position);
         Quote newQuote = (Quote) payloads.get(0);
 
+        if (security == null || isPending(security)) {
+            return;                                     // no quote until loaded again, or until the server added it
+        }
+
         bindQuote(holder, position, newQuote);           // binds the new quote only...
         security.setQuote(newQuote);
     }
@@ -134,17 +216,24 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
 
-        Security security = data.get(position);
+        Security security = rows.get(position);
 
         // Log.i(TAG, "onBindViewHolder: Pos(" + position + ") = " + security.getSymbol() );
 
+        holder.tv_idx.setText(SecurityRows.formatRowNumber(position));
+
+        if (security == null) {
+            bindDropped(holder, position);
+            return;
+        }
+
         // Bind the security info portion
-        holder.tv_idx.setText(String.format("%2s", String.valueOf(position + 1)));   // position: 0-based; we want 1-based
         holder.tv_symbol.setText(security.getSymbol());
-        holder.tv_company_name.setText(String.format("%.15s", security.getName()));
+        holder.tv_company_name.setText((security.getName() != null) ? String.format("%.15s", security.getName()) : "");
 
         // Bind the quote portion
-        bindQuote(holder, position, security.getQuote());
+        bindQuote(holder, position, isPending(security) ? null : security.getQuote());
+        holder.card_view.setAlpha(isPending(security) ? PENDING_ROW_ALPHA : 1f);
 
         holder.card_view.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -154,27 +243,50 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
             }
         });
 
-        // define a runnable to fetch a new quote at random intervals...
-        holder.fetchQuoteRunnable = new Runnable() {
-            public void run() {
-                int pos = holder.getBindingAdapterPosition();
+        if (pager != null) {
+            pager.onRowShown(position, false, rows.size());
+        }
 
-                //String logMsg = "run() Handler: Pos(" + pos + ") = " +  holder.tv_symbol.getText();
+        // Not subscribed until the server added it (replaceItem then binds it again)
+        moveSubscription(holder, isPending(security) ? "" : security.getSymbol());
+    }
 
-                // if we have no position (i.e. pos = -1), symbol has been deleted, so stop fetching quote for it
-                if (pos != RecyclerView.NO_POSITION) {
-                    fetchAPIQuote(data.get(pos));
+    /**
+     * Binds the view holder of a row dropped from memory, which shows its number only until
+     * its page is loaded again.
+     */
+    private void bindDropped(@NonNull ViewHolder holder, int position) {
+        holder.tv_symbol.setText("");
+        holder.tv_company_name.setText("");
+        bindQuote(holder, position, null);
+        holder.card_view.setAlpha(1f);
+        holder.card_view.setOnClickListener(null);
+
+        if (pager != null) {
+            pager.onRowShown(position, true, rows.size());
+        }
+        moveSubscription(holder, "");
+    }
 
-                    long randomDelay = getRandomFetchDelay();
-                    // Log.i(TAG, logMsg + " --> Reposted(delay = " + randomDelay/1000 + " sec)");
-                    holder.itemView.postDelayed(this, randomDelay);    // fetch new quote in 'random' seconds
-                }
-                else {
-                    //Log.w(TAG, logMsg + "--> NOT Reposted (-1)");
-                }
-            }
-        };
+    /**
+     * If a holder gets rebound to another security while on screen, move its subscription over.
+     *
+     * @param holder View holder rebound
+     * @param symbol Symbol of the security it now shows, "" if none or not added yet
+     */
+    private void moveSubscription(@NonNull ViewHolder holder, String symbol) {
+        holder.quoteSymbol = symbol;
+        if (holder.subscribedSymbol == null || holder.subscribedSymbol.equals(symbol)) {
+            return;                                     // not attached, or same security
+        }
 
+        if (!holder.subscribedSymbol.isEmpty()) {
+            quoteScheduler.unsubscribe(holder.subscribedSymbol);
+        }
+        holder.subscribedSymbol = symbol;
+        if (!symbol.isEmpty()) {
+            quoteScheduler.subscribe(symbol);
+        }
     }
 
     /**
@@ -186,6 +298,19 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
      */
     private void bindQuote(@NonNull ViewHolder holder, int position, Quote quote) {
 
+        if (quote == null) {
+            // Row dropped from memory until its page is loaded again, or security not added yet
+            holder.tv_price.setText("");
+            holder.tv_change.setText("");
+            holder.tv_percent_change.setText("");
+            holder.tv_last_trade_timestamp.setText("");
+            holder.tv_bid_price.setText("");
+            holder.tv_bid_volume.setText("");
+            holder.tv_ask_price.setText("");
+            holder.tv_ask_volume.setText("");
+            return;
+        }
+
         // Animate the change on latest trading price, to see which one has changed among the list...
         holder.tv_price.setText(String.format("%.2f", quote.getLastTradePrice()));
         holder.tv_price.startAnimation(AnimationUtils.loadAnimation(holder.tv_price.getContext(), R.anim.price_change));
@@ -199,13 +324,14 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
         holder.tv_percent_change.setText(String.format("%.2f %%", percentChange * 100));
         holder.tv_percent_change.setTextColor(holder.tv_change.getCurrentTextColor());
 
-        if (quote.getLastTradeTimestamp() == null) {
-            quote.setLastTradeTimestamp(new Timestamp(System.currentTimeMillis()));
+        // Show time of last trade using <hours:minutes:seconds AM/PM> format, if any
+        if (quote.getLastTradeTimestamp() != null) {
+            String time = new SimpleDateFormat("h:mm:ss aa").format(quote.getLastTradeTimestamp());
+            holder.tv_last_trade_timestamp.setText(time);
+        }
+        else {
+            holder.tv_last_trade_timestamp.setText("");
         }
-
-        // Show time of last trade using <hours:minutes:seconds AM/PM> format
-        String time = new SimpleDateFormat("h:mm:ss aa").format(quote.getLastTradeTimestamp());
-        holder.tv_last_trade_timestamp.setText(time);
 
         // Show bid & ask volumes as number of lots (a lot being 100 shares) to make it lighter on the eye.
         holder.tv_bid_price.setText(String.format("%.2f", quote.getBidPrice()));
@@ -214,33 +340,6 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
         holder.tv_ask_volume.setText(String.valueOf(quote.getAskVolume() / 100));
     }
 
-    /**
-     * Fetch the latest quote from the Quote Service for a given security.
-     *
-     * @param s Security instance for which to fetch a new quote.
-     */
-    private void fetchAPIQuote(Security s) {
-
-        QuoteClient client = new QuoteClient(context);
-
-        client.getQuote(s.getSymbol(), new QuoteClient.GetQuoteResponseListener() {
-            @Override
-            public void onResponse(Quote latestQuote) {
-                //Log.i(TAG, "New quote = " + latestQuote);
-                updateSecurityQuote(s.getSymbol(), latestQuote);
-            }
-
-            @Override
-            public void onFailure(String errorMsg) {
-                // Update the security's quote to zeroes (with empty quote), if couldn't get a new one
-                updateSecurityQuote(s.getSymbol(), new Quote());
-
-                Toast.makeText(context, errorMsg, Toast.LENGTH_SHORT).show();
-            }
-        });
-
-    }
-
     /**
      * Update a security's latest quote information, by notifying the adapter to update its view.
      *
@@ -263,26 +362,19 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
     }
 
     /**
-     * Find the position of a security in the adapter using its symbol.
+     * Find the position of a security in the adapter using its symbol, without going through
+     * the rows (as done on every quote received).
      *
      * @param symbol Symbol of the security
-     * @return position of the security if found, -1 otherwise (i.e. NO_POSITION)
+     * @return position of the security if found, -1 otherwise (i.e. NO_POSITION), including
+     *         if dropped from memory
      */
-    private int getSecurityPosition(String symbol) {
-        int position = -1;
-
-        for (int i = 0; i < data.size(); i++) {
-            if (data.get(i).getSymbol().compareTo(symbol) == 0) {
-                position = i;
-                break;
-            }
-        }
-
-        return position;
+    public int getSecurityPosition(String symbol) {
+        return rows.positionOf(symbol);
     }
 
     /**
-     * Enable callback to fetch quote when a security is visible by end-user.
+     * Subscribe a security to quote refreshes when it becomes visible by end-user.
      *
      * @param holder Holder of the view being attached
      */
@@ -290,22 +382,12 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
     public void onViewAttachedToWindow(@NonNull ViewHolder holder) {
         super.onViewAttachedToWindow(holder);
 
-        long randomDelay = getRandomFetchDelay();
-        //Log.i(TAG, "onViewAttachedToWindow(): Enabling callback for (" + holder.tv_symbol.getText() + "), delay = " + randomDelay/1000 + " secs");
-
-        holder.itemView.postDelayed(holder.fetchQuoteRunnable, randomDelay);
-    }
+        //Log.i(TAG, "onViewAttachedToWindow(): Subscribing (" + holder.quoteSymbol + ")");
 
-    /**
-     * Generate a random delay to fetch a new quote for a security.  Random delay is set
-     * to be between 1 and 10 seconds, to mimic real-time markets.
-     *
-     * @return delay generated, in milliseconds   (ex: 8000 for 8 seconds)
-     */
-    private long getRandomFetchDelay(){
-        long randomDelay = (1 + (long) (Math.random() * 10)) * 1000; // x 1000 milliseconds = 1 sec
-
-        return randomDelay;
+        holder.subscribedSymbol = holder.quoteSymbol;
+        if (!holder.subscribedSymbol.isEmpty()) {
+            quoteScheduler.subscribe(holder.subscribedSymbol);
+        }
     }
 
     @Override
@@ -315,7 +397,7 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
      }
 
     /**
-     * Remove callback for fetching quote when a given security is not in end-user's view anymore.
+     * Unsubscribe a security from quote refreshes when it is not in end-user's view anymore.
      *
      * @param holder Holder of the view being detached
      */
@@ -323,9 +405,49 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
     public void onViewDetachedFromWindow(@NonNull ViewHolder holder) {
         super.onViewDetachedFromWindow(holder);
 
-        //Log.i(TAG, "onViewDetachedFromWindow(): Removing callback for (" + holder.tv_symbol.getText() + ")");
+        //Log.i(TAG, "onViewDetachedFromWindow(): Unsubscribing (" + holder.subscribedSymbol + ")");
+
+        if (holder.subscribedSymbol != null && !holder.subscribedSymbol.isEmpty()) {
+            quoteScheduler.unsubscribe(holder.subscribedSymbol);
+        }
+        holder.subscribedSymbol = null;
+    }
+
+    /**
+     * Prefetch the quotes of the securities within a few rows of those visible, replacing the
+     * ones prefetched so far.
+     *
+     * @param first Position of the first security visible
+     * @param last Position of the last security visible
+     */
+    private void updatePrefetchSymbols(int first, int last) {
+        List<String> symbols = new ArrayList<>(QUOTE_PREFETCH_ROWS * 2);
+
+        if (first != RecyclerView.NO_POSITION && last != RecyclerView.NO_POSITION) {
+            for (int i = Math.max(0, first - QUOTE_PREFETCH_ROWS); i < first; i++) {
+                addSymbol(symbols, rows.get(i));
+            }
+            for (int i = last + 1; i < Math.min(rows.size(), last + 1 + QUOTE_PREFETCH_ROWS); i++) {
+                addSymbol(symbols, rows.get(i));
+            }
+        }
+
+        if (!symbols.equals(prefetchSymbols)) {
+            prefetchSymbols = symbols;
+            quoteScheduler.setPrefetchSymbols(symbols);
+        }
+    }
+
+    private static void addSymbol(List<String> symbols, Security security) {
+        if (security != null) {
+            symbols.add(security.getSymbol());      // none if dropped from memory
+        }
+    }
 
-        holder.itemView.removeCallbacks(holder.fetchQuoteRunnable);
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        recyclerView.addOnScrollListener(prefetchListener);
     }
 
     @Override
@@ -334,24 +456,230 @@ public class SecurityAdapter extends RecyclerView.Adapter<SecurityAdapter.ViewHo
 
         // Not called if going back to main watchlist activity
         // Log.i(TAG, "onDetachedFromRecyclerView()");
+
+        recyclerView.removeOnScrollListener(prefetchListener);
+        updatePrefetchSymbols(RecyclerView.NO_POSITION, RecyclerView.NO_POSITION);
     }
 
     @Override
     public int getItemCount() {
-        return data.size();
+        return rows.size();
     }
 
     public void addItem(Security security) {
-        data.add(security);
-        notifyItemInserted(data.size()-1);
+        notifyItemInserted(rows.add(security));
+    }
+
+    /**
+     * Tell whether all the watchlist's securities are loaded, i.e. its last row is the last
+     * security of the watchlist (see setPaging).
+     *
+     * @return true if no page is left to load
+     */
+    public boolean isFullyLoaded() {
+        return pager == null || !pager.hasMore();
+    }
+
+    /**
+     * Tell whether a security was not added by the server yet (i.e. shown while being added).
+     */
+    private static boolean isPending(Security security) {
+        return security.getId() == 0;
     }
 
     public void removeItem(int position) {
-        Log.i(TAG, "Security (" + data.get(position).getSymbol() + "): Removed");
+        Security removed = rows.remove(position);
+
+        Log.i(TAG, "Security (" + ((removed != null) ? removed.getSymbol() : "row " + position) + "): Removed");
+        onRowRemoved(removed);
+    }
 
-        data.remove(position);
+    /**
+     * @return security at this position, null if dropped from memory (until loaded again)
+     */
+    public Security getItem(int position) {
+        return rows.get(position);
+    }
+
+    /**
+     * Replace a security instance by another (ex: the one returned by the server for a
+     * security shown before being added). If the instance is gone, the new one replaces the
+     * security with the same symbol, or is added at the end if none (or left for the last
+     * page to bring, if not all loaded yet).
+     *
+     * @param oldSecurity Security instance to replace
+     * @param newSecurity Security instance to put in its place
+     */
+    public void replaceItem(Security oldSecurity, Security newSecurity) {
+        int position = rows.replace(oldSecurity, newSecurity);
+
+        if (position >= 0) {
+            notifyItemChanged(position);                // full bind, subscribes it to quote refreshes
+        }
+        else if (isFullyLoaded()) {
+            addItem(newSecurity);
+        }
+        else {
+            pager.onRowsAddedAtEnd(1);
+        }
+    }
+
+    /**
+     * Remove a security shown before the server added it, as the server refused it.
+     *
+     * @param pending Security instance shown
+     */
+    public void undoAdd(Security pending) {
+        if (rows.undoAdd(pending) >= 0) {
+            onRowRemoved(pending);
+        }
+    }
+
+    /**
+     * Put back a security where it was, as the server refused to delete it (unless its
+     * symbol is back already).
+     *
+     * @param position Position it was removed from
+     * @param security Security instance removed
+     */
+    public void undoRemove(int position, Security security) {
+        if (rows.undoRemove(position, security) >= 0) {
+            notifyDataSetChanged();             // Need this one to get position numbers refreshed properly
+
+            if (pager != null && security.getId() != 0) {
+                pager.onRowsMoved(1);
+            }
+        }
+    }
+
+    private void onRowRemoved(Security removed) {
         //  notifyItemRemoved(position);
         notifyDataSetChanged();                 // Need this one to get position numbers refreshed properly
+
+        if (pager != null && (removed == null || removed.getId() != 0)) {
+            pager.onRowsMoved(-1);
+        }
+    }
+
+    /**
+     * Apply changes made to the watchlist since it was loaded (or a bulk add/remove), as a
+     * patch to the current data set. Securities already present are replaced, others are
+     * added at the end (or left for their page to bring, if not all loaded yet). The views
+     * are updated in a single diffed update.
+     *
+     * @param changed Securities added or changed
+     * @param removedSymbols Symbols of the securities removed
+     */
+    public void applyChanges(List<Security> changed, List<String> removedSymbols) {
+        SecurityRows newRows = new SecurityRows(rows.toList());
+
+        for (String symbol : removedSymbols) {
+            int position = newRows.positionOf(symbol);
+
+            if (position >= 0) {
+                newRows.remove(position);
+                if (pager != null) pager.onRowsMoved(-1);
+            }
+        }
+
+        int notLoaded = 0;
+
+        for (Security security : changed) {
+            int position = newRows.positionOf(security.getSymbol());
+
+            if (position >= 0) {
+                newRows.set(position, security);
+            }
+            else if (pager == null || !pager.hasMore()) {
+                newRows.add(security);
+            }
+            else {
+                notLoaded++;
+            }
+        }
+
+        if (notLoaded > 0) {
+            pager.onRowsAddedAtEnd(notLoaded);
+        }
+
+        dispatchChanges(newRows.toList());
+    }
+
+    /**
+     * Replace the data set, notifying only the rows that changed. A row whose position moved
+     * counts as changed, as it shows its position number.
+     *
+     * @param newData New data set, null for the rows dropped from memory
+     */
+    private void dispatchChanges(List<Security> newData) {
+        List<Security> oldData = rows.toList();
+
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldData.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newData.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                Security oldSecurity = oldData.get(oldPosition);
+                Security newSecurity = newData.get(newPosition);
+
+                if (oldSecurity == null || newSecurity == null) {
+                    return oldSecurity == newSecurity;          // rows dropped from memory
+                }
+                return oldSecurity.getSymbol().equals(newSecurity.getSymbol());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldData.get(oldPosition) == newData.get(newPosition) && oldPosition == newPosition;
+            }
+        }, false);
+
+        rows.setList(newData);
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Add the next page of securities at the end, skipping those already there (ex: added
+     * since the first page was loaded).
+     *
+     * @param page Securities of the page
+     */
+    private void appendPage(List<Security> page) {
+        int start = rows.size();
+
+        notifyItemRangeInserted(start, rows.appendPage(page));
+    }
+
+    /**
+     * Put back the securities of a page dropped from memory, in the rows it took.
+     *
+     * @param offset Position of the page's first row
+     * @param page Securities of the page
+     */
+    private void reloadPage(int offset, List<Security> page) {
+        if (rows.reloadPage(offset, page) > 0) {
+            notifyItemRangeChanged(offset, Math.min(page.size(), rows.size() - offset));
+        }
+    }
+
+    /**
+     * Drop a page's securities from memory, only keeping the number of rows they take.
+     *
+     * @param start Position of the page's first row
+     * @param end Position after the page's last row
+     */
+    private void dropPage(int start, int end) {
+        if (rows.drop(start, end) > 0) {
+            notifyItemRangeChanged(start, Math.min(end, rows.size()) - start);
+        }
     }
 
 }
@@ -2,8 +2,10 @@ package com.rolande.mywatchlists.ui.watchlist_detail;
 
 import static com.rolande.mywatchlists.Constants.GRID_LAYOUT_LANDSCAPE_SPAN_COUNT;
 import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_PAGE_SIZE;
 
 import android.app.AlertDialog;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.ColorStateList;
@@ -12,7 +14,11 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -23,6 +29,9 @@ import android.view.ViewGroup;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultCallback;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
@@ -33,10 +42,24 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.rolande.mywatchlists.Constants;
 import com.rolande.mywatchlists.R;
+import com.rolande.mywatchlists.api.CallRegistry;
+import com.rolande.mywatchlists.api.quote.QuotePollingScheduler;
+import com.rolande.mywatchlists.api.watchlist.SymbolImporter;
+import com.rolande.mywatchlists.api.watchlist.SymbolResult;
 import com.rolande.mywatchlists.api.watchlist.WatchlistClient;
+import com.rolande.mywatchlists.api.watchlist.WatchlistMutation;
+import com.rolande.mywatchlists.api.watchlist.WatchlistOutbox;
+import com.rolande.mywatchlists.model.Settings;
 import com.rolande.mywatchlists.model.beans.Security;
 import com.rolande.mywatchlists.util.MyUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -50,6 +73,30 @@ public class SecurityFragment extends Fragment {
     private Long mparam_WatchlistID;         /* Fragment's 1st (and only) param */
     RecyclerView rv_headings;
     RecyclerView rv_securities;
+    QuotePollingScheduler quoteScheduler;    /* Refreshes quotes of all securities visible on screen */
+    ActivityResultLauncher<String> importLauncher;     /* Picks a file of symbols to import */
+
+    // Applies the changes made to this watchlist whenever one that was queued offline reaches the server
+    private final WatchlistOutbox.Listener outboxListener = new WatchlistOutbox.Listener() {
+        @Override
+        public void onMutationSent(WatchlistMutation mutation) {
+            if (mutation.getWatchlistId() == mparam_WatchlistID && rv_securities.getAdapter() != null) {
+                getWatchlistSecurityChanges(mparam_WatchlistID);
+            }
+        }
+
+        @Override
+        public void onMutationRejected(WatchlistMutation mutation, String errorMsg) {
+            if (mutation.getWatchlistId() == mparam_WatchlistID) {
+                MyUtils.doSafeToast(getContext(), errorMsg, TAG, "onMutationRejected");
+
+                // Undo what was shown ahead of the server (ex: a symbol it does not know)
+                if (rv_securities.getAdapter() != null) {
+                    getWatchlistSecurities(mparam_WatchlistID);
+                }
+            }
+        }
+    };
 
     public SecurityFragment() {}
 
@@ -66,6 +113,26 @@ public class SecurityFragment extends Fragment {
             this.mparam_WatchlistID = getArguments().getLong(Constants.WATCHLIST_ID_KEY);
             setHasOptionsMenu(true);
         }
+
+        importLauncher = registerForActivityResult(new ActivityResultContracts.GetContent(), new ActivityResultCallback<Uri>() {
+            @Override
+            public void onActivityResult(Uri uri) {
+                if (uri != null) {
+                    importSymbols(uri);
+                }
+            }
+        });
+
+        // Quote refresh settings can only be changed from the main screen, so set them once here...
+        Settings settings = Settings.current();
+        quoteScheduler = new QuotePollingScheduler(requireContext(),
+                settings.getQuoteRefreshInterval() * 1000L,
+                settings.getQuoteRefreshMinInterval() * 1000L,
+                settings.getQuoteRefreshMaxInterval() * 1000L);
+
+        if (settings.isQuoteStreaming()) {
+            quoteScheduler.enableStreaming();
+        }
      }
 
     @Override
@@ -224,7 +291,7 @@ public class SecurityFragment extends Fragment {
 
         if (itemId == R.id.action_add) {
             EditText et_symbol = new EditText(context);
-            et_symbol.setHint(R.string.add_symbol_hint);
+            et_symbol.setHint(R.string.add_symbols_hint);
 
             // Fetch the list of existing security symbols on the server-side...
             String definedSymbols = getResources().getString(R.string.defined_symbols);
@@ -236,9 +303,9 @@ public class SecurityFragment extends Fragment {
                     .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
                         @Override
                         public void onClick(DialogInterface dialog, int which) {
-                            String symbol = et_symbol.getText().toString().trim();
-                            if (! symbol.isEmpty()) {
-                                addSymbol(symbol);
+                            String symbols = et_symbol.getText().toString().trim();
+                            if (! symbols.isEmpty()) {
+                                addSymbols(symbols);
                             }
                             else {
                                 Toast.makeText(requireContext(), R.string.field_cannot_be_blank, Toast.LENGTH_SHORT).show();
@@ -259,92 +326,276 @@ public class SecurityFragment extends Fragment {
             return true;
         }
 
+        if (itemId == R.id.action_import) {
+            importLauncher.launch("text/*");
+            return true;
+        }
+
         // if it was not a menu item handle by this fragment, super returns false here...
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Add the symbols entered in the Add dialog (separated by spaces or commas). A single
+     * symbol is added on its own, several are added in bulk.
+     *
+     * @param text Symbols entered
+     */
+    private void addSymbols(String text) {
+        SymbolImporter importer = new SymbolImporter(requireContext(), this);
+        SymbolImporter.Parsed parsed;
+
+        try {
+            parsed = importer.parse(new StringReader(text));
+        }
+        catch (IOException e) {
+            return;                             // cannot happen when reading a string
+        }
+
+        if (parsed.symbols.size() == 1 && parsed.rejected.isEmpty()) {
+            addSymbol(parsed.symbols.get(0));
+        }
+        else {
+            addSymbols(importer, parsed);
+        }
+    }
+
+    /**
+     * Import the symbols of a (plain text or CSV) file into the watchlist. The file is read on
+     * a background thread, then the symbols are added in bulk.
+     *
+     * @param uri File picked by the user
+     */
+    private void importSymbols(Uri uri) {
+        SymbolImporter importer = new SymbolImporter(requireContext(), this);
+        ContentResolver resolver = requireContext().getContentResolver();
+        Handler handler = new Handler(Looper.getMainLooper());
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (InputStream in = resolver.openInputStream(uri)) {
+                    SymbolImporter.Parsed parsed = importer.parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isAdded()) {
+                                addSymbols(importer, parsed);
+                            }
+                        }
+                    });
+                }
+                catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Cannot import " + uri + ": " + e.getMessage());
+
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            MyUtils.doSafeToast(getContext(), getString(R.string.msg_import_failed), TAG, "importSymbols");
+                        }
+                    });
+                }
+            }
+        }, "SymbolImporter").start();
+    }
+
+    /**
+     * Add symbols in bulk, then show the securities added in a single update, and tell how
+     * many could not be added.
+     *
+     * @param importer Importer that read the symbols
+     * @param parsed Symbols read
+     */
+    private void addSymbols(SymbolImporter importer, SymbolImporter.Parsed parsed) {
+        importer.importSymbols(mparam_WatchlistID, parsed, new WatchlistClient.SymbolsResponseListener() {
+            @Override
+            public void onResponse(List<SymbolResult> results) {
+                List<Security> added = new ArrayList<>();
+                int queued = 0, rejected = 0;
+                SymbolResult firstRejected = null;
+
+                for (SymbolResult result : results) {
+                    if (result.isQueued()) {
+                        queued++;
+                    }
+                    else if (!result.isSuccess()) {
+                        if (rejected++ == 0) firstRejected = result;
+                    }
+                    else if (result.getSecurity() != null) {
+                        added.add(result.getSecurity());
+                    }
+                }
+
+                SecurityAdapter adapter = (SecurityAdapter) rv_securities.getAdapter();
+
+                if (adapter != null && !added.isEmpty()) {
+                    adapter.applyChanges(added, Collections.<String>emptyList());
+                }
+
+                Context context = getContext();
+
+                if (context == null) {
+                    return;                     // back to main screen meanwhile
+                }
+
+                String msg = (firstRejected == null) ?
+                        context.getString(R.string.msg_import_result, added.size(), queued) :
+                        context.getString(R.string.msg_import_result_rejected, added.size(), queued, rejected,
+                                firstRejected.getSymbol(), firstRejected.getErrorMsg());
+
+                Toast.makeText(context, msg, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
     /**
      * Sends a request to add a symbol to a watchlist to the watchlist server (using Retrofit).
      * Symbol must be defined on the server side and must not already be present in the
      * current watchlist.
      *
+     * The symbol is shown right away (as pending, without a quote), then replaced by the
+     * security the server returned, or removed if the server refused it. It is not shown
+     * while the watchlist is only partially loaded, as it goes at the end of the watchlist:
+     * the last page brings it instead.
+     *
      * @param symbol The symbol of the security to add.
      */
     private void addSymbol(String symbol) {
-        WatchlistClient client = new WatchlistClient(requireContext());
+        SecurityAdapter adapter = (SecurityAdapter) rv_securities.getAdapter();
+
+        Security pending = new Security(0, symbol, getString(R.string.security_pending_name), "", null);
+        boolean shown = adapter != null && adapter.isFullyLoaded();
+
+        if (shown) {
+            adapter.addItem(pending);
+        }
+
+        WatchlistClient client = new WatchlistClient(requireContext(), this);
 
         client.addSymbol(mparam_WatchlistID, symbol, new WatchlistClient.AddSymbolResponseListener() {
             @Override
             public void onResponse(Security securityAdded) {
-                ((SecurityAdapter) rv_securities.getAdapter()).addItem(securityAdded);
+                if (adapter != null) {
+                    adapter.replaceItem(pending, securityAdded);
+                }
+
+                Context context = getContext();
+
+                if (!shown && context != null) {
+                    Toast.makeText(context, context.getString(R.string.msg_security_added_at_end, symbol), Toast.LENGTH_SHORT).show();
+                }
             }
 
             @Override
             public void onFailure(String errorMsg) {
+                if (shown) {
+                    adapter.undoAdd(pending);
+                }
+
                 // On failure, make sure we still have a context before Toasting the error message
                 // (otherwise, would crash)...It is possible to have no context attached to the
                 // fragment if we returned back to main screen before this call back arrives...
 
                 MyUtils.doSafeToast(getContext(), errorMsg, TAG, "addSymbol");
             }
+
+            @Override
+            public void onQueued(String msg) {
+                MyUtils.doSafeToast(getContext(), msg, TAG, "addSymbol");
+            }
         });
     }
 
     /**
      * Sends a request to delete a symbol from the current watchlist to the watchlist server.
      *
+     * The security is removed right away, and put back if the server refused to delete it.
+     *
      * @param holder viewHolder of the security/symbol to remove from the watchlist.
      */
     private void deleteSymbol(SecurityAdapter.ViewHolder holder) {
 
-        String symbol = holder.tv_symbol.getText().toString();
+        SecurityAdapter adapter = (SecurityAdapter) rv_securities.getAdapter();
+        int position = holder.getBindingAdapterPosition();
+
+        if (adapter == null || position == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        Security security = adapter.getItem(position);
+
+        if (security == null) {
+            // Not loaded again yet: redraw the view holder, otherwise would be stuck with delete-swipe view...
+            adapter.notifyItemChanged(position);
+            return;
+        }
+
+        if (security.getId() == 0) {
+            // Not added by the server yet: redraw the view holder, otherwise would be stuck with delete-swipe view...
+            adapter.notifyItemChanged(position);
+            Toast.makeText(requireContext(), R.string.msg_security_pending, Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-        WatchlistClient client = new WatchlistClient(requireContext());
+        adapter.removeItem(position);
 
-        client.deleteSymbol(mparam_WatchlistID, symbol, new WatchlistClient.BooleanResponseListener() {
+        WatchlistClient client = new WatchlistClient(requireContext(), this);
+
+        client.deleteSymbol(mparam_WatchlistID, security.getSymbol(), new WatchlistClient.BooleanResponseListener() {
             @Override
             public void onResponse(boolean success, String errorMsg) {
-                if (success) {
-                    ((SecurityAdapter) rv_securities.getAdapter()).removeItem(holder.getBindingAdapterPosition());
-                }
-                else {
-                    // Force redraw of the view holder, otherwise would be stuck with delete-swipe view...
-                    ((SecurityAdapter) rv_securities.getAdapter()).notifyItemChanged(holder.getBindingAdapterPosition());
+                if (!success) {
+                    adapter.undoRemove(position, security);
 
                     MyUtils.doSafeToast(getContext(), errorMsg, TAG, "deleteSymbol");
                 }
             }
 
+            @Override
+            public void onQueued(String msg) {
+                MyUtils.doSafeToast(getContext(), msg, TAG, "deleteSymbol");
+            }
         });
 
     }
 
     /**
-     * Get content of the watchlist received at creation time as soon as we get foreground focus.
+     * Get content of the watchlist received at creation time as soon as we get foreground focus,
+     * and start refreshing quotes. If content was already loaded, only get what changed since.
      */
     @Override
     public void onResume() {
         super.onResume();
-        getWatchlistSecurities(mparam_WatchlistID);
+
+        quoteScheduler.start();
+        WatchlistOutbox.getInstance(requireContext()).addListener(outboxListener);
+
+        SecurityAdapter securityAdapter = (SecurityAdapter) rv_securities.getAdapter();
+
+        // Changes can only be applied to a paged watchlist if the server keeps revisions
+        if (securityAdapter == null || (securityAdapter.isPaged() && !WatchlistClient.hasRevision(mparam_WatchlistID))) {
+            getWatchlistSecurities(mparam_WatchlistID);
+        }
+        else {
+            getWatchlistSecurityChanges(mparam_WatchlistID);
+        }
     }
 
     /**
-     * Send a request to retrieve all securities in the specified watchlist to the server.
+     * Send a request to retrieve the securities in the specified watchlist to the server. Only
+     * the first page of a large watchlist is retrieved, the others being retrieved as the list
+     * is scrolled.
      *
      * @param watchlistID  Watchlist ID to retrieve
      */
     private void getWatchlistSecurities(Long watchlistID) {
-        WatchlistClient client = new WatchlistClient(requireContext());
+        WatchlistClient client = new WatchlistClient(requireContext(), this);
 
-        client.getWatchlistSecurities(watchlistID, new WatchlistClient.GetWatchlistSecuritiesResponseListener() {
+        client.getWatchlistSecuritiesPage(watchlistID, 0, WATCHLIST_PAGE_SIZE, new WatchlistClient.GetWatchlistSecuritiesPageResponseListener() {
             @Override
-            public void onResponse(List<Security> list) {
-                SecurityHeaderAdapter headerSecurityAdapter = new SecurityHeaderAdapter(requireActivity(), null,
-                        getResources().getConfiguration().orientation);
-                rv_headings.setAdapter(headerSecurityAdapter);
-
-                SecurityAdapter securityAdapter = new SecurityAdapter(requireActivity(), list);
-                rv_securities.setAdapter(securityAdapter);
+            public void onResponse(List<Security> page, int offset, int total) {
+                showSecurities(watchlistID, page, total);
             }
 
             @Override
@@ -356,16 +607,72 @@ public class SecurityFragment extends Fragment {
     }
 
     /**
-     * Reset our recycler views when fragment loses foreground focus (in order not to keep
-     * fetching quotes for invisible securities).
+     * Show the first page of the watchlist's securities, the others being loaded as the list
+     * is scrolled (see SecurityPager).
+     *
+     * @param watchlistID Watchlist ID involved
+     * @param page Securities of the first page
+     * @param total Number of securities in the watchlist, -1 if all are in the page
+     */
+    private void showSecurities(Long watchlistID, List<Security> page, int total) {
+        SecurityHeaderAdapter headerSecurityAdapter = new SecurityHeaderAdapter(requireActivity(), null,
+                getResources().getConfiguration().orientation);
+        rv_headings.setAdapter(headerSecurityAdapter);
+
+        SecurityAdapter securityAdapter = new SecurityAdapter(requireActivity(), page, quoteScheduler);
+
+        if (total > page.size()) {
+            securityAdapter.setPaging(SecurityFragment.this, watchlistID, total);
+        }
+        rv_securities.setAdapter(securityAdapter);
+    }
+
+    /**
+     * Send a request for the changes made to the watchlist since its securities were loaded,
+     * and apply them to the securities already displayed.
+     *
+     * @param watchlistID  Watchlist ID involved
+     */
+    private void getWatchlistSecurityChanges(Long watchlistID) {
+        WatchlistClient client = new WatchlistClient(requireContext(), this);
+
+        client.getWatchlistSecurityChanges(watchlistID, new WatchlistClient.GetWatchlistSecurityChangesResponseListener() {
+            @Override
+            public void onResponse(List<Security> changed, List<String> removedSymbols, boolean fullList) {
+                SecurityAdapter securityAdapter = (SecurityAdapter) rv_securities.getAdapter();
+
+                if (fullList || securityAdapter == null) {
+                    // Only the first page is kept, the others being loaded again as the list is scrolled
+                    List<Security> page = new ArrayList<>(changed.subList(0, Math.min(changed.size(), WATCHLIST_PAGE_SIZE)));
+                    showSecurities(watchlistID, page, changed.size());
+                }
+                else {
+                    securityAdapter.applyChanges(changed, removedSymbols);
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                MyUtils.doSafeToast(getContext(), errorMsg, TAG, "getWatchlistSecurityChanges");
+            }
+        });
+
+    }
+
+    /**
+     * Stop fetching quotes when fragment loses foreground focus (in order not to keep
+     * fetching quotes for invisible securities), and cancel the watchlist requests still
+     * pending, as their results are picked up again upon resuming. Securities already loaded
+     * are kept, so they can be shown right away upon resuming.
      */
 
     @Override
     public void onPause() {
         super.onPause();
 
-        rv_headings.setAdapter(null);
-        rv_securities.setAdapter(null);   // will cause Adapter's onDetachedFromRecyclerView to be called
+        quoteScheduler.stop();
+        WatchlistOutbox.getInstance(requireContext()).removeListener(outboxListener);
+        CallRegistry.cancel(this);
     }
 
     @Override
@@ -0,0 +1,196 @@
+package com.rolande.mywatchlists.ui.watchlist_detail;
+
+import static com.rolande.mywatchlists.Constants.LOG_TAG_PREFIX;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_MAX_PAGES;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_PAGE_PREFETCH_ROWS;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_PAGE_SIZE;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_READ_DEADLINE;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.rolande.mywatchlists.api.watchlist.WatchlistClient;
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the securities of a large watchlist a page at a time, as the list is scrolled: the
+ * next page once within a few rows of the last one loaded, and pages dropped from memory
+ * when scrolled back to.
+ *
+ * Only a few pages are kept in memory, the least recently shown being dropped first. Only the
+ * number of rows of a dropped page is kept (see SecurityRows), so that positions and row
+ * numbers stay right across pages; its securities are loaded again by position when shown.
+ *
+ * Pages are obtained by offset. Rows removed (or put back) from those loaded move the offset
+ * of the next page accordingly; securities added go at the end of the watchlist on the server
+ * side, so any that comes again with a later page is skipped.
+ *
+ * @author Rolande
+ */
+class SecurityPager {
+    final static String TAG = LOG_TAG_PREFIX + SecurityPager.class.getSimpleName();
+
+    /**
+     * Callback interface to pass on the pages loaded, and those to drop
+     */
+    interface Listener {
+        /**
+         * @param page Securities of the page
+         * @param offset Position of the page's first row
+         * @param append true if the page comes after the rows loaded so far, false if it is
+         *               one dropped earlier, loaded again
+         */
+        void onPageLoaded(List<Security> page, int offset, boolean append);
+
+        /**
+         * @param start Position of the first row of the page to drop
+         * @param end Position after the last row of the page to drop
+         */
+        void onPageDropped(int start, int end);
+    }
+
+    private final WatchlistClient client;
+    private final Long watchlistId;
+    private final Listener listener;
+
+    private int total;                          // number of securities on the server side
+    private int loadedCount;                    // number of those loaded so far, i.e. offset of the next page
+
+    // Pages in memory, least recently shown first
+    private final LinkedHashMap<Integer, Boolean> pagesInMemory = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Pages being loaded, with the uptime they were asked for (a cancelled load is never answered)
+    private final Map<Integer, Long> pagesLoading = new HashMap<>();
+
+    /**
+     * @param context Context of the pager
+     * @param scope Lifecycle scope of the requests made (ex: a fragment), see CallRegistry
+     * @param watchlistId ID of the watchlist involved
+     * @param total Number of securities in the watchlist
+     * @param loadedCount Number of those already loaded (i.e. the first page)
+     * @param listener Object implementing the callback interface
+     */
+    SecurityPager(Context context, Object scope, Long watchlistId, int total, int loadedCount, Listener listener) {
+        this.client = new WatchlistClient(context, scope);
+        this.watchlistId = watchlistId;
+        this.total = total;
+        this.loadedCount = loadedCount;
+        this.listener = listener;
+
+        pagesInMemory.put(0, Boolean.TRUE);
+    }
+
+    /**
+     * @return true if some securities are not loaded yet
+     */
+    boolean hasMore() {
+        return loadedCount < total;
+    }
+
+    /**
+     * Called as a row is shown: keeps its page in memory (loading it again if dropped), and
+     * loads the next page if the row is one of the last loaded.
+     *
+     * @param position Position of the row shown
+     * @param dropped true if the row's security was dropped from memory
+     * @param rowCount Number of rows
+     */
+    void onRowShown(int position, boolean dropped, int rowCount) {
+        int pageIndex = position / WATCHLIST_PAGE_SIZE;
+
+        if (dropped) {
+            loadPage(pageIndex, pageIndex * WATCHLIST_PAGE_SIZE, false);
+        }
+        else {
+            pagesInMemory.get(pageIndex);       // most recently shown
+        }
+
+        if (hasMore() && position >= rowCount - WATCHLIST_PAGE_PREFETCH_ROWS) {
+            loadPage(loadedCount / WATCHLIST_PAGE_SIZE, loadedCount, true);
+        }
+    }
+
+    /**
+     * Called as rows loaded are removed (count < 0), or put back (count > 0).
+     *
+     * @param count Number of rows added, negative if removed
+     */
+    void onRowsMoved(int count) {
+        loadedCount = Math.max(0, loadedCount + count);
+        total = Math.max(0, total + count);
+    }
+
+    /**
+     * Called as securities not loaded yet are added (they go at the end of the watchlist).
+     *
+     * @param count Number of securities added
+     */
+    void onRowsAddedAtEnd(int count) {
+        total += count;
+    }
+
+    private void loadPage(int pageIndex, int offset, boolean append) {
+        Long since = pagesLoading.get(pageIndex);
+
+        if (since != null && SystemClock.uptimeMillis() - since < WATCHLIST_READ_DEADLINE) {
+            return;                             // already on its way
+        }
+
+        pagesLoading.put(pageIndex, SystemClock.uptimeMillis());
+
+        client.getWatchlistSecuritiesPage(watchlistId, offset, WATCHLIST_PAGE_SIZE, new WatchlistClient.GetWatchlistSecuritiesPageResponseListener() {
+            @Override
+            public void onResponse(List<Security> page, int offset, int total) {
+                pagesLoading.remove(pageIndex);
+
+                if (append) {
+                    if (offset != loadedCount) {
+                        return;                 // rows removed meanwhile, load the next page again
+                    }
+
+                    loadedCount += page.size();
+                    SecurityPager.this.total = (total >= 0 && page.size() == WATCHLIST_PAGE_SIZE) ? total : loadedCount;
+                }
+
+                Log.i(TAG, "Loaded page " + pageIndex + " (" + page.size() + " securities), " +
+                        loadedCount + " of " + SecurityPager.this.total + " loaded");
+
+                pagesInMemory.put(pageIndex, Boolean.TRUE);
+                listener.onPageLoaded(page, offset, append);
+
+                dropPages(pageIndex);
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                pagesLoading.remove(pageIndex);
+                Log.w(TAG, "Cannot load page " + pageIndex + ": " + errorMsg);
+            }
+        });
+    }
+
+    /**
+     * Drop the least recently shown pages from memory, down to the maximum kept.
+     *
+     * @param keptPageIndex Page just loaded, always kept
+     */
+    private void dropPages(int keptPageIndex) {
+        Iterator<Integer> it = pagesInMemory.keySet().iterator();
+
+        while (pagesInMemory.size() > WATCHLIST_MAX_PAGES && it.hasNext()) {
+            int pageIndex = it.next();
+
+            if (pageIndex != keptPageIndex) {
+                it.remove();
+                listener.onPageDropped(pageIndex * WATCHLIST_PAGE_SIZE, (pageIndex + 1) * WATCHLIST_PAGE_SIZE);
+            }
+        }
+    }
+}
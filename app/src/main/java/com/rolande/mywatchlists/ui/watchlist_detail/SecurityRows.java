@@ -0,0 +1,521 @@
+package com.rolande.mywatchlists.ui.watchlist_detail;
+
+import com.rolande.mywatchlists.model.beans.Security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data set of the SecurityAdapter, kept apart from the adapter (and its views) so that paging
+ * and the securities shown ahead of the server, with their rollback, can be checked on their
+ * own.
+ *
+ * Rows are kept as runs: either securities loaded, or just the number of rows dropped from
+ * memory (see SecurityPager), which are loaded again by position when shown. The position of
+ * each security loaded is kept by symbol, as quotes come by symbol.
+ *
+ * Each change returns the position it affected (-1 if none), for the adapter to notify.
+ *
+ * @author Rolande
+ */
+class SecurityRows {
+
+    /**
+     * Consecutive rows, either loaded or dropped from memory.
+     */
+    private static class Run {
+        List<Security> securities;          // null if dropped
+        int count;                          // number of rows, if dropped
+
+        Run(List<Security> securities, int count) {
+            this.securities = securities;
+            this.count = count;
+        }
+
+        boolean isDropped() {
+            return securities == null;
+        }
+
+        int size() {
+            return isDropped() ? count : securities.size();
+        }
+    }
+
+    private final List<Run> runs = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int size;
+
+    /**
+     * @param data Securities of the rows, all loaded (the list is copied)
+     */
+    SecurityRows(List<Security> data) {
+        setList(data);
+    }
+
+    /**
+     * Get the number shown on a row, 1-based.
+     *
+     * @param position Position of the row
+     * @return the row's number, right-aligned on two characters
+     */
+    static String formatRowNumber(int position) {
+        return String.format("%2s", String.valueOf(position + 1));
+    }
+
+    /**
+     * @return a copy of the rows, with null for those dropped from memory
+     */
+    List<Security> toList() {
+        List<Security> list = new ArrayList<>(size);
+
+        for (Run run : runs) {
+            if (run.isDropped()) {
+                for (int i = 0; i < run.count; i++) {
+                    list.add(null);
+                }
+            }
+            else {
+                list.addAll(run.securities);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Replace all rows.
+     *
+     * @param data Securities of the rows, null for those dropped from memory
+     */
+    void setList(List<Security> data) {
+        runs.clear();
+        positions.clear();
+        size = 0;
+
+        for (Security security : data) {
+            if (security == null) {
+                appendDropped(1);
+            }
+            else {
+                append(security);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of rows dropped from memory
+     */
+    int getDroppedCount() {
+        return size - positions.size();
+    }
+
+    /**
+     * @return security at this position, null if dropped from memory
+     */
+    Security get(int position) {
+        int start = 0;
+
+        for (Run run : runs) {
+            if (position < start + run.size()) {
+                return run.isDropped() ? null : run.securities.get(position - start);
+            }
+            start += run.size();
+        }
+        throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+    }
+
+    boolean isDropped(int position) {
+        return get(position) == null;
+    }
+
+    void set(int position, Security security) {
+        int start = 0;
+
+        for (Run run : runs) {
+            if (position < start + run.size()) {
+                if (run.isDropped()) {
+                    throw new IllegalStateException("Row " + position + " dropped from memory");
+                }
+
+                positions.remove(run.securities.set(position - start, security).getSymbol());
+                positions.put(security.getSymbol(), position);
+                return;
+            }
+            start += run.size();
+        }
+        throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+    }
+
+    /**
+     * @return position of the security with this symbol, -1 if none (or dropped from memory)
+     */
+    int positionOf(String symbol) {
+        Integer position = positions.get(symbol);
+
+        return (position != null) ? position : -1;
+    }
+
+    /**
+     * Add a security at the end.
+     *
+     * @return position of the security added
+     */
+    int add(Security security) {
+        append(security);
+        return size - 1;
+    }
+
+    /**
+     * Insert a security at position specified, clamped to the number of rows. Inserted within
+     * rows dropped from memory, it splits them.
+     *
+     * @return position at which it was inserted
+     */
+    int insert(int position, Security security) {
+        position = Math.max(0, Math.min(position, size));
+
+        if (position == size) {
+            return add(security);
+        }
+
+        shiftPositions(position, 1);
+
+        int start = 0;
+
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+
+            if (position < start + run.size()) {
+                if (run.isDropped()) {
+                    int before = position - start;
+
+                    runs.set(i, new Run(newList(security), 0));
+                    runs.add(i + 1, new Run(null, run.count - before));
+                    if (before > 0) {
+                        runs.add(i, new Run(null, before));
+                    }
+                }
+                else {
+                    run.securities.add(position - start, security);
+                }
+                break;
+            }
+            start += run.size();
+        }
+
+        positions.put(security.getSymbol(), position);
+        size++;
+        normalize();
+        return position;
+    }
+
+    /**
+     * Remove a row.
+     *
+     * @return security removed, null if the row was dropped from memory
+     */
+    Security remove(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+
+        int start = 0;
+        Security removed = null;
+
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+
+            if (position < start + run.size()) {
+                if (run.isDropped()) {
+                    run.count--;
+                }
+                else {
+                    removed = run.securities.remove(position - start);
+                    positions.remove(removed.getSymbol());
+                }
+
+                if (run.size() == 0) {
+                    runs.remove(i);
+                    mergeAround(i - 1);
+                }
+                break;
+            }
+            start += run.size();
+        }
+
+        size--;
+        shiftPositions(position + 1, -1);
+        return removed;
+    }
+
+    /**
+     * Replace a security instance by another. If the instance is gone, the new one replaces
+     * the security with the same symbol, if any.
+     *
+     * @return position of the new instance, -1 if neither is there
+     */
+    int replace(Security oldSecurity, Security newSecurity) {
+        int position = positionOf(oldSecurity.getSymbol());
+
+        if (position < 0 || get(position) != oldSecurity) {
+            position = positionOf(newSecurity.getSymbol());
+        }
+
+        if (position >= 0) {
+            set(position, newSecurity);
+        }
+        return position;
+    }
+
+    /**
+     * Undo the add of a security shown before the server added it: remove it, if still there.
+     *
+     * @param pending Security shown ahead of the server
+     * @return position it was removed from, -1 if already gone
+     */
+    int undoAdd(Security pending) {
+        int position = positionOf(pending.getSymbol());
+
+        if (position < 0 || get(position) != pending) {
+            return -1;
+        }
+
+        remove(position);
+        return position;
+    }
+
+    /**
+     * Undo the removal of a security: put it back where it was, unless its symbol is back
+     * already (ex: brought by a reload).
+     *
+     * @param position Position it was removed from
+     * @param security Security removed
+     * @return position at which it was put back, -1 if already there
+     */
+    int undoRemove(int position, Security security) {
+        if (positionOf(security.getSymbol()) >= 0) {
+            return -1;
+        }
+        return insert(position, security);
+    }
+
+    /**
+     * Add the next page of securities at the end, skipping those already there (ex: added
+     * since the first page was loaded).
+     *
+     * @param page Securities of the page
+     * @return number of securities added
+     */
+    int appendPage(List<Security> page) {
+        int start = size;
+
+        for (Security security : page) {
+            if (positionOf(security.getSymbol()) < 0) {
+                append(security);
+            }
+        }
+        return size - start;
+    }
+
+    /**
+     * Put back the securities of a page dropped from memory, in the rows still dropped from
+     * where the page starts. A security already loaded elsewhere (ex: rows moved meanwhile)
+     * leaves its row dropped.
+     *
+     * @param offset Position of the page's first row
+     * @param page Securities of the page
+     * @return number of rows put back
+     */
+    int reloadPage(int offset, List<Security> page) {
+        int reloaded = 0;
+
+        for (int i = 0; i < page.size() && offset + i < size; i++) {
+            Security security = page.get(i);
+
+            if (isDropped(offset + i) && positionOf(security.getSymbol()) < 0) {
+                fill(offset + i, security);
+                reloaded++;
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * Drop the securities of a page from memory, only keeping how many rows they take. Rows
+     * not added by the server yet are kept, as the server cannot give them back.
+     *
+     * @param start Position of the page's first row
+     * @param end Position after the page's last row
+     * @return number of rows dropped
+     */
+    int drop(int start, int end) {
+        end = Math.min(end, size);
+
+        int dropped = 0;
+        int runStart = 0;
+
+        for (int i = 0; i < runs.size() && runStart < end; i++) {
+            Run run = runs.get(i);
+            int runEnd = runStart + run.size();
+
+            if (!run.isDropped() && runEnd > start) {
+                List<Security> before = new ArrayList<>(run.securities.subList(0, Math.max(0, start - runStart)));
+                List<Security> after = new ArrayList<>(run.securities.subList(Math.min(run.size(), end - runStart), run.size()));
+                List<Run> split = new ArrayList<>();
+
+                if (!before.isEmpty()) {
+                    split.add(new Run(before, 0));
+                }
+
+                int count = 0;
+
+                for (Security security : run.securities.subList(before.size(), run.size() - after.size())) {
+                    if (security.getId() == 0) {
+                        if (count > 0) {
+                            split.add(new Run(null, count));
+                            count = 0;
+                        }
+                        split.add(new Run(newList(security), 0));
+                    }
+                    else {
+                        positions.remove(security.getSymbol());
+                        count++;
+                        dropped++;
+                    }
+                }
+                if (count > 0) {
+                    split.add(new Run(null, count));
+                }
+
+                if (!after.isEmpty()) {
+                    split.add(new Run(after, 0));
+                }
+
+                runs.remove(i);
+                runs.addAll(i, split);
+                i += split.size() - 1;
+            }
+            runStart = runEnd;
+        }
+
+        normalize();
+        return dropped;
+    }
+
+    private static List<Security> newList(Security security) {
+        List<Security> list = new ArrayList<>();
+        list.add(security);
+
+        return list;
+    }
+
+    private void append(Security security) {
+        Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+
+        if (last != null && !last.isDropped()) {
+            last.securities.add(security);
+        }
+        else {
+            runs.add(new Run(newList(security), 0));
+        }
+
+        positions.put(security.getSymbol(), size);
+        size++;
+    }
+
+    private void appendDropped(int count) {
+        Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+
+        if (last != null && last.isDropped()) {
+            last.count += count;
+        }
+        else {
+            runs.add(new Run(null, count));
+        }
+        size += count;
+    }
+
+    /**
+     * Put a security in a row dropped from memory, splitting its run.
+     */
+    private void fill(int position, Security security) {
+        int start = 0;
+
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+
+            if (position < start + run.size()) {
+                int before = position - start;
+                int after = run.count - before - 1;
+
+                runs.set(i, new Run(newList(security), 0));
+                if (after > 0) {
+                    runs.add(i + 1, new Run(null, after));
+                }
+                if (before > 0) {
+                    runs.add(i, new Run(null, before));
+                }
+                break;
+            }
+            start += run.size();
+        }
+
+        positions.put(security.getSymbol(), position);
+        normalize();
+    }
+
+    /**
+     * Move the positions kept of the securities from a given position on.
+     */
+    private void shiftPositions(int from, int delta) {
+        for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+            if (entry.getValue() >= from) {
+                entry.setValue(entry.getValue() + delta);
+            }
+        }
+    }
+
+    /**
+     * Merge the run at this index with the next one, if of the same kind.
+     */
+    private void mergeAround(int index) {
+        if (index < 0 || index + 1 >= runs.size()) {
+            return;
+        }
+
+        Run run = runs.get(index);
+        Run next = runs.get(index + 1);
+
+        if (run.isDropped() && next.isDropped()) {
+            run.count += next.count;
+            runs.remove(index + 1);
+        }
+        else if (!run.isDropped() && !next.isDropped()) {
+            run.securities.addAll(next.securities);
+            runs.remove(index + 1);
+        }
+    }
+
+    /**
+     * Remove empty runs, and merge consecutive runs of the same kind.
+     */
+    private void normalize() {
+        Iterator<Run> it = runs.iterator();
+
+        while (it.hasNext()) {
+            if (it.next().size() == 0) {
+                it.remove();
+            }
+        }
+
+        for (int i = runs.size() - 2; i >= 0; i--) {
+            mergeAround(i);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.rolande.mywatchlists;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Context for the clients used by local unit tests, which run against android.jar stubs
+ * returning default values: strings come out null, which is all the clients need. Files go
+ * to a temporary directory, and preferences are kept in memory.
+ *
+ * @author Rolande
+ */
+public class TestContext extends ContextWrapper {
+    private final Resources resources = new Resources(null, null, null);
+    private final SharedPreferences preferences = new MemoryPreferences();
+    private File dir;
+
+    public TestContext() {
+        super(null);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public Resources getResources() {
+        return resources;
+    }
+
+    @Override
+    public File getCacheDir() {
+        return getDir();
+    }
+
+    @Override
+    public File getFilesDir() {
+        return getDir();
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return preferences;
+    }
+
+    private synchronized File getDir() {
+        if (dir == null) {
+            try {
+                dir = Files.createTempDirectory("mywatchlists-test").toFile();
+                dir.deleteOnExit();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return dir;
+    }
+
+    /**
+     * Preferences kept in memory, without change notifications.
+     */
+    private static class MemoryPreferences implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        private synchronized <T> T get(String key, T defValue) {
+            return values.containsKey(key) ? (T) values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return get(key, defValue);
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return get(key, defValues);
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return get(key, defValue);
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return get(key, defValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return get(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return get(key, defValue);
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {}
+
+        private class MemoryEditor implements Editor {
+            private final Map<String, Object> changes = new HashMap<>();
+            private boolean clear;
+
+            private Editor put(String key, Object value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putString(String key, String value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                return put(key, values);
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor remove(String key) {
+                return put(key, null);
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                synchronized (MemoryPreferences.this) {
+                    if (clear) {
+                        values.clear();
+                    }
+
+                    for (Map.Entry<String, Object> change : changes.entrySet()) {
+                        if (change.getValue() == null) {
+                            values.remove(change.getKey());
+                        } else {
+                            values.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}
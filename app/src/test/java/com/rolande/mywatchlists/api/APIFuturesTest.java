@@ -0,0 +1,239 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Tests that APIFutures.mapBounded never has more tasks in flight than allowed, starts the
+ * next one as soon as one completes, keeps the results in the order of the items, and stops
+ * on the first failure.
+ *
+ * @author Rolande
+ */
+public class APIFuturesTest {
+    private static final long TIMEOUT = 5;              // in seconds
+
+    private final List<CompletableFuture<String>> started = new ArrayList<>();
+    private ExecutorService executor;
+
+    /**
+     * Task whose futures are completed by the test, recording those started.
+     */
+    private final Function<Integer, CompletableFuture<String>> task = new Function<Integer, CompletableFuture<String>>() {
+        @Override
+        public CompletableFuture<String> apply(Integer item) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            started.add(future);
+
+            return future;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Integer> items(int count) {
+        List<Integer> items = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private int inFlight() {
+        int count = 0;
+
+        for (CompletableFuture<String> future : started) {
+            count += future.isDone() ? 0 : 1;
+        }
+        return count;
+    }
+
+    @Test
+    public void neverMoreThanMaxInFlight() {
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(10), 3, task);
+
+        assertEquals(3, started.size());
+
+        // Completed out of order, one at a time: newest in flight, then oldest
+        for (int round = 0; !all.isDone(); round++) {
+            assertTrue(inFlight() <= 3);
+
+            List<CompletableFuture<String>> inFlight = new ArrayList<>();
+            for (CompletableFuture<String> future : started) {
+                if (!future.isDone()) {
+                    inFlight.add(future);
+                }
+            }
+            inFlight.get((round % 2 == 0) ? inFlight.size() - 1 : 0).complete("r" + round);
+        }
+
+        assertEquals(10, started.size());
+    }
+
+    @Test
+    public void nextStartsAsSoonAsOneCompletes() {
+        APIFutures.mapBounded(items(5), 2, task);
+        assertEquals(2, started.size());
+
+        started.get(1).complete("b");
+        assertEquals(3, started.size());
+        assertEquals(2, inFlight());
+
+        started.get(0).complete("a");
+        started.get(2).complete("c");
+        assertEquals(5, started.size());
+        assertEquals(2, inFlight());
+    }
+
+    @Test
+    public void resultsInOrderOfItems() throws Exception {
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(4), 4, task);
+
+        for (int i = 3; i >= 0; i--) {
+            started.get(i).complete("r" + i);
+        }
+
+        assertEquals("[r0, r1, r2, r3]", all.get(TIMEOUT, TimeUnit.SECONDS).toString());
+    }
+
+    @Test
+    public void failureCancelsInFlightAndStartsNoMore() throws Exception {
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(10), 3, task);
+        IllegalStateException failure = new IllegalStateException("** Down");
+
+        started.get(1).completeExceptionally(failure);
+
+        try {
+            all.get(TIMEOUT, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        assertEquals(3, started.size());
+        assertTrue(started.get(0).isCancelled());
+        assertTrue(started.get(2).isCancelled());
+    }
+
+    @Test
+    public void cancelledResultCancelsInFlight() {
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(10), 2, task);
+
+        all.cancel(false);
+
+        assertTrue(started.get(0).isCancelled());
+        assertTrue(started.get(1).isCancelled());
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    public void taskThrowingFailsResult() {
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(3), 1, new Function<Integer, CompletableFuture<String>>() {
+            @Override
+            public CompletableFuture<String> apply(Integer item) {
+                if (item == 1) {
+                    throw new IllegalArgumentException("** Bad item");
+                }
+                return CompletableFuture.completedFuture("r" + item);
+            }
+        });
+
+        assertTrue(all.isCompletedExceptionally());
+    }
+
+    @Test
+    public void maxBelowOneRunsOneAtATime() {
+        APIFutures.mapBounded(items(3), 0, task);
+
+        assertEquals(1, started.size());
+    }
+
+    @Test
+    public void noItemsCompletesRightAway() throws Exception {
+        assertEquals(Collections.emptyList(), APIFutures.mapBounded(Collections.<Integer>emptyList(), 3, task).get());
+    }
+
+    @Test
+    public void tasksCompletedRightAwayDoNotNest() throws Exception {
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(100000), 4, new Function<Integer, CompletableFuture<String>>() {
+            @Override
+            public CompletableFuture<String> apply(Integer item) {
+                return CompletableFuture.completedFuture("r" + item);
+            }
+        });
+
+        List<String> results = all.get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(100000, results.size());
+        assertEquals("r99999", results.get(99999));
+    }
+
+    @Test
+    public void tasksCompletedOnOtherThreadsStayWithinMax() throws Exception {
+        executor = Executors.newFixedThreadPool(8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Random random = new Random(7);
+
+        CompletableFuture<List<String>> all = APIFutures.mapBounded(items(300), 5, new Function<Integer, CompletableFuture<String>>() {
+            @Override
+            public CompletableFuture<String> apply(Integer item) {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+
+                long delay;
+                synchronized (random) {
+                    delay = random.nextInt(3);
+                }
+
+                CompletableFuture<String> future = new CompletableFuture<>();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        running.decrementAndGet();
+                        future.complete("r" + item);
+                    }
+                });
+                return future;
+            }
+        });
+
+        List<String> results = all.get(TIMEOUT * 4, TimeUnit.SECONDS);
+
+        assertEquals(300, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("r" + i, results.get(i));
+        }
+        assertTrue("Max in flight " + maxRunning.get(), maxRunning.get() <= 5);
+        assertFalse(all.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,181 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.quote.QuoteAPI;
+import com.rolande.mywatchlists.api.quote.QuoteAPIBuilder;
+import com.rolande.mywatchlists.api.watchlist.WatchlistAPI;
+import com.rolande.mywatchlists.api.watchlist.WatchlistAPIBuilder;
+import com.rolande.mywatchlists.model.Settings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.http.GET;
+
+/**
+ * Tests that APIRegistry only builds a Retrofit instance when the service location changes,
+ * both on its own and through the Quote & Watchlist API builders, as used by the clients.
+ *
+ * @author Rolande
+ */
+public class APIRegistryTest {
+    private MockWebServer server;
+    private MockWebServer otherServer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        otherServer = new MockWebServer();
+        otherServer.start();
+
+        Settings.setContext(new TestContext());
+        Settings.setCurrent(settings(server));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        otherServer.shutdown();
+    }
+
+    private static Settings settings(MockWebServer server) {
+        return new Settings(server.getHostName(), server.getPort(), server.getHostName(), server.getPort());
+    }
+
+    interface PingAPI {
+        @GET("ping")
+        Call<Void> ping();
+    }
+
+    private static APIBuilder builder(String ipAddress, int port) {
+        return new APIBuilder(ipAddress, port, "/ping-service", "APIRegistryTest");
+    }
+
+    @Test
+    public void builtOncePerLocation() {
+        APIRegistry<PingAPI> registry = new APIRegistry<>(PingAPI.class);
+
+        PingAPI first = registry.get(builder("10.0.0.1", 8080));
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(first, registry.get(builder("10.0.0.1", 8080)));
+        }
+        assertEquals(1, registry.getRetrofitCount());
+
+        PingAPI moved = registry.get(builder("10.0.0.2", 8080));
+
+        assertNotSame(first, moved);
+        assertSame(moved, registry.get(builder("10.0.0.2", 8080)));
+        assertEquals(2, registry.getRetrofitCount());
+    }
+
+    @Test
+    public void builtOnceWhenNeededByManyThreadsAtOnce() throws Exception {
+        final APIRegistry<PingAPI> registry = new APIRegistry<>(PingAPI.class);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<PingAPI>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(new Callable<PingAPI>() {
+                @Override
+                public PingAPI call() throws Exception {
+                    start.await();
+                    return registry.get(builder("10.0.0.1", 8080));
+                }
+            }));
+        }
+
+        start.countDown();
+
+        PingAPI api = futures.get(0).get();
+        for (Future<PingAPI> future : futures) {
+            assertSame(api, future.get());
+        }
+        executor.shutdown();
+
+        assertEquals(1, registry.getRetrofitCount());
+    }
+
+    /**
+     * Poll quotes & watchlists the way the clients do, i.e. through a new builder each time,
+     * for the service location currently in settings.
+     *
+     * @return the API proxies used for that poll
+     */
+    private Object[] poll(MockWebServer expectedServer) throws Exception {
+        expectedServer.enqueue(new MockResponse().setBody("{\"symbol\":\"AAPL\",\"last_trade_price\":174.25}"));
+        expectedServer.enqueue(new MockResponse().setBody("{\"watchlists\":[]}"));
+
+        QuoteAPI quoteAPI = new QuoteAPIBuilder().build();
+        WatchlistAPI watchlistAPI = new WatchlistAPIBuilder().build();
+
+        assertEquals(174.25, quoteAPI.getQuote("AAPL").execute().body().getLastTradePrice(), 0);
+        assertEquals(200, watchlistAPI.getWatchlists().execute().code());
+
+        assertEquals("/quote/AAPL", expectedServer.takeRequest().getPath());
+        assertEquals("/watchlist-service/watchlists", expectedServer.takeRequest().getPath());
+
+        return new Object[] {quoteAPI, watchlistAPI};
+    }
+
+    @Test
+    public void buildersReuseProxiesDuringPollingSession() throws Exception {
+        Object[] first = poll(server);
+
+        for (int i = 0; i < 20; i++) {
+            Object[] apis = poll(server);
+
+            assertSame(first[0], apis[0]);
+            assertSame(first[1], apis[1]);
+        }
+    }
+
+    @Test
+    public void buildersRebuildProxiesOnlyWhenLocationChanges() throws Exception {
+        Object[] first = poll(server);
+
+        // Settings changed, but not the services' location
+        Settings changed = settings(server);
+        changed.setQuoteRefreshInterval(30);
+        Settings.setCurrent(changed);
+
+        Object[] apis = poll(server);
+        assertSame(first[0], apis[0]);
+        assertSame(first[1], apis[1]);
+
+        // Services moved: new proxies, used until they move again
+        Settings.setCurrent(settings(otherServer));
+
+        Object[] moved = poll(otherServer);
+        assertNotSame(first[0], moved[0]);
+        assertNotSame(first[1], moved[1]);
+
+        for (int i = 0; i < 5; i++) {
+            apis = poll(otherServer);
+
+            assertSame(moved[0], apis[0]);
+            assertSame(moved[1], apis[1]);
+        }
+
+        assertEquals(4, server.getRequestCount());          // nothing more sent to the old location
+    }
+}
@@ -0,0 +1,186 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+/**
+ * Tests the cancellation of calls by CallRegistry as their scopes end, and the count of
+ * decodes avoided that way. Calls are real Retrofit calls, sent to a MockWebServer slow
+ * enough to answer for them to still be in flight when cancelled.
+ *
+ * @author Rolande
+ */
+public class CallRegistryTest {
+    private static final long TIMEOUT = 5;              // in seconds
+
+    private MockWebServer server;
+    private TestAPI api;
+
+    interface TestAPI {
+        @GET("slow")
+        Call<ResponseBody> getSlow();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        api = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .build()
+                .create(TestAPI.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private Call<ResponseBody> newCall(Object... scopes) {
+        Call<ResponseBody> call = api.getSlow();
+        CallRegistry.register(call, Arrays.asList(scopes));
+        return call;
+    }
+
+    @Test
+    public void endedScopeCancelsItsCalls() {
+        long avoided = CallRegistry.getAvoidedDecodeCount();
+        int count = CallRegistry.getCallCount();
+
+        Call<ResponseBody> first = newCall("screen-1");
+        Call<ResponseBody> second = newCall("screen-1");
+        Call<ResponseBody> other = newCall("screen-2");
+        assertEquals(count + 3, CallRegistry.getCallCount());
+
+        assertEquals(2, CallRegistry.cancel("screen-1"));
+
+        assertTrue(first.isCanceled());
+        assertTrue(second.isCanceled());
+        assertFalse(other.isCanceled());
+        assertEquals(avoided + 2, CallRegistry.getAvoidedDecodeCount());
+        assertEquals(count + 1, CallRegistry.getCallCount());
+
+        CallRegistry.cancel("screen-2");
+    }
+
+    @Test
+    public void sharedCallCancelledOnceAllScopesEnded() {
+        long avoided = CallRegistry.getAvoidedDecodeCount();
+
+        Call<ResponseBody> batch = newCall("quote:AAPL", "quote:MSFT");
+
+        assertEquals(0, CallRegistry.cancel("quote:AAPL"));
+        assertFalse(batch.isCanceled());
+        assertEquals(avoided, CallRegistry.getAvoidedDecodeCount());
+
+        assertEquals(1, CallRegistry.cancel("quote:MSFT"));
+        assertTrue(batch.isCanceled());
+        assertEquals(avoided + 1, CallRegistry.getAvoidedDecodeCount());
+    }
+
+    @Test
+    public void completedCallLeftAlone() {
+        long avoided = CallRegistry.getAvoidedDecodeCount();
+
+        Call<ResponseBody> call = newCall("screen-3");
+        assertTrue(CallRegistry.unregister(call));                      // completed
+
+        assertEquals(0, CallRegistry.cancel("screen-3"));
+        assertFalse(call.isCanceled());
+        assertFalse(CallRegistry.cancelCall(call));
+        assertEquals(avoided, CallRegistry.getAvoidedDecodeCount());
+    }
+
+    @Test
+    public void cancelledCallToldAsSuchOnCompletion() {
+        Call<ResponseBody> call = newCall("screen-4");
+
+        CallRegistry.cancel("screen-4");
+
+        assertFalse(CallRegistry.unregister(call));
+    }
+
+    @Test
+    public void singleCallCancelledWhateverItsScopes() {
+        long avoided = CallRegistry.getAvoidedDecodeCount();
+
+        Call<ResponseBody> batch = newCall("quote:IBM", "quote:ORCL");
+        Call<ResponseBody> other = newCall("quote:IBM");
+
+        assertTrue(CallRegistry.cancelCall(batch));
+        assertTrue(batch.isCanceled());
+        assertFalse(CallRegistry.cancelCall(batch));
+        assertEquals(avoided + 1, CallRegistry.getAvoidedDecodeCount());
+
+        // Scopes of the call end without it
+        assertEquals(1, CallRegistry.cancel("quote:IBM"));
+        assertEquals(0, CallRegistry.cancel("quote:ORCL"));
+        assertTrue(other.isCanceled());
+        assertEquals(avoided + 2, CallRegistry.getAvoidedDecodeCount());
+    }
+
+    @Test
+    public void unknownScopeCancelsNothing() {
+        long avoided = CallRegistry.getAvoidedDecodeCount();
+
+        assertEquals(0, CallRegistry.cancel("never-used"));
+        assertEquals(avoided, CallRegistry.getAvoidedDecodeCount());
+    }
+
+    @Test
+    public void callInFlightStoppedWithoutResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}").setHeadersDelay(2, TimeUnit.SECONDS));
+        BlockingQueue<String> outcomes = new LinkedBlockingQueue<>();
+
+        Call<ResponseBody> call = newCall("screen-5");
+        call.enqueue(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                outcomes.add("response");
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                outcomes.add(call.isCanceled() ? "cancelled" : "failed");
+            }
+        });
+        server.takeRequest(TIMEOUT, TimeUnit.SECONDS);                  // sent, waiting for the response
+
+        CallRegistry.cancel("screen-5");
+
+        assertEquals("cancelled", outcomes.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(CallRegistry.unregister(call));
+    }
+
+    @Test
+    public void scopesKeptApartBetweenCalls() {
+        Call<ResponseBody> first = newCall("screen-6");
+        newCall("screen-7");
+
+        CallRegistry.cancel("screen-7");
+
+        assertFalse(first.isCanceled());
+        assertTrue(CallRegistry.unregister(first));
+    }
+}
@@ -0,0 +1,192 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+import static com.rolande.mywatchlists.Constants.CIRCUIT_BREAKER_MAX_BACKOFF;
+import static com.rolande.mywatchlists.Constants.CIRCUIT_BREAKER_MIN_BACKOFF;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the state transitions of CircuitBreaker, its doubling and jittered backoff, and the
+ * availability changes told to its listeners.
+ *
+ * @author Rolande
+ */
+public class CircuitBreakerTest {
+    private long now = 1000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    };
+
+    private double jitter;                              // random part of the next delays, from 0 to 1
+    private final List<String> changes = new ArrayList<>();
+
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        Random random = new Random() {
+            @Override
+            public double nextDouble() {
+                return jitter;
+            }
+        };
+
+        breaker = new CircuitBreaker("test:1", random, clock);
+
+        breaker.addListener(new CircuitBreaker.Listener() {
+            @Override
+            public void onAvailabilityChanged(boolean available, String errorMsg) {
+                changes.add(available ? "available" : "unavailable: " + errorMsg);
+            }
+        });
+    }
+
+    private void open() {
+        for (int i = 0; i < CIRCUIT_BREAKER_FAILURE_THRESHOLD; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure("** Down " + i);
+        }
+    }
+
+    /**
+     * Check that requests are refused until the given delay has expired, then let a probe through.
+     */
+    private void assertOpenFor(long delay) {
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now += delay - 1;
+        assertFalse(breaker.isRequestAllowed());
+        assertFalse(breaker.tryAcquire());
+
+        now += 1;
+        assertTrue(breaker.isRequestAllowed());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        for (int i = 0; i < CIRCUIT_BREAKER_FAILURE_THRESHOLD - 1; i++) {
+            breaker.onFailure("** Down");
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure("** Down for good");
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals("** Down for good", breaker.getLastErrorMsg());
+        assertEquals("[unavailable: ** Down for good]", changes.toString());
+    }
+
+    @Test
+    public void successInBetweenStartsCountOver() {
+        for (int i = 0; i < 10; i++) {
+            breaker.onFailure("** Down");
+            breaker.onFailure("** Down");
+            breaker.onSuccess();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void singleProbeOnceBackoffExpires() {
+        open();
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF / 2);
+
+        // Only one probe at a time
+        assertFalse(breaker.isRequestAllowed());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertNull(breaker.getLastErrorMsg());
+        assertEquals("[unavailable: ** Down 2, available]", changes.toString());
+    }
+
+    @Test
+    public void failedProbesDoubleBackoffUpToMaximum() {
+        open();
+        long backoff = CIRCUIT_BREAKER_MIN_BACKOFF;
+
+        while (backoff < CIRCUIT_BREAKER_MAX_BACKOFF) {
+            assertOpenFor(backoff / 2);
+            breaker.onFailure("** Still down");
+
+            backoff = Math.min(backoff * 2, CIRCUIT_BREAKER_MAX_BACKOFF);
+        }
+
+        assertOpenFor(CIRCUIT_BREAKER_MAX_BACKOFF / 2);
+        breaker.onFailure("** Still down");
+        assertOpenFor(CIRCUIT_BREAKER_MAX_BACKOFF / 2);
+
+        // Told once, when it first went down
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void jitterAddsUpToHalfTheBackoff() {
+        jitter = 0.5;
+        open();
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF / 2 + CIRCUIT_BREAKER_MIN_BACKOFF / 4);
+
+        jitter = 0.999;
+        breaker.onFailure("** Still down");
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF + (long) (0.999 * CIRCUIT_BREAKER_MIN_BACKOFF));
+    }
+
+    @Test
+    public void backoffStartsOverOnceClosed() {
+        open();
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF / 2);
+        breaker.onFailure("** Still down");
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF);
+        breaker.onSuccess();
+
+        open();
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF / 2);
+    }
+
+    @Test
+    public void cancelledProbeLetsAnotherThrough() {
+        open();
+        assertOpenFor(CIRCUIT_BREAKER_MIN_BACKOFF / 2);
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onCancelled();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void cancelledRequestWhileClosedChangesNothing() {
+        breaker.onFailure("** Down");
+        breaker.onCancelled();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+}
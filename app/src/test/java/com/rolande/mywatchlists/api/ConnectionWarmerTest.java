@@ -0,0 +1,220 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Tests that the connection opened by ConnectionWarmer is the one reused by the first real
+ * request to the service. Also times the first requests to two services (as the first
+ * watchlists and the first quotes) with and without warm-up, against servers taking a while
+ * to accept each new connection, as a distant service would.
+ *
+ * @author Rolande
+ */
+public class ConnectionWarmerTest {
+    private static final long CONNECT_LATENCY = 300;    // in milliseconds
+
+    private ServerSocket serverSocket;
+    private final List<ServerSocket> serverSockets = new ArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long connectLatency;               // before serving a new connection, in milliseconds
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = startServer();
+    }
+
+    /**
+     * Start a minimal HTTP/1.1 server, keeping connections alive and counting them.
+     *
+     * @return server's socket
+     */
+    private ServerSocket startServer() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSockets.add(serverSocket);
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);         // head & body written apart, sent right away
+                        connectionCount.incrementAndGet();
+
+                        Thread handler = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                        handler.setDaemon(true);
+                        handler.start();
+                    }
+                }
+                catch (IOException e) {
+                    // server closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        return serverSocket;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (ServerSocket serverSocket : serverSockets) {
+            serverSocket.close();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            Thread.sleep(connectLatency);
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+
+            while ((requestLine = in.readLine()) != null) {
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    // skip headers, requests have no body
+                }
+
+                requestCount.incrementAndGet();
+
+                String head = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 2\r\n\r\n";
+                out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+                if (!requestLine.startsWith("HEAD")) {
+                    out.write("ok".getBytes(StandardCharsets.ISO_8859_1));
+                }
+                out.flush();
+            }
+        }
+        catch (IOException | InterruptedException e) {
+            // connection closed
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+
+    @Test
+    public void firstRequestReusesWarmedUpConnection() throws Exception {
+        APIBuilder builder = new APIBuilder("127.0.0.1", serverSocket.getLocalPort(), "/warm-service", "ConnectionWarmerTest");
+        OkHttpClient client = builder.getOkHttpClient();
+        ConnectionPool pool = client.connectionPool();
+
+        pool.evictAll();
+        ConnectionWarmer.warmUp(builder);
+
+        // Warm-up is asynchronous: wait for its connection to be back in the pool
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.idleConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, pool.idleConnectionCount());
+        assertEquals(1, connectionCount.get());
+
+        Request request = new Request.Builder().url(builder.getBaseUrl() + "watchlists").build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertTrue(response.isSuccessful());
+            assertEquals("ok", response.body().string());
+        }
+
+        assertEquals(2, requestCount.get());
+        assertEquals(1, connectionCount.get());
+    }
+
+    @Test
+    public void invalidLocationIsIgnored() {
+        APIBuilder builder = new APIBuilder("not a host", 8080, "/warm-service", "ConnectionWarmerTest");
+
+        ConnectionWarmer.warmUp(builder);
+
+        assertEquals(0, connectionCount.get());
+    }
+
+    @Test
+    public void firstRequestsFasterWithWarmUp() throws Exception {
+        connectLatency = CONNECT_LATENCY;
+
+        APIBuilder watchlistBuilder = new APIBuilder("127.0.0.1", serverSocket.getLocalPort(), "/watchlist-service", "ConnectionWarmerTest");
+        APIBuilder quoteBuilder = new APIBuilder("127.0.0.1", startServer().getLocalPort(), "/quote-service", "ConnectionWarmerTest");
+        ConnectionPool pool = watchlistBuilder.getOkHttpClient().connectionPool();
+
+        pool.evictAll();
+        long coldWatchlists = timeRequest(watchlistBuilder, "watchlists");
+        long coldQuote = timeRequest(quoteBuilder, "quote/AAPL");
+
+        pool.evictAll();
+        ConnectionWarmer.warmUp(watchlistBuilder);
+        ConnectionWarmer.warmUp(quoteBuilder);
+
+        // Both warmed up in parallel, so in about the time of one
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.idleConnectionCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long warmUpTime = (System.nanoTime() - start) / 1_000_000;
+
+        long warmWatchlists = timeRequest(watchlistBuilder, "watchlists");
+        long warmQuote = timeRequest(quoteBuilder, "quote/AAPL");
+
+        String times = "first watchlists " + coldWatchlists + " ms cold, " + warmWatchlists + " ms warm; first quote " +
+                coldQuote + " ms cold, " + warmQuote + " ms warm; warm-up " + warmUpTime + " ms";
+
+        assertTrue(times, coldWatchlists >= CONNECT_LATENCY && coldQuote >= CONNECT_LATENCY);
+        assertTrue(times, warmWatchlists < CONNECT_LATENCY / 2 && warmQuote < CONNECT_LATENCY / 2);
+        assertTrue(times, warmUpTime < 2 * CONNECT_LATENCY);
+    }
+
+    /**
+     * Send a request to a service, and wait for its response.
+     *
+     * @return time it took, in milliseconds
+     */
+    private long timeRequest(APIBuilder builder, String path) throws IOException {
+        Request request = new Request.Builder().url(builder.getBaseUrl() + path).build();
+        long start = System.nanoTime();
+
+        try (Response response = builder.getOkHttpClient().newCall(request).execute()) {
+            assertEquals("ok", response.body().string());
+        }
+
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
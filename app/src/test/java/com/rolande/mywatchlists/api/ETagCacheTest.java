@@ -0,0 +1,157 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+/**
+ * Tests ETagCache against a fake server answering '304 Not Modified' when the ETag sent is
+ * the current one, counting the bodies decoded along the way.
+ *
+ * @author Rolande
+ */
+public class ETagCacheTest {
+
+    static class Item {
+        String name;
+    }
+
+    interface ItemAPI {
+        @GET("items/{id}")
+        Call<Item> getItem(@Path("id") String id);
+    }
+
+    private ETagCache cache;
+    private ItemAPI api;
+    private final List<String> ifNoneMatchSent = new ArrayList<>();
+    private int decodeCount;
+
+    /**
+     * Fake server: every item is at version "v1".
+     */
+    private final Interceptor server = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) {
+            Request request = chain.request();
+            String eTag = "\"" + request.url().pathSegments().get(1) + "-v1\"";
+            String ifNoneMatch = request.header("If-None-Match");
+
+            ifNoneMatchSent.add(ifNoneMatch);
+
+            Response.Builder builder = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .header("ETag", eTag);
+
+            if (eTag.equals(ifNoneMatch)) {
+                return builder.code(304).message("Not Modified")
+                        .body(ResponseBody.create("", null))
+                        .build();
+            }
+
+            return builder.code(200).message("OK")
+                    .body(ResponseBody.create("{\"name\":\"" + request.url().pathSegments().get(1) + "\"}",
+                            MediaType.get("application/json")))
+                    .build();
+        }
+    };
+
+    /**
+     * Converter factory counting the bodies decoded.
+     */
+    private final Converter.Factory countingFactory = new Converter.Factory() {
+        private final GsonConverterFactory gsonFactory = GsonConverterFactory.create();
+
+        @Override
+        public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+            final Converter<ResponseBody, ?> converter = gsonFactory.responseBodyConverter(type, annotations, retrofit);
+
+            return new Converter<ResponseBody, Object>() {
+                @Override
+                public Object convert(ResponseBody value) throws IOException {
+                    decodeCount++;
+                    return converter.convert(value);
+                }
+            };
+        }
+    };
+
+    @Before
+    public void setUp() {
+        cache = new ETagCache(1);
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(cache.getInterceptor())
+                .addInterceptor(server)
+                .build();
+
+        api = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .client(client)
+                .addConverterFactory(countingFactory)
+                .build()
+                .create(ItemAPI.class);
+    }
+
+    private Item get(String id) throws IOException {
+        Call<Item> call = api.getItem(id);
+        retrofit2.Response<Item> response = call.execute();
+
+        return cache.getBody(call.request().url().toString(), response);
+    }
+
+    @Test
+    public void notModifiedReusesBodyWithoutDecoding() throws IOException {
+        Item first = get("a");
+        Item second = get("a");
+
+        assertNull(ifNoneMatchSent.get(0));
+        assertEquals("\"a-v1\"", ifNoneMatchSent.get(1));
+        assertEquals(1, decodeCount);
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void notModifiedAfterEvictionStillHasBody() throws IOException {
+        Item first = get("a");
+
+        // Revalidate "a", but have "b" push it out of the cache before the 304 is handled
+        Call<Item> call = api.getItem("a");
+        retrofit2.Response<Item> response = call.execute();
+
+        get("b");
+        Item second = cache.getBody(call.request().url().toString(), response);
+
+        assertEquals(304, response.code());
+        assertSame(first, second);
+        assertEquals(2, decodeCount);                   // "a" once, "b" once
+
+        get("a");
+        assertEquals(2, decodeCount);                   // "a" cached again by the 304
+    }
+}
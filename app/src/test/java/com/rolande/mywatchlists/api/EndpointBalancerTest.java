@@ -0,0 +1,196 @@
+package com.rolande.mywatchlists.api;
+
+import static com.rolande.mywatchlists.Constants.BALANCER_EJECT_FAILURES;
+import static com.rolande.mywatchlists.Constants.BALANCER_EJECT_MIN_BACKOFF;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Tests EndpointBalancer against fake endpoints with set latencies, some of them failing,
+ * time being advanced by the latency of each response.
+ *
+ * @author Rolande
+ */
+public class EndpointBalancerTest {
+    private long now = 1000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    };
+
+    private EndpointBalancer balancer;
+    private OkHttpClient client;
+
+    private final Map<String, Long> latencies = new HashMap<>();
+    private final Set<String> down = new HashSet<>();
+    private final List<String> hostsHit = new ArrayList<>();
+
+    /**
+     * Fake endpoints, by host: unreachable if down, else answering after their latency.
+     */
+    private final Interceptor endpoints = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            String host = request.url().host();
+
+            hostsHit.add(host);
+
+            if (down.contains(host)) {
+                throw new IOException("Connection refused: " + host);
+            }
+
+            now += latencies.get(host);
+
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200).message("OK")
+                    .body(ResponseBody.create("{}", MediaType.get("application/json")))
+                    .build();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        balancer = new EndpointBalancer("test-service", new Random(42), clock);
+
+        client = new OkHttpClient.Builder()
+                .addInterceptor(balancer.getInterceptor())
+                .addInterceptor(endpoints)
+                .build();
+    }
+
+    private void setEndpoints(String... hosts) {
+        List<String> addresses = new ArrayList<>();
+
+        for (String host : hosts) {
+            addresses.add(host + ":8080");
+        }
+        balancer.setEndpoints(addresses);
+    }
+
+    private String get() throws IOException {
+        Request request = new Request.Builder().url("http://service.invalid/quotes").build();
+
+        try (Response response = client.newCall(request).execute()) {
+            return response.request().url().host();
+        }
+    }
+
+    @Test
+    public void fasterEndpointsGetMostRequests() throws IOException {
+        latencies.put("fast.test", 10L);
+        latencies.put("medium.test", 30L);
+        latencies.put("slow.test", 300L);
+        setEndpoints("fast.test", "medium.test", "slow.test");
+
+        for (int i = 0; i < 300; i++) {
+            get();
+        }
+
+        int fast = Collections.frequency(hostsHit, "fast.test");
+        int medium = Collections.frequency(hostsHit, "medium.test");
+        int slow = Collections.frequency(hostsHit, "slow.test");
+
+        // Once measured, the slowest never beats the other one it is paired with
+        assertTrue(slow <= 1);
+        assertTrue(fast > medium);
+        assertEquals(300, fast + medium + slow);
+    }
+
+    @Test
+    public void failingEndpointEjectedThenProbedWithBackoff() throws IOException {
+        latencies.put("good.test", 10L);
+        latencies.put("bad.test", 10L);
+        setEndpoints("bad.test", "good.test");
+        down.add("bad.test");
+
+        // Every request still succeeds, failing over to the good endpoint
+        for (int i = 0; i < 20; i++) {
+            assertEquals("good.test", get());
+        }
+
+        // Never measured, the bad endpoint keeps winning until ejected, then is left alone
+        assertEquals(BALANCER_EJECT_FAILURES, Collections.frequency(hostsHit, "bad.test"));
+
+        hostsHit.clear();
+        now += BALANCER_EJECT_MIN_BACKOFF;
+        get();
+        assertEquals(Arrays.asList("bad.test", "good.test"), hostsHit);     // probe failed
+
+        // Backoff doubled: not probed again before twice the delay
+        hostsHit.clear();
+        now += BALANCER_EJECT_MIN_BACKOFF;
+        get();
+        assertEquals(Collections.singletonList("good.test"), hostsHit);
+
+        down.clear();
+        hostsHit.clear();
+        now += BALANCER_EJECT_MIN_BACKOFF;
+        get();
+        assertEquals(Collections.singletonList("bad.test"), hostsHit);      // probe succeeded
+
+        // Back in, taking requests again
+        hostsHit.clear();
+        for (int i = 0; i < 20; i++) {
+            get();
+        }
+        assertTrue(hostsHit.contains("bad.test"));
+    }
+
+    @Test
+    public void unsafeRequestIsNotRetried() {
+        latencies.put("good.test", 10L);
+        latencies.put("bad.test", 10L);
+        setEndpoints("bad.test", "good.test");
+        down.add("bad.test");
+
+        Request request = new Request.Builder()
+                .url("http://service.invalid/watchlists")
+                .post(RequestBody.create("{}", MediaType.get("application/json")))
+                .build();
+
+        // A POST failing to reach its endpoint is not sent again to the other one
+        int failures = 0;
+
+        for (int i = 0; i < 10; i++) {
+            try (Response response = client.newCall(request).execute()) {
+                assertEquals(200, response.code());
+            }
+            catch (IOException e) {
+                failures++;
+            }
+        }
+
+        assertTrue(failures > 0);
+        assertEquals(10, hostsHit.size());
+    }
+}
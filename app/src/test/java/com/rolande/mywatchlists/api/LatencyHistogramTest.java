@@ -0,0 +1,45 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the percentiles estimated by LatencyHistogram.
+ *
+ * @author Rolande
+ */
+public class LatencyHistogramTest {
+
+    private static void record(LatencyHistogram histogram, int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            histogram.record(millis * 1_000_000);
+        }
+    }
+
+    @Test
+    public void emptyHistogramHasNoPercentile() {
+        assertEquals(0, new LatencyHistogram().getPercentile(90));
+    }
+
+    @Test
+    public void percentileIsInterpolatedWithinItsBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        record(histogram, 90, 20);
+        record(histogram, 10, 300);             // bucket (200, 500]
+
+        assertEquals(20, histogram.getPercentile(90));
+        assertEquals(350, histogram.getPercentile(95));        // rather than 500, the bucket's upper bound
+        assertEquals(500, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void overflowIsUnbounded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        record(histogram, 1, 20000);
+
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+    }
+}
@@ -0,0 +1,172 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+/**
+ * Tests the per-endpoint, per-phase histograms recorded by NetworkMetrics for calls made
+ * against a MockWebServer, and their json dump.
+ *
+ * @author Rolande
+ */
+public class NetworkMetricsTest {
+    private static final long DELAY = 100;              // before each response's headers, in milliseconds
+
+    private MockWebServer server;
+    private OkHttpClient httpClient;
+    private MetricsAPI api;
+
+    interface MetricsAPI {
+        @GET("prices")
+        Call<ResponseBody> getPrices();
+
+        @GET("volumes")
+        Call<ResponseBody> getVolumes();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        httpClient = new OkHttpClient.Builder()
+                .eventListenerFactory(NetworkMetrics.getEventListenerFactory())
+                .build();
+
+        api = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(httpClient)
+                .build()
+                .create(MetricsAPI.class);
+
+        NetworkMetrics.reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        NetworkMetrics.reset();
+    }
+
+    private void enqueue() {
+        server.enqueue(new MockResponse().setBody("{}").setHeadersDelay(DELAY, TimeUnit.MILLISECONDS));
+    }
+
+    private static long count(String endpoint, NetworkMetrics.Phase phase) {
+        return NetworkMetrics.getHistogram(endpoint, phase).getCount();
+    }
+
+    @Test
+    public void phasesRecordedByEndpoint() throws Exception {
+        enqueue();
+        enqueue();
+        enqueue();
+
+        api.getPrices().execute().body().close();
+        api.getPrices().execute().body().close();
+        api.getVolumes().execute().body().close();
+
+        assertEquals(2, count("getPrices", NetworkMetrics.Phase.CALL));
+        assertEquals(2, count("getPrices", NetworkMetrics.Phase.REQUEST));
+        assertEquals(2, count("getPrices", NetworkMetrics.Phase.SERVER));
+        assertEquals(2, count("getPrices", NetworkMetrics.Phase.BODY));
+        assertEquals(1, count("getVolumes", NetworkMetrics.Phase.CALL));
+
+        // Only the first call had to connect, the others reusing its connection, without TLS
+        assertEquals(1, count("getPrices", NetworkMetrics.Phase.CONNECT) + count("getVolumes", NetworkMetrics.Phase.CONNECT));
+        assertEquals(0, count("getPrices", NetworkMetrics.Phase.TLS));
+
+        assertNull(NetworkMetrics.getHistogram("getQuote", NetworkMetrics.Phase.CALL));
+    }
+
+    @Test
+    public void serverPhaseTimesWaitForResponse() throws Exception {
+        enqueue();
+
+        api.getPrices().execute().body().close();
+
+        LatencyHistogram server = NetworkMetrics.getHistogram("getPrices", NetworkMetrics.Phase.SERVER);
+        LatencyHistogram call = NetworkMetrics.getHistogram("getPrices", NetworkMetrics.Phase.CALL);
+
+        assertTrue(server.getMean() >= DELAY);
+        assertTrue(call.getMean() >= server.getMean());
+    }
+
+    @Test
+    public void callsOutsideRetrofitGroupedUnderOther() throws Exception {
+        enqueue();
+
+        httpClient.newCall(new Request.Builder().url(server.url("/prices")).build()).execute().close();
+
+        assertEquals(1, count("other", NetworkMetrics.Phase.CALL));
+    }
+
+    @Test
+    public void failedCallTimed() throws Exception {
+        server.enqueue(new MockResponse().setHeadersDelay(DELAY, TimeUnit.MILLISECONDS)
+                .setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        try {
+            api.getPrices().execute();
+            fail();
+        } catch (IOException expected) {
+        }
+
+        assertEquals(1, count("getPrices", NetworkMetrics.Phase.CALL));
+        assertEquals(0, count("getPrices", NetworkMetrics.Phase.BODY));
+    }
+
+    @Test
+    public void dumpedAsJsonByEndpointThenPhase() throws Exception {
+        enqueue();
+        enqueue();
+
+        api.getVolumes().execute().body().close();
+        api.getPrices().execute().body().close();
+
+        JsonObject json = JsonParser.parseString(NetworkMetrics.toJson()).getAsJsonObject();
+
+        assertEquals("[getPrices, getVolumes]", json.keySet().toString());
+
+        JsonObject phases = json.getAsJsonObject("getPrices");
+        assertEquals("[dns, connect, tls, request, server, body, call]", phases.keySet().toString());
+
+        JsonObject call = phases.getAsJsonObject("call");
+        assertEquals(1, call.get("count").getAsLong());
+        assertTrue(call.get("p99_ms").getAsLong() >= DELAY);
+        assertEquals(0, phases.getAsJsonObject("tls").get("count").getAsLong());
+    }
+
+    @Test
+    public void resetDropsEverything() throws Exception {
+        enqueue();
+        api.getPrices().execute().body().close();
+
+        NetworkMetrics.reset();
+
+        assertNull(NetworkMetrics.getHistogram("getPrices", NetworkMetrics.Phase.CALL));
+        assertEquals("{}", NetworkMetrics.toJson());
+    }
+}
@@ -0,0 +1,105 @@
+package com.rolande.mywatchlists.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that TokenBucket never grants more than its rate, bursts aside.
+ *
+ * @author Rolande
+ */
+public class TokenBucketTest {
+    private long now = 1000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    };
+
+    private TokenBucket newBucket(double rate, double capacity) {
+        return new TokenBucket(rate, capacity, clock);
+    }
+
+    @Test
+    public void burstUpToCapacityThenDenied() {
+        TokenBucket bucket = newBucket(5, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+
+        now += 199;
+        assertFalse(bucket.tryAcquire());
+
+        now += 1;
+        assertTrue(bucket.tryAcquire());
+
+        assertEquals(6, bucket.getGrantedCount());
+        assertEquals(2, bucket.getDeniedCount());
+    }
+
+    @Test
+    public void averageRateNeverExceeded() {
+        TokenBucket bucket = newBucket(5, 5);
+        long granted = 0;
+
+        // Ask every 10 ms for 60 seconds, i.e. 100 requests per second
+        for (int i = 0; i < 6000; i++) {
+            if (bucket.tryAcquire()) {
+                granted++;
+            }
+            now += 10;
+        }
+
+        assertTrue(granted <= 5 + 5 * 60);
+        assertTrue(granted >= 5 * 60);
+        assertEquals(granted, bucket.getGrantedCount());
+    }
+
+    @Test
+    public void refillCappedAtCapacity() {
+        TokenBucket bucket = newBucket(5, 5);
+
+        now += 60000;
+
+        assertEquals(5, bucket.getAvailable(), 0);
+    }
+
+    @Test
+    public void lowerRateTrimsSavedTokens() {
+        TokenBucket bucket = newBucket(10, 10);
+
+        bucket.setRate(2, 2);
+
+        assertEquals(2, bucket.getAvailable(), 0);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        now += 500;
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void waitLastsUntilNextToken() {
+        TokenBucket bucket = newBucket(4, 1);
+
+        assertEquals(0, bucket.getWaitMillis());
+        assertTrue(bucket.tryAcquire());
+        assertEquals(250, bucket.getWaitMillis());
+
+        now += 100;
+        assertEquals(150, bucket.getWaitMillis());
+
+        now += 150;
+        assertEquals(0, bucket.getWaitMillis());
+        assertTrue(bucket.tryAcquire());
+    }
+}
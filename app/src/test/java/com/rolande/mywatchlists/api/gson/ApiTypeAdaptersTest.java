@@ -0,0 +1,311 @@
+package com.rolande.mywatchlists.api.gson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.rolande.mywatchlists.api.quote.QuoteDelta;
+import com.rolande.mywatchlists.api.quote.QuoteDeltasAPIResponse;
+import com.rolande.mywatchlists.api.quote.QuotesAPIResponse;
+import com.rolande.mywatchlists.api.watchlist.WatchlistDetailAPIResponse;
+import com.rolande.mywatchlists.api.watchlist.WatchlistsAPIResponse;
+import com.rolande.mywatchlists.model.beans.Quote;
+import com.rolande.mywatchlists.model.beans.Security;
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Tests the streaming type adapters registered by ApiTypeAdapters against Gson's reflection,
+ * which the app used to decode the services' JSON with: same objects read from the same JSON
+ * (nulls & unknown fields included), same JSON written, and reading back what was written.
+ * Also compares the time and memory it takes to decode a batch of quotes either way.
+ *
+ * @author Rolande
+ */
+public class ApiTypeAdaptersTest {
+    private static final String TIMESTAMP = "2023-05-12T10:30:05-0400";
+
+    private final Gson adapters = ApiTypeAdapters.register(new GsonBuilder())
+            .setDateFormat(TimestampFormat.PATTERN)
+            .create();
+
+    // Gson going through reflection (and the beans' @SerializedName), as before the adapters
+    private final Gson reflection = new GsonBuilder()
+            .setDateFormat(TimestampFormat.PATTERN)
+            .create();
+
+    private static final String QUOTE_JSON = "{\"symbol\":\"AAPL\",\"previous_close_price\":172.5," +
+            "\"open_price\":173.01,\"last_trade_timestamp\":\"" + TIMESTAMP + "\",\"last_trade_price\":174.25," +
+            "\"last_trade_volume\":1200,\"bid_price\":174.2,\"bid_volume\":300,\"ask_price\":174.3," +
+            "\"ask_volume\":500,\"environment\":\"prod\"}";
+
+    private static final int BENCHMARK_QUOTES = 50;            // per batch decoded
+    private static final int BENCHMARK_DECODES = 2000;          // per round
+    private static final int BENCHMARK_ROUNDS = 5;              // after a warm-up round
+
+    private static final String SECURITY_JSON = "{\"_id\":7,\"symbol\":\"AAPL\",\"name\":\"Apple Inc.\"," +
+            "\"exchange\":\"NASDAQ\",\"quote\":" + QUOTE_JSON + "}";
+
+    /**
+     * Dump an object's fields, to compare objects read either way.
+     */
+    private String dump(Object object) {
+        return reflection.toJson(object);
+    }
+
+    /**
+     * Check that the adapters read a JSON string into the same object reflection does, and
+     * write that object as reflection does.
+     */
+    private <T> T assertSameAsReflection(String json, Class<T> type) {
+        T read = adapters.fromJson(json, type);
+
+        assertEquals(dump(reflection.fromJson(json, type)), dump(read));
+        assertEquals(new JsonParser().parse(reflection.toJson(read)), new JsonParser().parse(adapters.toJson(read)));
+
+        return read;
+    }
+
+    /**
+     * Check that what the adapters write reads back as the same object.
+     */
+    private <T> void assertRoundTrip(T object, Class<T> type) {
+        assertEquals(dump(object), dump(adapters.fromJson(adapters.toJson(object), type)));
+    }
+
+    @Test
+    public void quoteReadAndWrittenAsBefore() {
+        Quote quote = assertSameAsReflection(QUOTE_JSON, Quote.class);
+
+        assertEquals("AAPL", quote.getSymbol());
+        assertEquals(174.25, quote.getLastTradePrice(), 0);
+        assertEquals(500, quote.getAskVolume());
+        assertRoundTrip(quote, Quote.class);
+    }
+
+    @Test
+    public void nullsLeaveDefaultValues() {
+        String json = "{\"symbol\":null,\"previous_close_price\":null,\"last_trade_timestamp\":null," +
+                "\"last_trade_price\":12.5,\"bid_volume\":null,\"environment\":null}";
+
+        Quote quote = assertSameAsReflection(json, Quote.class);
+
+        assertNull(quote.getSymbol());
+        assertNull(quote.getLastTradeTimestamp());
+        assertEquals(0, quote.getPreviousClosePrice(), 0);
+        assertEquals(12.5, quote.getLastTradePrice(), 0);
+        assertRoundTrip(quote, Quote.class);
+
+        assertNull(adapters.fromJson("null", Quote.class));
+    }
+
+    @Test
+    public void unknownFieldsSkipped() {
+        String json = "{\"symbol\":\"AAPL\",\"_id\":99,\"extra\":{\"nested\":[1,{\"a\":null}]}," +
+                "\"flags\":[true,false],\"last_trade_price\":3.5,\"note\":\"x\"}";
+
+        Quote quote = assertSameAsReflection(json, Quote.class);
+
+        assertNull(quote.getId());                      // not part of the quote's JSON
+        assertEquals(3.5, quote.getLastTradePrice(), 0);
+    }
+
+    @Test
+    public void timestampFormatsReadAlike() throws Exception {
+        long expected = TimestampFormat.parse(TIMESTAMP);
+
+        String[] formats = {"2023-05-12T14:30:05Z", "2023-05-12T14:30:05+0000", "2023-05-12T14:30:05+00:00",
+                "2023-05-12T10:30:05-04:00", "2023-05-12T20:00:05+05:30"};
+
+        for (String timestamp : formats) {
+            Quote quote = adapters.fromJson("{\"last_trade_timestamp\":\"" + timestamp + "\"}", Quote.class);
+
+            assertEquals(timestamp, expected, quote.getLastTradeTimestamp().getTime());
+        }
+    }
+
+    @Test
+    public void invalidTimestampRejected() {
+        try {
+            adapters.fromJson("{\"last_trade_timestamp\":\"yesterday\"}", Quote.class);
+            assertTrue("invalid date accepted", false);
+        }
+        catch (JsonSyntaxException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("yesterday"));
+        }
+    }
+
+    @Test
+    public void securityWithQuoteReadAndWrittenAsBefore() {
+        Security security = assertSameAsReflection(SECURITY_JSON, Security.class);
+
+        assertEquals(7, security.getId());
+        assertEquals("AAPL", security.getQuote().getSymbol());
+        assertRoundTrip(security, Security.class);
+
+        Security withoutQuote = assertSameAsReflection("{\"_id\":8,\"symbol\":\"MSFT\",\"quote\":null}", Security.class);
+        assertNull(withoutQuote.getQuote());
+        assertRoundTrip(withoutQuote, Security.class);
+    }
+
+    @Test
+    public void watchlistsReadAndWrittenAsBefore() {
+        String json = "{\"watchlists\":[{\"_id\":1,\"name\":\"Tech\",\"date_created\":\"" + TIMESTAMP + "\"," +
+                "\"number_of_securities\":12,\"owner\":\"me\"},null,{\"_id\":2,\"name\":\"Empty\",\"date_created\":null}]," +
+                "\"environment\":\"prod\"}";
+
+        WatchlistsAPIResponse response = assertSameAsReflection(json, WatchlistsAPIResponse.class);
+
+        assertEquals(3, response.list.size());
+        assertNull(response.list.get(1));
+        assertEquals(12, response.list.get(0).getNumberOfSecurities());
+        assertRoundTrip(response, WatchlistsAPIResponse.class);
+
+        Watchlist watchlist = response.list.get(0);
+        assertRoundTrip(watchlist, Watchlist.class);
+    }
+
+    @Test
+    public void watchlistDetailReadAndWrittenAsBefore() {
+        String json = "{\"_id\":1,\"name\":\"Tech\",\"date_created\":\"" + TIMESTAMP + "\",\"securities\":[" +
+                SECURITY_JSON + ",{\"_id\":8,\"symbol\":\"MSFT\"}],\"total\":250,\"revision\":42,\"delta\":true," +
+                "\"removed_symbols\":[\"IBM\",\"ORCL\"],\"environment\":\"test\"}";
+
+        WatchlistDetailAPIResponse response = adapters.fromJson(json, WatchlistDetailAPIResponse.class);
+        WatchlistDetailAPIResponse before = reflection.fromJson(json, WatchlistDetailAPIResponse.class);
+
+        // 'environment' (private, never used) is the only field left out
+        assertEquals(dump(before).replace(",\"environment\":\"test\"", ""), dump(response));
+
+        assertEquals(250, (int) response.total);
+        assertEquals(42, (long) response.revision);
+        assertTrue(response.delta);
+        assertEquals("[IBM, ORCL]", response.removedSymbols.toString());
+        assertRoundTrip(response, WatchlistDetailAPIResponse.class);
+
+        // Baseline shape: no revision, delta nor removed symbols
+        WatchlistDetailAPIResponse full = assertSameAsReflection("{\"_id\":2,\"name\":\"Old\",\"securities\":[]}",
+                WatchlistDetailAPIResponse.class);
+        assertNull(full.revision);
+        assertNull(full.removedSymbols);
+        assertFalse(full.delta);
+    }
+
+    @Test
+    public void quotesReadAndWrittenAsBefore() {
+        String json = "{\"quotes\":[" + QUOTE_JSON + ",null,{\"symbol\":\"MSFT\",\"last_trade_price\":310.1}],\"count\":3}";
+
+        QuotesAPIResponse response = assertSameAsReflection(json, QuotesAPIResponse.class);
+
+        assertEquals(3, response.list.size());
+        assertNull(response.list.get(1));
+        assertRoundTrip(response, QuotesAPIResponse.class);
+    }
+
+    @Test
+    public void quoteDeltasReadAndWritten() {
+        String json = "{\"quotes\":[{\"symbol\":\"AAPL\",\"seq\":12,\"base_seq\":11,\"last_trade_price\":174.5," +
+                "\"bid_volume\":null,\"unknown\":[1,2]},{\"symbol\":\"MSFT\",\"seq\":3,\"last_trade_price\":310.1," +
+                "\"last_trade_timestamp\":\"" + TIMESTAMP + "\"}]}";
+
+        QuoteDeltasAPIResponse response = adapters.fromJson(json, QuoteDeltasAPIResponse.class);
+
+        QuoteDelta delta = response.list.get(0);
+        assertEquals(12, (long) delta.seq);
+        assertEquals(11, (long) delta.baseSeq);
+        assertEquals(174.5, delta.lastTradePrice, 0);
+        assertNull(delta.bidVolume);                    // not changed
+        assertNull(delta.askPrice);
+        assertTrue(delta.isDelta());
+
+        QuoteDelta full = response.list.get(1);
+        assertNull(full.baseSeq);
+        assertFalse(full.isDelta());
+
+        assertRoundTrip(response, QuoteDeltasAPIResponse.class);
+        assertRoundTrip(delta, QuoteDelta.class);
+    }
+
+    @Test
+    public void adaptersDecodeQuotesFasterThanReflection() {
+        StringBuilder json = new StringBuilder("{\"quotes\":[");
+
+        for (int i = 0; i < BENCHMARK_QUOTES; i++) {
+            json.append((i > 0) ? "," : "").append(QUOTE_JSON.replace("AAPL", "SYM" + i));
+        }
+        String batch = json.append("],\"count\":").append(BENCHMARK_QUOTES).append('}').toString();
+
+        // Interleaved, so that both get the same JIT and GC conditions
+        long adapterTime = Long.MAX_VALUE;
+        long reflectionTime = Long.MAX_VALUE;
+
+        for (int round = 0; round <= BENCHMARK_ROUNDS; round++) {
+            long adapterRound = timeDecodes(adapters, batch);
+            long reflectionRound = timeDecodes(reflection, batch);
+
+            if (round > 0) {
+                adapterTime = Math.min(adapterTime, adapterRound);
+                reflectionTime = Math.min(reflectionTime, reflectionRound);
+            }
+        }
+
+        long adapterBytes = getAllocatedBytes(adapters, batch);
+        long reflectionBytes = getAllocatedBytes(reflection, batch);
+
+        String results = String.format("Per batch of %d quotes: adapters %d us, %d bytes; reflection %d us, %d bytes",
+                BENCHMARK_QUOTES, adapterTime / 1000, adapterBytes, reflectionTime / 1000, reflectionBytes);
+
+        assertTrue(results, adapterTime <= reflectionTime);
+        assertTrue(results, adapterBytes <= reflectionBytes);
+    }
+
+    /**
+     * Decode a batch of quotes repeatedly.
+     *
+     * @return time per decode, in nanoseconds
+     */
+    private long timeDecodes(Gson gson, String batch) {
+        int count = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < BENCHMARK_DECODES; i++) {
+            count += gson.fromJson(batch, QuotesAPIResponse.class).list.size();
+        }
+
+        long time = (System.nanoTime() - start) / BENCHMARK_DECODES;
+
+        assertEquals(BENCHMARK_DECODES * BENCHMARK_QUOTES, count);
+        return time;
+    }
+
+    /**
+     * Get the memory allocated to decode a batch of quotes, as counted by the JVM for the
+     * current thread (0 if the JVM does not count it).
+     *
+     * @return bytes allocated per decode
+     */
+    private long getAllocatedBytes(Gson gson, String batch) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+
+        timeDecodes(gson, batch);
+
+        return (threads.getThreadAllocatedBytes(threadId) - before) / BENCHMARK_DECODES;
+    }
+}
@@ -0,0 +1,319 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_SCHEDULER_TICK;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.Settings;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests AdaptiveRefreshPolicy: intervals growing for symbols that do not move, shrinking for
+ * those that do, and staying within the floor & ceiling intervals.
+ *
+ * Also simulates polling a mix of busy and quiet symbols against a stand-in Quote Service,
+ * through QuotePollingScheduler, to compare the requests sent and how late price changes get
+ * shown with those of a fixed interval. Time is simulated, each request getting its response
+ * before time moves on.
+ *
+ * @author Rolande
+ */
+public class AdaptiveRefreshPolicyTest {
+    private static final long MIN = 2_000;             // in milliseconds
+    private static final long MAX = 60_000;
+    private static final long INITIAL = 10_000;
+
+    private static final long TIMEOUT = 5;                      // in seconds
+    private static final long SIMULATED_TIME = 5 * 60_000;      // in milliseconds
+    private static final int BUSY_SYMBOLS = 2;                  // price changing every BUSY_PERIOD
+    private static final int QUIET_SYMBOLS = 18;                // price changing every QUIET_PERIOD
+    private static final long BUSY_PERIOD = 500;                // in milliseconds
+    private static final long QUIET_PERIOD = 120_000;
+
+    /**
+     * Outcome of a simulated polling run.
+     */
+    private static class Simulation {
+        long requests;
+        long changes;
+        long totalLag;              // sum of the time each price change took to be shown, in milliseconds
+
+        double getAverageLag() {
+            return (double) totalLag / changes;
+        }
+
+        @Override
+        public String toString() {
+            return requests + " requests, changes shown after " + Math.round(getAverageLag()) + " ms on average";
+        }
+    }
+
+    private static Quote quote(double lastTradePrice) {
+        Quote quote = new Quote();
+        quote.setLastTradePrice(lastTradePrice);
+        quote.setBidPrice(lastTradePrice - 0.01);
+        quote.setAskPrice(lastTradePrice + 0.01);
+
+        return quote;
+    }
+
+    @Test
+    public void symbolNotSeenYetUsesInitialInterval() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(INITIAL, MIN, MAX);
+
+        assertEquals(INITIAL, policy.getInterval("AAPL"));
+        assertEquals(INITIAL, policy.onQuote("AAPL", quote(100)));     // nothing to compare to yet
+    }
+
+    @Test
+    public void intervalGrowsWhileQuoteDoesNotChange() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(INITIAL, MIN, MAX);
+        long interval = policy.onQuote("AAPL", quote(100));
+
+        for (int i = 0; i < 50; i++) {
+            long next = policy.onQuote("AAPL", quote(100));
+
+            assertTrue(next >= interval);
+            interval = next;
+        }
+
+        assertTrue("interval " + interval, interval > MAX * 0.99 && interval <= MAX);
+    }
+
+    @Test
+    public void intervalShrinksWhileQuoteChanges() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(INITIAL, MIN, MAX);
+        long interval = policy.onQuote("AAPL", quote(100));
+
+        for (int i = 1; i <= 50; i++) {
+            long next = policy.onQuote("AAPL", quote(100 + i));
+
+            assertTrue(next <= interval);
+            interval = next;
+        }
+
+        assertTrue("interval " + interval, interval >= MIN && interval < MIN * 1.01);
+    }
+
+    @Test
+    public void bidOrAskChangeCountsAsChange() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(INITIAL, MIN, MAX);
+        policy.onQuote("AAPL", quote(100));
+
+        Quote quote = quote(100);
+        quote.setBidPrice(99.5);
+
+        assertTrue(policy.onQuote("AAPL", quote) < INITIAL);
+    }
+
+    @Test
+    public void intervalFollowsChangesBothWays() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(INITIAL, MIN, MAX);
+        policy.onQuote("AAPL", quote(100));
+
+        for (int i = 1; i <= 20; i++) {
+            policy.onQuote("AAPL", quote(100 + i));
+        }
+        long busy = policy.getInterval("AAPL");
+
+        for (int i = 0; i < 5; i++) {
+            policy.onQuote("AAPL", quote(120));
+        }
+        long quieter = policy.getInterval("AAPL");
+
+        policy.onQuote("AAPL", quote(121));
+
+        assertTrue(quieter > busy);
+        assertTrue(policy.getInterval("AAPL") < quieter);
+        assertEquals(INITIAL, policy.getInterval("MSFT"));         // other symbols unaffected
+    }
+
+    @Test
+    public void initialIntervalClampedToFloorAndCeiling() {
+        assertEquals(MIN, new AdaptiveRefreshPolicy(MIN / 2, MIN, MAX).getInterval("AAPL"));
+        assertEquals(MAX, new AdaptiveRefreshPolicy(MAX * 2, MIN, MAX).getInterval("AAPL"));
+    }
+
+    @Test
+    public void ceilingBelowFloorTakenAsFloor() {
+        AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(INITIAL, MIN, MIN / 2);
+
+        assertEquals(MIN, policy.getMaxInterval());
+        assertEquals(MIN, policy.onQuote("AAPL", quote(100)));
+        assertEquals(MIN, policy.onQuote("AAPL", quote(100)));
+        assertEquals(MIN, policy.onQuote("AAPL", quote(101)));
+    }
+
+    @Test
+    public void fewerRequestsThanFixedIntervalForSameLag() throws Exception {
+        Simulation adaptive = simulate(INITIAL / 2, 1_000, 30_000);
+
+        // Cheapest fixed interval showing changes as soon as the adaptive policy does
+        Simulation fixed = null;
+
+        for (long interval : new long[] { 1_000, 2_000, 3_000 }) {
+            Simulation run = simulate(interval, interval, interval);
+
+            if (run.getAverageLag() <= adaptive.getAverageLag()) {
+                fixed = run;
+            }
+        }
+
+        String results = "adaptive: " + adaptive + "; fixed: " + fixed;
+
+        assertTrue(results, fixed != null);
+        assertTrue(results, adaptive.requests * 2 < fixed.requests);
+    }
+
+    /**
+     * Version of a symbol's price at a given time: it goes up by one on each change.
+     */
+    private static long getVersion(String symbol, long time) {
+        return time / (symbol.startsWith("BUSY") ? BUSY_PERIOD : QUIET_PERIOD);
+    }
+
+    private static long getChangeTime(String symbol, long version) {
+        return version * (symbol.startsWith("BUSY") ? BUSY_PERIOD : QUIET_PERIOD);
+    }
+
+    /**
+     * Poll busy and quiet symbols for SIMULATED_TIME, against a service whose prices change on
+     * their own period, and track how long each price change takes to be shown.
+     *
+     * @return requests sent, and how late changes were shown
+     */
+    private Simulation simulate(long refreshInterval, long minInterval, long maxInterval) throws Exception {
+        FakeQuoteService service = new FakeQuoteService();
+        service.start();
+        Settings.current().setQuoteRequestBudget(100_000);     // the budget is not what is compared
+        QuoteClient.setRateLimiter(new TokenBucket(100_000, 100_000));
+
+        long batchWindow = QuoteClient.getBatchWindow();
+        QuoteClient.setBatchWindow(0);
+
+        final long[] now = { 0 };
+        final List<Runnable> posted = new ArrayList<>();
+        final Map<String, Long> shown = new HashMap<>();         // version of the price shown, by symbol
+        final Simulation simulation = new Simulation();
+        List<String> symbols = new ArrayList<>();
+
+        for (int i = 0; i < BUSY_SYMBOLS + QUIET_SYMBOLS; i++) {
+            symbols.add((i < BUSY_SYMBOLS) ? "BUSY" + i : "QUIET" + i);
+        }
+
+        // Responses waited for, so that each one arrives before time moves on
+        QuoteClient client = new QuoteClient(new TestContext()) {
+            @Override
+            public void getQuote(String symbol, GetQuoteResponseListener listener) {
+                CompletableFuture<Quote> future = new CompletableFuture<>();
+
+                super.getQuote(symbol, new GetQuoteResponseListener() {
+                    @Override
+                    public void onResponse(Quote latestQuote) {
+                        future.complete(latestQuote);
+                    }
+
+                    @Override
+                    public void onFailure(String errorMsg) {
+                        future.completeExceptionally(new IllegalStateException(errorMsg));
+                    }
+                });
+
+                try {
+                    listener.onResponse(future.get(TIMEOUT, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    listener.onFailure(e.toString());
+                }
+            }
+        };
+
+        Clock clock = new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now[0];
+            }
+        };
+        QuotePollingScheduler scheduler = new QuotePollingScheduler(client, refreshInterval, minInterval, maxInterval,
+                clock) {
+            @Override
+            void postDelayed(Runnable task, long delay) {
+                posted.add(task);
+            }
+        };
+
+        scheduler.setListener(new QuotePollingScheduler.Listener() {
+            @Override
+            public void onQuote(String symbol, Quote latestQuote) {
+                long version = Math.round(latestQuote.getLastTradePrice());
+                Long previous = shown.get(symbol);
+
+                // Changes not shown yet, now shown
+                for (long v = (previous != null) ? previous + 1 : version + 1; v <= version; v++) {
+                    simulation.changes++;
+                    simulation.totalLag += now[0] - getChangeTime(symbol, v);
+                }
+                shown.put(symbol, Math.max(version, (previous != null) ? previous : version));
+            }
+
+            @Override
+            public void onFailure(String symbol, String errorMsg) {}
+
+            @Override
+            public void onServiceAvailabilityChanged(boolean available, String errorMsg) {}
+        });
+
+        try {
+            for (String symbol : symbols) {
+                service.prices.put(symbol, (double) getVersion(symbol, now[0]));
+                scheduler.subscribe(symbol);
+            }
+            scheduler.start();
+
+            while (now[0] < SIMULATED_TIME) {
+                now[0] += QUOTE_SCHEDULER_TICK;
+
+                for (String symbol : symbols) {
+                    service.prices.put(symbol, (double) getVersion(symbol, now[0]));
+                }
+
+                List<Runnable> due = new ArrayList<>(posted);
+                posted.clear();
+                for (Runnable task : due) {
+                    task.run();
+                }
+            }
+
+            // Changes never shown count as late as the whole run
+            for (String symbol : symbols) {
+                Long version = shown.get(symbol);
+
+                for (long v = (version != null) ? version + 1 : 1; v <= getVersion(symbol, now[0]); v++) {
+                    simulation.changes++;
+                    simulation.totalLag += now[0] - getChangeTime(symbol, v);
+                }
+            }
+
+            simulation.requests = service.server.getRequestCount();
+            return simulation;
+        }
+        finally {
+            scheduler.stop();
+            QuoteClient.setBatchWindow(batchWindow);
+            QuoteClient.setRateLimiter(null);
+            service.shutdown();
+        }
+    }
+}
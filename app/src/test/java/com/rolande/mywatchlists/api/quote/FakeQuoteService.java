@@ -0,0 +1,158 @@
+package com.rolande.mywatchlists.api.quote;
+
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.Settings;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Stand-in Quote Service, on a MockWebServer, put in effect in settings. Every symbol trades
+ * at a price made of its length, quotes being sent in json, full and without sequence number.
+ * Symbols can be given prices of their own, left out of responses, and responses delayed (all
+ * of them, or the next few).
+ *
+ * @author Rolande
+ */
+class FakeQuoteService {
+    final MockWebServer server = new MockWebServer();
+    final Set<String> unknownSymbols = Collections.synchronizedSet(new HashSet<String>());
+    final Map<String, Double> prices = new ConcurrentHashMap<>();     // last trade prices, in place of the default
+    volatile long delay;                                // in milliseconds, before each response
+    final BlockingQueue<Long> delays = new LinkedBlockingQueue<>();     // of the next responses, in place of delay
+
+    private final Dispatcher dispatcher = new Dispatcher() {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            List<String> symbols = new ArrayList<>();
+
+            if (url.pathSegments().get(0).equals("quotes")) {
+                symbols.addAll(url.queryParameterValues("symbols"));
+            }
+            else {
+                symbols.add(url.pathSegments().get(1));
+            }
+
+            StringBuilder quotes = new StringBuilder();
+
+            for (String symbol : symbols) {
+                if (!unknownSymbols.contains(symbol)) {
+                    Double price = prices.get(symbol);
+
+                    quotes.append((quotes.length() > 0) ? "," : "")
+                          .append((price != null) ? getQuoteJson(symbol, price) : getQuoteJson(symbol));
+                }
+            }
+
+            String body = url.pathSegments().get(0).equals("quotes")
+                    ? "{\"quotes\":[" + quotes + "]}"
+                    : quotes.toString();
+
+            Long nextDelay = delays.poll();
+
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(body)
+                    .setHeadersDelay((nextDelay != null) ? nextDelay : delay, TimeUnit.MILLISECONDS);
+        }
+    };
+
+    /**
+     * Server sockets whose connections send small writes right away: a response's headers and
+     * body are written apart, which would otherwise hold the body back until the client acks
+     * the headers (tens of milliseconds, on some systems).
+     */
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException();      // MockWebServer binds its own
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static String getQuoteJson(String symbol) {
+        return getQuoteJson(symbol, symbol.length() + 0.5);
+    }
+
+    static String getQuoteJson(String symbol, double lastTradePrice) {
+        return "{\"symbol\":\"" + symbol + "\",\"last_trade_price\":" + lastTradePrice + "}";
+    }
+
+    /**
+     * Start the service and put its location in effect in settings, with a request budget of
+     * its own that tests cannot run out of.
+     */
+    void start() throws IOException {
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(dispatcher);
+        server.start();
+
+        Settings settings = new Settings("127.0.0.1", 1, server.getHostName(), server.getPort());
+        settings.setQuoteRequestBudget(1000);
+        Settings.setCurrent(settings);
+        QuoteClient.setRateLimiter(new TokenBucket(1000, 1000));
+    }
+
+    void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Take the requests received so far, in order.
+     *
+     * @return paths of the requests, with their query
+     */
+    List<String> takeRequests() throws InterruptedException {
+        List<String> paths = new ArrayList<>();
+        RecordedRequest request;
+
+        while ((request = server.takeRequest(0, TimeUnit.MILLISECONDS)) != null) {
+            paths.add(request.getPath());
+        }
+
+        return paths;
+    }
+}
@@ -0,0 +1,189 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_BATCH_MAX_SYMBOLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that single-symbol quote requests get coalesced into batch requests, against a
+ * stand-in Quote Service.
+ *
+ * @author Rolande
+ */
+public class QuoteBatcherTest {
+    private FakeQuoteService service;
+    private QuoteClient client;
+
+    /**
+     * Listener keeping the outcome of the requests, by symbol.
+     */
+    private static class RecordingListener implements QuoteClient.GetQuoteResponseListener {
+        final String symbol;
+        final Map<String, String> outcomes;
+        final CountDownLatch done;
+
+        RecordingListener(String symbol, Map<String, String> outcomes, CountDownLatch done) {
+            this.symbol = symbol;
+            this.outcomes = outcomes;
+            this.done = done;
+        }
+
+        @Override
+        public void onResponse(Quote latestQuote) {
+            outcomes.put(symbol, latestQuote.getSymbol() + "@" + latestQuote.getLastTradePrice());
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(String errorMsg) {
+            outcomes.put(symbol, "failed");
+            done.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        service = new FakeQuoteService();
+        service.start();
+        client = new QuoteClient(new TestContext());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        service.shutdown();
+    }
+
+    @Test
+    public void requestsWithinWindowSentAsOneBatch() throws Exception {
+        QuoteBatcher batcher = new QuoteBatcher(client);
+        Map<String, String> outcomes = Collections.synchronizedMap(new HashMap<String, String>());
+        CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            String symbol = "SYM" + i;
+            batcher.add(symbol, new RecordingListener(symbol, outcomes, done));
+        }
+
+        batcher.flush();                                // window closes
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        List<String> requests = service.takeRequests();
+
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0), requests.get(0).startsWith("/quotes?symbols=SYM0&symbols=SYM1&symbols=SYM2"));
+
+        // Each listener gets the quote of its own symbol
+        for (int i = 0; i < 10; i++) {
+            assertEquals("SYM" + i + "@4.5", outcomes.get("SYM" + i));
+        }
+    }
+
+    @Test
+    public void symbolLeftOutOfBatchFailsAlone() throws Exception {
+        QuoteBatcher batcher = new QuoteBatcher(client);
+        Map<String, String> outcomes = Collections.synchronizedMap(new HashMap<String, String>());
+        CountDownLatch done = new CountDownLatch(3);
+
+        service.unknownSymbols.add("ZZZZ");
+
+        batcher.add("AAPL", new RecordingListener("AAPL", outcomes, done));
+        batcher.add("ZZZZ", new RecordingListener("ZZZZ", outcomes, done));
+        batcher.add("MSFT", new RecordingListener("MSFT", outcomes, done));
+        batcher.flush();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, service.takeRequests().size());
+        assertEquals("AAPL@4.5", outcomes.get("AAPL"));
+        assertEquals("failed", outcomes.get("ZZZZ"));
+        assertEquals("MSFT@4.5", outcomes.get("MSFT"));
+    }
+
+    @Test
+    public void singleQuoteRequestsCoalescedByClient() throws Exception {
+        Map<String, String> outcomes = Collections.synchronizedMap(new HashMap<String, String>());
+        CountDownLatch done = new CountDownLatch(QUOTE_BATCH_MAX_SYMBOLS + 1);
+        long savedBefore = QuoteClient.getSavedRequestCount();
+        List<String> symbols = new ArrayList<>();
+
+        for (int i = 0; i < QUOTE_BATCH_MAX_SYMBOLS; i++) {
+            symbols.add("BAT" + i);
+        }
+
+        // A second request for a symbol joins the first one
+        client.getQuote(symbols.get(0), new RecordingListener("again", outcomes, done));
+
+        // The batch being full, it is sent without waiting for the window to close
+        for (String symbol : symbols) {
+            client.getQuote(symbol, new RecordingListener(symbol, outcomes, done));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        List<String> requests = service.takeRequests();
+
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).startsWith("/quotes?symbols=BAT0&symbols=BAT1"));
+        assertEquals(savedBefore + 1, QuoteClient.getSavedRequestCount());
+        assertEquals("BAT0@4.5", outcomes.get("again"));
+        assertEquals("BAT49@5.5", outcomes.get("BAT49"));
+    }
+
+    @Test
+    public void batchTakesOneTokenAndRestWaitsForNext() throws Exception {
+        long[] now = { 1000 };
+        TokenBucket rateLimiter = new TokenBucket(1000, 1, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return now[0];
+            }
+        });
+        QuoteClient.setRateLimiter(rateLimiter);
+
+        QuoteBatcher batcher = new QuoteBatcher(client);
+        Map<String, String> outcomes = Collections.synchronizedMap(new HashMap<String, String>());
+        CountDownLatch done = new CountDownLatch(2 * QUOTE_BATCH_MAX_SYMBOLS + 10);
+
+        // The first full batch takes the only token, the second one waits for the next
+        for (int i = 0; i < 2 * QUOTE_BATCH_MAX_SYMBOLS + 10; i++) {
+            String symbol = "TOK" + i;
+            batcher.add(symbol, new RecordingListener(symbol, outcomes, done));
+        }
+
+        assertEquals(QUOTE_BATCH_MAX_SYMBOLS, service.server.takeRequest(5, TimeUnit.SECONDS).getRequestUrl().queryParameterValues("symbols").size());
+        assertEquals(1, rateLimiter.getGrantedCount());
+        assertEquals(1, rateLimiter.getWaitMillis());
+
+        now[0] += 1;
+        batcher.flush();                                // next token due
+
+        assertEquals(QUOTE_BATCH_MAX_SYMBOLS, service.server.takeRequest(5, TimeUnit.SECONDS).getRequestUrl().queryParameterValues("symbols").size());
+        assertEquals(2, rateLimiter.getGrantedCount());
+
+        now[0] += 1;
+        batcher.flush();
+
+        assertEquals(10, service.server.takeRequest(5, TimeUnit.SECONDS).getRequestUrl().queryParameterValues("symbols").size());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, rateLimiter.getGrantedCount());
+        assertEquals("TOK109@6.5", outcomes.get("TOK109"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.model.Settings;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+/**
+ * Tests the decoding of quote responses by the Quote API, binary format enabled: quotes sent
+ * in binary are decoded by QuoteBinaryConverterFactory, while json ones (ex: from a server
+ * not supporting the binary format) still fall through to Gson.
+ *
+ * @author Rolande
+ */
+public class QuoteBinaryConverterFactoryTest {
+    private MockWebServer server;
+    private QuoteAPI api;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        Settings settings = new Settings("127.0.0.1", 1, server.getHostName(), server.getPort());
+        settings.setQuoteBinary(true);
+        Settings.setCurrent(settings);
+
+        api = new QuoteAPIBuilder().build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private void enqueueBinary(byte[] bytes) {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", QuoteBinaryFormat.MEDIA_TYPE)
+                .setBody(new Buffer().write(bytes)));
+    }
+
+    private void enqueueJson(String json) {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(json));
+    }
+
+    @Test
+    public void binaryQuoteDecoded() throws Exception {
+        Quote sent = QuoteBinaryFormatTest.newQuote("AAPL", 174.25);
+        enqueueBinary(QuoteBinaryFormatTest.encode(sent));
+
+        Quote quote = api.getQuote("AAPL").execute().body();
+
+        assertEquals("AAPL", quote.getSymbol());
+        assertEquals(174.25, quote.getLastTradePrice(), 0);
+        assertEquals(sent.getLastTradeTimestamp(), quote.getLastTradeTimestamp());
+
+        // Binary asked for, json still accepted
+        assertTrue(server.takeRequest().getHeader("Accept").startsWith(QuoteBinaryFormat.MEDIA_TYPE));
+    }
+
+    @Test
+    public void binaryBatchDecoded() throws Exception {
+        enqueueBinary(QuoteBinaryFormatTest.encode(Arrays.asList(
+                QuoteBinaryFormatTest.newQuote("AAPL", 174.25), QuoteBinaryFormatTest.newQuote("MSFT", 310.1))));
+
+        List<Quote> quotes = api.getQuotes(Arrays.asList("AAPL", "MSFT")).execute().body().list;
+
+        assertEquals(2, quotes.size());
+        assertEquals("MSFT", quotes.get(1).getSymbol());
+        assertEquals(310.1, quotes.get(1).getLastTradePrice(), 0);
+    }
+
+    @Test
+    public void jsonQuoteFallsThroughToGson() throws Exception {
+        enqueueJson("{\"symbol\":\"AAPL\",\"last_trade_price\":174.25,\"last_trade_timestamp\":\"2023-05-12T14:30:05Z\"}");
+
+        Quote quote = api.getQuote("AAPL").execute().body();
+
+        assertEquals("AAPL", quote.getSymbol());
+        assertEquals(174.25, quote.getLastTradePrice(), 0);
+        assertEquals(1683901805000L, quote.getLastTradeTimestamp().getTime());
+    }
+
+    @Test
+    public void jsonBatchFallsThroughToGson() throws Exception {
+        enqueueJson("{\"quotes\":[{\"symbol\":\"AAPL\",\"last_trade_price\":174.25},{\"symbol\":\"MSFT\",\"last_trade_price\":310.1}]}");
+
+        List<Quote> quotes = api.getQuotes(Arrays.asList("AAPL", "MSFT")).execute().body().list;
+
+        assertEquals(2, quotes.size());
+        assertEquals("MSFT", quotes.get(1).getSymbol());
+    }
+
+    @Test
+    public void otherResponsesLeftToGson() throws Exception {
+        enqueueJson("{\"symbol\":\"AAPL\",\"seq\":5,\"base_seq\":4,\"last_trade_price\":174.25}");
+
+        QuoteDelta delta = api.getQuoteSince("AAPL", 4L).execute().body();
+
+        assertEquals(5, (long) delta.seq);
+        assertTrue(delta.isDelta());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedBinaryRejected() throws Exception {
+        enqueueBinary(new byte[] {'Q', 1, 1, 0});
+
+        api.getQuote("AAPL").execute();
+    }
+}
@@ -0,0 +1,234 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.rolande.mywatchlists.api.gson.ApiTypeAdapters;
+import com.rolande.mywatchlists.api.gson.TimestampFormat;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the binary encoding of quotes: single quotes and batches read back as written, and
+ * messages that are not what they should be rejected. Also compares the size of a batch and
+ * the time it takes to decode it against the JSON read through Gson.
+ *
+ * @author Rolande
+ */
+public class QuoteBinaryFormatTest {
+    private static final int BENCHMARK_QUOTES = 100;           // per batch decoded
+    private static final int BENCHMARK_DECODES = 1000;         // per round
+    private static final int BENCHMARK_ROUNDS = 5;             // after a warm-up round
+
+    // Same Gson as the services' (see APIBuilder.getMyGson), without settings to build it from
+    private final Gson gson = ApiTypeAdapters.register(new GsonBuilder())
+            .setDateFormat(TimestampFormat.PATTERN)
+            .create();
+
+    static Quote newQuote(String symbol, double price) {
+        return new Quote(null, symbol, price - 1.25, price - 0.5, new Timestamp(1683901805000L), price, 1200,
+                price - 0.01, 300, price + 0.01, 500, "prod");
+    }
+
+    private static void assertSameQuote(Quote expected, Quote actual) {
+        assertEquals(expected.getSymbol(), actual.getSymbol());
+        assertEquals(expected.getPreviousClosePrice(), actual.getPreviousClosePrice(), 0);
+        assertEquals(expected.getOpenPrice(), actual.getOpenPrice(), 0);
+        assertEquals(expected.getLastTradeTimestamp(), actual.getLastTradeTimestamp());
+        assertEquals(expected.getLastTradePrice(), actual.getLastTradePrice(), 0);
+        assertEquals(expected.getLastTradeVolume(), actual.getLastTradeVolume());
+        assertEquals(expected.getBidPrice(), actual.getBidPrice(), 0);
+        assertEquals(expected.getBidVolume(), actual.getBidVolume());
+        assertEquals(expected.getAskPrice(), actual.getAskPrice(), 0);
+        assertEquals(expected.getAskVolume(), actual.getAskVolume());
+        assertEquals(expected.getEnvironment(), actual.getEnvironment());
+    }
+
+    static byte[] encode(Quote quote) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        QuoteBinaryFormat.writeQuote(new DataOutputStream(bytes), quote);
+
+        return bytes.toByteArray();
+    }
+
+    static byte[] encode(List<Quote> quotes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        QuoteBinaryFormat.writeQuotes(new DataOutputStream(bytes), quotes);
+
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void singleQuoteReadBackAsWritten() throws IOException {
+        Quote quote = newQuote("AAPL", 174.25);
+
+        assertSameQuote(quote, QuoteBinaryFormat.readQuote(input(encode(quote))));
+    }
+
+    @Test
+    public void missingValuesReadBackAsMissing() throws IOException {
+        Quote quote = new Quote();
+        quote.setLastTradePrice(12.5);
+
+        Quote read = QuoteBinaryFormat.readQuote(input(encode(quote)));
+
+        assertNull(read.getSymbol());
+        assertNull(read.getLastTradeTimestamp());
+        assertNull(read.getEnvironment());
+        assertSameQuote(quote, read);
+    }
+
+    @Test
+    public void nonAsciiTextReadBackAsWritten() throws IOException {
+        Quote quote = newQuote("BRK.B", 350);
+        quote.setEnvironment("bourse de Montréal é€");
+
+        assertSameQuote(quote, QuoteBinaryFormat.readQuote(input(encode(quote))));
+    }
+
+    @Test
+    public void batchReadBackAsWritten() throws IOException {
+        List<Quote> quotes = Arrays.asList(newQuote("AAPL", 174.25), new Quote(), newQuote("MSFT", 310.1));
+
+        List<Quote> read = QuoteBinaryFormat.readQuotes(input(encode(quotes)));
+
+        assertEquals(quotes.size(), read.size());
+        for (int i = 0; i < quotes.size(); i++) {
+            assertSameQuote(quotes.get(i), read.get(i));
+        }
+
+        assertTrue(QuoteBinaryFormat.readQuotes(input(encode(Collections.<Quote>emptyList()))).isEmpty());
+    }
+
+    @Test
+    public void binaryMuchSmallerThanJsonForLargeBatch() throws IOException {
+        List<Quote> quotes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            quotes.add(newQuote("SYM" + i, 100 + i));
+        }
+
+        QuotesAPIResponse response = new QuotesAPIResponse();
+        response.list = new ArrayList<>(quotes);
+        int jsonSize = gson.toJson(response).getBytes("UTF-8").length;
+
+        assertTrue(encode(quotes).length < jsonSize / 2);
+    }
+
+    @Test
+    public void binaryDecodesFasterThanJson() throws IOException {
+        List<Quote> quotes = new ArrayList<>();
+        for (int i = 0; i < BENCHMARK_QUOTES; i++) {
+            quotes.add(newQuote("SYM" + i, 100 + i));
+        }
+
+        QuotesAPIResponse response = new QuotesAPIResponse();
+        response.list = new ArrayList<>(quotes);
+        byte[] json = gson.toJson(response).getBytes("UTF-8");
+        byte[] binary = encode(quotes);
+
+        // Interleaved, so that both get the same JIT and GC conditions
+        long binaryTime = Long.MAX_VALUE;
+        long jsonTime = Long.MAX_VALUE;
+
+        for (int round = 0; round <= BENCHMARK_ROUNDS; round++) {
+            long binaryRound = timeBinaryDecodes(binary);
+            long jsonRound = timeJsonDecodes(json);
+
+            if (round > 0) {
+                binaryTime = Math.min(binaryTime, binaryRound);
+                jsonTime = Math.min(jsonTime, jsonRound);
+            }
+        }
+
+        String results = String.format("Per quote, in a batch of %d: binary %d ns; json %d ns",
+                BENCHMARK_QUOTES, binaryTime / BENCHMARK_QUOTES, jsonTime / BENCHMARK_QUOTES);
+
+        assertTrue(results, binaryTime <= jsonTime);
+    }
+
+    /**
+     * Decode a batch of quotes in binary repeatedly.
+     *
+     * @return time per decode, in nanoseconds
+     */
+    private static long timeBinaryDecodes(byte[] batch) throws IOException {
+        int count = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < BENCHMARK_DECODES; i++) {
+            count += QuoteBinaryFormat.readQuotes(input(batch)).size();
+        }
+
+        long time = (System.nanoTime() - start) / BENCHMARK_DECODES;
+
+        assertEquals(BENCHMARK_DECODES * BENCHMARK_QUOTES, count);
+        return time;
+    }
+
+    /**
+     * Decode a batch of quotes in JSON repeatedly, from its bytes as received.
+     *
+     * @return time per decode, in nanoseconds
+     */
+    private long timeJsonDecodes(byte[] batch) throws IOException {
+        int count = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < BENCHMARK_DECODES; i++) {
+            Reader reader = new InputStreamReader(new ByteArrayInputStream(batch), "UTF-8");
+            count += gson.fromJson(reader, QuotesAPIResponse.class).list.size();
+        }
+
+        long time = (System.nanoTime() - start) / BENCHMARK_DECODES;
+
+        assertEquals(BENCHMARK_DECODES * BENCHMARK_QUOTES, count);
+        return time;
+    }
+
+    @Test(expected = IOException.class)
+    public void batchNotTakenForSingleQuote() throws IOException {
+        QuoteBinaryFormat.readQuote(input(encode(Collections.singletonList(newQuote("AAPL", 1)))));
+    }
+
+    @Test(expected = IOException.class)
+    public void jsonNotTakenForBinary() throws IOException {
+        QuoteBinaryFormat.readQuote(input("{\"symbol\":\"AAPL\"}".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeCountRejected() throws IOException {
+        byte[] bytes = encode(Collections.<Quote>emptyList());
+        bytes[3] = (byte) 0xff;                         // count's sign byte
+
+        QuoteBinaryFormat.readQuotes(input(bytes));
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedMessageRejected() throws IOException {
+        byte[] bytes = encode(newQuote("AAPL", 174.25));
+
+        QuoteBinaryFormat.readQuote(input(Arrays.copyOf(bytes, bytes.length - 4)));
+    }
+}
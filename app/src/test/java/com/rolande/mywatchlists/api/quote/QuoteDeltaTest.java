@@ -0,0 +1,256 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.APIException;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.Settings;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests that QuoteClient asks for quote changes since the last quote obtained, merges them,
+ * and fetches full quotes again once changes were missed, against a stand-in Quote Service
+ * answering with scripted responses. Batching is disabled, for each single quote to get a
+ * request of its own. Full quotes fetched again take a token of their own, like any request.
+ *
+ * Each test uses symbols of its own, as snapshots are kept for the whole app.
+ *
+ * @author Rolande
+ */
+public class QuoteDeltaTest {
+    private static final long TIMEOUT = 5;              // in seconds
+
+    private MockWebServer server;
+    private QuoteClient client;
+    private TokenBucket rateLimiter;
+    private long batchWindow;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        Settings settings = new Settings("127.0.0.1", 1, server.getHostName(), server.getPort());
+        settings.setQuoteRequestBudget(1000);
+        Settings.setCurrent(settings);
+        rateLimiter = new TokenBucket(1000, 1000);
+        QuoteClient.setRateLimiter(rateLimiter);
+
+        batchWindow = QuoteClient.getBatchWindow();
+        QuoteClient.setBatchWindow(0);
+
+        client = new QuoteClient(new TestContext());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        QuoteClient.setBatchWindow(batchWindow);
+        QuoteClient.setRateLimiter(null);
+        server.shutdown();
+    }
+
+    private void enqueueJson(String json) {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(json));
+    }
+
+    private String takePath() throws InterruptedException {
+        return server.takeRequest(TIMEOUT, TimeUnit.SECONDS).getPath();
+    }
+
+    /**
+     * Put in effect a rate limiter holding a single token, never refilled.
+     */
+    private void setLastToken() {
+        QuoteClient.setRateLimiter(new TokenBucket(1000, 1, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return 0;
+            }
+        }));
+    }
+
+    private Quote getQuote(String symbol) throws Exception {
+        return client.getQuote(symbol).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void changesMergedIntoLastQuote() throws Exception {
+        enqueueJson("{\"symbol\":\"DLTA\",\"seq\":41,\"last_trade_price\":10.5,\"bid_price\":10.4}");
+        getQuote("DLTA");
+        assertEquals("/quote/DLTA", takePath());
+
+        enqueueJson("{\"symbol\":\"DLTA\",\"seq\":42,\"base_seq\":41,\"last_trade_price\":10.75}");
+        Quote quote = getQuote("DLTA");
+
+        assertEquals("/quote/DLTA?since=41", takePath());
+        assertEquals(10.75, quote.getLastTradePrice(), 0);
+        assertEquals(10.4, quote.getBidPrice(), 0);
+
+        enqueueJson("{\"symbol\":\"DLTA\",\"seq\":43,\"base_seq\":42,\"bid_price\":10.7}");
+        getQuote("DLTA");
+
+        assertEquals("/quote/DLTA?since=42", takePath());
+    }
+
+    @Test
+    public void missedChangesGetFullQuoteAgain() throws Exception {
+        enqueueJson("{\"symbol\":\"GAPS\",\"seq\":41,\"last_trade_price\":10.5,\"bid_price\":10.4}");
+        getQuote("GAPS");
+        takePath();
+
+        // Changes since a quote never received, i.e. 42 was missed
+        enqueueJson("{\"symbol\":\"GAPS\",\"seq\":44,\"base_seq\":43,\"last_trade_price\":11.0}");
+        enqueueJson("{\"symbol\":\"GAPS\",\"seq\":44,\"last_trade_price\":11.0,\"bid_price\":10.9}");
+        Quote quote = getQuote("GAPS");
+
+        assertEquals("/quote/GAPS?since=41", takePath());
+        assertEquals("/quote/GAPS", takePath());
+        assertEquals(11.0, quote.getLastTradePrice(), 0);
+        assertEquals(10.9, quote.getBidPrice(), 0);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void fullQuoteAgainTakesTokenOfItsOwn() throws Exception {
+        enqueueJson("{\"symbol\":\"TOKN\",\"seq\":41,\"last_trade_price\":10.5}");
+        getQuote("TOKN");
+        long granted = rateLimiter.getGrantedCount();
+
+        enqueueJson("{\"symbol\":\"TOKN\",\"seq\":44,\"base_seq\":43,\"last_trade_price\":11.0}");
+        enqueueJson("{\"symbol\":\"TOKN\",\"seq\":44,\"last_trade_price\":11.0}");
+        getQuote("TOKN");
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(granted + 2, rateLimiter.getGrantedCount());
+    }
+
+    @Test
+    public void fullQuoteAgainWithoutTokenFails() throws Exception {
+        enqueueJson("{\"symbol\":\"NTOK\",\"seq\":41,\"last_trade_price\":10.5}");
+        getQuote("NTOK");
+
+        setLastToken();
+        enqueueJson("{\"symbol\":\"NTOK\",\"seq\":44,\"base_seq\":43,\"last_trade_price\":11.0}");
+
+        try {
+            getQuote("NTOK");
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(APIException.class, e.getCause().getClass());
+        }
+        assertEquals(2, server.getRequestCount());                      // not asked again
+    }
+
+    @Test
+    public void changesGivenForFullQuoteRejected() throws Exception {
+        enqueueJson("{\"symbol\":\"BOGS\",\"seq\":42,\"base_seq\":41,\"last_trade_price\":11.0}");
+
+        try {
+            getQuote("BOGS");
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(APIException.class, e.getCause().getClass());
+        }
+        assertEquals(1, server.getRequestCount());                      // not asked again
+    }
+
+    @Test
+    public void serverWithoutSeqAskedForFullQuotes() throws Exception {
+        enqueueJson("{\"symbol\":\"NSEQ\",\"last_trade_price\":10.5}");
+        enqueueJson("{\"symbol\":\"NSEQ\",\"last_trade_price\":10.75}");
+
+        getQuote("NSEQ");
+        Quote quote = getQuote("NSEQ");
+
+        assertEquals("/quote/NSEQ", takePath());
+        assertEquals("/quote/NSEQ", takePath());
+        assertEquals(10.75, quote.getLastTradePrice(), 0);
+    }
+
+    @Test
+    public void batchMissedChangesGetFullQuotesAgain() throws Exception {
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BTA\",\"seq\":7,\"last_trade_price\":3.5},{\"symbol\":\"BTB\",\"seq\":3,\"last_trade_price\":3.25}]}");
+        client.getQuotes(Arrays.asList("BTA", "BTB")).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("/quotes?symbols=BTA&symbols=BTB&since=0&since=0", takePath());
+
+        // Changes for BTA merged, those for BTB since a quote never received
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BTA\",\"seq\":8,\"base_seq\":7,\"last_trade_price\":3.75},{\"symbol\":\"BTB\",\"seq\":5,\"base_seq\":4,\"last_trade_price\":3.5}]}");
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BTB\",\"seq\":5,\"last_trade_price\":3.5}]}");
+        List<Quote> quotes = client.getQuotes(Arrays.asList("BTA", "BTB")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals("/quotes?symbols=BTA&symbols=BTB&since=7&since=3", takePath());
+        assertEquals("/quotes?symbols=BTB&since=0", takePath());
+        assertEquals(2, quotes.size());
+        assertEquals("BTA", quotes.get(0).getSymbol());
+        assertEquals(3.75, quotes.get(0).getLastTradePrice(), 0);
+        assertEquals("BTB", quotes.get(1).getSymbol());
+        assertEquals(3.5, quotes.get(1).getLastTradePrice(), 0);
+    }
+
+    @Test
+    public void batchRefetchFailureLeavesMissedSymbolsOut() throws Exception {
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BFA\",\"seq\":7,\"last_trade_price\":3.5},{\"symbol\":\"BFB\",\"seq\":3,\"last_trade_price\":3.25}]}");
+        client.getQuotes(Arrays.asList("BFA", "BFB")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BFA\",\"seq\":8,\"base_seq\":7,\"last_trade_price\":3.75},{\"symbol\":\"BFB\",\"seq\":5,\"base_seq\":4,\"last_trade_price\":3.5}]}");
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{\"message\":\"Try again\"}"));
+        List<Quote> quotes = client.getQuotes(Arrays.asList("BFA", "BFB")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(1, quotes.size());
+        assertEquals("BFA", quotes.get(0).getSymbol());
+    }
+
+    @Test
+    public void batchFullQuotesAgainWithoutTokenLeftOut() throws Exception {
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BNA\",\"seq\":7,\"last_trade_price\":3.5},{\"symbol\":\"BNB\",\"seq\":3,\"last_trade_price\":3.25}]}");
+        client.getQuotes(Arrays.asList("BNA", "BNB")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        setLastToken();
+        enqueueJson("{\"quotes\":[{\"symbol\":\"BNA\",\"seq\":8,\"base_seq\":7,\"last_trade_price\":3.75},{\"symbol\":\"BNB\",\"seq\":5,\"base_seq\":4,\"last_trade_price\":3.5}]}");
+        QuoteClient.getRateLimiter().tryAcquire();       // taken by the batch, as QuoteBatcher does
+        List<Quote> quotes = client.getQuotes(Arrays.asList("BNA", "BNB")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(1, quotes.size());
+        assertEquals("BNA", quotes.get(0).getSymbol());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void snapshotDroppedOnceUnsubscribed() throws Exception {
+        enqueueJson("{\"symbol\":\"EVCT\",\"seq\":41,\"last_trade_price\":10.5}");
+        getQuote("EVCT");
+        takePath();
+
+        QuotePollingScheduler scheduler = new QuotePollingScheduler(new TestContext(), 1000);
+        scheduler.subscribe("EVCT");
+        scheduler.subscribe("EVCT");
+        scheduler.unsubscribe("EVCT");
+
+        // Still on screen once
+        enqueueJson("{\"symbol\":\"EVCT\",\"seq\":42,\"base_seq\":41,\"last_trade_price\":10.75}");
+        getQuote("EVCT");
+        assertEquals("/quote/EVCT?since=41", takePath());
+
+        scheduler.unsubscribe("EVCT");
+
+        enqueueJson("{\"symbol\":\"EVCT\",\"seq\":43,\"last_trade_price\":11.0}");
+        getQuote("EVCT");
+        assertEquals("/quote/EVCT", takePath());
+    }
+}
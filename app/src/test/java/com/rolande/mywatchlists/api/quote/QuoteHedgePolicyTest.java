@@ -0,0 +1,97 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_BUDGET_RATIO;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MAX_BURST;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MIN_SAMPLES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests QuoteHedgePolicy against simulated quote calls, a few of which get injected latency.
+ *
+ * @author Rolande
+ */
+public class QuoteHedgePolicyTest {
+
+    private static final String ENDPOINT = "getQuote";
+    private static final int REQUESTS = 5000;
+
+    private final Random random = new Random(42);
+
+    /**
+     * Time of a call: 20 to 80 ms mostly, 1 to 2 s for the 5% of them that get unlucky.
+     */
+    private long nextCallTime() {
+        return (random.nextDouble() < 0.05) ? 1000 + random.nextInt(1000) : 20 + random.nextInt(60);
+    }
+
+    private static long p99(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+
+        return sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    }
+
+    @Test
+    public void noHedgeBeforeEnoughSamples() {
+        QuoteHedgePolicy policy = new QuoteHedgePolicy();
+
+        for (int i = 0; i < QUOTE_HEDGE_MIN_SAMPLES - 1; i++) {
+            policy.onCallTime(ENDPOINT, 50_000_000L);
+        }
+
+        assertEquals(-1, policy.getHedgeDelay(ENDPOINT));
+    }
+
+    @Test
+    public void hedgeDelayIsNotBucketUpperBound() {
+        QuoteHedgePolicy policy = new QuoteHedgePolicy();
+
+        for (int i = 0; i < 100; i++) {
+            policy.onCallTime(ENDPOINT, (i < 95 ? 60 : 600) * 1_000_000L);
+        }
+
+        long delay = policy.getHedgeDelay(ENDPOINT);
+
+        assertTrue("delay " + delay, delay > 50 && delay < 100);
+    }
+
+    @Test
+    public void hedgingCutsTailLatency() {
+        QuoteHedgePolicy policy = new QuoteHedgePolicy();
+        long[] unhedged = new long[REQUESTS];
+        long[] hedged = new long[REQUESTS];
+
+        for (int i = 0; i < REQUESTS; i++) {
+            long original = nextCallTime();
+            long hedge = nextCallTime();
+
+            policy.onRequest();
+            long delay = policy.getHedgeDelay(ENDPOINT);
+
+            unhedged[i] = original;
+            hedged[i] = original;
+
+            if (delay >= 0 && original > delay && policy.tryAcquire() && delay + hedge < original) {
+                hedged[i] = delay + hedge;
+                policy.onHedgeWon();
+            }
+
+            // The original's time, or what it took until the hedge won
+            policy.onCallTime(ENDPOINT, hedged[i] * 1_000_000L);
+        }
+
+        long before = p99(unhedged);
+        long after = p99(hedged);
+
+        assertTrue("p99 " + before + " ms without hedging", before >= 1000);
+        assertTrue("p99 " + after + " ms with hedging", after < 250);
+        assertTrue(policy.getHedgeWinCount() > 0);
+        assertTrue(policy.getHedgeCount() <= REQUESTS * QUOTE_HEDGE_BUDGET_RATIO + QUOTE_HEDGE_MAX_BURST);
+    }
+}
@@ -0,0 +1,260 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_BUDGET_RATIO;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MAX_BURST;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MIN_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_HEDGE_MIN_SAMPLES;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.Settings;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dispatcher;
+
+/**
+ * Tests the hedging of quote requests by QuoteClient, against a stand-in Quote Service whose
+ * responses get injected latency: the first response wins and the other call is cancelled,
+ * hedges stop once their budget (or the client's request budget) is used up, and the tail
+ * latency they cut.
+ *
+ * Hedges are either sent by the test itself (as if their delay had expired), or after their
+ * delay by a scheduler standing in for the main looper.
+ *
+ * @author Rolande
+ */
+public class QuoteHedgingTest {
+    private static final long TIMEOUT = 5;              // in seconds
+    private static final long SLOW = 1000;              // injected latency, in milliseconds
+
+    private FakeQuoteService service;
+    private QuoteClient client;
+    private long batchWindow;
+    private ScheduledExecutorService scheduler;         // null for hedges to be sent by the test
+
+    private final BlockingQueue<Runnable> hedges = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Long> hedgeDelays = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        service = new FakeQuoteService();
+        service.start();
+        Settings.current().setQuoteHedging(true);
+
+        // Single quote requests, for each of them to be hedged on its own
+        batchWindow = QuoteClient.getBatchWindow();
+        QuoteClient.setBatchWindow(0);
+
+        client = new QuoteClient(new TestContext()) {
+            @Override
+            void postHedge(Runnable hedge, long delay) {
+                if (scheduler != null) {
+                    scheduler.schedule(hedge, delay, TimeUnit.MILLISECONDS);
+                }
+                else {
+                    hedges.add(hedge);
+                    hedgeDelays.add(delay);
+                }
+            }
+        };
+
+        // Enough fast calls for the hedge delay to be learnt, and for the (shared) hedge budget to be full
+        int warmUpCount = Math.max(QUOTE_HEDGE_MIN_SAMPLES, (int) Math.ceil(QUOTE_HEDGE_MAX_BURST / QUOTE_HEDGE_BUDGET_RATIO));
+
+        for (int i = 0; i < warmUpCount; i++) {
+            client.getQuote("WARM").get(TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        hedges.clear();
+        hedgeDelays.clear();
+        service.takeRequests();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        QuoteClient.setBatchWindow(batchWindow);
+        QuoteClient.setRateLimiter(null);
+        service.shutdown();
+    }
+
+    private static Dispatcher getDispatcher() {
+        return new QuoteAPIBuilder().getOkHttpClient().dispatcher();
+    }
+
+    private static long p99(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+
+        return sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    }
+
+    @Test
+    public void firstResponseWinsAndOtherCallCancelled() throws Exception {
+        long hedgeCount = QuoteClient.getHedgeCount();
+        long hedgeWinCount = QuoteClient.getHedgeWinCount();
+        long granted = QuoteClient.getRateLimiter().getGrantedCount();
+
+        service.delays.add(SLOW);                       // original
+        service.delays.add(0L);                         // hedge
+
+        long start = System.nanoTime();
+        CompletableFuture<Quote> future = client.getQuote("AAPL");
+
+        assertTrue(hedgeDelays.poll(TIMEOUT, TimeUnit.SECONDS) >= QUOTE_HEDGE_MIN_DELAY);     // as learnt so far
+
+        // Hedge sent once the original got its (slow) response under way
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+        while (service.delays.size() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        hedges.take().run();
+
+        assertEquals("AAPL", future.get(TIMEOUT, TimeUnit.SECONDS).getSymbol());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW);
+
+        assertEquals(hedgeCount + 1, QuoteClient.getHedgeCount());
+        assertEquals(hedgeWinCount + 1, QuoteClient.getHedgeWinCount());
+        assertEquals(granted + 2, QuoteClient.getRateLimiter().getGrantedCount());     // the hedge took its own token
+
+        // The original call, still waiting for its response, got cancelled
+        deadline = System.currentTimeMillis() + SLOW / 2;
+        while (getDispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, getDispatcher().runningCallsCount());
+    }
+
+    @Test
+    public void noHedgeOnceAnswered() throws Exception {
+        long hedgeCount = QuoteClient.getHedgeCount();
+
+        client.getQuote("AAPL").get(TIMEOUT, TimeUnit.SECONDS);
+
+        // Hedge delay expiring after the response
+        hedges.poll(TIMEOUT, TimeUnit.SECONDS).run();
+
+        assertEquals(hedgeCount, QuoteClient.getHedgeCount());
+        assertEquals(1, service.takeRequests().size());
+    }
+
+    @Test
+    public void noHedgeWithoutRequestToken() throws Exception {
+        long hedgeCount = QuoteClient.getHedgeCount();
+
+        service.delays.add(SLOW / 4);
+        CompletableFuture<Quote> future = client.getQuote("AAPL");
+        Runnable hedge = hedges.poll(TIMEOUT, TimeUnit.SECONDS);
+
+        // Request budget used up meanwhile, and never refilled
+        TokenBucket rateLimiter = new TokenBucket(1000, 1, new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return 0;
+            }
+        });
+        rateLimiter.tryAcquire();
+        QuoteClient.setRateLimiter(rateLimiter);
+
+        hedge.run();
+
+        assertEquals("AAPL", future.get(TIMEOUT, TimeUnit.SECONDS).getSymbol());
+        assertEquals(hedgeCount, QuoteClient.getHedgeCount());
+        assertEquals(1, service.takeRequests().size());
+    }
+
+    @Test
+    public void hedgesStopOnceBudgetUsedUp() throws Exception {
+        int requestCount = 30;
+        long hedgeCount = QuoteClient.getHedgeCount();
+        List<CompletableFuture<Quote>> futures = new ArrayList<>();
+
+        service.delay = SLOW / 4;                       // all slow, as for a struggling service
+
+        for (int i = 0; i < requestCount; i++) {
+            futures.add(client.getQuote("SYM" + i));
+        }
+
+        for (int i = 0; i < requestCount; i++) {
+            hedges.poll(TIMEOUT, TimeUnit.SECONDS).run();
+        }
+
+        for (CompletableFuture<Quote> future : futures) {
+            future.get(TIMEOUT * 4, TimeUnit.SECONDS);  // hedged or not, all get answered
+        }
+
+        long hedgesSent = QuoteClient.getHedgeCount() - hedgeCount;
+
+        assertTrue("hedges sent: " + hedgesSent, hedgesSent > 0);
+        assertTrue("hedges sent: " + hedgesSent, hedgesSent <= QUOTE_HEDGE_MAX_BURST + requestCount * QUOTE_HEDGE_BUDGET_RATIO);
+        // Hedges still queued (behind the calls in flight) when their original answers never get sent
+        assertTrue(service.takeRequests().size() <= requestCount + hedgesSent);
+    }
+
+    @Test
+    public void hedgingCutsTailLatency() throws Exception {
+        int requestCount = 200;
+        Random random = new Random(42);
+
+        // 5% of the responses get the injected latency, hedges included
+        for (int i = 0; i < requestCount * 3; i++) {
+            service.delays.add((random.nextDouble() < 0.05) ? SLOW / 4 : 0L);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        Settings.current().setQuoteHedging(false);
+        long[] unhedged = timeRequests(requestCount);
+
+        Settings.current().setQuoteHedging(true);
+        long[] hedged = timeRequests(requestCount);
+
+        long before = p99(unhedged);
+        long after = p99(hedged);
+
+        String p99s = "p99 " + before + " ms without hedging, " + after + " ms with hedging";
+        assertTrue(p99s, before >= SLOW / 4);
+        assertTrue(p99s, after < SLOW / 4);
+        assertTrue(p99s, after < before);
+    }
+
+    /**
+     * Get quotes one after the other.
+     *
+     * @return time each one took, in milliseconds
+     */
+    private long[] timeRequests(int requestCount) throws Exception {
+        long[] times = new long[requestCount];
+
+        for (int i = 0; i < requestCount; i++) {
+            long start = System.nanoTime();
+
+            client.getQuote("SYM" + i).get(TIMEOUT, TimeUnit.SECONDS);
+            times[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        return times;
+    }
+}
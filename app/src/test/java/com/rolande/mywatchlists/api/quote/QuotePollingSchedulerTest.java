@@ -0,0 +1,380 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_BATCH_MAX_SYMBOLS;
+import static com.rolande.mywatchlists.Constants.QUOTE_HINT_MAX_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_NEXT_POLL_HEADER;
+import static com.rolande.mywatchlists.Constants.QUOTE_SCHEDULER_TICK;
+import static com.rolande.mywatchlists.Constants.QUOTE_WEIGHT_PREFETCH;
+import static com.rolande.mywatchlists.Constants.QUOTE_WEIGHT_VISIBLE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.api.TokenBucket;
+import com.rolande.mywatchlists.model.Settings;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Headers;
+
+/**
+ * Tests how QuotePollingScheduler shares the request budget among symbols: fetches never
+ * outrun it, symbols due are served in weighted round-robin when it runs short, and the lag
+ * of each symbol's refresh is tracked. Time is set by the test, which runs each tick itself,
+ * against a quote client answering right away and taking a token per request, as it does
+ * when not batching. Also tests that refresh hints from the service time the next fetch,
+ * within the client's bounds, and that symbols get fetched on phases of their own, evenly
+ * spread and never stacking up.
+ *
+ * @author Rolande
+ */
+public class QuotePollingSchedulerTest {
+    private static final long INTERVAL = 1000;          // of every symbol, in milliseconds
+
+    private long now = 1_000_000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    };
+
+    private final List<Runnable> posted = new ArrayList<>();
+    private final Map<String, Integer> fetches = new HashMap<>();
+
+    private TokenBucket rateLimiter;
+    private long batchWindow;
+    private QuoteRefreshHints refreshHints;
+    private Headers hintHeaders;                        // given along with each quote, if any
+    private List<QuoteClient.GetQuoteResponseListener> held;   // responses held back, if not null
+    private QuoteClient client;
+    private QuotePollingScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        Settings settings = new Settings("127.0.0.1", 1, "127.0.0.1", 7);
+        settings.setQuoteRequestBudget(2);
+        Settings.setCurrent(settings);
+
+        rateLimiter = new TokenBucket(2, 2, clock);
+        QuoteClient.setRateLimiter(rateLimiter);
+
+        batchWindow = QuoteClient.getBatchWindow();
+        QuoteClient.setBatchWindow(0);
+
+        refreshHints = QuoteClient.getRefreshHints();
+        QuoteClient.setRefreshHints(new QuoteRefreshHints(clock));
+
+        client = new QuoteClient(new TestContext()) {
+            @Override
+            public void getQuote(String symbol, GetQuoteResponseListener listener) {
+                Integer count = fetches.get(symbol);
+                fetches.put(symbol, (count == null) ? 1 : count + 1);
+
+                if (getBatchWindow() == 0) {
+                    assertTrue(rateLimiter.tryAcquire());       // never sent over budget
+                }
+
+                if (hintHeaders != null) {
+                    getRefreshHints().onResponse(Collections.singletonList(symbol), hintHeaders);
+                }
+
+                if (held != null) {
+                    held.add(listener);
+                    return;
+                }
+
+                Quote quote = new Quote();
+                quote.setSymbol(symbol);
+                listener.onResponse(quote);
+            }
+        };
+
+        scheduler = newScheduler(client, INTERVAL);
+    }
+
+    private QuotePollingScheduler newScheduler(QuoteClient client, long interval) {
+        return new QuotePollingScheduler(client, interval, interval, interval, clock) {
+            @Override
+            void postDelayed(Runnable task, long delay) {
+                posted.add(task);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        QuoteClient.setBatchWindow(batchWindow);
+        QuoteClient.setRefreshHints(refreshHints);
+    }
+
+    /**
+     * Let time go by, running the ticks due along the way.
+     *
+     * @param millis Time to let go by, in milliseconds
+     */
+    private void run(long millis) {
+        for (long elapsed = 0; elapsed < millis; elapsed += QUOTE_SCHEDULER_TICK) {
+            now += QUOTE_SCHEDULER_TICK;
+
+            List<Runnable> due = new ArrayList<>(posted);
+            posted.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    private int fetchCount(String symbol) {
+        Integer count = fetches.get(symbol);
+        return (count == null) ? 0 : count;
+    }
+
+    @Test
+    public void everySymbolFetchedOncePerIntervalWithinBudget() {
+        scheduler.subscribe("AAPL");
+        scheduler.start();
+
+        run(10 * INTERVAL);
+
+        assertEquals(10, fetchCount("AAPL"), 1);
+        assertTrue(scheduler.getRefreshLagHistogram().getMean() < QUOTE_SCHEDULER_TICK);      // late by a tick at most
+    }
+
+    @Test
+    public void fetchesNeverOutrunBudget() {
+        for (int i = 0; i < 10; i++) {
+            scheduler.subscribe("SYM" + i);
+        }
+        scheduler.start();
+
+        run(60 * INTERVAL);
+
+        int total = 0;
+        for (int count : fetches.values()) {
+            total += count;
+        }
+
+        // Two requests per second, plus the two saved up at first
+        assertTrue("fetches: " + total, total <= 2 * 60 + 2);
+        assertTrue("fetches: " + total, total >= 2 * 60 - 2);
+        assertEquals(total, rateLimiter.getGrantedCount());
+    }
+
+    @Test
+    public void visibleSymbolsServedInProportionToTheirWeight() {
+        scheduler = newScheduler(client, QUOTE_SCHEDULER_TICK);         // always due, far beyond the budget
+        List<String> visible = Arrays.asList("VIS0", "VIS1");
+        List<String> prefetched = Arrays.asList("OFF0", "OFF1");
+
+        for (String symbol : visible) {
+            scheduler.subscribe(symbol);
+        }
+        scheduler.setPrefetchSymbols(prefetched);
+        scheduler.start();
+
+        run(200 * INTERVAL);
+
+        int visibleCount = fetchCount("VIS0") + fetchCount("VIS1");
+        int prefetchedCount = fetchCount("OFF0") + fetchCount("OFF1");
+        double ratio = (double) visibleCount / prefetchedCount;
+
+        assertEquals(QUOTE_WEIGHT_VISIBLE / (double) QUOTE_WEIGHT_PREFETCH, ratio, 0.1);
+        assertEquals(fetchCount("VIS0"), fetchCount("VIS1"), 1);
+        assertEquals(fetchCount("OFF0"), fetchCount("OFF1"), 1);
+    }
+
+    @Test
+    public void noSymbolStarves() {
+        scheduler.setPrefetchSymbols(Arrays.asList("OFF0"));
+        for (int i = 0; i < 8; i++) {
+            scheduler.subscribe("VIS" + i);
+        }
+        scheduler.start();
+
+        run(30 * INTERVAL);
+
+        assertTrue(fetchCount("OFF0") > 0);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(fetchCount("VIS" + i) > 0);
+        }
+    }
+
+    @Test
+    public void lagTrackedWhileBudgetShort() {
+        for (int i = 0; i < 6; i++) {
+            scheduler.subscribe("SYM" + i);
+        }
+        scheduler.start();
+
+        run(20 * INTERVAL);
+
+        // Six fetches due per second, only two sent: symbols keep waiting their turn
+        long lag = 0;
+        for (int i = 0; i < 6; i++) {
+            lag = Math.max(lag, scheduler.getRefreshLag("SYM" + i));
+        }
+        assertTrue("lag: " + lag, lag >= INTERVAL);
+
+        long recorded = scheduler.getRefreshLagHistogram().getCount();
+        assertEquals(rateLimiter.getGrantedCount(), recorded);
+        assertTrue(scheduler.getRefreshLagHistogram().getPercentile(90) >= INTERVAL);
+        assertEquals(0, scheduler.getRefreshLag("NONE"));
+    }
+
+    @Test
+    public void batchedFetchesTakeOneTokenPerBatch() {
+        QuoteClient.setBatchWindow(50);
+
+        for (int i = 0; i < QUOTE_BATCH_MAX_SYMBOLS + 10; i++) {
+            scheduler.subscribe("BAT" + i);
+        }
+        scheduler.start();
+
+        // Both tokens saved up are worth a full batch each, so all symbols go out at once
+        run(INTERVAL);
+
+        for (int i = 0; i < QUOTE_BATCH_MAX_SYMBOLS + 10; i++) {
+            assertEquals(1, fetchCount("BAT" + i));
+        }
+    }
+
+    @Test
+    public void hintWithinBoundsTimesNextFetch() {
+        hintHeaders = Headers.of(QUOTE_NEXT_POLL_HEADER, "5");
+        scheduler.subscribe("AAPL");
+        scheduler.start();
+
+        run(10 * INTERVAL);
+
+        assertEquals(2, fetchCount("AAPL"));
+    }
+
+    @Test
+    public void hintSoonerThanFloorIntervalClamped() {
+        hintHeaders = Headers.of(QUOTE_NEXT_POLL_HEADER, "0.1");
+        scheduler.subscribe("AAPL");
+        scheduler.start();
+
+        run(10 * INTERVAL);
+
+        assertEquals(10, fetchCount("AAPL"), 1);
+    }
+
+    @Test
+    public void hintLaterThanMaxDelayClamped() {
+        hintHeaders = Headers.of("Cache-Control", "max-age=3600", "Retry-After", "7200");
+        scheduler.subscribe("AAPL");
+        scheduler.start();
+
+        run(INTERVAL);
+        assertEquals(1, fetchCount("AAPL"));
+
+        run(QUOTE_HINT_MAX_DELAY);
+        assertEquals(2, fetchCount("AAPL"));
+    }
+
+    @Test
+    public void phasesDeterministicDistinctAndSpreadOverInterval() {
+        long interval = 60_000;
+        int[] buckets = new int[10];
+        Set<Long> phases = new HashSet<>();
+        QuotePollingScheduler other = newScheduler(client, INTERVAL);
+
+        for (int i = 0; i < 1000; i++) {
+            long phase = scheduler.getPhase("SYM" + i, interval);
+
+            assertTrue(phase >= 0 && phase < interval);
+            assertEquals(phase, other.getPhase("SYM" + i, interval));
+            buckets[(int) (phase * buckets.length / interval)]++;
+
+            if (i < 50) {
+                assertTrue("SYM" + i, phases.add(phase));      // symbols alike still apart
+            }
+        }
+
+        for (int count : buckets) {
+            assertTrue(Arrays.toString(buckets), count > 70 && count < 130);
+        }
+    }
+
+    @Test
+    public void symbolsSubscribedTogetherFetchedAcrossInterval() {
+        long interval = 10_000;
+        rateLimiter = new TokenBucket(1000, 1000, clock);
+        QuoteClient.setRateLimiter(rateLimiter);
+        Settings.current().setQuoteRequestBudget(1000);
+        scheduler = newScheduler(client, interval);
+
+        for (int i = 0; i < 40; i++) {
+            scheduler.subscribe("SYM" + i);
+        }
+        scheduler.start();
+
+        // Fetches spread over the interval, rather than all at once
+        int maxPerTick = 0;
+        int total = 0;
+
+        for (long elapsed = 0; elapsed < interval; elapsed += QUOTE_SCHEDULER_TICK) {
+            run(QUOTE_SCHEDULER_TICK);
+
+            int sum = 0;
+            for (int count : fetches.values()) {
+                sum += count;
+            }
+            maxPerTick = Math.max(maxPerTick, sum - total);
+            total = sum;
+        }
+
+        assertEquals(40, total);
+        assertTrue("max per tick " + maxPerTick, maxPerTick <= 5);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(1, fetchCount("SYM" + i));
+        }
+    }
+
+    @Test
+    public void resubscribeDoesNotQueueSecondFetch() {
+        held = new ArrayList<>();
+        scheduler.subscribe("AAPL");
+        scheduler.start();
+
+        run(INTERVAL);
+        assertEquals(1, fetchCount("AAPL"));
+
+        // Shown in another view, and scrolled off & back, while its fetch is still in flight
+        scheduler.subscribe("AAPL");
+        scheduler.unsubscribe("AAPL");
+        scheduler.subscribe("AAPL");
+        run(3 * INTERVAL);
+
+        assertEquals(1, fetchCount("AAPL"));
+        assertEquals(1, held.size());
+
+        // Once answered, refreshed on its interval again
+        List<QuoteClient.GetQuoteResponseListener> answered = held;
+        held = null;
+        Quote quote = new Quote();
+        quote.setSymbol("AAPL");
+        answered.get(0).onResponse(quote);
+
+        run(3 * INTERVAL);
+        assertEquals(4, fetchCount("AAPL"), 1);
+    }
+}
@@ -0,0 +1,138 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_NEXT_POLL_HEADER;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.rolande.mywatchlists.api.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import okhttp3.Headers;
+
+/**
+ * Tests the refresh hints read from quote responses: the next-poll header, Cache-Control
+ * max-age and Retry-After (in seconds or as an HTTP date), which wins when several are given,
+ * and the values ignored. How the scheduler bounds them is tested in QuotePollingSchedulerTest.
+ *
+ * @author Rolande
+ */
+public class QuoteRefreshHintsTest {
+    private static final long NOW = 1_000_000;          // uptime, in milliseconds
+
+    private QuoteRefreshHints hints;
+
+    @Before
+    public void setUp() {
+        hints = new QuoteRefreshHints(new Clock() {
+            @Override
+            public long uptimeMillis() {
+                return NOW;
+            }
+        });
+    }
+
+    /**
+     * @return delay hinted for a symbol by a response with these headers, -1 if none
+     */
+    private long delayOf(Headers headers) {
+        hints.onResponse(Collections.singletonList("AAPL"), headers);
+        QuoteRefreshHints.Hint hint = hints.take("AAPL");
+
+        return (hint != null) ? hint.delay : -1;
+    }
+
+    private long delayOf(String... namesAndValues) {
+        return delayOf(Headers.of(namesAndValues));
+    }
+
+    @Test
+    public void nextPollInSecondsWithDecimals() {
+        assertEquals(2500, delayOf(QUOTE_NEXT_POLL_HEADER, "2.5"));
+        assertEquals(30000, delayOf(QUOTE_NEXT_POLL_HEADER, " 30 "));
+        assertEquals(0, delayOf(QUOTE_NEXT_POLL_HEADER, "0"));
+    }
+
+    @Test
+    public void maxAgeUsedWithoutNextPoll() {
+        assertEquals(15000, delayOf("Cache-Control", "public, max-age=15"));
+    }
+
+    @Test
+    public void nextPollWinsOverMaxAge() {
+        assertEquals(5000, delayOf("Cache-Control", "max-age=60", QUOTE_NEXT_POLL_HEADER, "5"));
+    }
+
+    @Test
+    public void maxAgeZeroIsNoHint() {
+        assertEquals(-1, delayOf("Cache-Control", "no-cache, max-age=0"));
+    }
+
+    @Test
+    public void retryAfterInSecondsPostponesShorterHint() {
+        assertEquals(120000, delayOf(QUOTE_NEXT_POLL_HEADER, "5", "Retry-After", "120"));
+        assertEquals(120000, delayOf("Cache-Control", "max-age=5", "Retry-After", "120"));
+        assertEquals(120000, delayOf("Retry-After", "120"));
+    }
+
+    @Test
+    public void retryAfterSoonerThanHintLeavesIt() {
+        assertEquals(60000, delayOf(QUOTE_NEXT_POLL_HEADER, "60", "Retry-After", "10"));
+    }
+
+    @Test
+    public void retryAfterAsHttpDate() {
+        Date later = new Date(System.currentTimeMillis() + 90000);
+
+        long delay = delayOf(new Headers.Builder().add("Retry-After", later).build());
+
+        // HTTP dates are to the second
+        assertEquals(90000, delay, 2000);
+    }
+
+    @Test
+    public void retryAfterDatePassedMeansNow() {
+        Date earlier = new Date(System.currentTimeMillis() - 90000);
+
+        assertEquals(0, delayOf(new Headers.Builder().add("Retry-After", earlier).build()));
+    }
+
+    @Test
+    public void invalidValuesIgnored() {
+        assertEquals(-1, delayOf(QUOTE_NEXT_POLL_HEADER, "soon"));
+        assertEquals(-1, delayOf(QUOTE_NEXT_POLL_HEADER, "-5"));
+        assertEquals(-1, delayOf(QUOTE_NEXT_POLL_HEADER, "Infinity"));
+        assertEquals(-1, delayOf("Retry-After", "tomorrow"));
+        assertEquals(-1, delayOf("Cache-Control", "max-age=abc"));
+
+        // An invalid next-poll header falls back on max-age
+        assertEquals(20000, delayOf(QUOTE_NEXT_POLL_HEADER, "NaN", "Cache-Control", "max-age=20"));
+    }
+
+    @Test
+    public void hintKeptForEachSymbolAndTakenOnce() {
+        hints.onResponse(Arrays.asList("AAPL", "MSFT"), Headers.of(QUOTE_NEXT_POLL_HEADER, "3"));
+
+        QuoteRefreshHints.Hint hint = hints.take("MSFT");
+        assertEquals(3000, hint.delay);
+        assertEquals(NOW, hint.receivedAt);
+        assertNull(hints.take("MSFT"));
+
+        assertEquals(3000, hints.take("AAPL").delay);
+        assertNull(hints.take("GOOG"));
+    }
+
+    @Test
+    public void responseWithoutHintsDropsThoseKept() {
+        hints.onResponse(Collections.singletonList("AAPL"), Headers.of(QUOTE_NEXT_POLL_HEADER, "3"));
+        hints.onResponse(Collections.singletonList("AAPL"), Headers.of("Content-Type", "application/json"));
+
+        assertNull(hints.take("AAPL"));
+    }
+}
@@ -0,0 +1,273 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_MAX_IN_FLIGHT_PREFETCH;
+import static com.rolande.mywatchlists.Constants.QUOTE_MAX_IN_FLIGHT_VISIBLE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that QuoteRequestDispatcher sends the quote requests of rows on screen ahead of those
+ * of offscreen rows, against a quote client keeping the requests it is given. Also measures the
+ * latency of each tier while more requests come than the request budget lets through.
+ *
+ * @author Rolande
+ */
+public class QuoteRequestDispatcherTest {
+    private final Map<String, QuoteClient.GetQuoteResponseListener> sent = new LinkedHashMap<>();
+    private final List<String> received = new ArrayList<>();
+    private QuoteRequestDispatcher dispatcher;
+
+    private static final int BUDGET = 4;                // requests answered per tick, when saturated
+    private static final int SATURATED_TICKS = 100;
+
+    private boolean failFast;                           // as the client does while its circuit breaker is open
+    private int depth, maxDepth;                        // of nested getQuote calls
+
+    private final QuoteClient.GetQuoteResponseListener listener = new QuoteClient.GetQuoteResponseListener() {
+        @Override
+        public void onResponse(Quote latestQuote) {
+            received.add(latestQuote.getSymbol());
+        }
+
+        @Override
+        public void onFailure(String errorMsg) {
+            received.add("failed");
+        }
+    };
+
+    @Before
+    public void setUp() {
+        QuoteClient client = new QuoteClient(new TestContext()) {
+            @Override
+            public void getQuote(String symbol, GetQuoteResponseListener listener) {
+                maxDepth = Math.max(maxDepth, ++depth);
+
+                if (failFast) {
+                    listener.onFailure("** Service down");
+                }
+                else {
+                    sent.put(symbol, listener);
+                }
+                depth--;
+            }
+
+            @Override
+            public void cancelQuote(String symbol, GetQuoteResponseListener listener) {
+                sent.remove(symbol);
+            }
+        };
+
+        dispatcher = new QuoteRequestDispatcher(client);
+    }
+
+    private void answer(String symbol) {
+        Quote quote = new Quote();
+        quote.setSymbol(symbol);
+
+        sent.get(symbol).onResponse(quote);
+    }
+
+    private void enqueue(String prefix, int count, QuotePriority priority) {
+        for (int i = 0; i < count; i++) {
+            dispatcher.enqueue(prefix + i, priority, listener);
+        }
+    }
+
+    @Test
+    public void visibleRowsSentAheadOfOffscreenOnes() {
+        // Offscreen rows asked for first, as when rows get bound ahead of being shown
+        enqueue("OFF", 30, QuotePriority.PREFETCH);
+        enqueue("VIS", 10, QuotePriority.VISIBLE);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sent.containsKey("VIS" + i));
+        }
+
+        assertEquals(10 + QUOTE_MAX_IN_FLIGHT_PREFETCH, sent.size());
+        assertEquals(30 - QUOTE_MAX_IN_FLIGHT_PREFETCH, dispatcher.getQueuedCount(QuotePriority.PREFETCH));
+    }
+
+    @Test
+    public void freedSlotGoesToNextRequestOfItsTier() {
+        enqueue("VIS", QUOTE_MAX_IN_FLIGHT_VISIBLE + 5, QuotePriority.VISIBLE);
+        enqueue("OFF", QUOTE_MAX_IN_FLIGHT_PREFETCH + 5, QuotePriority.PREFETCH);
+
+        answer("VIS0");
+        assertTrue(sent.containsKey("VIS" + QUOTE_MAX_IN_FLIGHT_VISIBLE));
+        assertFalse(sent.containsKey("OFF" + QUOTE_MAX_IN_FLIGHT_PREFETCH));
+
+        answer("OFF0");
+        assertTrue(sent.containsKey("OFF" + QUOTE_MAX_IN_FLIGHT_PREFETCH));
+
+        assertEquals(4, dispatcher.getQueuedCount(QuotePriority.VISIBLE));
+        assertEquals(4, dispatcher.getQueuedCount(QuotePriority.PREFETCH));
+        assertEquals("[VIS0, OFF0]", received.toString());
+    }
+
+    @Test
+    public void rowScrolledOnScreenSentRightAway() {
+        enqueue("OFF", QUOTE_MAX_IN_FLIGHT_PREFETCH + 5, QuotePriority.PREFETCH);
+
+        String last = "OFF" + (QUOTE_MAX_IN_FLIGHT_PREFETCH + 4);
+        assertFalse(sent.containsKey(last));
+
+        dispatcher.setPriority(last, QuotePriority.VISIBLE);
+
+        assertTrue(sent.containsKey(last));
+        assertEquals(4, dispatcher.getQueuedCount(QuotePriority.PREFETCH));
+    }
+
+    @Test
+    public void rowScrolledOnScreenJoinsVisibleQueue() {
+        enqueue("VIS", QUOTE_MAX_IN_FLIGHT_VISIBLE, QuotePriority.VISIBLE);
+        enqueue("OFF", QUOTE_MAX_IN_FLIGHT_PREFETCH + 5, QuotePriority.PREFETCH);
+
+        // Asked for again as it shows up on screen, while all visible slots are taken
+        String shown = "OFF" + (QUOTE_MAX_IN_FLIGHT_PREFETCH + 4);
+        dispatcher.enqueue(shown, QuotePriority.VISIBLE, listener);
+
+        assertEquals(1, dispatcher.getQueuedCount(QuotePriority.VISIBLE));
+        assertFalse(sent.containsKey(shown));
+
+        answer("VIS0");
+        assertTrue(sent.containsKey(shown));
+
+        answer(shown);
+        assertEquals("[VIS0, " + shown + ", " + shown + "]", received.toString());     // both listeners
+    }
+
+    @Test
+    public void cancelledRequestFreesItsSlot() {
+        enqueue("OFF", QUOTE_MAX_IN_FLIGHT_PREFETCH + 1, QuotePriority.PREFETCH);
+
+        dispatcher.cancel("OFF0");
+
+        assertFalse(sent.containsKey("OFF0"));
+        assertTrue(sent.containsKey("OFF" + QUOTE_MAX_IN_FLIGHT_PREFETCH));
+        assertEquals(0, dispatcher.getQueuedCount(QuotePriority.PREFETCH));
+    }
+
+    @Test
+    public void requestsFailingRightAwaySentWithoutRecursing() {
+        enqueue("OFF", QUOTE_MAX_IN_FLIGHT_PREFETCH + 5, QuotePriority.PREFETCH);
+        enqueue("VIS", QUOTE_MAX_IN_FLIGHT_VISIBLE + 5, QuotePriority.VISIBLE);
+        failFast = true;
+
+        // Each failure frees a slot, for the next request to be sent (and fail) in turn
+        answer("VIS0");
+
+        assertEquals(1, maxDepth);
+        assertEquals(0, dispatcher.getQueuedCount(QuotePriority.VISIBLE));
+        assertEquals(5, dispatcher.getQueuedCount(QuotePriority.PREFETCH));       // their slots still taken
+        assertEquals("VIS0", received.get(0));
+        assertEquals(1 + 5, received.size());
+    }
+
+    @Test
+    public void longQueueFailingRightAwayDoesNotOverflowStack() {
+        enqueue("VIS", QUOTE_MAX_IN_FLIGHT_VISIBLE + 50_000, QuotePriority.VISIBLE);
+        failFast = true;
+
+        answer("VIS0");
+
+        assertEquals(1 + 50_000, received.size());
+        assertEquals(1, maxDepth);
+    }
+
+    @Test
+    public void requestQueuedByFailingListenerSentOnceDispatchLoopsOn() {
+        enqueue("VIS", QUOTE_MAX_IN_FLIGHT_VISIBLE, QuotePriority.VISIBLE);
+        failFast = true;
+
+        dispatcher.enqueue("RETRY", QuotePriority.VISIBLE, new QuoteClient.GetQuoteResponseListener() {
+            @Override
+            public void onResponse(Quote latestQuote) {
+            }
+
+            @Override
+            public void onFailure(String errorMsg) {
+                failFast = false;
+                dispatcher.enqueue("RETRY", QuotePriority.VISIBLE, listener);       // try again, from within the callback
+            }
+        });
+
+        answer("VIS0");
+
+        assertEquals(1, maxDepth);
+        assertTrue(sent.containsKey("RETRY"));
+        assertEquals(0, dispatcher.getQueuedCount(QuotePriority.VISIBLE));
+    }
+
+    @Test
+    public void visibleRowsFasterUnderSaturatedBudget() {
+        final List<Long> visibleLatencies = new ArrayList<>();
+        final List<Long> prefetchLatencies = new ArrayList<>();
+        final long[] tick = { 0 };
+        int next = 0;
+
+        // Each tick: 2 rows coming on screen and 3 prefetched, while only BUDGET requests get answered
+        for (tick[0] = 0; tick[0] < SATURATED_TICKS || !sent.isEmpty(); tick[0]++) {
+            if (tick[0] < SATURATED_TICKS) {
+                for (int i = 0; i < 5; i++) {
+                    final QuotePriority priority = (i < 2) ? QuotePriority.VISIBLE : QuotePriority.PREFETCH;
+                    final long enqueuedAt = tick[0];
+
+                    dispatcher.enqueue("SYM" + next++, priority, new QuoteClient.GetQuoteResponseListener() {
+                        @Override
+                        public void onResponse(Quote latestQuote) {
+                            ((priority == QuotePriority.VISIBLE) ? visibleLatencies : prefetchLatencies).add(tick[0] - enqueuedAt);
+                        }
+
+                        @Override
+                        public void onFailure(String errorMsg) {
+                        }
+                    });
+                }
+            }
+
+            // Answered in the order sent, as the rate limiter lets them through
+            List<String> answered = new ArrayList<>();
+            Iterator<String> it = sent.keySet().iterator();
+
+            while (answered.size() < BUDGET && it.hasNext()) {
+                answered.add(it.next());
+            }
+            for (String symbol : answered) {
+                answer(symbol);
+                sent.remove(symbol);
+            }
+        }
+
+        assertEquals(2 * SATURATED_TICKS, visibleLatencies.size());
+        assertEquals(3 * SATURATED_TICKS, prefetchLatencies.size());
+
+        long visibleP95 = p95(visibleLatencies);
+        long prefetchP95 = p95(prefetchLatencies);
+        String results = "p95 in ticks: visible " + visibleP95 + ", prefetch " + prefetchP95;
+
+        assertTrue(results, visibleP95 < prefetchP95);
+        assertTrue(results, visibleP95 <= (QUOTE_MAX_IN_FLIGHT_VISIBLE + QUOTE_MAX_IN_FLIGHT_PREFETCH) / BUDGET + 1);
+    }
+
+    private static long p95(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+
+        return sorted.get((int) Math.ceil(sorted.size() * 0.95) - 1);
+    }
+}
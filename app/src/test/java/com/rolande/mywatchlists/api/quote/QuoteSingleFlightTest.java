@@ -0,0 +1,169 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that concurrent quote requests for the same symbol share a single call, against a
+ * stand-in Quote Service answering slowly enough for requests to overlap, and that the
+ * requests saved that way are counted. Batching is disabled, for each symbol to get a call
+ * of its own.
+ *
+ * @author Rolande
+ */
+public class QuoteSingleFlightTest {
+    private static final long TIMEOUT = 5;              // in seconds
+    private static final long DELAY = 300;              // of each response, in milliseconds
+
+    private FakeQuoteService service;
+    private QuoteClient client;
+    private long batchWindow;
+
+    private final BlockingQueue<String> outcomes = new LinkedBlockingQueue<>();
+
+    /**
+     * Listener adding the outcome of its request to the test's outcomes.
+     */
+    private class RecordingListener implements QuoteClient.GetQuoteResponseListener {
+        final String name;
+
+        RecordingListener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onResponse(Quote latestQuote) {
+            outcomes.add(name + ":" + latestQuote.getSymbol() + "@" + latestQuote.getLastTradePrice());
+        }
+
+        @Override
+        public void onFailure(String errorMsg) {
+            outcomes.add(name + ":failed");
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        service = new FakeQuoteService();
+        service.start();
+        service.delay = DELAY;
+
+        batchWindow = QuoteClient.getBatchWindow();
+        QuoteClient.setBatchWindow(0);
+
+        client = new QuoteClient(new TestContext());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        QuoteClient.setBatchWindow(batchWindow);
+        service.shutdown();
+    }
+
+    private List<String> takeOutcomes(int count) throws InterruptedException {
+        String[] taken = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            taken[i] = outcomes.poll(TIMEOUT, TimeUnit.SECONDS);
+        }
+        Arrays.sort(taken);
+
+        return Arrays.asList(taken);
+    }
+
+    @Test
+    public void concurrentRequestsShareOneCall() throws Exception {
+        long savedBefore = QuoteClient.getSavedRequestCount();
+
+        for (int i = 0; i < 5; i++) {
+            client.getQuote("AAPL", new RecordingListener("row" + i));
+        }
+
+        assertEquals(Arrays.asList("row0:AAPL@4.5", "row1:AAPL@4.5", "row2:AAPL@4.5", "row3:AAPL@4.5", "row4:AAPL@4.5"),
+                     takeOutcomes(5));
+        assertEquals(Collections.singletonList("/quote/AAPL"), service.takeRequests());
+        assertEquals(savedBefore + 4, QuoteClient.getSavedRequestCount());
+    }
+
+    @Test
+    public void differentSymbolsNotShared() throws Exception {
+        long savedBefore = QuoteClient.getSavedRequestCount();
+
+        client.getQuote("AAPL", new RecordingListener("a"));
+        client.getQuote("MSFT", new RecordingListener("b"));
+
+        assertEquals(Arrays.asList("a:AAPL@4.5", "b:MSFT@4.5"), takeOutcomes(2));
+        assertEquals(2, service.takeRequests().size());
+        assertEquals(savedBefore, QuoteClient.getSavedRequestCount());
+    }
+
+    @Test
+    public void requestAfterResponseSentAgain() throws Exception {
+        long savedBefore = QuoteClient.getSavedRequestCount();
+
+        client.getQuote("AAPL").get(TIMEOUT, TimeUnit.SECONDS);
+        client.getQuote("AAPL").get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(2, service.takeRequests().size());
+        assertEquals(savedBefore, QuoteClient.getSavedRequestCount());
+    }
+
+    @Test
+    public void failureSharedByAllWaiting() throws Exception {
+        service.unknownSymbols.add("ZZZZ");
+
+        client.getQuote("ZZZZ", new RecordingListener("a"));
+        client.getQuote("ZZZZ", new RecordingListener("b"));
+
+        assertEquals(Arrays.asList("a:failed", "b:failed"), takeOutcomes(2));
+        assertEquals(1, service.takeRequests().size());
+    }
+
+    @Test
+    public void cancelledListenerLeftOutOthersServed() throws Exception {
+        RecordingListener leaving = new RecordingListener("leaving");
+
+        client.getQuote("AAPL", leaving);
+        client.getQuote("AAPL", new RecordingListener("staying"));
+        client.cancelQuote("AAPL", leaving);
+
+        assertEquals("staying:AAPL@4.5", outcomes.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertNull(outcomes.poll(DELAY, TimeUnit.MILLISECONDS));
+        assertEquals(1, service.takeRequests().size());
+    }
+
+    @Test
+    public void requestDroppedOnceAllCancelled() throws Exception {
+        RecordingListener first = new RecordingListener("first");
+        RecordingListener second = new RecordingListener("second");
+
+        client.getQuote("AAPL", first);
+        client.getQuote("AAPL", second);
+        client.cancelQuote("AAPL", first);
+        client.cancelQuote("AAPL", second);
+
+        assertNull(outcomes.poll(2 * DELAY, TimeUnit.MILLISECONDS));
+
+        // Nothing left in flight to join
+        long savedBefore = QuoteClient.getSavedRequestCount();
+        client.getQuote("AAPL", new RecordingListener("later"));
+
+        assertEquals("later:AAPL@4.5", outcomes.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(savedBefore, QuoteClient.getSavedRequestCount());
+    }
+}
@@ -0,0 +1,119 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.Test;
+
+/**
+ * Tests the merging of quote responses, full or delta, into QuoteSnapshotStore's snapshots,
+ * the detection of missed changes, and the eviction of snapshots.
+ *
+ * @author Rolande
+ */
+public class QuoteSnapshotStoreTest {
+    private final QuoteSnapshotStore store = new QuoteSnapshotStore();
+
+    private static QuoteDelta full(String symbol, Long seq, double lastTradePrice, double bidPrice) {
+        QuoteDelta delta = new QuoteDelta();
+        delta.symbol = symbol;
+        delta.seq = seq;
+        delta.lastTradePrice = lastTradePrice;
+        delta.bidPrice = bidPrice;
+        return delta;
+    }
+
+    private static QuoteDelta delta(String symbol, long baseSeq, long seq, double lastTradePrice) {
+        QuoteDelta delta = new QuoteDelta();
+        delta.symbol = symbol;
+        delta.baseSeq = baseSeq;
+        delta.seq = seq;
+        delta.lastTradePrice = lastTradePrice;
+        return delta;
+    }
+
+    @Test
+    public void fullQuoteTakenAsIs() {
+        Quote quote = store.merge(full("AAPL", 41L, 174.25, 174.2));
+
+        assertEquals("AAPL", quote.getSymbol());
+        assertEquals(174.25, quote.getLastTradePrice(), 0);
+        assertEquals(174.2, quote.getBidPrice(), 0);
+        assertEquals(41L, (long) store.getSeq("AAPL"));
+    }
+
+    @Test
+    public void deltaKeepsFieldsNotChanged() {
+        Quote first = store.merge(full("AAPL", 41L, 174.25, 174.2));
+        Quote second = store.merge(delta("AAPL", 41, 42, 174.5));
+
+        assertNotSame(first, second);
+        assertEquals(174.5, second.getLastTradePrice(), 0);
+        assertEquals(174.2, second.getBidPrice(), 0);
+        assertEquals(174.25, first.getLastTradePrice(), 0);             // earlier quote left as it was
+        assertEquals(42L, (long) store.getSeq("AAPL"));
+    }
+
+    @Test
+    public void deltaOnOtherBaseIsGap() {
+        store.merge(full("AAPL", 41L, 174.25, 174.2));
+
+        assertNull(store.merge(delta("AAPL", 43, 44, 174.5)));
+        assertNull(store.getSeq("AAPL"));                               // full quote asked for next
+
+        assertNull(store.merge(delta("AAPL", 44, 45, 174.75)));
+    }
+
+    @Test
+    public void deltaWithoutSnapshotIsGap() {
+        assertNull(store.merge(delta("MSFT", 1, 2, 310.1)));
+        assertNull(store.getSeq("MSFT"));
+    }
+
+    @Test
+    public void fullQuoteAfterGapStartsOver() {
+        store.merge(full("AAPL", 41L, 174.25, 174.2));
+        store.merge(delta("AAPL", 43, 44, 174.5));
+
+        Quote quote = store.merge(full("AAPL", 44L, 174.5, 174.4));
+
+        assertEquals(174.4, quote.getBidPrice(), 0);
+        assertEquals(174.5, store.merge(delta("AAPL", 44, 45, 174.5)).getLastTradePrice(), 0);
+    }
+
+    @Test
+    public void serverWithoutSeqAlwaysAskedForFullQuote() {
+        store.merge(full("AAPL", null, 174.25, 174.2));
+        assertNull(store.getSeq("AAPL"));
+
+        Quote quote = store.merge(full("AAPL", null, 174.5, 174.4));
+
+        assertEquals(174.5, quote.getLastTradePrice(), 0);
+        assertNull(store.getSeq("AAPL"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void symbolsKeptApart() {
+        store.merge(full("AAPL", 41L, 174.25, 174.2));
+        store.merge(full("MSFT", 7L, 310.1, 310.0));
+
+        assertEquals(310.0, store.merge(delta("MSFT", 7, 8, 310.2)).getBidPrice(), 0);
+        assertEquals(41L, (long) store.getSeq("AAPL"));
+    }
+
+    @Test
+    public void removedSnapshotNotKept() {
+        store.merge(full("AAPL", 41L, 174.25, 174.2));
+        store.merge(full("MSFT", 7L, 310.1, 310.0));
+
+        store.remove("AAPL");
+
+        assertNull(store.getSeq("AAPL"));
+        assertNull(store.merge(delta("AAPL", 41, 42, 174.5)));
+        assertEquals(1, store.size());
+    }
+}
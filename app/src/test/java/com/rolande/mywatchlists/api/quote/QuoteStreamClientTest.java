@@ -0,0 +1,343 @@
+package com.rolande.mywatchlists.api.quote;
+
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_MAX_RECONNECT_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_MIN_RECONNECT_DELAY;
+import static com.rolande.mywatchlists.Constants.QUOTE_STREAM_STABLE_TIME;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.api.Clock;
+import com.rolande.mywatchlists.model.Settings;
+import com.rolande.mywatchlists.model.beans.Quote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests QuoteStreamClient against a stand-in Quote Service accepting (or refusing) WebSockets:
+ * the time from a quote being pushed to it being handed to the listener, the reconnection
+ * backoff, and the listener being told when the stream drops (for polling to take over).
+ *
+ * A single thread stands in for the main thread, running the client's calls and the tasks
+ * it posts in order. Reconnections are run by the test, rather than after their delay.
+ *
+ * @author Rolande
+ */
+public class QuoteStreamClientTest {
+    private static final long TIMEOUT = 5;              // in seconds
+
+    private MockWebServer server;
+    private ExecutorService mainThread;
+    private volatile long now = 1000;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    };
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Long> delays = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Runnable> reconnects = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final BlockingQueue<WebSocket> serverSockets = new LinkedBlockingQueue<>();
+    private volatile long boundAt;                      // nano time of the last quote handed over
+
+    private final QuoteStreamClient.Listener listener = new QuoteStreamClient.Listener() {
+        @Override
+        public void onOpen() {
+            events.add("open");
+        }
+
+        @Override
+        public void onQuote(Quote latestQuote) {
+            boundAt = System.nanoTime();
+            events.add("quote " + latestQuote.getSymbol() + "@" + latestQuote.getLastTradePrice());
+        }
+
+        @Override
+        public void onClosed() {
+            events.add("closed");
+        }
+    };
+
+    /**
+     * Server side of the accepted WebSockets, keeping the messages received.
+     */
+    private final WebSocketListener serverListener = new WebSocketListener() {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            serverSockets.add(webSocket);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            received.add(text);
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(1000, null);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        mainThread = Executors.newSingleThreadExecutor();
+
+        Settings.setCurrent(new Settings("127.0.0.1", 1, server.getHostName(), server.getPort()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        mainThread.shutdownNow();
+    }
+
+    private QuoteStreamClient newClient() {
+        return new QuoteStreamClient(listener, new Random(42), clock) {
+            @Override
+            void post(Runnable task) {
+                if (!mainThread.isShutdown()) {
+                    mainThread.execute(task);
+                }
+            }
+
+            @Override
+            void postDelayed(Runnable task, long delay) {
+                delays.add(delay);
+                reconnects.add(task);
+            }
+        };
+    }
+
+    /**
+     * Run a task on the stand-in main thread, and wait for it.
+     */
+    private void onMain(Runnable task) throws Exception {
+        mainThread.submit(task).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private void connect(QuoteStreamClient client) throws Exception {
+        onMain(new Runnable() {
+            @Override
+            public void run() {
+                client.connect();
+            }
+        });
+    }
+
+    private void close(QuoteStreamClient client) throws Exception {
+        onMain(new Runnable() {
+            @Override
+            public void run() {
+                client.close();
+            }
+        });
+    }
+
+    private void acceptNextConnection() {
+        server.enqueue(new MockResponse().withWebSocketUpgrade(serverListener));
+    }
+
+    private void refuseNextConnection() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+    }
+
+    private long takeDelay() throws InterruptedException {
+        Long delay = delays.poll(TIMEOUT, TimeUnit.SECONDS);
+        assertTrue("no reconnection scheduled", delay != null);
+
+        return delay;
+    }
+
+    private static void assertJittered(long reconnectDelay, long delay) {
+        assertTrue(delay + " not within " + reconnectDelay, delay >= reconnectDelay / 2 && delay <= reconnectDelay);
+    }
+
+    private void reconnect() throws Exception {
+        onMain(reconnects.poll(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void pushedQuoteHandedOverRightAway() throws Exception {
+        QuoteStreamClient client = newClient();
+        onMain(new Runnable() {
+            @Override
+            public void run() {
+                client.subscribe("AAPL");
+            }
+        });
+
+        acceptNextConnection();
+        connect(client);
+
+        assertEquals("open", events.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("{\"action\":\"subscribe\",\"symbols\":[\"AAPL\"]}", received.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        WebSocket serverSocket = serverSockets.poll(TIMEOUT, TimeUnit.SECONDS);
+
+        // Quotes of symbols not subscribed are ignored
+        serverSocket.send(FakeQuoteService.getQuoteJson("MSFT"));
+
+        long tickAt = System.nanoTime();
+        serverSocket.send(FakeQuoteService.getQuoteJson("AAPL"));
+
+        assertEquals("quote AAPL@4.5", events.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        // Polling would take up to a refresh interval (seconds) to pick the quote up
+        long tickToBindMillis = TimeUnit.NANOSECONDS.toMillis(boundAt - tickAt);
+        assertTrue("Tick-to-bind latency: " + tickToBindMillis + " ms", tickToBindMillis < 1000);
+
+        onMain(new Runnable() {
+            @Override
+            public void run() {
+                client.unsubscribe("AAPL");
+            }
+        });
+        assertEquals("{\"action\":\"unsubscribe\",\"symbols\":[\"AAPL\"]}", received.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        close(client);
+    }
+
+    @Test
+    public void refusedConnectionsBackOffUpToMaximum() throws Exception {
+        QuoteStreamClient client = newClient();
+        long reconnectDelay = QUOTE_STREAM_MIN_RECONNECT_DELAY;
+
+        refuseNextConnection();
+        connect(client);
+
+        for (int i = 0; i < 8; i++) {
+            assertJittered(reconnectDelay, takeDelay());
+            reconnectDelay = Math.min(reconnectDelay * 2, QUOTE_STREAM_MAX_RECONNECT_DELAY);
+
+            refuseNextConnection();
+            reconnect();
+        }
+
+        // Capped (and the last attempt over, as a request still on its way would fail over to the next test's server)
+        assertEquals(QUOTE_STREAM_MAX_RECONNECT_DELAY, reconnectDelay);
+        assertJittered(reconnectDelay, takeDelay());
+        assertNull(events.poll());                      // never opened, so never closed either
+
+        close(client);
+    }
+
+    @Test
+    public void droppedStreamTellsListenerForPollingToTakeOver() throws Exception {
+        QuoteStreamClient client = newClient();
+
+        acceptNextConnection();
+        connect(client);
+        assertEquals("open", events.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        serverSockets.poll(TIMEOUT, TimeUnit.SECONDS).close(1001, "going away");
+
+        assertEquals("closed", events.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertJittered(QUOTE_STREAM_MIN_RECONNECT_DELAY, takeDelay());
+        assertTrue(!client.isOpen());
+
+        close(client);
+    }
+
+    @Test
+    public void stableConnectionStartsBackoffOver() throws Exception {
+        QuoteStreamClient client = newClient();
+
+        refuseNextConnection();
+        connect(client);
+        takeDelay();
+
+        refuseNextConnection();
+        reconnect();
+        takeDelay();
+
+        acceptNextConnection();
+        reconnect();
+        assertEquals("open", events.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        now += QUOTE_STREAM_STABLE_TIME;
+        serverSockets.poll(TIMEOUT, TimeUnit.SECONDS).close(1001, "going away");
+
+        assertEquals("closed", events.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertJittered(QUOTE_STREAM_MIN_RECONNECT_DELAY, takeDelay());
+
+        close(client);
+    }
+
+    @Test
+    public void connectionDroppedRightAwayKeepsBackingOff() throws Exception {
+        QuoteStreamClient client = newClient();
+
+        refuseNextConnection();
+        connect(client);
+        takeDelay();
+
+        refuseNextConnection();
+        reconnect();
+        takeDelay();
+
+        acceptNextConnection();
+        reconnect();
+        assertEquals("open", events.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        serverSockets.poll(TIMEOUT, TimeUnit.SECONDS).close(1001, "going away");
+
+        assertEquals("closed", events.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertJittered(QUOTE_STREAM_MIN_RECONNECT_DELAY * 4, takeDelay());
+
+        close(client);
+    }
+
+    @Test
+    public void closedClientDoesNotReconnect() throws Exception {
+        QuoteStreamClient client = newClient();
+
+        acceptNextConnection();
+        connect(client);
+        assertEquals("open", events.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        close(client);
+
+        assertNull(delays.poll(500, TimeUnit.MILLISECONDS));
+        assertNull(events.poll());
+    }
+
+    @Test
+    public void streamNotAskedForInBinary() throws Exception {
+        Settings.current().setQuoteBinary(true);        // for the quote requests only
+        QuoteStreamClient client = newClient();
+
+        acceptNextConnection();
+        connect(client);
+        assertEquals("open", events.poll(TIMEOUT, TimeUnit.SECONDS));
+
+        RecordedRequest request = server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("/quotes/stream", request.getPath());
+        assertNull(request.getHeader("Accept"));
+
+        close(client);
+    }
+}
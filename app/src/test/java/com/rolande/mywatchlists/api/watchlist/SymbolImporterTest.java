@@ -0,0 +1,162 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static com.rolande.mywatchlists.Constants.WATCHLIST_IMPORT_MAX_SYMBOLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.model.Settings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests the symbols SymbolImporter reads from plain text and CSV, those it rejects, and the
+ * results it gives once the symbols read are added.
+ *
+ * @author Rolande
+ */
+public class SymbolImporterTest {
+    private static final long TIMEOUT = 5;              // in seconds
+
+    private MockWebServer server;
+    private SymbolImporter importer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        TestContext context = new TestContext();
+        Settings.setContext(context);
+        Settings.setCurrent(new Settings(server.getHostName(), server.getPort(), "127.0.0.1", 1));
+
+        importer = new SymbolImporter(context, this);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private SymbolImporter.Parsed parse(String input) throws IOException {
+        return importer.parse(new StringReader(input));
+    }
+
+    private static List<String> symbols(List<SymbolResult> results) {
+        List<String> symbols = new ArrayList<>();
+
+        for (SymbolResult result : results) {
+            symbols.add(result.getSymbol());
+        }
+        return symbols;
+    }
+
+    @Test
+    public void plainTextSplitOnSpacesCommasAndLines() throws IOException {
+        SymbolImporter.Parsed parsed = parse("aapl msft, goog;amzn\n\n  # my banks\nRY\tTD.TO\r\nBRK-B\n");
+
+        assertEquals(Arrays.asList("AAPL", "MSFT", "GOOG", "AMZN", "RY", "TD.TO", "BRK-B"), parsed.symbols);
+        assertTrue(parsed.rejected.isEmpty());
+    }
+
+    @Test
+    public void duplicatesKeptOnceInOrderFirstRead() throws IOException {
+        SymbolImporter.Parsed parsed = parse("MSFT AAPL msft\nAAPL GOOG");
+
+        assertEquals(Arrays.asList("MSFT", "AAPL", "GOOG"), parsed.symbols);
+        assertTrue(parsed.rejected.isEmpty());
+    }
+
+    @Test
+    public void csvTakesFirstColumnAfterHeading() throws IOException {
+        SymbolImporter.Parsed parsed = parse("Symbol,Name,Shares\n" +
+                                             "AAPL,Apple Inc.,10\n" +
+                                             "\"msft\",\"Microsoft, Corp.\",5\n" +
+                                             "GOOG;Alphabet;2\n");
+
+        assertEquals(Arrays.asList("AAPL", "MSFT", "GOOG"), parsed.symbols);
+        assertTrue(parsed.rejected.isEmpty());
+    }
+
+    @Test
+    public void csvHeadingTickerQuotedAndTabSeparated() throws IOException {
+        SymbolImporter.Parsed parsed = parse("# exported\n\"Ticker\"\t\"Price\"\nRY\t120.5\nTD\t80.1\n");
+
+        assertEquals(Arrays.asList("RY", "TD"), parsed.symbols);
+    }
+
+    @Test
+    public void firstLineWithoutHeadingIsSymbols() throws IOException {
+        SymbolImporter.Parsed parsed = parse("AAPL,MSFT\nGOOG");
+
+        assertEquals(Arrays.asList("AAPL", "MSFT", "GOOG"), parsed.symbols);
+    }
+
+    @Test
+    public void invalidSymbolsRejectedAsWritten() throws IOException {
+        SymbolImporter.Parsed parsed = parse("AAPL ab$c .TO TOOLONGSYMBOL MSFT");
+
+        assertEquals(Arrays.asList("AAPL", "MSFT"), parsed.symbols);
+        assertEquals(Arrays.asList("ab$c", ".TO", "TOOLONGSYMBOL"), symbols(parsed.rejected));
+
+        for (SymbolResult result : parsed.rejected) {
+            assertTrue(!result.isQueued() && result.getSecurity() == null);
+        }
+    }
+
+    @Test
+    public void symbolsBeyondMaximumRejected() throws IOException {
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < WATCHLIST_IMPORT_MAX_SYMBOLS + 2; i++) {
+            input.append("S").append(i).append('\n');
+        }
+        input.append("S0\n");                           // duplicate, neither taken nor rejected
+
+        SymbolImporter.Parsed parsed = parse(input.toString());
+
+        assertEquals(WATCHLIST_IMPORT_MAX_SYMBOLS, parsed.symbols.size());
+        assertEquals("S" + (WATCHLIST_IMPORT_MAX_SYMBOLS - 1), parsed.symbols.get(WATCHLIST_IMPORT_MAX_SYMBOLS - 1));
+        assertEquals(Arrays.asList("S" + WATCHLIST_IMPORT_MAX_SYMBOLS, "S" + (WATCHLIST_IMPORT_MAX_SYMBOLS + 1)),
+                     symbols(parsed.rejected));
+    }
+
+    @Test
+    public void importGivesResultsOfSymbolsAddedThenRejected() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"results\":[" +
+                "{\"symbol\":\"AAPL\",\"security\":{\"_id\":1,\"symbol\":\"AAPL\",\"name\":\"Apple Inc.\",\"exchange\":\"NASDAQ\"}}," +
+                "{\"symbol\":\"ZZZZ\",\"error\":\"Unknown symbol\"}]}"));
+
+        SymbolImporter.Parsed parsed = parse("aapl, zzzz, a*b");
+        BlockingQueue<List<SymbolResult>> outcomes = new LinkedBlockingQueue<>();
+
+        importer.importSymbols(8L, parsed, new WatchlistClient.SymbolsResponseListener() {
+            @Override
+            public void onResponse(List<SymbolResult> results) {
+                outcomes.add(results);
+            }
+        });
+
+        List<SymbolResult> results = outcomes.poll(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("AAPL", "ZZZZ", "a*b"), symbols(results));
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("Unknown symbol", results.get(1).getErrorMsg());
+        assertEquals("[\"AAPL\",\"ZZZZ\"]", server.takeRequest(TIMEOUT, TimeUnit.SECONDS).getBody().readUtf8());
+    }
+}
@@ -0,0 +1,258 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static com.rolande.mywatchlists.Constants.WATCHLIST_BULK_MAX_SYMBOLS;
+import static com.rolande.mywatchlists.Constants.WATCHLIST_IDEMPOTENCY_HEADER;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.model.Settings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Tests the bulk add and delete of symbols against a stand-in Watchlist Service: symbols are
+ * sent in chunks, one after the other, each symbol with its own idempotency key, and each
+ * gets a result of its own. A service without bulk requests gets a request per symbol, from
+ * then on.
+ *
+ * Symbols starting with 'BAD' are refused by the service. No test lets a request fail to
+ * reach the service, as it would queue changes in the app's outbox.
+ *
+ * @author Rolande
+ */
+public class WatchlistBulkTest {
+    private static final long TIMEOUT = 5;              // in seconds
+    private static final String BULK_PATH = "/watchlist-service/watchlists/7/symbols";
+    private static final String SYMBOL_PATH = "/watchlist-service/watchlists/7/symbol/";
+
+    private final Gson gson = new Gson();
+
+    private MockWebServer server;
+    private WatchlistClient client;
+    private volatile int bulkCode = 200;                // response code of bulk requests, if not 200
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+
+                if (path.equals(BULK_PATH)) {
+                    if (bulkCode != 200) {
+                        return new MockResponse().setResponseCode(bulkCode).setBody("{\"message\":\"No bulk here\"}");
+                    }
+
+                    List<String> symbols = gson.fromJson(request.getBody().clone().readUtf8(), new TypeToken<List<String>>() {}.getType());
+                    List<String> results = new ArrayList<>();
+
+                    for (String symbol : symbols) {
+                        results.add(symbol.startsWith("BAD") ? "{\"symbol\":\"" + symbol + "\",\"error\":\"Unknown symbol\"}"
+                                                             : "{\"symbol\":\"" + symbol + "\",\"security\":" + security(symbol) + "}");
+                    }
+                    return new MockResponse().setBody("{\"results\":[" + String.join(",", results) + "]}");
+                }
+
+                if (path.startsWith(SYMBOL_PATH)) {
+                    String symbol = path.substring(SYMBOL_PATH.length());
+
+                    if (symbol.startsWith("BAD")) {
+                        return new MockResponse().setResponseCode(404).setBody("{\"message\":\"Unknown symbol\"}");
+                    }
+                    return new MockResponse().setBody(request.getMethod().equals("POST") ? security(symbol) : "");
+                }
+
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        server.start();
+
+        TestContext context = new TestContext();
+        Settings.setContext(context);
+        Settings.setCurrent(new Settings(server.getHostName(), server.getPort(), "127.0.0.1", 1));
+
+        client = new WatchlistClient(context);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        assertTrue(WatchlistOutbox.getInstance(new TestContext()).isEmpty());
+    }
+
+    private static String security(String symbol) {
+        return "{\"_id\":" + Math.abs(symbol.hashCode()) + ",\"symbol\":\"" + symbol + "\",\"name\":\"" + symbol + " Inc.\",\"exchange\":\"NYSE\"}";
+    }
+
+    private static List<String> symbols(String prefix, int count) {
+        List<String> symbols = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            symbols.add(prefix + i);
+        }
+        return symbols;
+    }
+
+    private List<RecordedRequest> takeRequests() throws InterruptedException {
+        List<RecordedRequest> requests = new ArrayList<>();
+        RecordedRequest request;
+
+        while ((request = server.takeRequest(100, TimeUnit.MILLISECONDS)) != null) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    @Test
+    public void symbolsSentInChunksInOrder() throws Exception {
+        List<String> symbols = symbols("S", 2 * WATCHLIST_BULK_MAX_SYMBOLS + 3);
+
+        List<SymbolResult> results = client.addSymbols(7L, symbols).get(TIMEOUT, TimeUnit.SECONDS);
+
+        List<RecordedRequest> requests = takeRequests();
+        assertEquals(3, requests.size());
+
+        List<String> sent = new ArrayList<>();
+        int[] chunkSizes = new int[requests.size()];
+
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals("POST " + BULK_PATH, requests.get(i).getMethod() + " " + requests.get(i).getPath());
+
+            List<String> chunk = gson.fromJson(requests.get(i).getBody().readUtf8(), new TypeToken<List<String>>() {}.getType());
+            chunkSizes[i] = chunk.size();
+            sent.addAll(chunk);
+        }
+
+        assertEquals(Arrays.toString(new int[] { WATCHLIST_BULK_MAX_SYMBOLS, WATCHLIST_BULK_MAX_SYMBOLS, 3 }), Arrays.toString(chunkSizes));
+        assertEquals(symbols, sent);
+
+        assertEquals(symbols.size(), results.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            assertEquals(symbols.get(i), results.get(i).getSymbol());
+            assertTrue(results.get(i).isSuccess());
+        }
+    }
+
+    @Test
+    public void eachSymbolGetsItsOwnResult() throws Exception {
+        List<SymbolResult> results = client.addSymbols(7L, Arrays.asList("AAPL", "BADX", "MSFT")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("AAPL", results.get(0).getSecurity().getSymbol());
+
+        assertFalse(results.get(1).isSuccess());
+        assertFalse(results.get(1).isQueued());
+        assertEquals("Unknown symbol", results.get(1).getErrorMsg());
+        assertNull(results.get(1).getSecurity());
+
+        assertTrue(results.get(2).isSuccess());
+    }
+
+    @Test
+    public void eachSymbolSentWithItsOwnKey() throws Exception {
+        List<String> symbols = symbols("K", WATCHLIST_BULK_MAX_SYMBOLS + 1);
+
+        client.removeSymbols(7L, symbols).get(TIMEOUT, TimeUnit.SECONDS);
+
+        Set<String> keys = new HashSet<>();
+
+        for (RecordedRequest request : takeRequests()) {
+            assertEquals("DELETE", request.getMethod());
+
+            String header = request.getHeader(WATCHLIST_IDEMPOTENCY_HEADER);
+            assertNotNull(header);
+
+            List<String> chunk = gson.fromJson(request.getBody().readUtf8(), new TypeToken<List<String>>() {}.getType());
+            List<String> chunkKeys = Arrays.asList(header.split(",\\s*"));
+
+            assertEquals(chunk.size(), chunkKeys.size());
+            keys.addAll(chunkKeys);
+        }
+
+        assertEquals(symbols.size(), keys.size());
+    }
+
+    @Test
+    public void fallsBackToRequestPerSymbolWithoutBulk() throws Exception {
+        bulkCode = 405;
+
+        List<SymbolResult> results = client.addSymbols(7L, Arrays.asList("AAPL", "BADX", "MSFT")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals("AAPL", results.get(0).getSecurity().getSymbol());
+        assertEquals("Unknown symbol", results.get(1).getErrorMsg());
+        assertEquals("MSFT", results.get(2).getSecurity().getSymbol());
+
+        List<String> paths = new ArrayList<>();
+        for (RecordedRequest request : takeRequests()) {
+            paths.add(request.getPath());
+        }
+
+        assertEquals(BULK_PATH, paths.get(0));
+        assertEquals(new HashSet<>(Arrays.asList(SYMBOL_PATH + "AAPL", SYMBOL_PATH + "BADX", SYMBOL_PATH + "MSFT")),
+                     new HashSet<>(paths.subList(1, paths.size())));
+    }
+
+    @Test
+    public void noBulkRememberedForLaterChunks() throws Exception {
+        bulkCode = 501;
+        List<String> symbols = symbols("N", WATCHLIST_BULK_MAX_SYMBOLS + 1);
+
+        List<SymbolResult> results = client.removeSymbols(7L, symbols).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(symbols.size(), results.size());
+
+        int bulkRequests = 0;
+        for (RecordedRequest request : takeRequests()) {
+            bulkRequests += request.getPath().equals(BULK_PATH) ? 1 : 0;
+        }
+        assertEquals(1, bulkRequests);
+
+        // Nor probed again by later bulk changes
+        client.addSymbols(7L, Arrays.asList("AAPL", "MSFT")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        for (RecordedRequest request : takeRequests()) {
+            assertTrue(request.getPath().startsWith(SYMBOL_PATH));
+        }
+    }
+
+    @Test
+    public void notFoundFailsChunkWithoutFallback() throws Exception {
+        bulkCode = 404;
+
+        List<SymbolResult> results = client.addSymbols(7L, Arrays.asList("AAPL", "MSFT")).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(2, results.size());
+        for (SymbolResult result : results) {
+            assertFalse(result.isSuccess());
+            assertFalse(result.isQueued());
+            assertEquals("No bulk here", result.getErrorMsg());
+        }
+
+        List<RecordedRequest> requests = takeRequests();
+        assertEquals(1, requests.size());
+        assertEquals(BULK_PATH, requests.get(0).getPath());
+    }
+}
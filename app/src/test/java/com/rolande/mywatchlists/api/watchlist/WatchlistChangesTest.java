@@ -0,0 +1,125 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.GsonBuilder;
+import com.rolande.mywatchlists.api.gson.ApiTypeAdapters;
+import com.rolande.mywatchlists.api.gson.TimestampFormat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Tests the responses of getWatchlistSecurityChanges against a fake Watchlist service
+ * answering '304 Not Modified' when the ETag sent is the current one, the same way the
+ * service's client does (i.e. through the Watchlist ETag cache).
+ *
+ * @author Rolande
+ */
+public class WatchlistChangesTest {
+    private static final String SECURITIES = "[{\"_id\":1,\"symbol\":\"AAPL\",\"name\":\"Apple Inc.\",\"exchange\":\"NASDAQ\",\"quote\":null}," +
+                                             "{\"_id\":2,\"symbol\":\"MSFT\",\"name\":\"Microsoft\",\"exchange\":\"NASDAQ\",\"quote\":null}]";
+
+    private WatchlistAPI api;
+    private Long revision;                      // revision given by the service, null if none
+
+    /**
+     * Fake service: every watchlist is at version "v1", with the same two securities.
+     */
+    private final Interceptor server = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) {
+            Request request = chain.request();
+            String eTag = "\"" + request.url().encodedPath() + "-v1\"";
+
+            Response.Builder builder = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .header("ETag", eTag);
+
+            if (eTag.equals(request.header("If-None-Match"))) {
+                return builder.code(304).message("Not Modified")
+                        .body(ResponseBody.create("", null))
+                        .build();
+            }
+
+            String json = "{\"_id\":" + request.url().pathSegments().get(2) + ",\"name\":\"Tech\"," +
+                          "\"date_created\":\"2023-05-12T14:30:05-0400\",\"securities\":" + SECURITIES +
+                          ((revision != null) ? ",\"revision\":" + revision : "") + "}";
+
+            return builder.code(200).message("OK")
+                    .body(ResponseBody.create(json, MediaType.get("application/json")))
+                    .build();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(WatchlistAPIBuilder.eTagCache.getInterceptor())
+                .addInterceptor(server)
+                .build();
+
+        api = new Retrofit.Builder()
+                .baseUrl("http://localhost/watchlist-service/")
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(
+                        ApiTypeAdapters.register(new GsonBuilder()).setDateFormat(TimestampFormat.PATTERN).create()))
+                .build()
+                .create(WatchlistAPI.class);
+    }
+
+    @Test
+    public void notModifiedReusesListCachedByGetWatchlistSecurities() throws IOException {
+        // As getWatchlistSecurities gets it
+        Call<WatchlistDetailAPIResponse> call = api.getWatchlist(101);
+        retrofit2.Response<WatchlistDetailAPIResponse> response = call.execute();
+        WatchlistAPIBuilder.eTagCache.getBody(call.request().url().toString(), response);
+
+        // No revision given, so changes are asked for with the very same request
+        call = api.getWatchlist(101);
+        response = call.execute();
+
+        assertEquals(304, response.code());
+        assertNull(response.body());
+
+        WatchlistChanges changes = WatchlistClient.getChanges(101L, call.request().url().toString(), response);
+
+        assertTrue(changes.isFullList());
+        assertEquals(2, changes.getChanged().size());
+        assertEquals("AAPL", changes.getChanged().get(0).getSymbol());
+        assertTrue(changes.getRemovedSymbols().isEmpty());
+    }
+
+    @Test
+    public void revisionKeptFromFullList() throws IOException {
+        revision = 12L;
+
+        Call<WatchlistDetailAPIResponse> call = api.getWatchlist(102);
+        WatchlistChanges changes = WatchlistClient.getChanges(102L, call.request().url().toString(), call.execute());
+
+        assertTrue(changes.isFullList());
+        assertTrue(WatchlistClient.hasRevision(102L));
+
+        // Served from the cache, the list still comes with its revision
+        call = api.getWatchlist(102);
+        WatchlistClient.getChanges(102L, call.request().url().toString(), call.execute());
+
+        assertTrue(WatchlistClient.hasRevision(102L));
+    }
+}
@@ -0,0 +1,333 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests the merging, ordered replay and saving of the changes queued in WatchlistOutbox.
+ *
+ * @author Rolande
+ */
+public class WatchlistOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private FakeSender sender;
+
+    /**
+     * Sender answering each change with the next status code given, or keeping it in flight
+     * if none is left.
+     */
+    private static class FakeSender implements WatchlistOutbox.Sender {
+        final List<WatchlistMutation> sent = new ArrayList<>();
+        final List<Integer> codes = new ArrayList<>();
+        WatchlistClient.MutationResponseListener inFlight;
+
+        @Override
+        public void send(WatchlistMutation mutation, WatchlistClient.MutationResponseListener listener) {
+            sent.add(mutation);
+
+            if (codes.isEmpty()) {
+                inFlight = listener;
+                return;
+            }
+
+            int code = codes.remove(0);
+            listener.onResponse(code, (code >= 200 && code < 300) ? null : "** Error " + code);
+        }
+    }
+
+    /**
+     * Listener keeping the outcome of the changes replayed, in order.
+     */
+    private static class RecordingListener implements WatchlistOutbox.Listener {
+        final List<String> outcomes = new ArrayList<>();
+
+        @Override
+        public void onMutationSent(WatchlistMutation mutation) {
+            outcomes.add("sent " + mutation);
+        }
+
+        @Override
+        public void onMutationRejected(WatchlistMutation mutation, String errorMsg) {
+            outcomes.add("rejected " + mutation);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "outbox.json");
+        sender = new FakeSender();
+    }
+
+    private WatchlistOutbox newOutbox() {
+        return new WatchlistOutbox(sender, file);
+    }
+
+    private static Watchlist watchlist(long id, String name) {
+        return new Watchlist(id, name, new Date(), 0);
+    }
+
+    @Test
+    public void addThenDeleteSameSymbolCancelsOut() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.deleteSymbol(1, "aapl"));
+
+        assertTrue(outbox.isEmpty());
+    }
+
+    @Test
+    public void deleteOfAddMaybeDeliveredIsQueuedBehindIt() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        sender.codes.add(0);                                // may have got through, no response
+        outbox.replay();
+
+        outbox.add(WatchlistMutation.deleteSymbol(1, "AAPL"));
+        assertEquals(2, outbox.size());
+
+        // Adding it back only cancels the delete, never sent
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        assertEquals(1, outbox.size());
+
+        outbox.add(WatchlistMutation.deleteSymbol(1, "AAPL"));
+        sender.codes.add(200);
+        sender.codes.add(200);
+        outbox.replay();
+
+        assertTrue(outbox.isEmpty());
+        assertEquals("ADD_SYMBOL(1,AAPL)", sender.sent.get(1).toString());
+        assertEquals("DELETE_SYMBOL(1,AAPL)", sender.sent.get(2).toString());
+    }
+
+    @Test
+    public void deleteOfAddMaybeDeliveredIsKeptAcrossReload() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        sender.codes.add(0);
+        outbox.replay();
+
+        WatchlistOutbox reloaded = newOutbox();
+        reloaded.add(WatchlistMutation.deleteSymbol(1, "AAPL"));
+
+        assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    public void sameSymbolAddedTwiceIsQueuedOnce() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.addSymbol(2, "AAPL"));
+
+        assertEquals(2, outbox.size());
+    }
+
+    @Test
+    public void lastUpdateOfWatchlistWins() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.updateWatchlist(watchlist(1, "First")));
+        outbox.add(WatchlistMutation.updateWatchlist(watchlist(1, "Second")));
+        assertEquals(1, outbox.size());
+
+        sender.codes.add(200);
+        outbox.replay();
+
+        assertEquals(1, sender.sent.size());
+        assertEquals("Second", sender.sent.get(0).getName());
+    }
+
+    @Test
+    public void deletingWatchlistDropsItsQueuedChanges() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.updateWatchlist(watchlist(1, "Renamed")));
+        outbox.add(WatchlistMutation.addSymbol(2, "MSFT"));
+        outbox.add(WatchlistMutation.deleteWatchlist(1));
+
+        assertEquals(2, outbox.size());
+
+        sender.codes.add(200);
+        sender.codes.add(200);
+        outbox.replay();
+
+        assertEquals(WatchlistMutation.Type.ADD_SYMBOL, sender.sent.get(0).getType());
+        assertEquals(2, sender.sent.get(0).getWatchlistId());
+        assertEquals(WatchlistMutation.Type.DELETE_WATCHLIST, sender.sent.get(1).getType());
+    }
+
+    @Test
+    public void changeBeingSentIsNotMerged() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.replay();                                    // left in flight
+        outbox.add(WatchlistMutation.deleteSymbol(1, "AAPL"));
+
+        assertEquals(2, outbox.size());
+    }
+
+    @Test
+    public void replaysInOrderMade() {
+        WatchlistOutbox outbox = newOutbox();
+        RecordingListener listener = new RecordingListener();
+        outbox.addListener(listener);
+
+        outbox.add(WatchlistMutation.addWatchlist("Tech"));
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.deleteSymbol(1, "MSFT"));
+
+        sender.codes.add(201);
+        sender.codes.add(400);
+        sender.codes.add(200);
+        outbox.replay();
+
+        assertTrue(outbox.isEmpty());
+        assertEquals(3, sender.sent.size());
+        assertEquals("sent ADD_WATCHLIST(Tech)", listener.outcomes.get(0));
+        assertEquals("rejected ADD_SYMBOL(1,AAPL)", listener.outcomes.get(1));
+        assertEquals("sent DELETE_SYMBOL(1,MSFT)", listener.outcomes.get(2));
+    }
+
+    @Test
+    public void unreachableServiceKeepsQueueAndKey() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.addSymbol(1, "MSFT"));
+
+        sender.codes.add(0);
+        outbox.replay();
+
+        assertEquals(1, sender.sent.size());
+        assertEquals(2, outbox.size());
+
+        sender.codes.add(503);
+        outbox.replay();
+
+        assertEquals(2, sender.sent.size());
+        assertEquals(2, outbox.size());
+        assertEquals(sender.sent.get(0).getKey(), sender.sent.get(1).getKey());
+    }
+
+    @Test
+    public void alreadyAppliedAfterLostResponseCountsAsSent() {
+        WatchlistOutbox outbox = newOutbox();
+        RecordingListener listener = new RecordingListener();
+        outbox.addListener(listener);
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+
+        sender.codes.add(0);                                // got through, but no response
+        outbox.replay();
+        sender.codes.add(409);
+        outbox.replay();
+
+        assertTrue(outbox.isEmpty());
+        assertEquals("sent ADD_SYMBOL(1,AAPL)", listener.outcomes.get(0));
+    }
+
+    @Test
+    public void conflictOnFirstAttemptIsRejected() {
+        WatchlistOutbox outbox = newOutbox();
+        RecordingListener listener = new RecordingListener();
+        outbox.addListener(listener);
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+
+        sender.codes.add(409);
+        outbox.replay();
+
+        assertEquals("rejected ADD_SYMBOL(1,AAPL)", listener.outcomes.get(0));
+    }
+
+    @Test
+    public void queueIsReloadedInOrder() {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addWatchlist("Tech"));
+        outbox.add(WatchlistMutation.updateWatchlist(watchlist(3, "Energy")));
+        outbox.add(WatchlistMutation.addSymbol(3, "XOM"));
+        outbox.add(WatchlistMutation.deleteWatchlist(4));
+
+        WatchlistOutbox reloaded = newOutbox();
+
+        assertEquals(4, reloaded.size());
+        assertFalse(new File(file.getPath() + ".new").exists());
+
+        for (int i = 0; i < 4; i++) {
+            sender.codes.add(200);
+        }
+        reloaded.replay();
+
+        assertEquals("ADD_WATCHLIST(Tech)", sender.sent.get(0).toString());
+        assertEquals("Energy", sender.sent.get(1).getName());
+        assertEquals("ADD_SYMBOL(3,XOM)", sender.sent.get(2).toString());
+        assertEquals("DELETE_WATCHLIST(4)", sender.sent.get(3).toString());
+    }
+
+    @Test
+    public void reloadedChangeKeepsItsKey() {
+        WatchlistOutbox outbox = newOutbox();
+        WatchlistMutation mutation = WatchlistMutation.deleteSymbol(1, "AAPL");
+
+        outbox.add(mutation);
+
+        sender.codes.add(200);
+        newOutbox().replay();
+
+        assertEquals(mutation.getKey(), sender.sent.get(0).getKey());
+    }
+
+    @Test
+    public void interruptedSaveKeepsPreviousQueue() throws IOException {
+        WatchlistOutbox outbox = newOutbox();
+
+        outbox.add(WatchlistMutation.addSymbol(1, "AAPL"));
+        outbox.add(WatchlistMutation.addSymbol(1, "MSFT"));
+
+        // Crash while writing the next save: the new file is left half written
+        File newFile = new File(file.getPath() + ".new");
+        Files.write(newFile.toPath(), "[{\"type\":\"ADD_SYM".getBytes(StandardCharsets.UTF_8));
+
+        WatchlistOutbox reloaded = newOutbox();
+
+        assertEquals(2, reloaded.size());
+        assertFalse(newFile.exists());
+    }
+
+    @Test
+    public void corruptFileIsDropped() throws IOException {
+        Files.write(file.toPath(), "not json".getBytes(StandardCharsets.UTF_8));
+
+        WatchlistOutbox outbox = newOutbox();
+
+        assertTrue(outbox.isEmpty());
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,186 @@
+package com.rolande.mywatchlists.api.watchlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.rolande.mywatchlists.TestContext;
+import com.rolande.mywatchlists.api.APIException;
+import com.rolande.mywatchlists.model.Settings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests the revision cursor of WatchlistClient against a stand-in Watchlist Service: the
+ * revision given along with a watchlist's securities is sent back when asking for changes,
+ * moved forward by each response, and dropped when the service stops giving one.
+ *
+ * Each test uses watchlists of its own, as revisions are kept for the whole app.
+ *
+ * @author Rolande
+ */
+public class WatchlistRevisionTest {
+    private static final long TIMEOUT = 5;              // in seconds
+
+    private static final String AAPL = "{\"_id\":1,\"symbol\":\"AAPL\",\"name\":\"Apple Inc.\",\"exchange\":\"NASDAQ\"}";
+    private static final String MSFT = "{\"_id\":2,\"symbol\":\"MSFT\",\"name\":\"Microsoft\",\"exchange\":\"NASDAQ\"}";
+
+    private MockWebServer server;
+    private WatchlistClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        TestContext context = new TestContext();
+        Settings.setContext(context);
+        Settings.setCurrent(new Settings(server.getHostName(), server.getPort(), "127.0.0.1", 1));
+
+        client = new WatchlistClient(context);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private void enqueueFullList(long watchlistId, Long revision) {
+        server.enqueue(new MockResponse().setBody("{\"_id\":" + watchlistId + ",\"name\":\"Tech\",\"securities\":[" + AAPL + "," + MSFT + "]" +
+                                                  ((revision != null) ? ",\"revision\":" + revision : "") + "}"));
+    }
+
+    private void enqueueDelta(long watchlistId, long revision) {
+        server.enqueue(new MockResponse().setBody("{\"_id\":" + watchlistId + ",\"name\":\"Tech\",\"delta\":true,\"revision\":" + revision +
+                                                  ",\"securities\":[" + MSFT + "],\"removed_symbols\":[\"AAPL\"]}"));
+    }
+
+    private String takePath() throws InterruptedException {
+        return server.takeRequest(TIMEOUT, TimeUnit.SECONDS).getPath();
+    }
+
+    private WatchlistChanges getChanges(long watchlistId) throws Exception {
+        return client.getWatchlistSecurityChanges(watchlistId).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void noRevisionAsksForFullList() throws Exception {
+        enqueueFullList(201, null);
+
+        WatchlistChanges changes = getChanges(201);
+
+        assertEquals("/watchlist-service/watchlists/201", takePath());
+        assertTrue(changes.isFullList());
+        assertEquals(2, changes.getChanged().size());
+        assertFalse(WatchlistClient.hasRevision(201L));
+    }
+
+    @Test
+    public void revisionSentBackAndMovedForward() throws Exception {
+        enqueueFullList(202, 7L);
+        assertEquals(2, client.getWatchlistSecurities(202L).get(TIMEOUT, TimeUnit.SECONDS).size());
+        takePath();
+
+        enqueueDelta(202, 9);
+        WatchlistChanges changes = getChanges(202);
+
+        assertEquals("/watchlist-service/watchlists/202?since=7", takePath());
+        assertFalse(changes.isFullList());
+        assertEquals("MSFT", changes.getChanged().get(0).getSymbol());
+        assertEquals(Collections.singletonList("AAPL"), changes.getRemovedSymbols());
+
+        enqueueDelta(202, 10);
+        getChanges(202);
+
+        assertEquals("/watchlist-service/watchlists/202?since=9", takePath());
+    }
+
+    @Test
+    public void fullListGivenInsteadOfChanges() throws Exception {
+        enqueueFullList(203, 7L);
+        getChanges(203);
+        takePath();
+
+        // Revision too old for the service to tell what changed since
+        enqueueFullList(203, 12L);
+        WatchlistChanges changes = getChanges(203);
+
+        assertEquals("/watchlist-service/watchlists/203?since=7", takePath());
+        assertTrue(changes.isFullList());
+        assertEquals(2, changes.getChanged().size());
+        assertTrue(changes.getRemovedSymbols().isEmpty());
+
+        enqueueDelta(203, 13);
+        getChanges(203);
+
+        assertEquals("/watchlist-service/watchlists/203?since=12", takePath());
+    }
+
+    @Test
+    public void revisionDroppedWhenNoneGiven() throws Exception {
+        enqueueFullList(204, 7L);
+        getChanges(204);
+        takePath();
+        assertTrue(WatchlistClient.hasRevision(204L));
+
+        // Service no longer keeping revisions (ex: older server, after a failover)
+        enqueueFullList(204, null);
+        getChanges(204);
+        takePath();
+        assertFalse(WatchlistClient.hasRevision(204L));
+
+        enqueueFullList(204, null);
+        getChanges(204);
+
+        assertEquals("/watchlist-service/watchlists/204", takePath());
+    }
+
+    @Test
+    public void revisionOnlyKeptFromFirstPage() throws Exception {
+        enqueueFullList(205, 3L);
+        client.getWatchlistSecuritiesPage(205L, 0, 2).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("/watchlist-service/watchlists/205?offset=0&limit=2", takePath());
+
+        // A later page may be of a later revision, missing changes made to the first one
+        enqueueFullList(205, 5L);
+        client.getWatchlistSecuritiesPage(205L, 2, 2).get(TIMEOUT, TimeUnit.SECONDS);
+        takePath();
+
+        enqueueDelta(205, 6);
+        getChanges(205);
+
+        assertEquals("/watchlist-service/watchlists/205?since=3", takePath());
+    }
+
+    @Test
+    public void failedRequestKeepsRevision() throws Exception {
+        enqueueFullList(206, 7L);
+        getChanges(206);
+        takePath();
+
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{\"message\":\"Try again\"}"));
+        try {
+            getChanges(206);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(500, ((APIException) e.getCause()).getHttpCode());
+        }
+        takePath();
+
+        enqueueDelta(206, 8);
+        getChanges(206);
+
+        assertEquals("/watchlist-service/watchlists/206?since=7", takePath());
+    }
+}
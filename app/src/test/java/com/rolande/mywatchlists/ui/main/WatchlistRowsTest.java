@@ -0,0 +1,149 @@
+package com.rolande.mywatchlists.ui.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.rolande.mywatchlists.model.beans.Watchlist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests the watchlist changes shown ahead of the server, and their rollback when the server
+ * refuses them, including when the rows changed in between.
+ *
+ * @author Rolande
+ */
+public class WatchlistRowsTest {
+    private WatchlistRows rows;
+
+    private static Watchlist watchlist(long id, String name) {
+        return new Watchlist(id, name, new Date(), 0);
+    }
+
+    @Before
+    public void setUp() {
+        List<Watchlist> data = new ArrayList<>();
+        data.add(watchlist(1, "Tech"));
+        data.add(watchlist(2, "Banks"));
+        data.add(watchlist(3, "Energy"));
+
+        rows = new WatchlistRows(data);
+    }
+
+    private String names() {
+        StringBuilder names = new StringBuilder();
+
+        for (int i = 0; i < rows.size(); i++) {
+            names.append(i > 0 ? "," : "").append(rows.get(i).getName());
+        }
+        return names.toString();
+    }
+
+    @Test
+    public void pendingAddReplacedByServerWatchlist() {
+        Watchlist pending = watchlist(-1, "Mines");
+        assertEquals(3, rows.add(pending));
+
+        Watchlist added = watchlist(4, "Mines");
+        assertEquals(3, rows.replace(pending, added));
+
+        assertSame(added, rows.get(3));
+        assertEquals(4, rows.size());
+    }
+
+    @Test
+    public void pendingAddRemovedWhenRefused() {
+        Watchlist pending = watchlist(-1, "Tech");
+        rows.add(pending);
+
+        assertEquals(3, rows.undoAdd(pending));
+        assertEquals("Tech,Banks,Energy", names());
+
+        // Already gone (ex: list reloaded meanwhile)
+        assertEquals(-1, rows.undoAdd(pending));
+    }
+
+    @Test
+    public void pendingAddGoneServerWatchlistAddedOnce() {
+        Watchlist pending = watchlist(-1, "Mines");
+        rows.add(pending);
+        rows.undoAdd(pending);                      // ex: list reloaded without it
+
+        Watchlist added = watchlist(4, "Mines");
+        assertEquals(3, rows.replace(pending, added));
+
+        // Already brought by another reload
+        assertEquals(-1, rows.replace(pending, watchlist(4, "Mines")));
+        assertEquals("Tech,Banks,Energy,Mines", names());
+    }
+
+    @Test
+    public void renameRevertedWhenRefused() {
+        Watchlist banks = rows.get(1);
+        rows.rename(1, "Tech");
+
+        assertEquals(1, rows.undoRename(banks, "Tech", "Banks"));
+        assertEquals("Tech,Banks,Energy", names());
+    }
+
+    @Test
+    public void renameRevertedWhereverWatchlistMoved() {
+        Watchlist energy = rows.get(2);
+        rows.rename(2, "Oil");
+        rows.remove(0);
+
+        assertEquals(1, rows.undoRename(energy, "Oil", "Energy"));
+        assertEquals("Banks,Energy", names());
+    }
+
+    @Test
+    public void renameNotRevertedOverLaterOne() {
+        Watchlist banks = rows.get(1);
+        rows.rename(1, "Tech");
+        rows.rename(1, "Finance");
+
+        assertEquals(-1, rows.undoRename(banks, "Tech", "Banks"));
+        assertEquals("Tech,Finance,Energy", names());
+    }
+
+    @Test
+    public void renameNotRevertedOnceRemoved() {
+        Watchlist banks = rows.get(1);
+        rows.rename(1, "Tech");
+        rows.remove(1);
+
+        assertEquals(-1, rows.undoRename(banks, "Tech", "Banks"));
+        assertEquals("Tech", banks.getName());
+    }
+
+    @Test
+    public void deletePutBackAtItsPosition() {
+        Watchlist banks = rows.remove(1);
+
+        assertEquals(1, rows.undoRemove(1, banks));
+        assertEquals("Tech,Banks,Energy", names());
+    }
+
+    @Test
+    public void deletePutBackClampedToRowsLeft() {
+        Watchlist energy = rows.remove(2);
+        rows.remove(1);
+
+        assertEquals(1, rows.undoRemove(2, energy));
+        assertEquals("Tech,Energy", names());
+    }
+
+    @Test
+    public void deleteNotPutBackTwice() {
+        Watchlist banks = rows.remove(1);
+        rows.undoRemove(1, banks);
+
+        assertEquals(-1, rows.undoRemove(1, banks));
+        assertEquals(3, rows.size());
+    }
+}
@@ -0,0 +1,321 @@
+package com.rolande.mywatchlists.ui.watchlist_detail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.rolande.mywatchlists.model.beans.Security;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the securities shown ahead of the server, and their rollback when the server refuses
+ * them, including when the rows changed in between. Also tests the pages appended, dropped
+ * from memory and loaded again, and that row positions (and numbers) stay right throughout.
+ *
+ * @author Rolande
+ */
+public class SecurityRowsTest {
+    private SecurityRows rows;
+
+    private static Security security(long id, String symbol) {
+        return new Security(id, symbol, symbol + " Inc.", "NASDAQ", null);
+    }
+
+    @Before
+    public void setUp() {
+        List<Security> data = new ArrayList<>();
+        data.add(security(1, "AAPL"));
+        data.add(security(2, "MSFT"));
+        data.add(security(3, "GOOG"));
+
+        rows = new SecurityRows(data);
+    }
+
+    private static List<Security> page(String prefix, int from, int count) {
+        List<Security> page = new ArrayList<>();
+
+        for (int i = from; i < from + count; i++) {
+            page.add(security(i + 1, prefix + i));
+        }
+        return page;
+    }
+
+    /**
+     * @return symbols of the rows, '-' for those dropped from memory
+     */
+    private String symbols() {
+        StringBuilder symbols = new StringBuilder();
+
+        for (int i = 0; i < rows.size(); i++) {
+            Security security = rows.get(i);
+            symbols.append(i > 0 ? "," : "").append((security != null) ? security.getSymbol() : "-");
+        }
+        return symbols.toString();
+    }
+
+    /**
+     * Check that the position kept for each security loaded is its row's, and that rows
+     * dropped from memory have none.
+     */
+    private void assertPositionsRight() {
+        List<Security> list = rows.toList();
+        int dropped = 0;
+
+        assertEquals(rows.size(), list.size());
+
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == null) {
+                dropped++;
+                assertTrue(rows.isDropped(i));
+            }
+            else {
+                assertEquals(i, rows.positionOf(list.get(i).getSymbol()));
+                assertSame(list.get(i), rows.get(i));
+            }
+        }
+        assertEquals(dropped, rows.getDroppedCount());
+    }
+
+    @Test
+    public void pendingAddReplacedByServerSecurity() {
+        Security pending = security(0, "AMZN");
+        assertEquals(3, rows.add(pending));
+
+        Security added = security(4, "AMZN");
+        assertEquals(3, rows.replace(pending, added));
+
+        assertSame(added, rows.get(3));
+        assertEquals(3, rows.positionOf("AMZN"));
+    }
+
+    @Test
+    public void pendingAddGoneServerSecurityReplacesSameSymbol() {
+        Security pending = security(0, "AMZN");
+        rows.add(pending);
+
+        // Reloaded meanwhile, bringing the security added
+        rows.set(3, security(4, "AMZN"));
+
+        Security added = security(4, "AMZN");
+        assertEquals(3, rows.replace(pending, added));
+        assertSame(added, rows.get(3));
+        assertEquals(4, rows.size());
+    }
+
+    @Test
+    public void pendingAddGoneNowhereToReplace() {
+        Security pending = security(0, "AMZN");
+        rows.add(pending);
+        rows.undoAdd(pending);
+
+        assertEquals(-1, rows.replace(pending, security(4, "AMZN")));
+        assertEquals("AAPL,MSFT,GOOG", symbols());
+    }
+
+    @Test
+    public void pendingAddRemovedWhenRefused() {
+        Security pending = security(0, "AMZN");
+        rows.add(pending);
+        rows.remove(0);
+
+        assertEquals(2, rows.undoAdd(pending));
+        assertEquals("MSFT,GOOG", symbols());
+        assertEquals(-1, rows.undoAdd(pending));
+    }
+
+    @Test
+    public void deletePutBackAtItsPosition() {
+        Security msft = rows.remove(1);
+        assertEquals(-1, rows.positionOf("MSFT"));
+
+        assertEquals(1, rows.undoRemove(1, msft));
+        assertEquals("AAPL,MSFT,GOOG", symbols());
+        assertEquals(2, rows.positionOf("GOOG"));
+    }
+
+    @Test
+    public void deletePutBackClampedToRowsLeft() {
+        Security goog = rows.remove(2);
+        rows.remove(0);
+
+        assertEquals(1, rows.undoRemove(2, goog));
+        assertEquals("MSFT,GOOG", symbols());
+    }
+
+    @Test
+    public void deleteNotPutBackOverSymbolReloaded() {
+        Security msft = rows.remove(1);
+        rows.add(security(2, "MSFT"));              // brought back by a reload
+
+        assertEquals(-1, rows.undoRemove(1, msft));
+        assertEquals("AAPL,GOOG,MSFT", symbols());
+    }
+
+    @Test
+    public void pagesAppendedSkipSecuritiesAlreadyThere() {
+        rows = new SecurityRows(page("P", 0, 3));
+        rows.add(security(99, "P4"));                   // added meanwhile, comes again with the next page
+
+        assertEquals(3, rows.appendPage(page("P", 3, 4)));
+
+        assertEquals("P0,P1,P2,P4,P3,P5,P6", symbols());
+        assertPositionsRight();
+    }
+
+    @Test
+    public void droppedPageKeepsItsRowsOnly() {
+        rows = new SecurityRows(page("P", 0, 10));
+        rows.appendPage(page("P", 10, 10));
+
+        assertEquals(4, rows.drop(3, 7));
+
+        assertEquals(20, rows.size());
+        assertEquals(4, rows.getDroppedCount());
+        assertTrue(symbols().startsWith("P0,P1,P2,-,-,-,-,P7,P8,P9,P10,"));
+        assertEquals(-1, rows.positionOf("P4"));
+        assertNull(rows.get(4));
+
+        // Rows after it keep their positions, and numbers
+        assertEquals(12, rows.positionOf("P12"));
+        assertEquals("13", SecurityRows.formatRowNumber(rows.positionOf("P12")));
+        assertPositionsRight();
+    }
+
+    @Test
+    public void dropClampedToRowsAndRepeatedDropsMerge() {
+        rows = new SecurityRows(page("P", 0, 6));
+
+        assertEquals(2, rows.drop(4, 100));
+        assertEquals(2, rows.drop(2, 4));
+        assertEquals(0, rows.drop(2, 6));
+
+        assertEquals("P0,P1,-,-,-,-", symbols());
+        assertEquals(6, rows.size());
+        assertPositionsRight();
+    }
+
+    @Test
+    public void droppedPageKeepsPendingRows() {
+        rows = new SecurityRows(page("P", 0, 4));
+        Security pending = security(0, "NEW");
+        rows.add(pending);
+
+        assertEquals(3, rows.drop(1, 5));
+
+        assertEquals("P0,-,-,-,NEW", symbols());
+        assertEquals(4, rows.positionOf("NEW"));
+        assertEquals(4, rows.undoAdd(pending));
+        assertPositionsRight();
+    }
+
+    @Test
+    public void droppedPageLoadedAgainInItsRows() {
+        rows = new SecurityRows(page("P", 0, 8));
+        rows.drop(2, 6);
+
+        assertEquals(4, rows.reloadPage(2, page("P", 2, 4)));
+
+        assertEquals("P0,P1,P2,P3,P4,P5,P6,P7", symbols());
+        assertEquals(0, rows.getDroppedCount());
+        assertPositionsRight();
+
+        // Loaded again twice (ex: two requests answered), nothing left to put back
+        assertEquals(0, rows.reloadPage(2, page("P", 2, 4)));
+    }
+
+    @Test
+    public void reloadSkipsSecuritiesLoadedElsewhere() {
+        rows = new SecurityRows(page("P", 0, 6));
+        rows.drop(0, 3);
+        rows.set(3, security(2, "P1"));                 // ex: rows moved since
+
+        assertEquals(2, rows.reloadPage(0, page("P", 0, 3)));
+
+        assertEquals("P0,-,P2,P1,P4,P5", symbols());
+        assertPositionsRight();
+    }
+
+    @Test
+    public void removeBeforeDroppedPageMovesLaterRows() {
+        rows = new SecurityRows(page("P", 0, 10));
+        rows.drop(4, 7);
+
+        rows.remove(1);
+
+        assertEquals("P0,P2,P3,-,-,-,P7,P8,P9", symbols());
+        assertEquals(6, rows.positionOf("P7"));
+        assertEquals(" 7", SecurityRows.formatRowNumber(rows.positionOf("P7")));
+        assertPositionsRight();
+
+        // Put back, later rows move back
+        rows.undoRemove(1, security(2, "P1"));
+        assertEquals(7, rows.positionOf("P7"));
+        assertPositionsRight();
+    }
+
+    @Test
+    public void droppedRowRemovedOrInsertedInto() {
+        rows = new SecurityRows(page("P", 0, 6));
+        rows.drop(1, 5);
+
+        assertNull(rows.remove(2));
+        assertEquals("P0,-,-,-,P5", symbols());
+
+        assertEquals(2, rows.insert(2, security(42, "NEW")));
+        assertEquals("P0,-,NEW,-,-,P5", symbols());
+        assertPositionsRight();
+
+        // Loaded again by position, around the row inserted
+        rows.reloadPage(1, page("P", 1, 4));
+        assertEquals("P0,P1,NEW,P3,P4,P5", symbols());
+        assertPositionsRight();
+    }
+
+    @Test
+    public void changesAppliedOverDroppedRows() {
+        rows = new SecurityRows(page("P", 0, 5));
+        rows.drop(1, 3);
+
+        SecurityRows newRows = new SecurityRows(rows.toList());
+        newRows.remove(newRows.positionOf("P3"));
+        newRows.add(security(50, "NEW"));
+        rows.setList(newRows.toList());
+
+        assertEquals("P0,-,-,P4,NEW", symbols());
+        assertFalse(rows.isDropped(3));
+        assertPositionsRight();
+    }
+
+    @Test
+    public void positionsKeptAcrossManyPages() {
+        rows = new SecurityRows(page("P", 0, 100));
+
+        for (int from = 100; from < 10000; from += 100) {
+            rows.appendPage(page("P", from, 100));
+        }
+
+        for (int pageIndex = 0; pageIndex < 95; pageIndex++) {
+            rows.drop(pageIndex * 100, (pageIndex + 1) * 100);
+        }
+
+        assertEquals(10000, rows.size());
+        assertEquals(9500, rows.getDroppedCount());
+        assertEquals(9999, rows.positionOf("P9999"));
+        assertEquals("10000", SecurityRows.formatRowNumber(rows.positionOf("P9999")));
+        assertPositionsRight();
+    }
+
+    @Test
+    public void rowNumbersOneBased() {
+        assertEquals(" 1", SecurityRows.formatRowNumber(0));
+        assertEquals("10", SecurityRows.formatRowNumber(9));
+        assertEquals("100", SecurityRows.formatRowNumber(99));
+    }
+}